@@ -18,6 +18,7 @@ package fr.mby.saml2.sp.api.config;
 
 import java.io.Serializable;
 
+import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.xml.signature.SignatureTrustEngine;
 import org.springframework.core.io.Resource;
 
@@ -96,4 +97,12 @@ public interface IIdpConfig extends Serializable {
 	String getIdpSsoEndpointUrl(SamlBindingEnum binding);
 
 	String getIdpSloEndpointUrl(SamlBindingEnum binding);
+
+	/**
+	 * Reload the IdP metadata and the IdP endpoints.
+	 * 
+	 * @throws MetadataProviderException
+	 *             if the metadata cannot be reloaded
+	 */
+	void refreshIdpMetadata() throws MetadataProviderException;
 }
@@ -54,6 +54,14 @@ public interface ISpConfig extends Serializable {
 	 */
 	String getEndpointUrl(SamlBindingEnum binding);
 
+	/**
+	 * Service Provider Single Logout endpoint URL for this binding.
+	 * 
+	 * @param binding the binding
+	 * @return the Single Logout endpoint URL
+	 */
+	String getSingleLogoutServiceUrl(SamlBindingEnum binding);
+
 	/** Used to decrypt assertions. */
 	PrivateKey getDecryptionKey();
 
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.exception;
+
+/**
+ * A SAML response whose InResponseTo matches no request waiting for a response : the request expired, was evicted from
+ * the storage or never existed.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class OrphanResponseException extends SamlProcessingException {
+
+	/** SVUID. */
+	private static final long serialVersionUID = 2816425090331875224L;
+
+	public OrphanResponseException() {
+		super();
+	}
+
+	public OrphanResponseException(final String message, final Throwable cause) {
+		super(message, cause);
+	}
+
+	public OrphanResponseException(final String message) {
+		super(message);
+	}
+
+	public OrphanResponseException(final Throwable cause) {
+		super(cause);
+	}
+
+}
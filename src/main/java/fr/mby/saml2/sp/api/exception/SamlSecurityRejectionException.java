@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.exception;
+
+/**
+ * An incoming SAML message rejected for a security problem, already audited : the rethrown Exception is told apart
+ * from a processing failure.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class SamlSecurityRejectionException extends SamlProcessingException {
+
+	/** SVUID. */
+	private static final long serialVersionUID = -4129083346576031257L;
+
+	public SamlSecurityRejectionException() {
+		super();
+	}
+
+	public SamlSecurityRejectionException(final String message, final Throwable cause) {
+		super(message, cause);
+	}
+
+	public SamlSecurityRejectionException(final String message) {
+		super(message);
+	}
+
+	public SamlSecurityRejectionException(final Throwable cause) {
+		super(cause);
+	}
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+
+/**
+ * Metrics of the incoming SAML messages processing : receive the duration of each processing stage. Called on the
+ * servlet threads, implementations must be thread safe and fast.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface IProcessingMetricsHandler {
+
+	/** IdP label of the messages not issued by a configured IdP. */
+	String UNKNOWN_IDP = "UnknownIdP";
+
+	/**
+	 * Timings are measured only if enabled : a disabled handler costs no clock read.
+	 * 
+	 * @return true if the stages durations must be recorded
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Record the duration of a processing stage which succeeded.
+	 * 
+	 * @param stage
+	 *            the processing stage
+	 * @param processorType
+	 *            the type of the query processor (simple class name)
+	 * @param binding
+	 *            the binding of the message, may be null if unknown
+	 * @param idpEntityId
+	 *            the entity ID of the configured IdP issuer of the message, UNKNOWN_IDP if not a configured IdP
+	 * @param durationNanos
+	 *            the duration in ns
+	 */
+	void recordStage(ProcessingStageEnum stage, String processorType, SamlBindingEnum binding, String idpEntityId,
+			long durationNanos);
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+/**
+ * SAML message given to the security audit handler still encoded : it is decoded, or marshalled, only when read. An
+ * audit handler reads it only once the event is accepted by its rate limit, the rejected messages stay cheap. Read on
+ * the thread calling the audit handler.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISamlMessageProvider {
+
+	/**
+	 * Read the SAML message.
+	 * 
+	 * @return the SAML message in plain XML text, null if unable to read it
+	 */
+	String getSamlMessage();
+
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+/**
+ * Audit of the security problems met while processing the incoming SAML messages, and optionally archive of every
+ * incoming SAML message. Called on the servlet threads, implementations must be thread safe and should not block.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISecurityAuditHandler {
+
+	/**
+	 * The incoming SAML messages are given to archive only if archiving.
+	 * 
+	 * @return true if every incoming SAML message must be archived
+	 */
+	boolean isArchiving();
+
+	/**
+	 * Audit a security problem.
+	 * 
+	 * @param source
+	 *            the source of the message (remote address), may be null if unknown
+	 * @param problem
+	 *            the security problem
+	 * @param samlMessage
+	 *            the SAML message, read only if the problem is kept, may be null if not decoded
+	 */
+	void audit(String source, Throwable problem, ISamlMessageProvider samlMessage);
+
+	/**
+	 * Archive an incoming SAML message.
+	 * 
+	 * @param source
+	 *            the source of the message (remote address), may be null if unknown
+	 * @param samlMessage
+	 *            the SAML message, read only if the message is kept
+	 */
+	void archive(String source, ISamlMessageProvider samlMessage);
+
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+import fr.mby.saml2.sp.api.om.ISlowMessage;
+
+/**
+ * Capture of the incoming SAML messages whose processing exceeds a threshold. Called on the servlet threads,
+ * implementations must be thread safe and fast.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISlowMessageHandler {
+
+	/**
+	 * Processings are timed only if enabled : a disabled handler costs no clock read.
+	 * 
+	 * @return true if the slow messages must be captured
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Processings taking at least this duration are captured.
+	 * 
+	 * @return the threshold in ns
+	 */
+	long getThresholdNanos();
+
+	/**
+	 * The redacted SAML message is built only if captured.
+	 * 
+	 * @return true if the redacted SAML message must be captured
+	 */
+	boolean isMessageCaptured();
+
+	/**
+	 * Capture a slow message.
+	 * 
+	 * @param slowMessage
+	 *            the slow message
+	 */
+	void capture(ISlowMessage slowMessage);
+
+}
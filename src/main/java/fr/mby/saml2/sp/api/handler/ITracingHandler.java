@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+import fr.mby.saml2.sp.api.om.ISpan;
+
+/**
+ * Tracing of the SP operations. A trace is propagated between two HTTP requests by its trace parent, a W3C Trace
+ * Context "traceparent" string kept in the request waiting for a response.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ITracingHandler {
+
+	/** Span attribute of the binding. */
+	String BINDING_ATTRIBUTE = "saml.binding";
+
+	/** Span attribute of the IdP entity ID. */
+	String IDP_ATTRIBUTE = "saml.idp";
+
+	/**
+	 * Spans are opened only if enabled : a disabled handler costs nothing.
+	 * 
+	 * @return true if the operations must be traced
+	 */
+	boolean isEnabled();
+
+	/**
+	 * Start a span continuing a propagated trace.
+	 * 
+	 * @param name
+	 *            the name of the operation
+	 * @param traceParent
+	 *            the trace parent of the remote parent span, a new trace is started if null or invalid
+	 * @return the started span, null if disabled
+	 */
+	ISpan startSpan(String name, String traceParent);
+
+	/**
+	 * Start a child span.
+	 * 
+	 * @param name
+	 *            the name of the operation
+	 * @param parent
+	 *            the parent span
+	 * @return the started span, null if disabled
+	 */
+	ISpan startChildSpan(String name, ISpan parent);
+
+	/**
+	 * End a span and export it.
+	 * 
+	 * @param span
+	 *            the span, ignored if null
+	 */
+	void endSpan(ISpan span);
+
+	/**
+	 * Build the trace parent to propagate with a span as parent.
+	 * 
+	 * @param span
+	 *            the span
+	 * @return the trace parent, null if the span is null
+	 */
+	String buildTraceParent(ISpan span);
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.handler;
+
+/**
+ * Stages of the processing of an incoming SAML message, in processing order.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public enum ProcessingStageEnum {
+
+	/** Decoding of the HTTP request into the SAML object by the query processor factory. */
+	DECODE,
+
+	/** Archiving of the SAML message, run only if enabled. */
+	ARCHIVE,
+
+	/** Validation of the request type (endpoint location). */
+	VALIDATE_REQUEST_TYPE,
+
+	/** Pre processing (decryption, ...). */
+	PRE_PROCESS,
+
+	/** Security checks (signatures trust, ...). */
+	CHECK_SECURITY,
+
+	/** Validation of the conditions (times, ...). */
+	VALIDATE_CONDITIONS,
+
+	/** Processing required by the message. */
+	PROCESS,
+
+	/** Build of the incoming SAML object and its SAML query. */
+	BUILD_INCOMING_SAML;
+
+}
@@ -36,4 +36,10 @@ public interface IRequestWaitingForResponse extends IQuery {
 	 */
 	ISaml20IdpConnector getIdpConnectorBuilder();
 
+	/**
+	 * The trace parent of the span which built this request, to trace the response processing in the same trace.
+	 * @return the trace parent, null if the request was not traced
+	 */
+	String getTraceParent();
+
 }
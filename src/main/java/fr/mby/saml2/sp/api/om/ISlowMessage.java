@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.om;
+
+import java.util.Map;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
+
+/**
+ * An incoming SAML message whose processing exceeded the slow message threshold, with the breakdown of its processing
+ * stages.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISlowMessage {
+
+	/**
+	 * End of the processing.
+	 * 
+	 * @return the time in ms since the epoch
+	 */
+	long getTimestamp();
+
+	/**
+	 * Type of the query processor (simple class name).
+	 * 
+	 * @return the processor type
+	 */
+	String getProcessorType();
+
+	/**
+	 * ID of the SAML message.
+	 * 
+	 * @return the message ID, null if unknown
+	 */
+	String getMessageId();
+
+	/**
+	 * Binding of the message.
+	 * 
+	 * @return the binding, null if unknown
+	 */
+	SamlBindingEnum getBinding();
+
+	/**
+	 * Entity ID of the IdP issuer of the message.
+	 * 
+	 * @return the IdP entity ID, null if unknown
+	 */
+	String getIdpEntityId();
+
+	/**
+	 * Duration of the whole processing, decoding included.
+	 * 
+	 * @return the duration in ns
+	 */
+	long getTotalNanos();
+
+	/**
+	 * Durations of the processing stages run, in processing order. The last stage of a failed processing is the
+	 * failed one.
+	 * 
+	 * @return the durations in ns by stage
+	 */
+	Map<ProcessingStageEnum, Long> getStageNanos();
+
+	/**
+	 * Size of the SAML message in plain XML text.
+	 * 
+	 * @return the size in chars, -1 if not marshalled
+	 */
+	long getPayloadSize();
+
+	/**
+	 * Count of assertions carried by the message.
+	 * 
+	 * @return the count, -1 if not applicable
+	 */
+	int getAssertionCount();
+
+	/**
+	 * Count of attributes carried by the assertions of the message.
+	 * 
+	 * @return the count, -1 if not applicable
+	 */
+	int getAttributeCount();
+
+	/**
+	 * Processing outcome.
+	 * 
+	 * @return true if the message was processed
+	 */
+	boolean isSucceeded();
+
+	/**
+	 * The SAML message with its text values redacted, if captured.
+	 * 
+	 * @return the redacted message, null if not captured
+	 */
+	String getRedactedMessage();
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.api.om;
+
+import java.util.Map;
+
+/**
+ * A span of a trace : a timed operation of the SP. The spans of a login or of a logout share the same trace ID, from
+ * the outgoing request to the processing of the incoming response.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISpan {
+
+	/**
+	 * ID of the trace the span belongs to.
+	 * 
+	 * @return the trace ID, 32 hex digits
+	 */
+	String getTraceId();
+
+	/**
+	 * ID of the span.
+	 * 
+	 * @return the span ID, 16 hex digits
+	 */
+	String getSpanId();
+
+	/**
+	 * ID of the parent span.
+	 * 
+	 * @return the parent span ID, null for a root span
+	 */
+	String getParentSpanId();
+
+	/**
+	 * Name of the operation.
+	 * 
+	 * @return the name
+	 */
+	String getName();
+
+	/**
+	 * Start of the span.
+	 * 
+	 * @return the start time in ms since the epoch
+	 */
+	long getStartTimeMillis();
+
+	/**
+	 * Duration of the span.
+	 * 
+	 * @return the duration in ns, -1 if the span is not ended
+	 */
+	long getDurationNanos();
+
+	/**
+	 * Failed operation.
+	 * 
+	 * @return true if the operation failed
+	 */
+	boolean isError();
+
+	/**
+	 * Mark the operation failed.
+	 */
+	void setError();
+
+	/**
+	 * Attributes of the span.
+	 * 
+	 * @return the attributes indexed by their keys
+	 */
+	Map<String, String> getAttributes();
+
+	/**
+	 * Add an attribute to the span.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, ignored if null
+	 */
+	void setAttribute(String key, String value);
+
+}
@@ -29,6 +29,7 @@ import org.opensaml.saml2.metadata.EntityDescriptor;
 import org.opensaml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.saml2.metadata.SingleLogoutService;
 import org.opensaml.saml2.metadata.SingleSignOnService;
+import org.opensaml.saml2.metadata.provider.AbstractReloadingMetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.security.MetadataCredentialResolver;
@@ -105,11 +106,11 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 	/** Verify the IdP Signatures via metadata. */
 	private transient SignatureTrustEngine signatureTrustEngine;
 
-	/** IdP Endpoints URL for SSO. */
-	private final Map<SamlBindingEnum, String> idpSsoEndpointUrl = new HashMap<SamlBindingEnum, String>();
+	/** IdP Endpoints URL for SSO, replaced on metadata refresh. */
+	private volatile Map<SamlBindingEnum, String> idpSsoEndpointUrl = new HashMap<SamlBindingEnum, String>();
 
-	/** Idp endpoints URL for Single Logout. */
-	private final Map<SamlBindingEnum, String> idpSloEndpointUrl = new HashMap<SamlBindingEnum, String>();
+	/** Idp endpoints URL for Single Logout, replaced on metadata refresh. */
+	private volatile Map<SamlBindingEnum, String> idpSloEndpointUrl = new HashMap<SamlBindingEnum, String>();
 
 	/** Global Wayf Config. */
 	private IWayfConfig wayfConfig;
@@ -164,6 +165,18 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 		Assert.notNull(this.signatureTrustEngine, "Signature trust engine wasn't build !");
 		BasicIdpConfig.LOGGER.debug("IdP signature trust engine ref: [{}].", this.signatureTrustEngine);
 
+		this.processIdpEntityDescriptor();
+	}
+
+	/**
+	 * Read the IdP endpoints from the IdP entity descriptor. The endpoints maps are replaced once built.
+	 * 
+	 * @throws MetadataProviderException
+	 */
+	protected void processIdpEntityDescriptor() throws MetadataProviderException {
+		final Map<SamlBindingEnum, String> idpSsoEndpointUrl = new HashMap<SamlBindingEnum, String>();
+		final Map<SamlBindingEnum, String> idpSloEndpointUrl = new HashMap<SamlBindingEnum, String>();
+
 		final EntityDescriptor idpEntityDescriptor = this.idpMetadataProvider.getEntityDescriptor(this.idpEntityId);
 		Assert.notNull(idpEntityDescriptor,
 				String.format("No entity descriptor found in IdP metadata for IdP entityId [%s]", this.idpEntityId));
@@ -178,7 +191,7 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 					if ((ssoService != null)) {
 						final SamlBindingEnum binding = SamlBindingEnum.fromSamlUri(ssoService.getBinding());
 						if (binding != null) {
-							this.idpSsoEndpointUrl.put(binding, ssoService.getLocation());
+							idpSsoEndpointUrl.put(binding, ssoService.getLocation());
 						}
 					}
 				}
@@ -191,7 +204,7 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 					if ((slService != null)) {
 						final SamlBindingEnum binding = SamlBindingEnum.fromSamlUri(slService.getBinding());
 						if (binding != null) {
-							this.idpSloEndpointUrl.put(binding, slService.getLocation());
+							idpSloEndpointUrl.put(binding, slService.getLocation());
 						}
 					}
 				}
@@ -199,7 +212,7 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 		}
 
 		for (final SamlBindingEnum binding : SamlBindingEnum.values()) {
-			if (!StringUtils.hasText(this.idpSsoEndpointUrl.get(binding))) {
+			if (!StringUtils.hasText(idpSsoEndpointUrl.get(binding))) {
 				BasicIdpConfig.LOGGER.warn(String.format(
 						"No SSO %s endpoint URL found in metadata for the [%s] IdP connector !",
 						binding.getDescription(), this.getIdpEntityId()));
@@ -207,15 +220,29 @@ public class BasicIdpConfig implements IIdpConfig, InitializingBean {
 		}
 
 		for (final SamlBindingEnum binding : SamlBindingEnum.values()) {
-			if (!StringUtils.hasText(this.idpSloEndpointUrl.get(binding))) {
+			if (!StringUtils.hasText(idpSloEndpointUrl.get(binding))) {
 				BasicIdpConfig.LOGGER.warn(String.format(
 						"No SLO %s endpoint URL found in metadata for the [%s] IdP connector !",
 						binding.getDescription(), this.getIdpEntityId()));
 			}
 		}
 
-		BasicIdpConfig.LOGGER.debug("IdP registered SSO endpoint URL: [{}]", this.idpSsoEndpointUrl);
-		BasicIdpConfig.LOGGER.debug("IdP registered SLO endpoint URL: [{}]", this.idpSloEndpointUrl);
+		this.idpSsoEndpointUrl = idpSsoEndpointUrl;
+		this.idpSloEndpointUrl = idpSloEndpointUrl;
+
+		BasicIdpConfig.LOGGER.debug("IdP registered SSO endpoint URL: [{}]", idpSsoEndpointUrl);
+		BasicIdpConfig.LOGGER.debug("IdP registered SLO endpoint URL: [{}]", idpSloEndpointUrl);
+	}
+
+	@Override
+	public void refreshIdpMetadata() throws MetadataProviderException {
+		BasicIdpConfig.LOGGER.info("Refreshing metadata of IdP with Id: [{}]...", this.id);
+
+		if (this.idpMetadataProvider instanceof AbstractReloadingMetadataProvider) {
+			((AbstractReloadingMetadataProvider) this.idpMetadataProvider).refresh();
+		}
+
+		this.processIdpEntityDescriptor();
 	}
 
 	@Override
@@ -135,6 +135,12 @@ public class BasicSpConfig implements ISpConfig, InitializingBean {
 		return acService.getLocation();
 	}
 
+	@Override
+	public String getSingleLogoutServiceUrl(final SamlBindingEnum binding) {
+		final SingleLogoutService slService = this.spSingleLogoutServices.get(binding);
+		return slService.getLocation();
+	}
+
 	/**
 	 * Process SP metadatas.
 	 * 
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.impl.helper.CacheStatistics;
+
+/**
+ * Ehcache listener feeding the statistics of a cache with the stores and the end of life of its elements. Called on
+ * the threads using the cache. The keys of the last stored elements are kept in a fixed size ring to sample the cache
+ * without listing its keys. A key leaves the ring with its element : the keys are session credentials or NameIDs, not
+ * retained after their end of life.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class CacheStatisticsListener implements CacheEventListener {
+
+	/** Count of the last stored keys kept. */
+	public static final int RECENT_KEYS_SIZE = 64;
+
+	private final CacheStatistics statistics;
+
+	/** Keys of the last stored elements, overwritten in turn, cleared at the end of life of their element. */
+	private final AtomicReferenceArray<Object> recentKeys = new AtomicReferenceArray<Object>(
+			CacheStatisticsListener.RECENT_KEYS_SIZE);
+
+	/** Count of keys written in the ring. */
+	private final AtomicInteger recentKeysCount = new AtomicInteger();
+
+	/**
+	 * Build a listener.
+	 * 
+	 * @param pStatistics
+	 *            the statistics to feed
+	 */
+	public CacheStatisticsListener(final CacheStatistics pStatistics) {
+		super();
+		Assert.notNull(pStatistics, "No statistics provided !");
+		this.statistics = pStatistics;
+	}
+
+	@Override
+	public void notifyElementPut(final Ehcache cache, final Element element) throws CacheException {
+		this.statistics.recordStore();
+		if (element != null) {
+			final int index = (this.recentKeysCount.getAndIncrement() & Integer.MAX_VALUE)
+					% CacheStatisticsListener.RECENT_KEYS_SIZE;
+			this.recentKeys.set(index, element.getObjectKey());
+		}
+	}
+
+	@Override
+	public void notifyElementUpdated(final Ehcache cache, final Element element) throws CacheException {
+		this.statistics.recordStore();
+	}
+
+	@Override
+	public void notifyElementRemoved(final Ehcache cache, final Element element) throws CacheException {
+		this.statistics.recordRemoval(this.getAge(element));
+		this.forgetRecentKey(element);
+	}
+
+	@Override
+	public void notifyElementExpired(final Ehcache cache, final Element element) {
+		this.statistics.recordExpiration(this.getAge(element));
+		this.forgetRecentKey(element);
+	}
+
+	@Override
+	public void notifyElementEvicted(final Ehcache cache, final Element element) {
+		this.statistics.recordEviction(this.getAge(element));
+		this.forgetRecentKey(element);
+	}
+
+	@Override
+	public void notifyRemoveAll(final Ehcache cache) {
+		// Clearing the storage is not an end of life of the elements, but their keys are not retained
+		for (int k = 0; k < CacheStatisticsListener.RECENT_KEYS_SIZE; k++) {
+			this.recentKeys.set(k, null);
+		}
+	}
+
+	@Override
+	public void dispose() {
+		// Nothing to release
+	}
+
+	@Override
+	public Object clone() throws CloneNotSupportedException {
+		throw new CloneNotSupportedException("The statistics of a cache cannot be shared !");
+	}
+
+	/**
+	 * Age of an element.
+	 * 
+	 * @param element
+	 *            the element
+	 * @return the age in ms since its creation
+	 */
+	protected long getAge(final Element element) {
+		long age = 0L;
+
+		if (element != null) {
+			age = Math.max(0L, System.currentTimeMillis() - element.getCreationTime());
+		}
+
+		return age;
+	}
+
+	/**
+	 * Clear the slots of the ring holding the key of an element at its end of life. A slot overwritten meanwhile by a
+	 * new key is kept.
+	 * 
+	 * @param element
+	 *            the element
+	 */
+	protected void forgetRecentKey(final Element element) {
+		final Object key = (element != null) ? element.getObjectKey() : null;
+
+		if (key != null) {
+			for (int k = 0; k < CacheStatisticsListener.RECENT_KEYS_SIZE; k++) {
+				final Object recentKey = this.recentKeys.get(k);
+				if (key.equals(recentKey)) {
+					this.recentKeys.compareAndSet(k, recentKey, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keys of the last stored elements still in the cache, a key may be removed concurrently.
+	 * 
+	 * @return at most RECENT_KEYS_SIZE keys
+	 */
+	public List<Object> getRecentKeys() {
+		final List<Object> keys = new ArrayList<Object>(CacheStatisticsListener.RECENT_KEYS_SIZE);
+
+		for (int k = 0; k < CacheStatisticsListener.RECENT_KEYS_SIZE; k++) {
+			final Object key = this.recentKeys.get(k);
+			if (key != null) {
+				keys.add(key);
+			}
+		}
+
+		return keys;
+	}
+
+	public CacheStatistics getStatistics() {
+		return this.statistics;
+	}
+
+}
@@ -20,10 +20,18 @@
 package fr.mby.saml2.sp.impl.core;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import net.sf.ehcache.CacheException;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
+import net.sf.ehcache.event.RegisteredEventListeners;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.cache.ehcache.EhCacheFactoryBean;
@@ -34,6 +42,11 @@ import org.springframework.util.StringUtils;
 import fr.mby.saml2.sp.api.core.ISaml20Storage;
 import fr.mby.saml2.sp.api.om.IAuthentication;
 import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.impl.helper.CacheStatistics;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeEstimate;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
 
 /**
  * Facade for CAS SAML 2.0 usage
@@ -67,7 +80,16 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 
 	/** Cache for Request which wait for a response to be received. */
 	private Ehcache samlRequestWaitingForResponseCache;
-	
+
+	/** Statistics of the caches indexed by cache name, built once the caches initialized. */
+	private Map<String, CacheStatistics> statistics = Collections.emptyMap();
+
+	/** Statistics listeners registered on the caches, indexed by cache name. */
+	private final Map<String, CacheStatisticsListener> statisticsListeners = new HashMap<String, CacheStatisticsListener>(8);
+
+	/** Estimator of the heap retained by the caches entries. */
+	private final RetainedSizeEstimator retainedSizeEstimator = new RetainedSizeEstimator();
+
 	@Override
 	public void storeAuthentication(final String tgtId, final IAuthentication auth) {
 		if (StringUtils.hasText(tgtId) && (auth != null)) {
@@ -92,7 +114,7 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 		IAuthentication auth = null;
 
 		if (StringUtils.hasText(tgtId)) {
-			final Element element = this.samlAuthenticationsCache.get(tgtId);
+			final Element element = this.lookup(this.samlAuthenticationsCache, tgtId);
 			if (element != null) {
 				final Object value = element.getValue();
 				if (value != null) {
@@ -127,7 +149,7 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 		String tgtId = null;
 
 		if (StringUtils.hasText(nameId)) {
-			final Element element = this.saml2NameIdCache.get(nameId);
+			final Element element = this.lookup(this.saml2NameIdCache, nameId);
 			if (element != null) {
 				tgtId = (String) element.getValue();
 			}
@@ -149,7 +171,7 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 		IRequestWaitingForResponse result = null;
 
 		Assert.hasText(requestId, "No requestId supplied !");
-		final Element element = this.samlRequestWaitingForResponseCache.get(requestId);
+		final Element element = this.lookup(this.samlRequestWaitingForResponseCache, requestId);
 		if (element != null) {
 			result = (IRequestWaitingForResponse) element.getValue();
 		}
@@ -177,6 +199,35 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 		this.saml2NameIdCache.removeAll();
 	}
 
+	/**
+	 * Lookup an element in a cache, recorded as a storage lookup event.
+	 * 
+	 * @param cache
+	 *            the cache
+	 * @param key
+	 *            the key of the element
+	 * @return the element, null if not found
+	 */
+	protected Element lookup(final Ehcache cache, final String key) {
+		Element element = null;
+
+		final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.STORAGE_LOOKUP);
+		try {
+			element = cache.get(key);
+		} finally {
+			final CacheStatistics cacheStatistics = this.statistics.get(cache.getName());
+			if (cacheStatistics != null) {
+				cacheStatistics.recordLookup(element != null);
+			}
+
+			// The keys are session credentials or NameIDs : never recorded
+			event.commit(cache.getName(), null, -1, (element != null) ? SamlFlightRecorder.HIT
+					: SamlFlightRecorder.MISS);
+		}
+
+		return element;
+	}
+
 	/**
 	 * Initialize caches if needed.
 	 * 
@@ -215,6 +266,31 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 			this.saml2NameIdCache = cacheFactory.getObject();
 		}
 		this.saml2NameIdCache.bootstrap();
+
+		this.initStatistics();
+	}
+
+	/**
+	 * Register a statistics listener on each cache. A listener already registered by this storage is kept with its
+	 * statistics : initializing again doesn't count twice.
+	 */
+	protected void initStatistics() {
+		final Map<String, CacheStatistics> cachesStatistics = new LinkedHashMap<String, CacheStatistics>(8);
+
+		for (final Ehcache cache : this.getCaches()) {
+			final RegisteredEventListeners cacheListeners = cache.getCacheEventNotificationService();
+
+			CacheStatisticsListener listener = this.statisticsListeners.get(cache.getName());
+			if ((listener == null) || !cacheListeners.getCacheEventListeners().contains(listener)) {
+				listener = new CacheStatisticsListener(new CacheStatistics(cache.getName()));
+				cacheListeners.registerListener(listener);
+				this.statisticsListeners.put(cache.getName(), listener);
+			}
+
+			cachesStatistics.put(cache.getName(), listener.getStatistics());
+		}
+
+		this.statistics = cachesStatistics;
 	}
 
 	@Override
@@ -222,6 +298,98 @@ public class EhcacheSaml20Storage implements ISaml20Storage, InitializingBean {
 		this.initCaches();
 	}
 
+	/**
+	 * The caches of the storage.
+	 * 
+	 * @return the authentications, Name ID, Base ID and requests waiting for response caches
+	 */
+	public List<Ehcache> getCaches() {
+		return Arrays.asList(this.samlAuthenticationsCache, this.saml2NameIdCache, this.saml2BaseIdCache,
+				this.samlRequestWaitingForResponseCache);
+	}
+
+	/**
+	 * Statistics of the caches.
+	 * 
+	 * @return the statistics indexed by cache name
+	 */
+	public Map<String, CacheStatistics> getStatistics() {
+		return Collections.unmodifiableMap(this.statistics);
+	}
+
+	/**
+	 * Report of the statistics of the caches with their current size.
+	 * 
+	 * @return the report lines
+	 */
+	public String[] reportStatistics() {
+		final List<String> lines = new ArrayList<String>();
+
+		for (final Ehcache cache : this.getCaches()) {
+			final CacheStatistics cacheStatistics = this.statistics.get(cache.getName());
+			if (cacheStatistics != null) {
+				lines.addAll(Arrays.asList(cacheStatistics.report(cache.getSize())));
+			}
+		}
+
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Estimate the heap retained by the entries of each cache from a sample of its last stored entries.
+	 * 
+	 * @param sampleSize
+	 *            the max count of entries read by cache
+	 * @return the estimates in the caches order
+	 */
+	public List<RetainedSizeEstimate> estimateRetainedSize(final int sampleSize) {
+		final List<RetainedSizeEstimate> estimates = new ArrayList<RetainedSizeEstimate>(4);
+
+		for (final Ehcache cache : this.getCaches()) {
+			final CacheStatisticsListener listener = this.statisticsListeners.get(cache.getName());
+			final List<Object> recentKeys;
+			if (listener != null) {
+				recentKeys = listener.getRecentKeys();
+			} else {
+				recentKeys = Collections.emptyList();
+			}
+			estimates.add(this.retainedSizeEstimator.estimate(cache, recentKeys, sampleSize));
+		}
+
+		return estimates;
+	}
+
+	/**
+	 * Report of the heap retained by the caches entries : one line by cache, then the total.
+	 * 
+	 * @param sampleSize
+	 *            the max count of entries read by cache
+	 * @return the report lines
+	 */
+	public String[] reportRetainedSize(final int sampleSize) {
+		final List<RetainedSizeEstimate> estimates = this.estimateRetainedSize(sampleSize);
+		final String[] lines = new String[estimates.size() + 1];
+
+		long totalBytes = 0L;
+		for (int k = 0; k < estimates.size(); k++) {
+			final RetainedSizeEstimate estimate = estimates.get(k);
+			totalBytes += estimate.getEstimatedTotalBytes();
+			lines[k] = estimate.report();
+		}
+		lines[estimates.size()] = String.format("%-40s total=%.3fMB", "Storage", totalBytes / (1024d * 1024d));
+
+		return lines;
+	}
+
+	/**
+	 * Remove the expired elements from the caches without waiting for their eviction.
+	 */
+	public void evictExpiredElements() {
+		for (final Ehcache cache : this.getCaches()) {
+			cache.evictExpiredElements();
+		}
+	}
+
 	public Ehcache getSamlAuthenticationsCache() {
 		return samlAuthenticationsCache;
 	}
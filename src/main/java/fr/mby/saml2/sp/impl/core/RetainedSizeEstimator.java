@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.core;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import fr.mby.saml2.sp.api.om.IAuthentication;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeCategoryEnum;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeEstimate;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeHelper;
+import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
+
+/**
+ * Estimate the heap retained by the entries of a storage cache : the entries of some candidate keys are read without
+ * touching their statistics, then their shallow sizes are summed by category with RetainedSizeHelper. The keys of the
+ * cache are never listed : Ehcache copies all of them, including the disk ones. The IdP connector ID of the requests is
+ * shared with the IdP configuration and is not counted. Stateless and thread safe.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class RetainedSizeEstimator {
+
+	/** Shallow size of BasicSamlAuthentication : 5 references and a boolean. */
+	private static final long AUTHENTICATION_SHALLOW = RetainedSizeHelper.sizeOfObject(5, 1);
+
+	/** Shallow size of QueryAuthnRequest : 5 references and 2 longs. */
+	private static final long AUTHN_REQUEST_SHALLOW = RetainedSizeHelper.sizeOfObject(5, 16);
+
+	/** Shallow size of the other requests waiting for a response : 4 references. */
+	private static final long REQUEST_SHALLOW = RetainedSizeHelper.sizeOfObject(4, 0);
+
+	/**
+	 * Estimate the heap retained by the entries of a cache.
+	 * 
+	 * @param cache
+	 *            the cache
+	 * @param candidateKeys
+	 *            the keys of the entries to sample, the ones no longer in the cache are skipped
+	 * @param sampleSize
+	 *            the max count of entries to read
+	 * @return the estimate
+	 */
+	public RetainedSizeEstimate estimate(final Ehcache cache, final Collection<?> candidateKeys, final int sampleSize) {
+		final long entryCount = cache.getMemoryStoreSize() + cache.getDiskStoreSize();
+		final RetainedSizeEstimate estimate = new RetainedSizeEstimate(cache.getName(),
+				(int) Math.min(entryCount, Integer.MAX_VALUE));
+
+		if ((sampleSize > 0) && (candidateKeys != null)) {
+			final Iterator<?> keysIt = candidateKeys.iterator();
+			while (keysIt.hasNext() && (estimate.getSampledCount() < sampleSize)) {
+				final Element element = cache.getQuiet(keysIt.next());
+				if (element != null) {
+					this.estimateEntry(element.getObjectKey(), element.getObjectValue(), estimate);
+				}
+			}
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Add an entry to the estimate.
+	 * 
+	 * @param key
+	 *            the key of the entry
+	 * @param value
+	 *            the value of the entry
+	 * @param estimate
+	 *            the estimate
+	 */
+	protected void estimateEntry(final Object key, final Object value, final RetainedSizeEstimate estimate) {
+		estimate.addSample();
+		estimate.add(RetainedSizeCategoryEnum.OBJECTS, RetainedSizeHelper.CACHE_ENTRY);
+
+		// The key may be the ID held by the value
+		String sharedKey = null;
+		if (value instanceof IAuthentication) {
+			final IAuthentication authentication = (IAuthentication) value;
+			sharedKey = authentication.getSessionIndex();
+			this.estimateAuthentication(authentication, estimate);
+		} else if (value instanceof IRequestWaitingForResponse) {
+			final IRequestWaitingForResponse request = (IRequestWaitingForResponse) value;
+			sharedKey = request.getId();
+			this.estimateRequest(request, estimate);
+		} else if (value instanceof String) {
+			estimate.add(RetainedSizeCategoryEnum.STRINGS, RetainedSizeHelper.sizeOfString((String) value));
+		}
+
+		if ((key instanceof String) && (key != sharedKey)) {
+			estimate.add(RetainedSizeCategoryEnum.STRINGS, RetainedSizeHelper.sizeOfString((String) key));
+		}
+	}
+
+	/**
+	 * Add an authentication to the estimate.
+	 * 
+	 * @param authentication
+	 *            the authentication
+	 * @param estimate
+	 *            the estimate
+	 */
+	protected void estimateAuthentication(final IAuthentication authentication, final RetainedSizeEstimate estimate) {
+		long objects = RetainedSizeEstimator.AUTHENTICATION_SHALLOW;
+		if (authentication.getAuthenticationInstant() != null) {
+			objects += RetainedSizeHelper.DATE_TIME_SHALLOW;
+		}
+		estimate.add(RetainedSizeCategoryEnum.OBJECTS, objects);
+
+		long strings = RetainedSizeHelper.sizeOfString(authentication.getIdpEntityId())
+				+ RetainedSizeHelper.sizeOfString(authentication.getSubjectId())
+				+ RetainedSizeHelper.sizeOfString(authentication.getSessionIndex());
+
+		final Map<String, List<String>> attributes = authentication.getAttributes();
+		long attributeMaps = RetainedSizeHelper.sizeOfMapStructure(attributes);
+		if (attributes != null) {
+			for (final Entry<String, List<String>> attribute : attributes.entrySet()) {
+				attributeMaps += RetainedSizeHelper.sizeOfListStructure(attribute.getValue());
+				strings += RetainedSizeHelper.sizeOfString(attribute.getKey())
+						+ RetainedSizeHelper.sizeOfStrings(attribute.getValue());
+			}
+		}
+
+		estimate.add(RetainedSizeCategoryEnum.ATTRIBUTE_MAPS, attributeMaps);
+		estimate.add(RetainedSizeCategoryEnum.STRINGS, strings);
+	}
+
+	/**
+	 * Add a request waiting for a response to the estimate.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param estimate
+	 *            the estimate
+	 */
+	protected void estimateRequest(final IRequestWaitingForResponse request, final RetainedSizeEstimate estimate) {
+		long strings = RetainedSizeHelper.sizeOfString(request.getId())
+				+ RetainedSizeHelper.sizeOfString(request.getTraceParent());
+
+		if (request instanceof QueryAuthnRequest) {
+			estimate.add(RetainedSizeCategoryEnum.OBJECTS, RetainedSizeEstimator.AUTHN_REQUEST_SHALLOW);
+
+			final Map<String, String[]> parameters = ((QueryAuthnRequest) request).getParametersMap();
+			long parameterMaps = RetainedSizeHelper.sizeOfMapStructure(parameters);
+			if (parameters != null) {
+				for (final Entry<String, String[]> parameter : parameters.entrySet()) {
+					final String[] values = parameter.getValue();
+					if (values != null) {
+						parameterMaps += RetainedSizeHelper.sizeOfReferenceArray(values.length);
+					}
+					strings += RetainedSizeHelper.sizeOfString(parameter.getKey())
+							+ RetainedSizeHelper.sizeOfStrings(values);
+				}
+			}
+			estimate.add(RetainedSizeCategoryEnum.PARAMETER_MAPS, parameterMaps);
+		} else {
+			estimate.add(RetainedSizeCategoryEnum.OBJECTS, RetainedSizeEstimator.REQUEST_SHALLOW);
+		}
+
+		estimate.add(RetainedSizeCategoryEnum.STRINGS, strings);
+	}
+
+}
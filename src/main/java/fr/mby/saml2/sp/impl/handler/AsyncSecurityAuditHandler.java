@@ -0,0 +1,879 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.handler.ISamlMessageProvider;
+import fr.mby.saml2.sp.api.handler.ISecurityAuditHandler;
+
+/**
+ * AsyncSecurityAuditHandler hands the security problems and the archived messages to a background writer through a
+ * bounded lock-free queue : the servlet threads never wait for the disk. The security problems and the archived
+ * messages are rate limited by source apart, the events beyond the rate are sampled (one kept out of samplingRate) and
+ * the others are counted, the count being written by source at each flush. The queue is bounded by count and by
+ * estimated heap bytes, the messages longer than maxMessageChars being truncated before queued. The messages are read
+ * only once their event accepted by the rate limit and a slot reserved in the queue : the suppressed events and the
+ * events refused by a full queue are never decoded. Events refused because the queue is full are counted too, only
+ * the queued events are counted as audited or archived.
+ * 
+ * The writer appends to one file for the security problems and one file for the archived messages in the audit
+ * directory. A file reaching maxFileBytes is rotated : compressed with gzip next to the active file, the oldest rotated
+ * files beyond maxRotatedFiles being deleted.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class AsyncSecurityAuditHandler implements ISecurityAuditHandler, InitializingBean, DisposableBean {
+
+	/** Source of the events whose source is unknown. */
+	public static final String UNKNOWN_SOURCE = "unknown";
+
+	/** Source sharing its rate once maxSources sources are tracked. */
+	public static final String OTHER_SOURCES = "other";
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(AsyncSecurityAuditHandler.class);
+
+	/** Charset of the audit files. */
+	private static final String CHARSET = "UTF-8";
+
+	/** Directory of the audit files. */
+	private File directory;
+
+	/** Prefix of the security problems files. */
+	private String auditFilePrefix = "saml-security-audit";
+
+	/** Prefix of the archived messages files. */
+	private String archiveFilePrefix = "saml-inbound-archive";
+
+	/** Max count of events waiting for the writer. */
+	private int queueCapacity = 10000;
+
+	/** Max estimated heap bytes of the events waiting for the writer. */
+	private long queueMaxBytes = 16L * 1024L * 1024L;
+
+	/** Max length of a queued message, the end of a longer message is cut. */
+	private int maxMessageChars = 16 * 1024;
+
+	/** Security problems written by source and by second before sampling. */
+	private int eventsPerSecond = 10;
+
+	/** One security problem out of samplingRate is written beyond the rate, 0 to write none. */
+	private int samplingRate = 100;
+
+	/** Max count of sources rate limited apart. */
+	private int maxSources = 1024;
+
+	/** Size of a file triggering its rotation. */
+	private long maxFileBytes = 10L * 1024L * 1024L;
+
+	/** Count of rotated files kept by prefix. */
+	private int maxRotatedFiles = 20;
+
+	/** Archive every incoming message. */
+	private boolean archiving = false;
+
+	/** Max delay before the written events are flushed. */
+	private long flushIntervalMillis = 500L;
+
+	private final Queue<AuditRecord> queue = new ConcurrentLinkedQueue<AuditRecord>();
+
+	/** Count of events in the queue. */
+	private final AtomicInteger queueSize = new AtomicInteger();
+
+	/** Estimated heap bytes of the events in the queue. */
+	private final AtomicLong queueBytes = new AtomicLong();
+
+	/** Rate limiters of the security problems by source. */
+	private final ConcurrentMap<String, SourceLimiter> limiters = new ConcurrentHashMap<String, SourceLimiter>();
+
+	/** Rate limiters of the archived messages by source. */
+	private final ConcurrentMap<String, SourceLimiter> archiveLimiters = new ConcurrentHashMap<String, SourceLimiter>();
+
+	private final AtomicLong auditedCount = new AtomicLong();
+
+	private final AtomicLong archivedCount = new AtomicLong();
+
+	private final AtomicLong sampledCount = new AtomicLong();
+
+	private final AtomicLong rateLimitedCount = new AtomicLong();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	private final AtomicLong writeFailureCount = new AtomicLong();
+
+	private volatile boolean running;
+
+	private Thread writer;
+
+	/** Security problems file, used by the writer only. */
+	private RotatingFile auditFile;
+
+	/** Archived messages file, used by the writer only. */
+	private RotatingFile archiveFile;
+
+	@Override
+	public boolean isArchiving() {
+		return this.archiving;
+	}
+
+	@Override
+	public void audit(final String source, final Throwable problem, final ISamlMessageProvider samlMessage) {
+		final String sourceKey = (source != null) ? source : AsyncSecurityAuditHandler.UNKNOWN_SOURCE;
+		final Boolean sampled = this.admit(this.getLimiter(this.limiters, sourceKey));
+
+		if ((sampled != null) && this.offer(false, sourceKey, problem, samlMessage, sampled) && !sampled) {
+			this.auditedCount.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void archive(final String source, final ISamlMessageProvider samlMessage) {
+		if (this.archiving) {
+			final String sourceKey = (source != null) ? source : AsyncSecurityAuditHandler.UNKNOWN_SOURCE;
+			final Boolean sampled = this.admit(this.getLimiter(this.archiveLimiters, sourceKey));
+
+			if ((sampled != null) && this.offer(true, sourceKey, null, samlMessage, sampled) && !sampled) {
+				this.archivedCount.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Apply the rate of a source to an event.
+	 * 
+	 * @param limiter
+	 *            the rate limiter of the source
+	 * @return false if the event is within the rate, true if sampled beyond the rate, null if suppressed
+	 */
+	protected Boolean admit(final SourceLimiter limiter) {
+		Boolean sampled = null;
+		final long excess = limiter.acquire(this.currentSecond(), this.eventsPerSecond);
+
+		if (excess == 0L) {
+			sampled = Boolean.FALSE;
+		} else if ((this.samplingRate > 0) && ((excess % this.samplingRate) == 0L)) {
+			sampled = Boolean.TRUE;
+			this.sampledCount.incrementAndGet();
+		} else {
+			limiter.suppress();
+			this.rateLimitedCount.incrementAndGet();
+		}
+
+		return sampled;
+	}
+
+	/**
+	 * Read the message of an accepted event, cut to maxMessageChars.
+	 * 
+	 * @param samlMessage
+	 *            the message, may be null
+	 * @return the message in plain XML text, null if not available
+	 */
+	protected String read(final ISamlMessageProvider samlMessage) {
+		return (samlMessage != null) ? this.truncate(samlMessage.getSamlMessage()) : null;
+	}
+
+	/**
+	 * Cut a message to maxMessageChars, the cut message not retaining the original one.
+	 * 
+	 * @param samlMessage
+	 *            the message, may be null
+	 * @return the message or its beginning followed by the count of cut chars
+	 */
+	protected String truncate(final String samlMessage) {
+		String truncated = samlMessage;
+
+		if ((samlMessage != null) && (samlMessage.length() > this.maxMessageChars)) {
+			truncated = new StringBuilder(this.maxMessageChars + 32)
+					.append(samlMessage, 0, this.maxMessageChars).append("...[")
+					.append(samlMessage.length() - this.maxMessageChars).append(" chars cut]").toString();
+		}
+
+		return truncated;
+	}
+
+	/**
+	 * Report : one line of counters.
+	 * 
+	 * @return the report lines
+	 */
+	public String[] report() {
+		return new String[]{String.format(
+				"running=%s queued=%d/%d queuedBytes=%d/%d audited=%d sampled=%d rateLimited=%d archived=%d "
+						+ "dropped=%d written=%d writeFailures=%d sources=%d", this.running, this.queueSize.get(),
+				this.queueCapacity, this.queueBytes.get(), this.queueMaxBytes, this.auditedCount.get(),
+				this.sampledCount.get(), this.rateLimitedCount.get(), this.archivedCount.get(),
+				this.droppedCount.get(), this.writtenCount.get(), this.writeFailureCount.get(), this.limiters.size())};
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(this.directory, "No audit directory configured !");
+		Assert.isTrue(this.queueCapacity > 0, "The queue capacity must be positive !");
+		Assert.isTrue(this.queueMaxBytes > 0, "The queue max size must be positive !");
+		Assert.isTrue(this.maxMessageChars >= 0, "The max message length cannot be negative !");
+		Assert.isTrue(this.maxFileBytes > 0, "The max file size must be positive !");
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException(String.format("Unable to create the audit directory [%s] !", this.directory));
+		}
+
+		this.auditFile = new RotatingFile(this.directory, this.auditFilePrefix, this.maxFileBytes,
+				this.maxRotatedFiles);
+		this.archiveFile = new RotatingFile(this.directory, this.archiveFilePrefix, this.maxFileBytes,
+				this.maxRotatedFiles);
+
+		this.running = true;
+		this.writer = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				AsyncSecurityAuditHandler.this.writeLoop();
+			}
+		}, "saml-security-audit-writer");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Stop the writer once the waiting events written.
+	 * 
+	 * @throws Exception
+	 */
+	@Override
+	public void destroy() throws Exception {
+		this.running = false;
+		if (this.writer != null) {
+			LockSupport.unpark(this.writer);
+			this.writer.join(TimeUnit.SECONDS.toMillis(10));
+		}
+	}
+
+	/**
+	 * Queue an accepted event for the writer. Its message is read only once a slot reserved in the queue.
+	 * 
+	 * @param archive
+	 *            true for an archived message, false for a security problem
+	 * @param source
+	 *            the source of the event
+	 * @param problem
+	 *            the security problem, null for an archived message
+	 * @param samlMessage
+	 *            the message, may be null
+	 * @param sampled
+	 *            true if sampled beyond the rate
+	 * @return true if queued, false if dropped
+	 */
+	protected boolean offer(final boolean archive, final String source, final Throwable problem,
+			final ISamlMessageProvider samlMessage, final boolean sampled) {
+		boolean enqueued = false;
+
+		if (this.reserve()) {
+			AuditRecord record = null;
+			try {
+				record = new AuditRecord(archive, source, problem, this.read(samlMessage), sampled);
+			} finally {
+				if (record == null) {
+					// Unreadable message : release the slot
+					this.queueSize.decrementAndGet();
+				}
+			}
+			enqueued = this.enqueue(record);
+		}
+
+		return enqueued;
+	}
+
+	/**
+	 * Reserve a slot in the queue before reading the message of an event, counted as dropped if the queue is full by
+	 * count or without room for a record, or if the writer stopped.
+	 * 
+	 * @return true if reserved
+	 */
+	protected boolean reserve() {
+		boolean reserved = false;
+
+		if (this.running) {
+			if ((this.queueSize.incrementAndGet() <= this.queueCapacity)
+					&& ((this.queueBytes.get() + AuditRecord.RECORD_BYTES) <= this.queueMaxBytes)) {
+				reserved = true;
+			} else {
+				this.queueSize.decrementAndGet();
+			}
+		}
+
+		if (!reserved) {
+			this.droppedCount.incrementAndGet();
+		}
+
+		return reserved;
+	}
+
+	/**
+	 * Queue an event in its reserved slot, counted as dropped if the queue is full by bytes.
+	 * 
+	 * @param record
+	 *            the event
+	 * @return true if queued
+	 */
+	protected boolean enqueue(final AuditRecord record) {
+		boolean enqueued = false;
+
+		if (this.queueBytes.addAndGet(record.bytes) <= this.queueMaxBytes) {
+			this.queue.offer(record);
+			enqueued = true;
+		} else {
+			this.queueBytes.addAndGet(-record.bytes);
+			this.queueSize.decrementAndGet();
+			this.droppedCount.incrementAndGet();
+		}
+
+		return enqueued;
+	}
+
+	/**
+	 * Rate limiter of a source. Once maxSources sources tracked, the new sources share the same limiter.
+	 * 
+	 * @param sourceLimiters
+	 *            the limiters of the security problems or of the archived messages
+	 * @param source
+	 *            the source
+	 * @return the limiter
+	 */
+	protected SourceLimiter getLimiter(final ConcurrentMap<String, SourceLimiter> sourceLimiters, final String source) {
+		SourceLimiter limiter = sourceLimiters.get(source);
+
+		if (limiter == null) {
+			final String key = (sourceLimiters.size() < this.maxSources) ? source
+					: AsyncSecurityAuditHandler.OTHER_SOURCES;
+			final SourceLimiter newLimiter = new SourceLimiter();
+			limiter = sourceLimiters.putIfAbsent(key, newLimiter);
+			if (limiter == null) {
+				limiter = newLimiter;
+			}
+		}
+
+		return limiter;
+	}
+
+	/**
+	 * Current time for the rate limiting.
+	 * 
+	 * @return the current second since the epoch
+	 */
+	protected long currentSecond() {
+		return System.currentTimeMillis() / 1000L;
+	}
+
+	/**
+	 * Loop of the writer : write the queued events, flush when the queue is empty or the flush interval elapsed, until
+	 * stopped and the queue empty.
+	 */
+	protected void writeLoop() {
+		final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(this.flushIntervalMillis);
+		long lastFlush = System.nanoTime();
+
+		while (this.running || !this.queue.isEmpty()) {
+			final AuditRecord record = this.queue.poll();
+			if (record != null) {
+				this.queueSize.decrementAndGet();
+				this.queueBytes.addAndGet(-record.bytes);
+				try {
+					this.write(record);
+				} catch (final RuntimeException e) {
+					// The writer keeps running for the next events
+					this.writeFailureCount.incrementAndGet();
+					AsyncSecurityAuditHandler.LOGGER.error("Unable to write a security audit event !", e);
+				}
+			}
+
+			if ((record == null) || ((System.nanoTime() - lastFlush) > flushIntervalNanos)) {
+				this.flush();
+				lastFlush = System.nanoTime();
+				if (record == null) {
+					LockSupport.parkNanos(flushIntervalNanos);
+				}
+			}
+		}
+
+		this.flush();
+		this.close();
+	}
+
+	/**
+	 * Write an event in its file.
+	 * 
+	 * @param record
+	 *            the event
+	 */
+	protected void write(final AuditRecord record) {
+		final StringWriter text = new StringWriter(1024);
+		final PrintWriter printer = new PrintWriter(text);
+
+		if (record.archive) {
+			printer.printf("%s INBOUND source=[%s] message=[%s]%n", new DateTime(record.timestamp), record.source,
+					record.samlMessage);
+		} else {
+			printer.printf("%s SECURITY_PROBLEM source=[%s] sampled=[%s] message=[%s]%n",
+					new DateTime(record.timestamp), record.source, record.sampled, record.samlMessage);
+			if (record.problem != null) {
+				record.problem.printStackTrace(printer);
+			}
+		}
+		printer.flush();
+
+		try {
+			if (record.archive) {
+				this.archiveFile.write(text.toString());
+			} else {
+				this.auditFile.write(text.toString());
+			}
+			this.writtenCount.incrementAndGet();
+		} catch (final IOException e) {
+			this.writeFailureCount.incrementAndGet();
+			AsyncSecurityAuditHandler.LOGGER.error("Unable to write in the security audit files !", e);
+		}
+	}
+
+	/**
+	 * Write the counts of the events rate limited by source since the previous flush then flush the files.
+	 */
+	protected void flush() {
+		try {
+			this.writeSuppressed(this.limiters, this.auditFile);
+			this.writeSuppressed(this.archiveLimiters, this.archiveFile);
+			this.auditFile.flush();
+			this.archiveFile.flush();
+		} catch (final IOException e) {
+			this.writeFailureCount.incrementAndGet();
+			AsyncSecurityAuditHandler.LOGGER.error("Unable to flush the security audit files !", e);
+		} catch (final RuntimeException e) {
+			this.writeFailureCount.incrementAndGet();
+			AsyncSecurityAuditHandler.LOGGER.error("Unable to flush the security audit files !", e);
+		}
+	}
+
+	/**
+	 * Write the counts of the events rate limited by source since the previous flush.
+	 * 
+	 * @param sourceLimiters
+	 *            the limiters by source
+	 * @param file
+	 *            the file of their events
+	 * @throws IOException
+	 */
+	protected void writeSuppressed(final ConcurrentMap<String, SourceLimiter> sourceLimiters, final RotatingFile file)
+			throws IOException {
+		for (final Entry<String, SourceLimiter> limiter : sourceLimiters.entrySet()) {
+			final long suppressed = limiter.getValue().takeSuppressed();
+			if (suppressed > 0L) {
+				file.write(String.format("%s RATE_LIMITED source=[%s] suppressed=[%d]%n", new DateTime(),
+						limiter.getKey(), suppressed));
+			}
+		}
+	}
+
+	/** Close the files. */
+	protected void close() {
+		try {
+			this.auditFile.close();
+			this.archiveFile.close();
+		} catch (final IOException e) {
+			AsyncSecurityAuditHandler.LOGGER.error("Unable to close the security audit files !", e);
+		}
+	}
+
+	/**
+	 * Event waiting for the writer : a security problem or an archived message.
+	 */
+	protected static class AuditRecord {
+
+		/** Estimated heap of a record without its message, the stack of its problem included. */
+		protected static final long RECORD_BYTES = 4L * 1024L;
+
+		private final long timestamp = System.currentTimeMillis();
+
+		private final boolean archive;
+
+		private final String source;
+
+		private final Throwable problem;
+
+		private final String samlMessage;
+
+		private final boolean sampled;
+
+		/** Estimated heap bytes of the record. */
+		private final long bytes;
+
+		public AuditRecord(final boolean pArchive, final String pSource, final Throwable pProblem,
+				final String pSamlMessage, final boolean pSampled) {
+			super();
+			this.archive = pArchive;
+			this.source = pSource;
+			this.problem = pProblem;
+			this.samlMessage = pSamlMessage;
+			this.sampled = pSampled;
+			this.bytes = AuditRecord.RECORD_BYTES + ((pSamlMessage != null) ? 2L * pSamlMessage.length() : 0L);
+		}
+
+	}
+
+	/**
+	 * Lock-free rate limiter of a source by windows of one second. Approximate under contention at the window change.
+	 */
+	protected static class SourceLimiter {
+
+		private final AtomicLong window = new AtomicLong(-1L);
+
+		private final AtomicLong count = new AtomicLong();
+
+		/** Events suppressed since the previous flush. */
+		private final AtomicLong suppressed = new AtomicLong();
+
+		/**
+		 * Count an event.
+		 * 
+		 * @param second
+		 *            the current second
+		 * @param eventsPerSecond
+		 *            the rate of the source
+		 * @return 0 if the event is within the rate, else its rank beyond the rate in the current second
+		 */
+		public long acquire(final long second, final int eventsPerSecond) {
+			final long current = this.window.get();
+			if ((current != second) && this.window.compareAndSet(current, second)) {
+				this.count.set(0L);
+			}
+
+			final long rank = this.count.incrementAndGet();
+			return (rank <= eventsPerSecond) ? 0L : rank - eventsPerSecond;
+		}
+
+		/** Count an event suppressed. */
+		public void suppress() {
+			this.suppressed.incrementAndGet();
+		}
+
+		/**
+		 * Take the count of the events suppressed since the previous call.
+		 * 
+		 * @return the count
+		 */
+		public long takeSuppressed() {
+			return this.suppressed.getAndSet(0L);
+		}
+
+	}
+
+	/**
+	 * Append-only file rotated and compressed once its max size reached. Not thread safe.
+	 */
+	protected static class RotatingFile {
+
+		/** Pattern of the rotation time in the rotated file names. */
+		private static final String ROTATION_TIME_PATTERN = "yyyyMMdd-HHmmss-SSS";
+
+		/** Suffix of the rotated file names. */
+		private static final String ROTATED_SUFFIX = ".log.gz";
+
+		private final File directory;
+
+		private final String prefix;
+
+		private final long maxBytes;
+
+		private final int maxRotated;
+
+		private OutputStream out;
+
+		private long size;
+
+		public RotatingFile(final File pDirectory, final String pPrefix, final long pMaxBytes, final int pMaxRotated) {
+			super();
+			this.directory = pDirectory;
+			this.prefix = pPrefix;
+			this.maxBytes = pMaxBytes;
+			this.maxRotated = pMaxRotated;
+		}
+
+		/**
+		 * Append text, rotate the file if its max size is reached.
+		 * 
+		 * @param text
+		 *            the text
+		 * @throws IOException
+		 */
+		public void write(final String text) throws IOException {
+			if (this.out == null) {
+				this.open();
+			}
+
+			final byte[] bytes = text.getBytes(AsyncSecurityAuditHandler.CHARSET);
+			this.out.write(bytes);
+			this.size += bytes.length;
+
+			if (this.size >= this.maxBytes) {
+				this.rotate();
+			}
+		}
+
+		public void flush() throws IOException {
+			if (this.out != null) {
+				this.out.flush();
+			}
+		}
+
+		public void close() throws IOException {
+			if (this.out != null) {
+				this.out.close();
+				this.out = null;
+			}
+		}
+
+		/**
+		 * The file appended to.
+		 * 
+		 * @return the file
+		 */
+		public File getActiveFile() {
+			return new File(this.directory, this.prefix + ".log");
+		}
+
+		/**
+		 * The rotated files, oldest first.
+		 * 
+		 * @return the files
+		 */
+		public File[] getRotatedFiles() {
+			final String rotatedPrefix = this.prefix + "-";
+			File[] rotatedFiles = this.directory.listFiles(new FilenameFilter() {
+
+				@Override
+				public boolean accept(final File dir, final String name) {
+					return name.startsWith(rotatedPrefix) && name.endsWith(RotatingFile.ROTATED_SUFFIX);
+				}
+			});
+
+			if (rotatedFiles == null) {
+				rotatedFiles = new File[0];
+			}
+			// Not by name : '-' of a same ms index sorts before '.' of the suffix
+			Arrays.sort(rotatedFiles, new Comparator<File>() {
+
+				@Override
+				public int compare(final File file1, final File file2) {
+					return RotatingFile.this.getRotationKey(file1.getName()).compareTo(
+							RotatingFile.this.getRotationKey(file2.getName()));
+				}
+			});
+
+			return rotatedFiles;
+		}
+
+		/**
+		 * Key ordering the rotated files by rotation time, then by index of the files rotated in the same ms.
+		 * 
+		 * @param name
+		 *            the rotated file name
+		 * @return the key
+		 */
+		protected String getRotationKey(final String name) {
+			final int timeLength = RotatingFile.ROTATION_TIME_PATTERN.length();
+			final String rotation = name.substring(this.prefix.length() + 1,
+					name.length() - RotatingFile.ROTATED_SUFFIX.length());
+
+			String time = rotation;
+			int index = 0;
+			if ((rotation.length() > timeLength + 1) && (rotation.charAt(timeLength) == '-')) {
+				try {
+					index = Integer.parseInt(rotation.substring(timeLength + 1));
+					time = rotation.substring(0, timeLength);
+				} catch (final NumberFormatException e) {
+					// Not a same ms index
+				}
+			}
+
+			return String.format("%s %010d", time, index);
+		}
+
+		protected void open() throws IOException {
+			final File file = this.getActiveFile();
+			this.size = file.length();
+			this.out = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+		}
+
+		/**
+		 * Compress the active file into a rotated file, then delete the oldest rotated files.
+		 * 
+		 * @throws IOException
+		 */
+		protected void rotate() throws IOException {
+			this.close();
+
+			final String rotationTime = new DateTime().toString(RotatingFile.ROTATION_TIME_PATTERN);
+			File rotated = new File(this.directory, String.format("%s-%s%s", this.prefix, rotationTime,
+					RotatingFile.ROTATED_SUFFIX));
+			for (int k = 1; rotated.exists(); k++) {
+				rotated = new File(this.directory, String.format("%s-%s-%d%s", this.prefix, rotationTime, k,
+						RotatingFile.ROTATED_SUFFIX));
+			}
+
+			final File active = this.getActiveFile();
+			final InputStream in = new FileInputStream(active);
+			try {
+				final OutputStream gzip = new GZIPOutputStream(new FileOutputStream(rotated));
+				try {
+					IOUtils.copy(in, gzip);
+				} finally {
+					gzip.close();
+				}
+			} finally {
+				in.close();
+			}
+
+			if (!active.delete()) {
+				throw new IOException(String.format("Unable to delete the rotated file [%s] !", active));
+			}
+
+			final File[] rotatedFiles = this.getRotatedFiles();
+			for (int k = 0; k < (rotatedFiles.length - this.maxRotated); k++) {
+				rotatedFiles[k].delete();
+			}
+		}
+
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	public void setDirectory(final File directory) {
+		this.directory = directory;
+	}
+
+	public void setAuditFilePrefix(final String auditFilePrefix) {
+		this.auditFilePrefix = auditFilePrefix;
+	}
+
+	public void setArchiveFilePrefix(final String archiveFilePrefix) {
+		this.archiveFilePrefix = archiveFilePrefix;
+	}
+
+	public void setQueueCapacity(final int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+
+	public void setQueueMaxBytes(final long queueMaxBytes) {
+		this.queueMaxBytes = queueMaxBytes;
+	}
+
+	public void setMaxMessageChars(final int maxMessageChars) {
+		this.maxMessageChars = maxMessageChars;
+	}
+
+	public void setEventsPerSecond(final int eventsPerSecond) {
+		this.eventsPerSecond = eventsPerSecond;
+	}
+
+	public void setSamplingRate(final int samplingRate) {
+		this.samplingRate = samplingRate;
+	}
+
+	public void setMaxSources(final int maxSources) {
+		this.maxSources = maxSources;
+	}
+
+	public void setMaxFileBytes(final long maxFileBytes) {
+		this.maxFileBytes = maxFileBytes;
+	}
+
+	public void setMaxRotatedFiles(final int maxRotatedFiles) {
+		this.maxRotatedFiles = maxRotatedFiles;
+	}
+
+	public void setArchiving(final boolean archiving) {
+		this.archiving = archiving;
+	}
+
+	public void setFlushIntervalMillis(final long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	public long getAuditedCount() {
+		return this.auditedCount.get();
+	}
+
+	public long getArchivedCount() {
+		return this.archivedCount.get();
+	}
+
+	public long getSampledCount() {
+		return this.sampledCount.get();
+	}
+
+	public long getRateLimitedCount() {
+		return this.rateLimitedCount.get();
+	}
+
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+	public long getWrittenCount() {
+		return this.writtenCount.get();
+	}
+
+	public long getWriteFailureCount() {
+		return this.writeFailureCount.get();
+	}
+
+}
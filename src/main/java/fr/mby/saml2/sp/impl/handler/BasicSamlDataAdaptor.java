@@ -31,9 +31,13 @@ import org.springframework.util.StringUtils;
 
 import fr.mby.saml2.sp.api.handler.ISamlDataAdaptor;
 import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
 import fr.mby.saml2.sp.api.om.IResponse;
 import fr.mby.saml2.sp.api.query.IQuery;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
 
 /**
  * Basic SAML data adaptor.
@@ -74,6 +78,32 @@ public class BasicSamlDataAdaptor implements ISamlDataAdaptor {
 		return paramName;
 	}
 
+	/**
+	 * Commit the encoding event of an outgoing message.
+	 * 
+	 * @param event
+	 *            the encoding event
+	 * @param outgoingData
+	 *            the outgoing message
+	 * @param encodedMessage
+	 *            the encoded message, null if the encoding failed
+	 */
+	protected static void commitEncodingEvent(final ISamlEvent event, final IOutgoingSaml outgoingData,
+			final String encodedMessage) {
+		if (SamlFlightRecorder.isRecording()) {
+			final IQuery query = outgoingData.getSamlQuery();
+			String idpEntityId = null;
+			if (query instanceof IRequestWaitingForResponse) {
+				idpEntityId = ((IRequestWaitingForResponse) query).getIdpConnectorBuilder().getIdpConfig()
+						.getIdpEntityId();
+			}
+
+			event.commit((query != null) ? query.getId() : null, idpEntityId,
+					(encodedMessage != null) ? encodedMessage.length() : -1,
+					(encodedMessage != null) ? SamlFlightRecorder.SUCCESS : SamlFlightRecorder.FAILURE);
+		}
+	}
+
 	@Override
 	public String buildHttpRedirectBindingUrl(final IOutgoingSaml outgoingData) {
 		final String samlMessage = outgoingData.getSamlMessage();
@@ -81,8 +111,9 @@ public class BasicSamlDataAdaptor implements ISamlDataAdaptor {
 
 		// Encoding
 		final String httpEncodedMessage;
-		final String urlEncodedMessage;
+		String urlEncodedMessage = null;
 		final String urlEncodedRelayState;
+		final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.OUTBOUND_ENCODING);
 		try {
 			Assert.hasText(samlMessage, "SAML message cannot be empty !");
 			// HTTP-Redirect encoding
@@ -99,6 +130,8 @@ public class BasicSamlDataAdaptor implements ISamlDataAdaptor {
 			final String message = "Error while HTTP-Redirect encoding SAML message !";
 			BasicSamlDataAdaptor.LOGGER.error(message, e);
 			throw new IllegalStateException(message, e);
+		} finally {
+			BasicSamlDataAdaptor.commitEncodingEvent(event, outgoingData, urlEncodedMessage);
 		}
 
 		StringBuffer redirectUrl = new StringBuffer(2048);
@@ -139,13 +172,16 @@ public class BasicSamlDataAdaptor implements ISamlDataAdaptor {
 		String samlMessage = outgoingData.getSamlMessage();
 
 		// Encoding
-		final String encodedMessage;
+		String encodedMessage = null;
+		final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.OUTBOUND_ENCODING);
 		try {
 			encodedMessage = SamlHelper.httpPostEncode(samlMessage);
 		} catch (Exception e) {
 			BasicSamlDataAdaptor.LOGGER.error(
 					"Error while Redirect encoding SAML message !", e);
 			throw new IllegalStateException("Error while Redirect encoding SAML message !", e);
+		} finally {
+			BasicSamlDataAdaptor.commitEncodingEvent(event, outgoingData, encodedMessage);
 		}
 
 		if (StringUtils.hasText(encodedMessage)) {
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.Random;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.handler.ISpanExporter;
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
+import fr.mby.saml2.sp.api.om.ISpan;
+import fr.mby.saml2.sp.impl.om.SamlSpan;
+
+/**
+ * BasicTracingHandler starts SamlSpans with random IDs and gives them to the span exporter when ended. The trace parent
+ * follows the W3C Trace Context format : "00-&lt;trace ID&gt;-&lt;parent span ID&gt;-01".
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class BasicTracingHandler implements ITracingHandler, InitializingBean {
+
+	/** Version of the trace parent format. */
+	private static final String TRACE_PARENT_VERSION = "00";
+
+	/** Flags of the trace parent : sampled. */
+	private static final String TRACE_PARENT_FLAGS = "01";
+
+	private static final int TRACE_ID_LENGTH = 32;
+
+	private static final int SPAN_ID_LENGTH = 16;
+
+	/** Random generator of the IDs, thread safe. */
+	private final Random random = new Random();
+
+	/** Exporter of the ended spans. */
+	private ISpanExporter spanExporter;
+
+	/** Tracing can be disabled at runtime. */
+	private volatile boolean enabled = true;
+
+	@Override
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	@Override
+	public ISpan startSpan(final String name, final String traceParent) {
+		String traceId = null;
+		String parentSpanId = null;
+
+		if (traceParent != null) {
+			final String[] fields = traceParent.split("-");
+			if ((fields.length == 4) && (fields[1].length() == BasicTracingHandler.TRACE_ID_LENGTH)
+					&& (fields[2].length() == BasicTracingHandler.SPAN_ID_LENGTH)) {
+				traceId = fields[1];
+				parentSpanId = fields[2];
+			}
+		}
+
+		if (traceId == null) {
+			traceId = this.generateId(BasicTracingHandler.TRACE_ID_LENGTH);
+		}
+
+		return new SamlSpan(traceId, this.generateId(BasicTracingHandler.SPAN_ID_LENGTH), parentSpanId, name);
+	}
+
+	@Override
+	public ISpan startChildSpan(final String name, final ISpan parent) {
+		Assert.notNull(parent, "No parent span provided !");
+
+		return new SamlSpan(parent.getTraceId(), this.generateId(BasicTracingHandler.SPAN_ID_LENGTH),
+				parent.getSpanId(), name);
+	}
+
+	@Override
+	public void endSpan(final ISpan span) {
+		if ((span != null) && ((SamlSpan) span).end()) {
+			this.spanExporter.export(span);
+		}
+	}
+
+	@Override
+	public String buildTraceParent(final ISpan span) {
+		String traceParent = null;
+
+		if (span != null) {
+			traceParent = new StringBuilder(55).append(BasicTracingHandler.TRACE_PARENT_VERSION).append('-')
+					.append(span.getTraceId()).append('-').append(span.getSpanId()).append('-')
+					.append(BasicTracingHandler.TRACE_PARENT_FLAGS).toString();
+		}
+
+		return traceParent;
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(this.spanExporter, "No span exporter injected !");
+	}
+
+	/**
+	 * Generate a random ID, never all zeros.
+	 * 
+	 * @param length
+	 *            the count of hex digits, multiple of 16
+	 * @return the ID
+	 */
+	protected String generateId(final int length) {
+		final StringBuilder id = new StringBuilder(length);
+
+		for (int k = 0; k < length; k += 16) {
+			final String part = Long.toHexString(this.random.nextLong() | 1L);
+			for (int padding = part.length(); padding < 16; padding++) {
+				id.append('0');
+			}
+			id.append(part);
+		}
+
+		return id.toString();
+	}
+
+	public ISpanExporter getSpanExporter() {
+		return this.spanExporter;
+	}
+
+	public void setSpanExporter(final ISpanExporter spanExporter) {
+		this.spanExporter = spanExporter;
+	}
+
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+}
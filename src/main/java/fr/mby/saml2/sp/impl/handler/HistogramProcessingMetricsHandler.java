@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
+import fr.mby.saml2.sp.impl.helper.LatencyHistogram;
+
+/**
+ * HistogramProcessingMetricsHandler keeps a latency histogram by processing stage, query processor type, binding and
+ * IdP entity ID. The histograms are named by their labels separated by spaces.
+ * 
+ * The IdP entity IDs must be the ones of the configured IdPs (or UNKNOWN_IDP) : the histograms are indexed by IdP then
+ * by query processor type, and each of them holds its histograms in an array indexed by stage and binding, so
+ * recording a duration allocates nothing once the histogram exists.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class HistogramProcessingMetricsHandler implements IProcessingMetricsHandler {
+
+	/** Unknown query processor type label. */
+	private static final String UNKNOWN_PROCESSOR_TYPE = "Unknown";
+
+	/** Binding slots : one by binding plus one for the unknown binding. */
+	private static final int BINDING_SLOTS = SamlBindingEnum.values().length + 1;
+
+	/** Histograms indexed by IdP entity ID then by query processor type. */
+	private final ConcurrentMap<String, ConcurrentMap<String, ProcessorHistograms>> histograms = new ConcurrentHashMap<String, ConcurrentMap<String, ProcessorHistograms>>();
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void recordStage(final ProcessingStageEnum stage, final String processorType,
+			final SamlBindingEnum binding, final String idpEntityId, final long durationNanos) {
+		final String idp = (idpEntityId != null) ? idpEntityId : IProcessingMetricsHandler.UNKNOWN_IDP;
+		final String type = (processorType != null) ? processorType
+				: HistogramProcessingMetricsHandler.UNKNOWN_PROCESSOR_TYPE;
+
+		ConcurrentMap<String, ProcessorHistograms> idpHistograms = this.histograms.get(idp);
+		if (idpHistograms == null) {
+			final ConcurrentMap<String, ProcessorHistograms> newIdpHistograms = new ConcurrentHashMap<String, ProcessorHistograms>();
+			idpHistograms = this.histograms.putIfAbsent(idp, newIdpHistograms);
+			if (idpHistograms == null) {
+				idpHistograms = newIdpHistograms;
+			}
+		}
+
+		ProcessorHistograms processorHistograms = idpHistograms.get(type);
+		if (processorHistograms == null) {
+			final ProcessorHistograms newProcessorHistograms = new ProcessorHistograms(type, idp);
+			processorHistograms = idpHistograms.putIfAbsent(type, newProcessorHistograms);
+			if (processorHistograms == null) {
+				processorHistograms = newProcessorHistograms;
+			}
+		}
+
+		processorHistograms.get(stage, binding).record(durationNanos);
+	}
+
+	/**
+	 * Histograms sorted by their labels.
+	 * 
+	 * @return the histograms
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		final Map<String, LatencyHistogram> sortedHistograms = new TreeMap<String, LatencyHistogram>();
+
+		for (final ConcurrentMap<String, ProcessorHistograms> idpHistograms : this.histograms.values()) {
+			for (final ProcessorHistograms processorHistograms : idpHistograms.values()) {
+				processorHistograms.collect(sortedHistograms);
+			}
+		}
+
+		return sortedHistograms;
+	}
+
+	/**
+	 * One line report by histogram, sorted by labels.
+	 * 
+	 * @return the report
+	 */
+	public String report() {
+		final StringBuilder report = new StringBuilder();
+		for (final LatencyHistogram histogram : this.getHistograms().values()) {
+			report.append(histogram.report()).append('\n');
+		}
+		return report.toString();
+	}
+
+	/** Forget all the recorded latencies. */
+	public void reset() {
+		this.histograms.clear();
+	}
+
+	/**
+	 * Histograms of a query processor type for an IdP, indexed by stage and binding.
+	 * 
+	 * @author GIP RECIA 2013 - Maxime BOSSARD.
+	 * 
+	 */
+	private static class ProcessorHistograms {
+
+		private final String processorType;
+
+		private final String idpEntityId;
+
+		/** Histograms created on first use. */
+		private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<LatencyHistogram>(
+				ProcessingStageEnum.values().length * HistogramProcessingMetricsHandler.BINDING_SLOTS);
+
+		private ProcessorHistograms(final String pProcessorType, final String pIdpEntityId) {
+			this.processorType = pProcessorType;
+			this.idpEntityId = pIdpEntityId;
+		}
+
+		/**
+		 * Histogram of a stage and a binding, created if needed.
+		 * 
+		 * @param stage
+		 *            the processing stage
+		 * @param binding
+		 *            the binding, may be null
+		 * @return the histogram
+		 */
+		private LatencyHistogram get(final ProcessingStageEnum stage, final SamlBindingEnum binding) {
+			final int bindingSlot = (binding != null) ? binding.ordinal() + 1 : 0;
+			final int index = (stage.ordinal() * HistogramProcessingMetricsHandler.BINDING_SLOTS) + bindingSlot;
+
+			LatencyHistogram histogram = this.histograms.get(index);
+			if (histogram == null) {
+				final String labels = new StringBuilder(128).append(stage).append(' ').append(this.processorType)
+						.append(' ').append(binding).append(' ').append(this.idpEntityId).toString();
+				this.histograms.compareAndSet(index, null, new LatencyHistogram(labels));
+				histogram = this.histograms.get(index);
+			}
+
+			return histogram;
+		}
+
+		/**
+		 * Add the existing histograms to a map indexed by labels.
+		 * 
+		 * @param sortedHistograms
+		 *            the map to fill
+		 */
+		private void collect(final Map<String, LatencyHistogram> sortedHistograms) {
+			for (int k = 0; k < this.histograms.length(); k++) {
+				final LatencyHistogram histogram = this.histograms.get(k);
+				if (histogram != null) {
+					sortedHistograms.put(histogram.getName(), histogram);
+				}
+			}
+		}
+
+	}
+
+}
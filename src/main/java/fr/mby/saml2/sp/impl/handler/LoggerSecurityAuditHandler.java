@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.StringUtils;
+
+import fr.mby.saml2.sp.api.handler.ISamlMessageProvider;
+import fr.mby.saml2.sp.api.handler.ISecurityAuditHandler;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * LoggerSecurityAuditHandler synchronously logs the security problems with the SAML message in the security logger
+ * and never archives messages. Default handler of the query processors.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class LoggerSecurityAuditHandler implements ISecurityAuditHandler {
+
+	/** Shared instance : the handler is stateless. */
+	public static final LoggerSecurityAuditHandler INSTANCE = new LoggerSecurityAuditHandler();
+
+	/** Security logger. */
+	private static final Logger SECURITY_LOGGER = LoggerFactory.getLogger(SamlHelper.SECURITY_LOGGER_NAME);
+
+	@Override
+	public boolean isArchiving() {
+		return false;
+	}
+
+	@Override
+	public void audit(final String source, final Throwable problem, final ISamlMessageProvider samlMessage) {
+		String message = null;
+		if ((samlMessage != null) && LoggerSecurityAuditHandler.SECURITY_LOGGER.isWarnEnabled()) {
+			message = samlMessage.getSamlMessage();
+		}
+
+		this.log(source, problem, message);
+	}
+
+	/**
+	 * Log a security problem in the security logger.
+	 * 
+	 * @param source
+	 *            the source of the message (remote address), may be null if unknown
+	 * @param problem
+	 *            the security problem
+	 * @param samlMessage
+	 *            the SAML message in plain XML text, may be null if not decoded
+	 */
+	public void log(final String source, final Throwable problem, final String samlMessage) {
+		final String securityMessage;
+		// Log in security logger the SAML message cause of the security exception
+		if (StringUtils.hasText(samlMessage)) {
+			securityMessage = String.format(
+					"Plugin SAML security problem for incoming SAML message from [%1$s]: [%2$s] !", source,
+					samlMessage);
+		} else {
+			securityMessage = String.format(
+					"Plugin SAML security problem before decoding incoming SAML message from [%1$s] !", source);
+		}
+
+		LoggerSecurityAuditHandler.SECURITY_LOGGER.warn(securityMessage, problem);
+	}
+
+	@Override
+	public void archive(final String source, final ISamlMessageProvider samlMessage) {
+		// Do nothing
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
+import fr.mby.saml2.sp.api.om.ISpan;
+
+/**
+ * NullTracingHandler never trace. Default handler of the IdP connectors and of the query processors.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class NullTracingHandler implements ITracingHandler {
+
+	/** Shared instance : the handler is stateless. */
+	public static final ITracingHandler INSTANCE = new NullTracingHandler();
+
+	@Override
+	public boolean isEnabled() {
+		return false;
+	}
+
+	@Override
+	public ISpan startSpan(final String name, final String traceParent) {
+		return null;
+	}
+
+	@Override
+	public ISpan startChildSpan(final String name, final ISpan parent) {
+		return null;
+	}
+
+	@Override
+	public void endSpan(final ISpan span) {
+		// Do nothing
+	}
+
+	@Override
+	public String buildTraceParent(final ISpan span) {
+		return null;
+	}
+
+}
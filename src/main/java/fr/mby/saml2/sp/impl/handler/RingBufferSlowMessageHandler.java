@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import fr.mby.saml2.sp.api.handler.ISlowMessageHandler;
+import fr.mby.saml2.sp.api.om.ISlowMessage;
+import fr.mby.saml2.sp.impl.helper.RingBuffer;
+
+/**
+ * RingBufferSlowMessageHandler keeps the last slow messages in memory. When the buffer is full the oldest messages are
+ * overwritten. The redacted SAML message is not captured by default.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class RingBufferSlowMessageHandler implements ISlowMessageHandler {
+
+	/** Default count of kept messages. */
+	private static final int DEFAULT_CAPACITY = 128;
+
+	/** Default threshold in ms. */
+	private static final long DEFAULT_THRESHOLD_MILLIS = 500L;
+
+	/** The kept messages. */
+	private volatile RingBuffer<ISlowMessage> buffer = new RingBuffer<ISlowMessage>(
+			RingBufferSlowMessageHandler.DEFAULT_CAPACITY);
+
+	private volatile boolean enabled = true;
+
+	private volatile long thresholdNanos = TimeUnit.MILLISECONDS
+			.toNanos(RingBufferSlowMessageHandler.DEFAULT_THRESHOLD_MILLIS);
+
+	private volatile boolean messageCaptured = false;
+
+	@Override
+	public void capture(final ISlowMessage slowMessage) {
+		this.buffer.add(slowMessage);
+	}
+
+	/**
+	 * The kept slow messages, oldest first.
+	 * 
+	 * @return the slow messages
+	 */
+	public List<ISlowMessage> getSlowMessages() {
+		return this.buffer.toList();
+	}
+
+	/**
+	 * Report of the kept slow messages, oldest first.
+	 * 
+	 * @return one line by message
+	 */
+	public String[] report() {
+		final List<ISlowMessage> slowMessages = this.getSlowMessages();
+		final String[] report = new String[slowMessages.size()];
+
+		int k = 0;
+		for (final ISlowMessage slowMessage : slowMessages) {
+			report[k++] = slowMessage.toString();
+		}
+
+		return report;
+	}
+
+	/**
+	 * Count of slow messages captured since the start, kept or overwritten.
+	 * 
+	 * @return the count
+	 */
+	public long getCapturedCount() {
+		return this.buffer.getAddedCount();
+	}
+
+	/** Drop the kept messages. */
+	public void clear() {
+		this.buffer = new RingBuffer<ISlowMessage>(this.buffer.getCapacity());
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public long getThresholdNanos() {
+		return this.thresholdNanos;
+	}
+
+	public long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.thresholdNanos);
+	}
+
+	public void setThresholdMillis(final long thresholdMillis) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	@Override
+	public boolean isMessageCaptured() {
+		return this.messageCaptured;
+	}
+
+	public void setMessageCaptured(final boolean messageCaptured) {
+		this.messageCaptured = messageCaptured;
+	}
+
+	public int getCapacity() {
+		return this.buffer.getCapacity();
+	}
+
+	public void setCapacity(final int capacity) {
+		this.buffer = new RingBuffer<ISlowMessage>(capacity);
+	}
+
+}
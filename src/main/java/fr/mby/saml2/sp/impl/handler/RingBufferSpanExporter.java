@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.mby.saml2.sp.api.handler.ISpanExporter;
+import fr.mby.saml2.sp.api.om.ISpan;
+import fr.mby.saml2.sp.impl.helper.RingBuffer;
+
+/**
+ * RingBufferSpanExporter keeps the last exported spans in memory, no collector needed. When the buffer is full the
+ * oldest spans are overwritten.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class RingBufferSpanExporter implements ISpanExporter {
+
+	/** Default count of kept spans. */
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/** The kept spans. */
+	private volatile RingBuffer<ISpan> buffer = new RingBuffer<ISpan>(RingBufferSpanExporter.DEFAULT_CAPACITY);
+
+	@Override
+	public void export(final ISpan span) {
+		this.buffer.add(span);
+	}
+
+	/**
+	 * The kept spans, oldest first.
+	 * 
+	 * @return the spans
+	 */
+	public List<ISpan> getSpans() {
+		return this.buffer.toList();
+	}
+
+	/**
+	 * The kept spans of a trace, oldest first.
+	 * 
+	 * @param traceId
+	 *            the trace ID
+	 * @return the spans
+	 */
+	public List<ISpan> findTrace(final String traceId) {
+		final List<ISpan> result = new ArrayList<ISpan>();
+
+		for (final ISpan span : this.getSpans()) {
+			if (span.getTraceId().equals(traceId)) {
+				result.add(span);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Count of spans exported since the start, kept or overwritten.
+	 * 
+	 * @return the count
+	 */
+	public long getExportedCount() {
+		return this.buffer.getAddedCount();
+	}
+
+	/** Drop the kept spans. */
+	public void clear() {
+		this.buffer = new RingBuffer<ISpan>(this.buffer.getCapacity());
+	}
+
+	public int getCapacity() {
+		return this.buffer.getCapacity();
+	}
+
+	public void setCapacity(final int capacity) {
+		this.buffer = new RingBuffer<ISpan>(capacity);
+	}
+
+}
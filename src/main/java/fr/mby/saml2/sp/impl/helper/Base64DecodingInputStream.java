@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * InputStream decoding Base64 text on the fly : the text is read 4 chars at a time, without copy of the text nor of
+ * the decoded bytes. White spaces are skipped, a missing final padding is tolerated and any other char outside the
+ * Base64 alphabet is an IOException.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class Base64DecodingInputStream extends InputStream {
+
+	/** Value of a white space in the decoding table. */
+	private static final byte WHITE_SPACE = -2;
+
+	/** Value of a char outside the Base64 alphabet in the decoding table. */
+	private static final byte INVALID = -1;
+
+	/** Padding char. */
+	private static final char PADDING = '=';
+
+	/** Values of the ASCII chars. */
+	private static final byte[] DECODING_TABLE = new byte[128];
+
+	static {
+		Arrays.fill(Base64DecodingInputStream.DECODING_TABLE, Base64DecodingInputStream.INVALID);
+		final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int k = 0; k < alphabet.length(); k++) {
+			Base64DecodingInputStream.DECODING_TABLE[alphabet.charAt(k)] = (byte) k;
+		}
+		for (final char whiteSpace : new char[]{' ', '\t', '\r', '\n'}) {
+			Base64DecodingInputStream.DECODING_TABLE[whiteSpace] = Base64DecodingInputStream.WHITE_SPACE;
+		}
+	}
+
+	/** The Base64 text. */
+	private final CharSequence encoded;
+
+	/** Position of the next char to read in the text. */
+	private int position;
+
+	/** Bytes decoded from the last quantum. */
+	private final byte[] decoded = new byte[3];
+
+	/** Count of bytes decoded from the last quantum. */
+	private int decodedCount;
+
+	/** Position of the next decoded byte to read. */
+	private int decodedPosition;
+
+	/** The padding or the end of the text was reached. */
+	private boolean ended;
+
+	/**
+	 * Build a stream decoding a Base64 text.
+	 * 
+	 * @param pEncoded
+	 *            the Base64 text
+	 */
+	public Base64DecodingInputStream(final CharSequence pEncoded) {
+		super();
+		this.encoded = pEncoded;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int value = -1;
+
+		if ((this.decodedPosition < this.decodedCount) || this.decodeQuantum()) {
+			value = this.decoded[this.decodedPosition++] & 0xFF;
+		}
+
+		return value;
+	}
+
+	@Override
+	public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+		if ((offset < 0) || (length < 0) || (length > (buffer.length - offset))) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int count = 0;
+		while ((count < length) && ((this.decodedPosition < this.decodedCount) || this.decodeQuantum())) {
+			final int chunk = Math.min(length - count, this.decodedCount - this.decodedPosition);
+			System.arraycopy(this.decoded, this.decodedPosition, buffer, offset + count, chunk);
+			this.decodedPosition += chunk;
+			count += chunk;
+		}
+
+		return ((count == 0) && (length > 0)) ? -1 : count;
+	}
+
+	@Override
+	public int available() {
+		return this.decodedCount - this.decodedPosition;
+	}
+
+	/**
+	 * Decode the next quantum of 4 chars.
+	 * 
+	 * @return false at the end of the text
+	 * @throws IOException
+	 *             if the text is not Base64
+	 */
+	protected boolean decodeQuantum() throws IOException {
+		int quantum = 0;
+		int chars = 0;
+		int padding = 0;
+
+		while (!this.ended && (chars < 4) && (this.position < this.encoded.length())) {
+			final char c = this.encoded.charAt(this.position++);
+			final byte value = (c < 128) ? Base64DecodingInputStream.DECODING_TABLE[c]
+					: Base64DecodingInputStream.INVALID;
+
+			if (c == Base64DecodingInputStream.PADDING) {
+				quantum <<= 6;
+				chars++;
+				padding++;
+			} else if (value == Base64DecodingInputStream.WHITE_SPACE) {
+				continue;
+			} else if ((value == Base64DecodingInputStream.INVALID) || (padding > 0)) {
+				throw new IOException(String.format("Invalid Base64 char [%1$s] at position [%2$d] !", c,
+						this.position - 1));
+			} else {
+				quantum = (quantum << 6) | value;
+				chars++;
+			}
+		}
+
+		if ((chars > 0) && (chars < 4)) {
+			// Missing final padding
+			if (chars == 1) {
+				throw new IOException("Truncated Base64 text !");
+			}
+			padding += 4 - chars;
+			quantum <<= 6 * (4 - chars);
+		}
+		if (padding > 2) {
+			throw new IOException("Invalid Base64 padding !");
+		}
+		if ((padding > 0) || (chars < 4)) {
+			this.ended = true;
+		}
+
+		this.decoded[0] = (byte) (quantum >> 16);
+		this.decoded[1] = (byte) (quantum >> 8);
+		this.decoded[2] = (byte) quantum;
+		this.decodedCount = (chars > 0) ? 3 - padding : 0;
+		this.decodedPosition = 0;
+
+		return this.decodedCount > 0;
+	}
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a storage cache : stores, lookups hits and misses, and the end of life of the entries (removed,
+ * evicted for room or expired) with their age. Thread safe.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class CacheStatistics {
+
+	private final String name;
+
+	private final AtomicLong stores = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong removals = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong expirations = new AtomicLong();
+
+	/** Ages of the removed entries. */
+	private final LatencyHistogram removedAges;
+
+	/** Ages of the evicted entries : young evicted entries reveal an undersized cache. */
+	private final LatencyHistogram evictedAges;
+
+	/** Ages of the expired entries. */
+	private final LatencyHistogram expiredAges;
+
+	/**
+	 * Build empty statistics.
+	 * 
+	 * @param pName
+	 *            the cache name
+	 */
+	public CacheStatistics(final String pName) {
+		super();
+		this.name = pName;
+		this.removedAges = new LatencyHistogram(pName + " removed");
+		this.evictedAges = new LatencyHistogram(pName + " evicted");
+		this.expiredAges = new LatencyHistogram(pName + " expired");
+	}
+
+	/** Record an entry stored, created or updated. */
+	public void recordStore() {
+		this.stores.incrementAndGet();
+	}
+
+	/**
+	 * Record a lookup.
+	 * 
+	 * @param hit
+	 *            true if the entry was found
+	 */
+	public void recordLookup(final boolean hit) {
+		if (hit) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Record an entry removed.
+	 * 
+	 * @param ageMillis
+	 *            the age of the entry in ms
+	 */
+	public void recordRemoval(final long ageMillis) {
+		this.removals.incrementAndGet();
+		this.removedAges.record(TimeUnit.MILLISECONDS.toNanos(ageMillis));
+	}
+
+	/**
+	 * Record an entry evicted to make room.
+	 * 
+	 * @param ageMillis
+	 *            the age of the entry in ms
+	 */
+	public void recordEviction(final long ageMillis) {
+		this.evictions.incrementAndGet();
+		this.evictedAges.record(TimeUnit.MILLISECONDS.toNanos(ageMillis));
+	}
+
+	/**
+	 * Record an entry expired.
+	 * 
+	 * @param ageMillis
+	 *            the age of the entry in ms
+	 */
+	public void recordExpiration(final long ageMillis) {
+		this.expirations.incrementAndGet();
+		this.expiredAges.record(TimeUnit.MILLISECONDS.toNanos(ageMillis));
+	}
+
+	/**
+	 * Ratio of the lookups which found the entry.
+	 * 
+	 * @return the hit ratio, 0 without lookup
+	 */
+	public double getHitRatio() {
+		final long hitCount = this.hits.get();
+		final long lookupCount = hitCount + this.misses.get();
+		return (lookupCount == 0) ? 0d : (double) hitCount / lookupCount;
+	}
+
+	/**
+	 * Report : one line of counters, then one line by end of life cause with the ages of the entries.
+	 * 
+	 * @param size
+	 *            the current count of entries in the cache
+	 * @return the report lines
+	 */
+	public String[] report(final int size) {
+		return new String[]{
+				String.format("%-40s size=%-8d stores=%-8d hits=%-8d misses=%-8d hitRatio=%.3f removals=%-8d "
+						+ "evictions=%-8d expirations=%-8d", this.name, size, this.stores.get(), this.hits.get(),
+						this.misses.get(), this.getHitRatio(), this.removals.get(), this.evictions.get(),
+						this.expirations.get()), "  ages " + this.removedAges.report(),
+				"  ages " + this.evictedAges.report(), "  ages " + this.expiredAges.report()};
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public long getStores() {
+		return this.stores.get();
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getRemovals() {
+		return this.removals.get();
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	public long getExpirations() {
+		return this.expirations.get();
+	}
+
+	public LatencyHistogram getRemovedAges() {
+		return this.removedAges;
+	}
+
+	public LatencyHistogram getEvictedAges() {
+		return this.evictedAges;
+	}
+
+	public LatencyHistogram getExpiredAges() {
+		return this.expiredAges;
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram for the processing metrics and the load tests. Values are recorded in microseconds in
+ * log-linear buckets : 4 buckets per power of 2, so the percentiles are precise to ~20%.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class LatencyHistogram {
+
+	/** Buckets per power of 2. */
+	private static final int SUB_BUCKETS = 4;
+
+	/** Bits of the sub bucket index. */
+	private static final int SUB_BUCKET_BITS = 2;
+
+	/** Buckets count : up to 2^40 µs. */
+	private static final int BUCKETS = 41 * LatencyHistogram.SUB_BUCKETS;
+
+	private final String name;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Build an empty histogram.
+	 *
+	 * @param pName
+	 *            the name displayed in the report
+	 */
+	public LatencyHistogram(final String pName) {
+		this.name = pName;
+	}
+
+	/**
+	 * Record a latency.
+	 *
+	 * @param nanos
+	 *            the latency in ns
+	 */
+	public void record(final long nanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		this.buckets.incrementAndGet(LatencyHistogram.bucketIndex(micros));
+		this.count.incrementAndGet();
+		this.sum.addAndGet(micros);
+
+		long currentMax = this.max.get();
+		while (micros > currentMax && !this.max.compareAndSet(currentMax, micros)) {
+			currentMax = this.max.get();
+		}
+	}
+
+	/**
+	 * Upper bound of the bucket holding the percentile.
+	 *
+	 * @param percentile
+	 *            the percentile between 0 and 100
+	 * @return the latency in µs
+	 */
+	public long percentile(final double percentile) {
+		final long total = this.count.get();
+		final long rank = (long) Math.ceil(total * percentile / 100d);
+		long seen = 0;
+		for (int k = 0; k < LatencyHistogram.BUCKETS; k++) {
+			seen += this.buckets.get(k);
+			if (seen >= rank && seen > 0) {
+				return Math.min(LatencyHistogram.bucketUpperBound(k), this.max.get());
+			}
+		}
+		return 0;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * Mean of the recorded latencies.
+	 *
+	 * @return the mean in µs
+	 */
+	public double getMean() {
+		final long total = this.count.get();
+		return (total == 0) ? 0 : (double) this.sum.get() / total;
+	}
+
+	/**
+	 * Max of the recorded latencies.
+	 *
+	 * @return the max in µs
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * One line report : count, mean and percentiles in ms.
+	 *
+	 * @return the report
+	 */
+	public String report() {
+		final long total = this.count.get();
+		final double mean = this.getMean();
+		return String.format("%-20s count=%-8d mean=%9.3f p50=%9.3f p90=%9.3f p99=%9.3f p99.9=%9.3f max=%9.3f (ms)",
+				this.name, total, mean / 1000d, this.percentile(50) / 1000d, this.percentile(90) / 1000d,
+				this.percentile(99) / 1000d, this.percentile(99.9) / 1000d, this.max.get() / 1000d);
+	}
+
+	/**
+	 * Index of the bucket of a value : the power of 2, then the next bits.
+	 *
+	 * @param micros
+	 *            the value
+	 * @return the index
+	 */
+	protected static int bucketIndex(final long micros) {
+		final int index;
+		if (micros < LatencyHistogram.SUB_BUCKETS) {
+			index = (int) micros;
+		} else {
+			final int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+			final int subBucket = (int) (micros >>> (magnitude - LatencyHistogram.SUB_BUCKET_BITS))
+					& (LatencyHistogram.SUB_BUCKETS - 1);
+			index = (magnitude - 1) * LatencyHistogram.SUB_BUCKETS + subBucket;
+		}
+		return Math.min(index, LatencyHistogram.BUCKETS - 1);
+	}
+
+	/**
+	 * Highest value of a bucket.
+	 *
+	 * @param index
+	 *            the bucket index
+	 * @return the value
+	 */
+	protected static long bucketUpperBound(final int index) {
+		final long bound;
+		if (index < LatencyHistogram.SUB_BUCKETS) {
+			bound = index;
+		} else {
+			final int magnitude = index / LatencyHistogram.SUB_BUCKETS + 1;
+			final int subBucket = index % LatencyHistogram.SUB_BUCKETS;
+			final long lowerBound = (1L << magnitude)
+					+ ((long) subBucket << (magnitude - LatencyHistogram.SUB_BUCKET_BITS));
+			bound = lowerBound + (1L << (magnitude - LatencyHistogram.SUB_BUCKET_BITS)) - 1;
+		}
+		return bound;
+	}
+
+}
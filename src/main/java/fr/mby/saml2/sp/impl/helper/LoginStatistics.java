@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of the logins through an IdP : round trip from the AuthnRequest issue to the matching Response, and
+ * count of the AuthnRequests which expired unanswered. Thread safe.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class LoginStatistics {
+
+	/** Name of the round trip histogram. */
+	private static final String ROUND_TRIP_NAME = "LoginRoundTrip";
+
+	private volatile LatencyHistogram roundTrips = new LatencyHistogram(LoginStatistics.ROUND_TRIP_NAME);
+
+	private final AtomicLong abandoned = new AtomicLong();
+
+	/**
+	 * Record a login answered by the IdP.
+	 * 
+	 * @param roundTripMillis
+	 *            the time between the AuthnRequest issue and the Response receipt in ms
+	 */
+	public void recordRoundTrip(final long roundTripMillis) {
+		this.roundTrips.record(TimeUnit.MILLISECONDS.toNanos(roundTripMillis));
+	}
+
+	/** Record an AuthnRequest expired unanswered. */
+	public void recordAbandoned() {
+		this.abandoned.incrementAndGet();
+	}
+
+	/**
+	 * Ratio of the logins abandoned.
+	 * 
+	 * @return the abandoned logins on all the logins ended, 0 if none ended
+	 */
+	public double getAbandonmentRatio() {
+		final long abandonedCount = this.abandoned.get();
+		final long endedCount = abandonedCount + this.roundTrips.getCount();
+		return (endedCount == 0) ? 0d : (double) abandonedCount / endedCount;
+	}
+
+	/**
+	 * One line report : round trips in ms and abandoned logins.
+	 * 
+	 * @return the report
+	 */
+	public String report() {
+		return String.format("%s abandoned=%-8d abandonmentRatio=%.3f", this.roundTrips.report(), this.abandoned.get(),
+				this.getAbandonmentRatio());
+	}
+
+	/** Reset the counters. */
+	public void reset() {
+		this.roundTrips = new LatencyHistogram(LoginStatistics.ROUND_TRIP_NAME);
+		this.abandoned.set(0L);
+	}
+
+	public LatencyHistogram getRoundTrips() {
+		return this.roundTrips;
+	}
+
+	public long getAbandonedCount() {
+		return this.abandoned.get();
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live counters of the SAML messages : a latency histogram by message type and outcome. Thread safe.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class MessageStatistics {
+
+	/** Outcome of a message processed or built. */
+	public static final String SUCCESS = "SUCCESS";
+
+	/** Outcome of a message rejected for security reason. */
+	public static final String REJECTED = "REJECTED";
+
+	/** Outcome of a response matching no request waiting for a response. */
+	public static final String ORPHAN = "ORPHAN";
+
+	/** Outcome of a message which failed with an exception. */
+	public static final String FAILURE = "FAILURE";
+
+	/** Histograms indexed by message type and outcome. */
+	private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+	/**
+	 * Record a message.
+	 * 
+	 * @param type
+	 *            the type of the message
+	 * @param outcome
+	 *            the outcome
+	 * @param durationNanos
+	 *            the processing or building duration in ns
+	 */
+	public void record(final String type, final String outcome, final long durationNanos) {
+		final String labels = type + ' ' + outcome;
+
+		LatencyHistogram histogram = this.histograms.get(labels);
+		if (histogram == null) {
+			final LatencyHistogram newHistogram = new LatencyHistogram(labels);
+			histogram = this.histograms.putIfAbsent(labels, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+
+		histogram.record(durationNanos);
+	}
+
+	/**
+	 * Histograms sorted by message type and outcome.
+	 * 
+	 * @return the histograms
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		return new TreeMap<String, LatencyHistogram>(this.histograms);
+	}
+
+	/**
+	 * Count of recorded messages.
+	 * 
+	 * @return the count
+	 */
+	public long getCount() {
+		long count = 0;
+
+		for (final LatencyHistogram histogram : this.histograms.values()) {
+			count += histogram.getCount();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Count of recorded messages with an outcome.
+	 * 
+	 * @param outcome
+	 *            the outcome
+	 * @return the count
+	 */
+	public long getCount(final String outcome) {
+		long count = 0;
+
+		final String suffix = ' ' + outcome;
+		for (final LatencyHistogram histogram : this.histograms.values()) {
+			if (histogram.getName().endsWith(suffix)) {
+				count += histogram.getCount();
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Mean latency of all the recorded messages.
+	 * 
+	 * @return the mean in ms
+	 */
+	public double getMeanMillis() {
+		long count = 0;
+		double sum = 0;
+
+		for (final LatencyHistogram histogram : this.histograms.values()) {
+			final long histogramCount = histogram.getCount();
+			count += histogramCount;
+			sum += histogram.getMean() * histogramCount;
+		}
+
+		return (count == 0) ? 0 : sum / count / 1000d;
+	}
+
+	/**
+	 * Max latency of all the recorded messages.
+	 * 
+	 * @return the max in ms
+	 */
+	public double getMaxMillis() {
+		long max = 0;
+
+		for (final LatencyHistogram histogram : this.histograms.values()) {
+			max = Math.max(max, histogram.getMax());
+		}
+
+		return max / 1000d;
+	}
+
+	/**
+	 * One line report by message type and outcome.
+	 * 
+	 * @return the report lines
+	 */
+	public String[] report() {
+		final Map<String, LatencyHistogram> sortedHistograms = this.getHistograms();
+		final String[] report = new String[sortedHistograms.size()];
+
+		int k = 0;
+		for (final LatencyHistogram histogram : sortedHistograms.values()) {
+			report[k++] = histogram.report();
+		}
+
+		return report;
+	}
+
+	/** Drop the recorded messages. */
+	public void reset() {
+		this.histograms.clear();
+	}
+
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live totals of the CPU time and of the bytes allocated by the processing of the SAML messages, by IdP entity ID and
+ * message type. The count of totals is bounded : beyond the limit, the messages are added to the OTHERS totals. Thread
+ * safe.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class ResourceUsageStatistics {
+
+	/** Labels of the totals of the messages beyond the limit. */
+	public static final String OTHERS = "Others";
+
+	/** Default maximum count of totals. */
+	public static final int DEFAULT_MAX_USAGES = 256;
+
+	/** Usages indexed by IdP entity ID and message type. */
+	private final ConcurrentMap<String, ResourceUsage> usages = new ConcurrentHashMap<String, ResourceUsage>();
+
+	/** Maximum count of totals, OTHERS excluded. */
+	private final int maxUsages;
+
+	public ResourceUsageStatistics() {
+		this(ResourceUsageStatistics.DEFAULT_MAX_USAGES);
+	}
+
+	/**
+	 * Build the statistics.
+	 * 
+	 * @param pMaxUsages
+	 *            maximum count of totals, OTHERS excluded
+	 */
+	public ResourceUsageStatistics(final int pMaxUsages) {
+		super();
+		this.maxUsages = pMaxUsages;
+	}
+
+	/**
+	 * Record the resources used by a message.
+	 * 
+	 * @param idpEntityId
+	 *            the configured IdP issuer of the message : never the unvalidated issuer of the message
+	 * @param type
+	 *            the type of the message
+	 * @param cpuNanos
+	 *            the CPU time in ns, negative if not measured
+	 * @param allocatedBytes
+	 *            the allocated bytes, negative if not measured
+	 */
+	public void record(final String idpEntityId, final String type, final long cpuNanos, final long allocatedBytes) {
+		final String labels = idpEntityId + ' ' + type;
+
+		ResourceUsage usage = this.usages.get(labels);
+		if (usage == null) {
+			// The size is approximate under contention : the limit may be exceeded by the count of recording threads
+			final String key = (this.usages.size() < this.maxUsages) ? labels : ResourceUsageStatistics.OTHERS;
+			usage = this.usages.get(key);
+			if (usage == null) {
+				final ResourceUsage newUsage = new ResourceUsage();
+				usage = this.usages.putIfAbsent(key, newUsage);
+				if (usage == null) {
+					usage = newUsage;
+				}
+			}
+		}
+
+		usage.record(cpuNanos, allocatedBytes);
+	}
+
+	/**
+	 * Total CPU time of all the recorded messages.
+	 * 
+	 * @return the CPU time in ns
+	 */
+	public long getTotalCpuNanos() {
+		long total = 0;
+
+		for (final ResourceUsage usage : this.usages.values()) {
+			total += usage.getCpuNanos();
+		}
+
+		return total;
+	}
+
+	/**
+	 * Total bytes allocated by all the recorded messages.
+	 * 
+	 * @return the allocated bytes
+	 */
+	public long getTotalAllocatedBytes() {
+		long total = 0;
+
+		for (final ResourceUsage usage : this.usages.values()) {
+			total += usage.getAllocatedBytes();
+		}
+
+		return total;
+	}
+
+	/**
+	 * Usages sorted by IdP entity ID and message type.
+	 * 
+	 * @return the usages
+	 */
+	public Map<String, ResourceUsage> getUsages() {
+		return new TreeMap<String, ResourceUsage>(this.usages);
+	}
+
+	/**
+	 * One line report by IdP entity ID and message type : totals and means by message.
+	 * 
+	 * @return the report lines
+	 */
+	public String[] report() {
+		final Map<String, ResourceUsage> sortedUsages = this.getUsages();
+		final String[] report = new String[sortedUsages.size()];
+
+		int k = 0;
+		for (final Entry<String, ResourceUsage> usage : sortedUsages.entrySet()) {
+			final long count = usage.getValue().getCount();
+			final long cpuNanos = usage.getValue().getCpuNanos();
+			final long allocatedBytes = usage.getValue().getAllocatedBytes();
+			report[k++] = String.format("%-80s count=%-8d cpu=%12.3f ms (%9.3f ms/msg) allocated=%12.3f MB "
+					+ "(%9.3f KB/msg)", usage.getKey(), count, cpuNanos / 1000000d, cpuNanos / 1000000d / count,
+					allocatedBytes / 1048576d, allocatedBytes / 1024d / count);
+		}
+
+		return report;
+	}
+
+	/** Reset the totals. */
+	public void reset() {
+		this.usages.clear();
+	}
+
+	/**
+	 * Totals of one IdP entity ID and message type.
+	 * 
+	 * @author GIP RECIA 2013 - Maxime BOSSARD.
+	 * 
+	 */
+	public static class ResourceUsage {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong cpuNanos = new AtomicLong();
+
+		private final AtomicLong allocatedBytes = new AtomicLong();
+
+		/**
+		 * Record the resources used by a message.
+		 * 
+		 * @param messageCpuNanos
+		 *            the CPU time in ns, negative if not measured
+		 * @param messageAllocatedBytes
+		 *            the allocated bytes, negative if not measured
+		 */
+		protected void record(final long messageCpuNanos, final long messageAllocatedBytes) {
+			this.count.incrementAndGet();
+			if (messageCpuNanos > 0) {
+				this.cpuNanos.addAndGet(messageCpuNanos);
+			}
+			if (messageAllocatedBytes > 0) {
+				this.allocatedBytes.addAndGet(messageAllocatedBytes);
+			}
+		}
+
+		public long getCount() {
+			return this.count.get();
+		}
+
+		public long getCpuNanos() {
+			return this.cpuNanos.get();
+		}
+
+		public long getAllocatedBytes() {
+			return this.allocatedBytes.get();
+		}
+
+	}
+
+}
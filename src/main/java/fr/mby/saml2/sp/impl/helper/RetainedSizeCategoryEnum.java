@@ -0,0 +1,41 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+/**
+ * Parts of the heap retained by the storage entries.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public enum RetainedSizeCategoryEnum {
+
+	/** Attributes maps of the authentications and their values lists, strings excluded. */
+	ATTRIBUTE_MAPS,
+
+	/** Parameters maps of the requests waiting for a response and their values arrays, strings excluded. */
+	PARAMETER_MAPS,
+
+	/** Strings : keys, IDs, attributes and parameters names and values. */
+	STRINGS,
+
+	/** Stored objects themselves and the cache entries holding them. */
+	OBJECTS;
+
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+/**
+ * Estimate of the heap retained by the entries of a storage cache, from a sample of its entries : bytes by category
+ * summed over the sample, extrapolated to the whole cache. The sample is drawn from the last stored entries : the
+ * estimate is biased toward the newest entries. Not thread safe, built by one estimation.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class RetainedSizeEstimate {
+
+	private final String name;
+
+	/** Count of entries in the cache when sampled. */
+	private final int entryCount;
+
+	private int sampledCount;
+
+	/** Bytes of the sampled entries indexed by category ordinal. */
+	private final long[] sampledBytes = new long[RetainedSizeCategoryEnum.values().length];
+
+	/**
+	 * Build an empty estimate.
+	 * 
+	 * @param pName
+	 *            the cache name
+	 * @param pEntryCount
+	 *            the count of entries in the cache
+	 */
+	public RetainedSizeEstimate(final String pName, final int pEntryCount) {
+		super();
+		this.name = pName;
+		this.entryCount = pEntryCount;
+	}
+
+	/** Count one more sampled entry. */
+	public void addSample() {
+		this.sampledCount++;
+	}
+
+	/**
+	 * Add bytes of the sampled entries.
+	 * 
+	 * @param category
+	 *            the category of the bytes
+	 * @param bytes
+	 *            the bytes
+	 */
+	public void add(final RetainedSizeCategoryEnum category, final long bytes) {
+		this.sampledBytes[category.ordinal()] += bytes;
+	}
+
+	/**
+	 * Mean bytes by entry of a category.
+	 * 
+	 * @param category
+	 *            the category
+	 * @return the bytes, 0 without sample
+	 */
+	public long getBytesPerEntry(final RetainedSizeCategoryEnum category) {
+		return (this.sampledCount == 0) ? 0L : this.sampledBytes[category.ordinal()] / this.sampledCount;
+	}
+
+	/**
+	 * Mean bytes by entry.
+	 * 
+	 * @return the bytes, 0 without sample
+	 */
+	public long getBytesPerEntry() {
+		long bytes = 0L;
+
+		for (final RetainedSizeCategoryEnum category : RetainedSizeCategoryEnum.values()) {
+			bytes += this.getBytesPerEntry(category);
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Bytes of a category extrapolated to the whole cache.
+	 * 
+	 * @param category
+	 *            the category
+	 * @return the bytes
+	 */
+	public long getEstimatedTotalBytes(final RetainedSizeCategoryEnum category) {
+		return this.getBytesPerEntry(category) * this.entryCount;
+	}
+
+	/**
+	 * Bytes extrapolated to the whole cache.
+	 * 
+	 * @return the bytes
+	 */
+	public long getEstimatedTotalBytes() {
+		return this.getBytesPerEntry() * this.entryCount;
+	}
+
+	/**
+	 * Report : one line with the bytes by entry and extrapolated to the cache, total and by category.
+	 * 
+	 * @return the report line
+	 */
+	public String report() {
+		final StringBuilder report = new StringBuilder(256);
+		report.append(String.format("%-40s entries=%-8d sampled=%-6d perEntry=%-8d total=%.3fMB", this.name,
+				this.entryCount, this.sampledCount, this.getBytesPerEntry(),
+				this.getEstimatedTotalBytes() / (1024d * 1024d)));
+		for (final RetainedSizeCategoryEnum category : RetainedSizeCategoryEnum.values()) {
+			report.append(String.format(" %s=%d/%.3fMB", category.name(), this.getBytesPerEntry(category),
+					this.getEstimatedTotalBytes(category) / (1024d * 1024d)));
+		}
+
+		return report.toString();
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public int getEntryCount() {
+		return this.entryCount;
+	}
+
+	public int getSampledCount() {
+		return this.sampledCount;
+	}
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper estimating the shallow heap size of the objects held by the storage. The layout is the one of a 64 bits
+ * HotSpot JVM with compressed references (Java 6 to 8) : 12 bytes object headers, 16 bytes array headers, 4 bytes
+ * references and objects aligned on 8 bytes. These are estimates, not measures.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public abstract class RetainedSizeHelper {
+
+	/** Object header. */
+	public static final int OBJECT_HEADER = 12;
+
+	/** Array header, length included. */
+	public static final int ARRAY_HEADER = 16;
+
+	/** Compressed reference. */
+	public static final int REFERENCE = 4;
+
+	/** String : header, value array reference, hash. */
+	public static final int STRING_SHALLOW = 24;
+
+	/** HashMap : header, 4 references, 3 ints and a float. */
+	public static final int HASH_MAP_SHALLOW = 48;
+
+	/** HashMap node : header, hash, key, value and next references. */
+	public static final int HASH_MAP_NODE = 32;
+
+	/** ArrayList : header, size, modCount and elements array reference. */
+	public static final int ARRAY_LIST_SHALLOW = 24;
+
+	/** Joda DateTime : header, millis and chronology reference, the chronology being shared. */
+	public static final int DATE_TIME_SHALLOW = 24;
+
+	/** Ehcache Element (header, key and value references, 6 longs, 2 ints, 2 booleans) and its memory store entry. */
+	public static final int CACHE_ENTRY = 120;
+
+	/** Load factor of the HashMaps. */
+	private static final float LOAD_FACTOR = 0.75f;
+
+	/**
+	 * Align a size on 8 bytes.
+	 * 
+	 * @param size
+	 *            the size
+	 * @return the aligned size
+	 */
+	public static long align(final long size) {
+		return (size + 7L) & ~7L;
+	}
+
+	/**
+	 * Size of a String, its chars array included.
+	 * 
+	 * @param value
+	 *            the String, may be null
+	 * @return the size, 0 if null
+	 */
+	public static long sizeOfString(final String value) {
+		long size = 0L;
+
+		if (value != null) {
+			size = RetainedSizeHelper.STRING_SHALLOW
+					+ RetainedSizeHelper.align(RetainedSizeHelper.ARRAY_HEADER + 2L * value.length());
+		}
+
+		return size;
+	}
+
+	/**
+	 * Size of the Strings of an array, the array excluded.
+	 * 
+	 * @param values
+	 *            the array, may be null
+	 * @return the size, 0 if null
+	 */
+	public static long sizeOfStrings(final String[] values) {
+		long size = 0L;
+
+		if (values != null) {
+			for (final String value : values) {
+				size += RetainedSizeHelper.sizeOfString(value);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Size of the Strings of a list, the list excluded.
+	 * 
+	 * @param values
+	 *            the list, may be null
+	 * @return the size, 0 if null
+	 */
+	public static long sizeOfStrings(final List<String> values) {
+		long size = 0L;
+
+		if (values != null) {
+			for (final String value : values) {
+				size += RetainedSizeHelper.sizeOfString(value);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Size of a references array.
+	 * 
+	 * @param length
+	 *            the length of the array
+	 * @return the size
+	 */
+	public static long sizeOfReferenceArray(final int length) {
+		return RetainedSizeHelper.align(RetainedSizeHelper.ARRAY_HEADER + (long) RetainedSizeHelper.REFERENCE
+				* length);
+	}
+
+	/**
+	 * Size of the structure of a HashMap : the map, its table and its nodes, keys and values excluded. The table is
+	 * assumed to be the smallest one holding the entries under the load factor.
+	 * 
+	 * @param map
+	 *            the map, may be null
+	 * @return the size, 0 if null
+	 */
+	public static long sizeOfMapStructure(final Map<?, ?> map) {
+		long size = 0L;
+
+		if (map != null) {
+			size = RetainedSizeHelper.HASH_MAP_SHALLOW + (long) RetainedSizeHelper.HASH_MAP_NODE * map.size();
+			if (!map.isEmpty()) {
+				int capacity = 1;
+				while (capacity * RetainedSizeHelper.LOAD_FACTOR < map.size()) {
+					capacity <<= 1;
+				}
+				size += RetainedSizeHelper.sizeOfReferenceArray(capacity);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Size of the structure of a List, as an ArrayList without spare capacity, values excluded.
+	 * 
+	 * @param list
+	 *            the list, may be null
+	 * @return the size, 0 if null
+	 */
+	public static long sizeOfListStructure(final List<?> list) {
+		long size = 0L;
+
+		if (list != null) {
+			size = RetainedSizeHelper.ARRAY_LIST_SHALLOW + RetainedSizeHelper.sizeOfReferenceArray(list.size());
+		}
+
+		return size;
+	}
+
+	/**
+	 * Shallow size of an object.
+	 * 
+	 * @param references
+	 *            the count of reference fields
+	 * @param primitiveBytes
+	 *            the bytes of the primitive fields
+	 * @return the size
+	 */
+	public static long sizeOfObject(final int references, final int primitiveBytes) {
+		return RetainedSizeHelper.align(RetainedSizeHelper.OBJECT_HEADER + (long) RetainedSizeHelper.REFERENCE
+				* references + primitiveBytes);
+	}
+
+}
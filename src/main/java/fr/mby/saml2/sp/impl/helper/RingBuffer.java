@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * Lock free bounded ring keeping the last added elements : when full the oldest elements are overwritten.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ * @param <T>
+ *            the type of the elements
+ */
+public class RingBuffer<T> {
+
+	/** The kept elements. */
+	private final AtomicReferenceArray<T> elements;
+
+	/** Count of elements added since the creation : next position in the ring. */
+	private final AtomicLong addedCount = new AtomicLong();
+
+	/**
+	 * Build an empty ring.
+	 * 
+	 * @param capacity
+	 *            the count of kept elements
+	 */
+	public RingBuffer(final int capacity) {
+		super();
+		Assert.isTrue(capacity > 0, "The capacity must be positive !");
+		this.elements = new AtomicReferenceArray<T>(capacity);
+	}
+
+	/**
+	 * Add an element, overwriting the oldest one if full.
+	 * 
+	 * @param element
+	 *            the element
+	 */
+	public void add(final T element) {
+		final long position = this.addedCount.getAndIncrement();
+		this.elements.set((int) (position % this.elements.length()), element);
+	}
+
+	/**
+	 * The kept elements, oldest first.
+	 * 
+	 * @return the elements
+	 */
+	public List<T> toList() {
+		final int capacity = this.elements.length();
+		final List<T> result = new ArrayList<T>(capacity);
+
+		final long end = this.addedCount.get();
+		for (long position = Math.max(0L, end - capacity); position < end; position++) {
+			final T element = this.elements.get((int) (position % capacity));
+			if (element != null) {
+				result.add(element);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Count of elements added since the creation, kept or overwritten.
+	 * 
+	 * @return the count
+	 */
+	public long getAddedCount() {
+		return this.addedCount.get();
+	}
+
+	public int getCapacity() {
+		return this.elements.length();
+	}
+
+}
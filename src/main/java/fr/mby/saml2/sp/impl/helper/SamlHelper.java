@@ -20,15 +20,16 @@
 package fr.mby.saml2.sp.impl.helper;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.regex.Pattern;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -39,8 +40,6 @@ import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.opensaml.xml.util.Base64;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import fr.mby.saml2.sp.api.config.IWayfConfig;
@@ -48,6 +47,10 @@ import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
 import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
 import fr.mby.saml2.sp.api.core.SamlBindingEnum;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
+import fr.mby.saml2.sp.api.exception.SamlSecurityRejectionException;
+import fr.mby.saml2.sp.api.handler.ISamlMessageProvider;
+import fr.mby.saml2.sp.api.handler.ISecurityAuditHandler;
+import fr.mby.saml2.sp.impl.handler.LoggerSecurityAuditHandler;
 
 /**
  * @author GIP RECIA 2012 - Maxime BOSSARD.
@@ -61,9 +64,6 @@ public abstract class SamlHelper {
 	/** Name of the security logger. */
 	public static final String SECURITY_LOGGER_NAME = "Saml-Security";
 
-	/** Security logger. */
-	private static final Logger SECURITY_LOGGER = LoggerFactory.getLogger(SamlHelper.SECURITY_LOGGER_NAME);
-
 	/** SAML Response HTTP Param name. */
 	public static final String SAML_RESPONSE_PARAM_KEY = "SAMLResponse";
 
@@ -94,6 +94,12 @@ public abstract class SamlHelper {
 	/** Saml HTTP-Redirect binding encoding. */
 	public static final String CHAR_ENCODING = "UTF-8";
 
+	/** Text content of the XML elements : the values (NameID, attributes, signatures, ...) of a SAML message. */
+	private static final Pattern XML_TEXT_PATTERN = Pattern.compile(">[^<]*[^<\\s][^<]*<");
+
+	/** Replacement of the redacted text content. */
+	private static final String REDACTED_XML_TEXT = ">***<";
+
 	/** The SP processor for CAS. */
 	private static Collection<ISaml20SpProcessor> spProcessors = new ArrayList<ISaml20SpProcessor>(8);
 
@@ -105,25 +111,55 @@ public abstract class SamlHelper {
 	 * 
 	 * @param e
 	 * @param samlMessage
-	 * @throws SamlProcessingException
+	 * @throws SamlSecurityRejectionException
 	 */
 	public static void logSecurityProblem(final Throwable e, final String samlMessage) throws SamlProcessingException {
-		final String securityMessage;
-		// Log in security logger the SAML message cause of the security exception
-		if (StringUtils.hasText(samlMessage)) {
-			securityMessage = String.format("Plugin SAML security problem for incoming SAML message: [%1$s] !",
-					samlMessage);
-		} else {
-			securityMessage = "Plugin SAML security problem before decoding incoming SAML message !";
-		}
+		LoggerSecurityAuditHandler.INSTANCE.log(null, e, samlMessage);
 
-		SamlHelper.SECURITY_LOGGER.warn(securityMessage, e);
+		throw new SamlSecurityRejectionException(samlMessage, e);
+	}
+
+	/**
+	 * Audit a Security Problem with the audit handler and rethrow the Exception. The SAML message is left to the audit
+	 * handler, which reads it only if it keeps the problem : the rethrown Exception does not carry it.
+	 * 
+	 * @param auditHandler
+	 *            the security audit handler
+	 * @param source
+	 *            the source of the message (remote address), may be null if unknown
+	 * @param e
+	 * @param samlMessage
+	 *            the SAML message, may be null if not decoded
+	 * @throws SamlSecurityRejectionException
+	 */
+	public static void logSecurityProblem(final ISecurityAuditHandler auditHandler, final String source,
+			final Throwable e, final ISamlMessageProvider samlMessage) throws SamlProcessingException {
+		auditHandler.audit(source, e, samlMessage);
 
-		throw new SamlProcessingException(samlMessage, e);
+		throw new SamlSecurityRejectionException("Plugin SAML security problem with incoming SAML message !", e);
 	}
 
 	/**
-	 * Retrieve the SP processor for CAS corresponding to the endpoint URL.
+	 * Redact a SAML message : the text content of every element is masked, the structure and the XML attributes (IDs,
+	 * instants, destinations, ...) are kept.
+	 * 
+	 * @param samlMessage
+	 *            the SAML message in plain XML text
+	 * @return the redacted message, null if no message provided
+	 */
+	public static String redactSamlMessage(final String samlMessage) {
+		String redactedMessage = null;
+
+		if (samlMessage != null) {
+			redactedMessage = SamlHelper.XML_TEXT_PATTERN.matcher(samlMessage).replaceAll(
+					SamlHelper.REDACTED_XML_TEXT);
+		}
+
+		return redactedMessage;
+	}
+
+	/**
+	 * Retrieve the SP processor for CAS corresponding to the endpoint URL (Assertion Consumer or Single Logout).
 	 * 
 	 * @return the SP processor
 	 * @throws SamlProcessingException
@@ -133,7 +169,8 @@ public abstract class SamlHelper {
 		for (final ISaml20SpProcessor spProcessor : SamlHelper.spProcessors) {
 			for (final SamlBindingEnum binding : SamlBindingEnum.values()) {
 				final String spEnpointUrl = spProcessor.getSpConfig().getEndpointUrl(binding);
-				if ((spEnpointUrl != null) && spEnpointUrl.equals(endpointUrl)) {
+				final String spSloEnpointUrl = spProcessor.getSpConfig().getSingleLogoutServiceUrl(binding);
+				if (endpointUrl.equals(spEnpointUrl) || endpointUrl.equals(spSloEnpointUrl)) {
 					if (SamlHelper.LOGGER.isDebugEnabled()) {
 						SamlHelper.LOGGER.debug(String.format("EndpointUrl [%1$s] corrsponding to SPProcessor [%2$s]",
 								endpointUrl, spProcessor.getSpConfig().getId()));
@@ -390,36 +427,82 @@ public abstract class SamlHelper {
 	 * @throws IOException
 	 */
 	public static String httpRedirectDecode(final String encodedRequest) throws IOException {
-		String inflatedRequest = null;
+		return SamlHelper.readSamlMessage(SamlHelper.httpRedirectDecodeStream(encodedRequest));
+	}
 
-		ByteArrayInputStream bytesIn = null;
-		InflaterInputStream inflater = null;
+	/**
+	 * Decode a SAML message as it was received with a binding : the original XML text sent by the IdP.
+	 * 
+	 * @param encodedMessage
+	 *            the encoded message, URL decoded
+	 * @param binding
+	 *            the binding used to transport the message
+	 * @return the SAML message in plain XML text
+	 * @throws IOException
+	 */
+	public static String decodeSamlMessage(final String encodedMessage, final SamlBindingEnum binding)
+			throws IOException {
+		final InputStream decoded;
+		if (SamlBindingEnum.SAML_20_HTTP_REDIRECT == binding) {
+			decoded = SamlHelper.httpRedirectDecodeStream(encodedMessage);
+		} else {
+			decoded = SamlHelper.base64DecodeStream(encodedMessage);
+		}
+
+		return SamlHelper.readSamlMessage(decoded);
+	}
 
-		final byte[] decodedBytes = Base64.decode(encodedRequest);
+	/**
+	 * Read a decoded SAML message then close the stream.
+	 * 
+	 * @param decoded
+	 *            the stream of the decoded message
+	 * @return the SAML message in plain XML text
+	 * @throws IOException
+	 */
+	protected static String readSamlMessage(final InputStream decoded) throws IOException {
+		String samlMessage = null;
 
 		try {
-			bytesIn = new ByteArrayInputStream(decodedBytes);
-			inflater = new InflaterInputStream(bytesIn, new Inflater(true));
 			final Writer writer = new StringWriter();
 			final char[] buffer = new char[1024];
 
-			final Reader reader = new BufferedReader(new InputStreamReader(inflater, "UTF-8"));
+			final Reader reader = new BufferedReader(new InputStreamReader(decoded, SamlHelper.CHAR_ENCODING));
 			int n;
 			while ((n = reader.read(buffer)) != -1) {
 				writer.write(buffer, 0, n);
 			}
 
-			inflatedRequest = writer.toString();
+			samlMessage = writer.toString();
 		} finally {
-			if (bytesIn != null) {
-				bytesIn.close();
-			}
-			if (inflater != null) {
-				inflater.close();
-			}
+			decoded.close();
 		}
 
-		return inflatedRequest;
+		return samlMessage;
+	}
+
+	/**
+	 * Stream decoding a SAML message encoded in Base64 for the HTTP-POST binding : no copy of the encoded message
+	 * nor of the decoded bytes.
+	 * 
+	 * @param encodedMessage
+	 *            the encoded message
+	 * @return the stream of the decoded message
+	 */
+	public static InputStream base64DecodeStream(final String encodedMessage) {
+		return new Base64DecodingInputStream(encodedMessage);
+	}
+
+	/**
+	 * Stream decoding and inflating a SAML message encoded for the HTTP-Redirect binding : no copy of the encoded
+	 * message nor of the decoded bytes.
+	 * 
+	 * @param encodedMessage
+	 *            the encoded message, URL decoded
+	 * @return the stream of the inflated message
+	 */
+	public static InputStream httpRedirectDecodeStream(final String encodedMessage) {
+		return new InflaterInputStream(new Base64DecodingInputStream(encodedMessage), new Inflater(true));
 	}
 
 }
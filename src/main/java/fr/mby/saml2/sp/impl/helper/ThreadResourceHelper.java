@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Helper reading the CPU time and the allocated bytes of the current thread from the ThreadMXBean. The measures are
+ * enabled on first use if the JVM supports them, the allocated bytes need a HotSpot JVM.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public abstract class ThreadResourceHelper {
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThreadResourceHelper.class);
+
+	/** The platform thread MX bean. */
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/** HotSpot extension of the thread MX bean, null if not available. */
+	private static final com.sun.management.ThreadMXBean HOTSPOT_THREAD_MX_BEAN;
+
+	/** Thread CPU time measured. */
+	private static final boolean CPU_TIME_SUPPORTED;
+
+	/** Thread allocated bytes measured. */
+	private static final boolean ALLOCATION_SUPPORTED;
+
+	static {
+		boolean cpuTimeSupported = false;
+		try {
+			if (ThreadResourceHelper.THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+				if (!ThreadResourceHelper.THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+					ThreadResourceHelper.THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+				}
+				cpuTimeSupported = true;
+			}
+		} catch (final UnsupportedOperationException e) {
+			ThreadResourceHelper.LOGGER.warn("Unable to measure the thread CPU time !", e);
+		} catch (final SecurityException e) {
+			ThreadResourceHelper.LOGGER.warn("Not allowed to measure the thread CPU time !", e);
+		}
+		CPU_TIME_SUPPORTED = cpuTimeSupported;
+
+		com.sun.management.ThreadMXBean hotspotThreadMxBean = null;
+		boolean allocationSupported = false;
+		try {
+			if (ThreadResourceHelper.THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+				hotspotThreadMxBean = (com.sun.management.ThreadMXBean) ThreadResourceHelper.THREAD_MX_BEAN;
+				if (hotspotThreadMxBean.isThreadAllocatedMemorySupported()) {
+					if (!hotspotThreadMxBean.isThreadAllocatedMemoryEnabled()) {
+						hotspotThreadMxBean.setThreadAllocatedMemoryEnabled(true);
+					}
+					allocationSupported = true;
+				}
+			}
+		} catch (final UnsupportedOperationException e) {
+			ThreadResourceHelper.LOGGER.warn("Unable to measure the thread allocated bytes !", e);
+		} catch (final SecurityException e) {
+			ThreadResourceHelper.LOGGER.warn("Not allowed to measure the thread allocated bytes !", e);
+		}
+		HOTSPOT_THREAD_MX_BEAN = hotspotThreadMxBean;
+		ALLOCATION_SUPPORTED = allocationSupported;
+	}
+
+	/**
+	 * CPU time consumed by the current thread since its start.
+	 * 
+	 * @return the CPU time in ns, -1 if not measured
+	 */
+	public static long getCurrentThreadCpuNanos() {
+		long cpuNanos = -1L;
+
+		if (ThreadResourceHelper.CPU_TIME_SUPPORTED) {
+			cpuNanos = ThreadResourceHelper.THREAD_MX_BEAN.getCurrentThreadCpuTime();
+		}
+
+		return cpuNanos;
+	}
+
+	/**
+	 * Bytes allocated by the current thread since its start.
+	 * 
+	 * @return the allocated bytes, -1 if not measured
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		long allocatedBytes = -1L;
+
+		if (ThreadResourceHelper.ALLOCATION_SUPPORTED) {
+			allocatedBytes = ThreadResourceHelper.HOTSPOT_THREAD_MX_BEAN.getThreadAllocatedBytes(Thread
+					.currentThread().getId());
+		}
+
+		return allocatedBytes;
+	}
+
+	public static boolean isCpuTimeSupported() {
+		return ThreadResourceHelper.CPU_TIME_SUPPORTED;
+	}
+
+	public static boolean isAllocationSupported() {
+		return ThreadResourceHelper.ALLOCATION_SUPPORTED;
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+
+/**
+ * Base of the SAML operation events for the JDK Flight Recorder.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@Category({"SAML 2.0 SP"})
+public abstract class BaseSamlEvent extends Event implements ISamlEvent {
+
+	// The recorded fields of a super class must not be private.
+
+	@Label("Operation")
+	protected String operation;
+
+	@Label("Message ID")
+	protected String messageId;
+
+	@Label("IdP Entity ID")
+	protected String idpEntityId;
+
+	@Label("Payload Size")
+	protected long payloadSize;
+
+	@Label("Outcome")
+	protected String outcome;
+
+	@Override
+	public void commit(final String pMessageId, final String pIdpEntityId, final long pPayloadSize,
+			final String pOutcome) {
+		this.end();
+		if (this.shouldCommit()) {
+			this.messageId = pMessageId;
+			this.idpEntityId = pIdpEntityId;
+			this.payloadSize = pPayloadSize;
+			this.outcome = pOutcome;
+			this.commit();
+		}
+	}
+
+	/**
+	 * Operation type of the event.
+	 * 
+	 * @param type
+	 *            the operation type
+	 */
+	protected void setOperation(final SamlEventTypeEnum type) {
+		this.operation = type.name();
+	}
+
+}
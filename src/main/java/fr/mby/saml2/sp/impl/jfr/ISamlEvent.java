@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+/**
+ * A SAML operation event begun by SamlFlightRecorder. Commit it once at the end of the operation.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISamlEvent {
+
+	/**
+	 * End the operation and commit the event if it is recorded.
+	 * 
+	 * @param messageId
+	 *            the ID of the SAML message (or the key of the storage lookup), may be null
+	 * @param idpEntityId
+	 *            the entity ID of the IdP, may be null
+	 * @param payloadSize
+	 *            the size of the processed payload in chars, -1 if unknown
+	 * @param outcome
+	 *            the outcome of the operation
+	 */
+	void commit(String messageId, String idpEntityId, long payloadSize, String outcome);
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+/**
+ * Factory of the SAML operation events. Implementations depend on the recorder library and are loaded only if it is
+ * available.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface ISamlEventFactory {
+
+	/**
+	 * Begin a SAML operation event.
+	 * 
+	 * @param type
+	 *            the operation type
+	 * @return the begun event
+	 */
+	ISamlEvent begin(SamlEventTypeEnum type);
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * JDK Flight Recorder implementation of the SAML events factory. Loaded by SamlFlightRecorder only if Flight Recorder
+ * is available : it follows the recordings state to enable the events.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class JfrSamlEventFactory implements ISamlEventFactory, FlightRecorderListener {
+
+	/** Register the factory as Flight Recorder listener. */
+	public JfrSamlEventFactory() {
+		super();
+		FlightRecorder.addListener(this);
+	}
+
+	@Override
+	public ISamlEvent begin(final SamlEventTypeEnum type) {
+		final BaseSamlEvent event;
+
+		switch (type) {
+			case DECODE :
+				event = new SamlDecodeEvent();
+				break;
+			case SIGNATURE_TRUST :
+				event = new SamlSignatureTrustEvent();
+				break;
+			case ASSERTION_DECRYPTION :
+			case ATTRIBUTE_DECRYPTION :
+			case NAME_ID_DECRYPTION :
+				event = new SamlDecryptionEvent();
+				break;
+			case STORAGE_LOOKUP :
+				event = new SamlStorageLookupEvent();
+				break;
+			case OUTBOUND_SIGNING :
+				event = new SamlSigningEvent();
+				break;
+			default :
+				event = new SamlEncodingEvent();
+				break;
+		}
+
+		event.setOperation(type);
+		event.begin();
+
+		return event;
+	}
+
+	@Override
+	public void recorderInitialized(final FlightRecorder recorder) {
+		this.updateRecordingState(recorder);
+	}
+
+	@Override
+	public void recordingStateChanged(final Recording changedRecording) {
+		this.updateRecordingState(FlightRecorder.getFlightRecorder());
+	}
+
+	/**
+	 * Enable the events while at least one recording is running.
+	 * 
+	 * @param recorder
+	 *            the Flight Recorder
+	 */
+	protected void updateRecordingState(final FlightRecorder recorder) {
+		boolean running = false;
+
+		for (final Recording recording : recorder.getRecordings()) {
+			if (recording.getState() == RecordingState.RUNNING) {
+				running = true;
+			}
+		}
+
+		SamlFlightRecorder.setRecording(running);
+	}
+
+}
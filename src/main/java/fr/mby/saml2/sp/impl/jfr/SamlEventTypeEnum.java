@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+/**
+ * SAML operations recorded as events.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public enum SamlEventTypeEnum {
+
+	/** Decoding of an incoming message. */
+	DECODE,
+
+	/** Validation of a signature trust. */
+	SIGNATURE_TRUST,
+
+	/** Decryption of an Assertion. */
+	ASSERTION_DECRYPTION,
+
+	/** Decryption of an Attribute. */
+	ATTRIBUTE_DECRYPTION,
+
+	/** Decryption of a NameID. */
+	NAME_ID_DECRYPTION,
+
+	/** Lookup in the SAML 2.0 storage. */
+	STORAGE_LOOKUP,
+
+	/** Signing of an outgoing message. */
+	OUTBOUND_SIGNING,
+
+	/** Encoding of an outgoing message for its binding. */
+	OUTBOUND_ENCODING;
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point of the SAML operation events for the JDK Flight Recorder. While no recording is running, or on a JVM
+ * without Flight Recorder, begin() costs a volatile read and returns a shared event doing nothing.
+ * 
+ * Usage : begin the event, run the operation then commit the event with its outcome in a finally block. Arguments
+ * costly to compute must be guarded by isRecording().
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public final class SamlFlightRecorder {
+
+	/** Outcome of a succeeded operation. */
+	public static final String SUCCESS = "SUCCESS";
+
+	/** Outcome of a failed operation. */
+	public static final String FAILURE = "FAILURE";
+
+	/** Outcome of a storage lookup which found the entry. */
+	public static final String HIT = "HIT";
+
+	/** Outcome of a storage lookup which didn't find the entry. */
+	public static final String MISS = "MISS";
+
+	/** Outcome of a signature not trusted. */
+	public static final String UNTRUSTED = "UNTRUSTED";
+
+	/** Outcome of a missing signature. */
+	public static final String NOT_SIGNED = "NOT_SIGNED";
+
+	/** JFR implementation of the events factory. */
+	private static final String JFR_FACTORY_CLASS = "fr.mby.saml2.sp.impl.jfr.JfrSamlEventFactory";
+
+	/** Logger. */
+	private static final Logger LOGGER = LoggerFactory.getLogger(SamlFlightRecorder.class);
+
+	/** Event doing nothing. */
+	private static final ISamlEvent NULL_EVENT = new ISamlEvent() {
+
+		@Override
+		public void commit(final String messageId, final String idpEntityId, final long payloadSize,
+				final String outcome) {
+			// Do nothing
+		}
+	};
+
+	/** Events factory, null if Flight Recorder is not available. */
+	private static final ISamlEventFactory FACTORY = SamlFlightRecorder.loadFactory();
+
+	/** True while a recording is running. */
+	private static volatile boolean recording;
+
+	private SamlFlightRecorder() {
+		super();
+	}
+
+	/**
+	 * Begin a SAML operation event.
+	 * 
+	 * @param type
+	 *            the operation type
+	 * @return the begun event, an event doing nothing if no recording is running
+	 */
+	public static ISamlEvent begin(final SamlEventTypeEnum type) {
+		ISamlEvent event = SamlFlightRecorder.NULL_EVENT;
+
+		if (SamlFlightRecorder.recording) {
+			event = SamlFlightRecorder.FACTORY.begin(type);
+		}
+
+		return event;
+	}
+
+	/**
+	 * Is a recording running ?
+	 * 
+	 * @return true if the events may be recorded
+	 */
+	public static boolean isRecording() {
+		return SamlFlightRecorder.recording;
+	}
+
+	/**
+	 * Called by the events factory when the recordings state changes.
+	 * 
+	 * @param running
+	 *            true if a recording is running
+	 */
+	static void setRecording(final boolean running) {
+		SamlFlightRecorder.recording = running;
+	}
+
+	/**
+	 * Load the JFR events factory if Flight Recorder is available on the JVM.
+	 * 
+	 * @return the factory or null
+	 */
+	private static ISamlEventFactory loadFactory() {
+		ISamlEventFactory factory = null;
+
+		try {
+			Class.forName("jdk.jfr.FlightRecorder");
+			factory = (ISamlEventFactory) Class.forName(SamlFlightRecorder.JFR_FACTORY_CLASS).newInstance();
+		} catch (final ClassNotFoundException e) {
+			SamlFlightRecorder.LOGGER.debug("Flight Recorder not available : SAML events disabled.");
+		} catch (final Exception e) {
+			SamlFlightRecorder.LOGGER.warn("Unable to load the Flight Recorder SAML events factory !", e);
+		} catch (final LinkageError e) {
+			SamlFlightRecorder.LOGGER.warn("Unable to load the Flight Recorder SAML events factory !", e);
+		}
+
+		return factory;
+	}
+
+}
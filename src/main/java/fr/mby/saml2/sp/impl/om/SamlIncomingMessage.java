@@ -18,7 +18,11 @@
  */
 package fr.mby.saml2.sp.impl.om;
 
+import java.io.IOException;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
 import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
 
 /**
  * Saml Incoming message. Sent from the IdP to the SP.
@@ -31,4 +35,40 @@ public class SamlIncomingMessage extends SamlMessage implements IIncomingSaml {
 	/** Svuid. */
 	private static final long serialVersionUID = 7748906480539955060L;
 
+	/** SAML message as received in the HTTP request, decoded on the first read of the SAML message. */
+	private String encodedSamlMessage;
+
+	/** Binding used to transport the encoded SAML message. */
+	private SamlBindingEnum binding;
+
+	@Override
+	public String getSamlMessage() {
+		String samlMessage = super.getSamlMessage();
+
+		if ((samlMessage == null) && (this.encodedSamlMessage != null)) {
+			try {
+				samlMessage = SamlHelper.decodeSamlMessage(this.encodedSamlMessage, this.binding);
+			} catch (final IOException e) {
+				throw new IllegalStateException("Unable to decode the incoming SAML message !", e);
+			}
+			this.setSamlMessage(samlMessage);
+			this.encodedSamlMessage = null;
+		}
+
+		return samlMessage;
+	}
+
+	/**
+	 * Keep the SAML message as received in the HTTP request : it will be decoded only if read.
+	 * 
+	 * @param pEncodedSamlMessage
+	 *            the encoded SAML message, URL decoded
+	 * @param pBinding
+	 *            the binding used to transport the message
+	 */
+	public void setEncodedSamlMessage(final String pEncodedSamlMessage, final SamlBindingEnum pBinding) {
+		this.encodedSamlMessage = pEncodedSamlMessage;
+		this.binding = pBinding;
+	}
+
 }
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.om;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
+import fr.mby.saml2.sp.api.om.ISlowMessage;
+
+/**
+ * Slow message captured by a query processor.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class SamlSlowMessage implements ISlowMessage {
+
+	private long timestamp;
+
+	private String processorType;
+
+	private String messageId;
+
+	private SamlBindingEnum binding;
+
+	private String idpEntityId;
+
+	private long totalNanos;
+
+	private Map<ProcessingStageEnum, Long> stageNanos;
+
+	private long payloadSize = -1L;
+
+	private int assertionCount = -1;
+
+	private int attributeCount = -1;
+
+	private boolean succeeded;
+
+	private String redactedMessage;
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder(256);
+		sb.append(String.format("%1$s [%2$s] from [%3$s] via [%4$s] %5$s in %6$d µs :", this.processorType,
+				this.messageId, this.idpEntityId, this.binding, this.succeeded ? "succeeded" : "failed",
+				this.totalNanos / 1000L));
+		if (this.stageNanos != null) {
+			for (final Entry<ProcessingStageEnum, Long> stage : this.stageNanos.entrySet()) {
+				sb.append(String.format(" %1$s=%2$d µs", stage.getKey(), stage.getValue() / 1000L));
+			}
+		}
+		sb.append(String.format(" ; payload=%1$d chars assertions=%2$d attributes=%3$d", this.payloadSize,
+				this.assertionCount, this.attributeCount));
+		return sb.toString();
+	}
+
+	@Override
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public void setTimestamp(final long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	@Override
+	public String getProcessorType() {
+		return this.processorType;
+	}
+
+	public void setProcessorType(final String processorType) {
+		this.processorType = processorType;
+	}
+
+	@Override
+	public String getMessageId() {
+		return this.messageId;
+	}
+
+	public void setMessageId(final String messageId) {
+		this.messageId = messageId;
+	}
+
+	@Override
+	public SamlBindingEnum getBinding() {
+		return this.binding;
+	}
+
+	public void setBinding(final SamlBindingEnum binding) {
+		this.binding = binding;
+	}
+
+	@Override
+	public String getIdpEntityId() {
+		return this.idpEntityId;
+	}
+
+	public void setIdpEntityId(final String idpEntityId) {
+		this.idpEntityId = idpEntityId;
+	}
+
+	@Override
+	public long getTotalNanos() {
+		return this.totalNanos;
+	}
+
+	public void setTotalNanos(final long totalNanos) {
+		this.totalNanos = totalNanos;
+	}
+
+	@Override
+	public Map<ProcessingStageEnum, Long> getStageNanos() {
+		return this.stageNanos;
+	}
+
+	public void setStageNanos(final Map<ProcessingStageEnum, Long> stageNanos) {
+		this.stageNanos = stageNanos;
+	}
+
+	@Override
+	public long getPayloadSize() {
+		return this.payloadSize;
+	}
+
+	public void setPayloadSize(final long payloadSize) {
+		this.payloadSize = payloadSize;
+	}
+
+	@Override
+	public int getAssertionCount() {
+		return this.assertionCount;
+	}
+
+	public void setAssertionCount(final int assertionCount) {
+		this.assertionCount = assertionCount;
+	}
+
+	@Override
+	public int getAttributeCount() {
+		return this.attributeCount;
+	}
+
+	public void setAttributeCount(final int attributeCount) {
+		this.attributeCount = attributeCount;
+	}
+
+	@Override
+	public boolean isSucceeded() {
+		return this.succeeded;
+	}
+
+	public void setSucceeded(final boolean succeeded) {
+		this.succeeded = succeeded;
+	}
+
+	@Override
+	public String getRedactedMessage() {
+		return this.redactedMessage;
+	}
+
+	public void setRedactedMessage(final String redactedMessage) {
+		this.redactedMessage = redactedMessage;
+	}
+
+}
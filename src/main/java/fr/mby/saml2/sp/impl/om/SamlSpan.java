@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.om;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.om.ISpan;
+
+/**
+ * Span started by a BasicTracingHandler. A span is used by one thread at a time.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class SamlSpan implements ISpan {
+
+	private final String traceId;
+
+	private final String spanId;
+
+	private final String parentSpanId;
+
+	private final String name;
+
+	private final long startTimeMillis;
+
+	/** Start time of the span from System.nanoTime(). */
+	private final long startNanos;
+
+	private long durationNanos = -1L;
+
+	private boolean error;
+
+	private final Map<String, String> attributes = new LinkedHashMap<String, String>(8);
+
+	/**
+	 * Start a span.
+	 * 
+	 * @param traceId
+	 *            the trace ID
+	 * @param spanId
+	 *            the span ID
+	 * @param parentSpanId
+	 *            the parent span ID, null for a root span
+	 * @param name
+	 *            the name of the operation
+	 */
+	public SamlSpan(final String traceId, final String spanId, final String parentSpanId, final String name) {
+		super();
+		Assert.hasText(traceId, "No trace ID provided !");
+		Assert.hasText(spanId, "No span ID provided !");
+		Assert.hasText(name, "No span name provided !");
+
+		this.traceId = traceId;
+		this.spanId = spanId;
+		this.parentSpanId = parentSpanId;
+		this.name = name;
+		this.startTimeMillis = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * End the span : its duration is fixed by the first call.
+	 * 
+	 * @return false if the span was already ended
+	 */
+	public boolean end() {
+		final boolean ending = this.durationNanos < 0;
+
+		if (ending) {
+			this.durationNanos = System.nanoTime() - this.startNanos;
+		}
+
+		return ending;
+	}
+
+	@Override
+	public String getTraceId() {
+		return this.traceId;
+	}
+
+	@Override
+	public String getSpanId() {
+		return this.spanId;
+	}
+
+	@Override
+	public String getParentSpanId() {
+		return this.parentSpanId;
+	}
+
+	@Override
+	public String getName() {
+		return this.name;
+	}
+
+	@Override
+	public long getStartTimeMillis() {
+		return this.startTimeMillis;
+	}
+
+	@Override
+	public long getDurationNanos() {
+		return this.durationNanos;
+	}
+
+	@Override
+	public boolean isError() {
+		return this.error;
+	}
+
+	@Override
+	public void setError() {
+		this.error = true;
+	}
+
+	@Override
+	public Map<String, String> getAttributes() {
+		return Collections.unmodifiableMap(this.attributes);
+	}
+
+	@Override
+	public void setAttribute(final String key, final String value) {
+		if (value != null) {
+			this.attributes.put(key, value);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s trace:%s span:%s parent:%s duration:%dns error:%s %s", this.name, this.traceId,
+				this.spanId, this.parentSpanId, this.durationNanos, this.error, this.attributes);
+	}
+
+}
@@ -50,6 +50,9 @@ public class QueryAuthnRequest extends SamlQuery implements IRequestWaitingForRe
 	/** IdpConnector which build this request. */
 	private transient ISaml20IdpConnector idpConnectorBuilder;
 
+	/** Time the request was issued to the IdP, in ms since the epoch. */
+	private long issueTimeMillis;
+
 	/** Default constructor for serialization. */
 	public QueryAuthnRequest() {
 		super();
@@ -75,6 +78,14 @@ public class QueryAuthnRequest extends SamlQuery implements IRequestWaitingForRe
 		return this.parametersMap;
 	}
 
+	public long getIssueTimeMillis() {
+		return this.issueTimeMillis;
+	}
+
+	public void setIssueTimeMillis(final long issueTimeMillis) {
+		this.issueTimeMillis = issueTimeMillis;
+	}
+
 	private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
 		in.defaultReadObject();
 		this.loadIdpConnector(this.idpConnectorId);
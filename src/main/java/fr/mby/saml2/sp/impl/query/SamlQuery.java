@@ -34,6 +34,9 @@ public abstract class SamlQuery implements IQuery {
 
 	private String id;
 
+	/** Trace parent of the span which built the query. */
+	private String traceParent;
+
 	/** Default constructor for serialization. */
 	public SamlQuery() {
 		super();
@@ -49,4 +52,12 @@ public abstract class SamlQuery implements IQuery {
 		this.id = id;
 	}
 
+	public String getTraceParent() {
+		return this.traceParent;
+	}
+
+	public void setTraceParent(final String traceParent) {
+		this.traceParent = traceParent;
+	}
+
 }
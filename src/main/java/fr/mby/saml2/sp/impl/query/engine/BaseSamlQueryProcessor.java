@@ -18,6 +18,11 @@
  */
 package fr.mby.saml2.sp.impl.query.engine;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
@@ -25,17 +30,33 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
 import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.exception.OrphanResponseException;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
 import fr.mby.saml2.sp.api.exception.SamlValidationException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.handler.ISamlMessageProvider;
+import fr.mby.saml2.sp.api.handler.ISecurityAuditHandler;
+import fr.mby.saml2.sp.api.handler.ISlowMessageHandler;
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
 import fr.mby.saml2.sp.api.om.IIncomingSaml;
 import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.api.om.ISlowMessage;
+import fr.mby.saml2.sp.api.om.ISpan;
 import fr.mby.saml2.sp.api.query.IQuery;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessor;
+import fr.mby.saml2.sp.impl.handler.NullProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.LoggerSecurityAuditHandler;
+import fr.mby.saml2.sp.impl.handler.NullSlowMessageHandler;
+import fr.mby.saml2.sp.impl.handler.NullTracingHandler;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
 import fr.mby.saml2.sp.impl.om.SamlIncomingMessage;
+import fr.mby.saml2.sp.impl.om.SamlSlowMessage;
 
 /**
  * Base implementation of Query Processor.
@@ -48,18 +69,90 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 	/** Logger. */
 	private final Logger logger = LoggerFactory.getLogger(BaseSamlQueryProcessor.class);
 
+	/**
+	 * Durations of the stages of the processing in progress on the thread, by stage ordinal, -1 if not run. Reused
+	 * from one message to the next : a message under the slow threshold allocates nothing.
+	 */
+	private static final ThreadLocal<long[]> STAGE_NANOS = new ThreadLocal<long[]>() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[ProcessingStageEnum.values().length];
+		}
+	};
+
 	/** The incoming HTTP request. */
 	private HttpServletRequest httpRequest;
 
-	/** SAML message in plain XML text. */
+	/** Entity ID of the configured IdP issuer of the message, for the metrics. */
+	private String knownIdpEntityId;
+
+	/** SAML message in plain XML text, read lazily. */
 	private String samlMessage;
 
+	/** SAML message given to the security audit handler, read only if the handler keeps it. */
+	private final ISamlMessageProvider samlMessageProvider = new ISamlMessageProvider() {
+
+		@Override
+		public String getSamlMessage() {
+			return BaseSamlQueryProcessor.this.getSamlMessage();
+		}
+	};
+
+	/** Request waiting for the response processed, looked up once in the storage. */
+	private IRequestWaitingForResponse originalRequest;
+
+	/** The original request was looked up. */
+	private boolean originalRequestLookedUp;
+
 	/** SP Processor. */
 	private ISaml20SpProcessor spProcessor;
 
 	/** Endpoint location to validate incoming message. */
 	private String endpointLocation;
 
+	/** Processing metrics handler. */
+	private IProcessingMetricsHandler metricsHandler = NullProcessingMetricsHandler.INSTANCE;
+
+	/** Processing stages are recorded only if the metrics handler is enabled. */
+	private boolean metered;
+
+	/** Slow message handler. */
+	private ISlowMessageHandler slowMessageHandler = NullSlowMessageHandler.INSTANCE;
+
+	/** Security audit handler. */
+	private ISecurityAuditHandler securityAuditHandler = LoggerSecurityAuditHandler.INSTANCE;
+
+	/** Slow messages are captured only if the slow message handler is enabled. */
+	private boolean slowCaptured;
+
+	/** Processing stages are timed only if the metrics handler or the slow message handler is enabled. */
+	private boolean timed;
+
+	/** Duration of the decoding by the query processor factory, in ns. */
+	private long decodeNanos;
+
+	/** Start time of the processing if slow messages are captured. */
+	private long processingStart;
+
+	/** Tracing handler. */
+	private ITracingHandler tracingHandler = NullTracingHandler.INSTANCE;
+
+	/** Processing stages are traced only if the tracing handler is enabled. */
+	private boolean traced;
+
+	/** The processing stage in progress. */
+	private ProcessingStageEnum currentStage;
+
+	/** Start time of the stage in progress if timed. */
+	private long stageStart;
+
+	/** Span of the whole processing if traced. */
+	private ISpan processingSpan;
+
+	/** Span of the stage in progress if traced. */
+	private ISpan stageSpan;
+
 	/**
 	 * Unique constructor protected.
 	 * Construction delegated to QueryProcessorFactory.
@@ -77,6 +170,10 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 	public void initialize(final HttpServletRequest pHttpRequest, final ISaml20SpProcessor pSpProcessor) {
 		this.httpRequest = pHttpRequest;
 		this.spProcessor = pSpProcessor;
+		this.knownIdpEntityId = null;
+		this.samlMessage = null;
+		this.originalRequest = null;
+		this.originalRequestLookedUp = false;
 	}
 
 	@Override
@@ -86,35 +183,211 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 
 		this.checkInitialization();
 
+		this.metered = this.metricsHandler.isEnabled();
+		this.slowCaptured = this.slowMessageHandler.isEnabled();
+		this.timed = this.metered || this.slowCaptured;
+		this.traced = this.tracingHandler.isEnabled();
+		this.startProcessingSpan();
+		this.startSlowMessageTiming();
+
 		try {
-			this.samlMessage = this.marshallSamlMessage();
+			if (this.securityAuditHandler.isArchiving()) {
+				this.startStage(ProcessingStageEnum.ARCHIVE);
+				this.securityAuditHandler.archive(this.getSource(), this.samlMessageProvider);
+				this.endStage();
+			}
 
+			this.startStage(ProcessingStageEnum.VALIDATE_REQUEST_TYPE);
 			boolean validRequetType = this.validateRequestType();
 			if (!validRequetType) {
 				throw new SamlProcessingException("Bad SAML Query Processor in use for incoming request !");
 			}
+			this.endStage();
 
+			this.startStage(ProcessingStageEnum.PRE_PROCESS);
 			this.preProcess();
+			this.endStage();
 
+			this.startStage(ProcessingStageEnum.CHECK_SECURITY);
 			this.checkSecurity();
+			this.endStage();
 
+			this.startStage(ProcessingStageEnum.VALIDATE_CONDITIONS);
 			this.validateConditions();
+			this.endStage();
 
+			this.startStage(ProcessingStageEnum.PROCESS);
 			this.process();
+			this.endStage();
 
+			this.startStage(ProcessingStageEnum.BUILD_INCOMING_SAML);
 			incomingSamlObj = this.buildIncomingSamlObject();
+			this.endStage();
 
 		} catch (SamlValidationException e) {
 			final String validationMessage = "Validation problem while processing incoming SAML message !";
 			this.logger.warn(validationMessage, e);
 			throw new SamlProcessingException(validationMessage, e);
 		} catch (SamlSecurityException e) {
-			SamlHelper.logSecurityProblem(e, this.samlMessage);
+			SamlHelper.logSecurityProblem(this.securityAuditHandler, this.getSource(), e, this.samlMessageProvider);
+		} finally {
+			this.endProcessingSpan(incomingSamlObj != null);
+			this.captureSlowMessage(incomingSamlObj != null);
 		}
 
 		return incomingSamlObj;
 	}
 
+	/**
+	 * Start a processing stage : open its span if traced.
+	 * 
+	 * @param stage
+	 *            the starting stage
+	 */
+	protected void startStage(final ProcessingStageEnum stage) {
+		this.currentStage = stage;
+
+		if (this.timed) {
+			this.stageStart = System.nanoTime();
+		}
+
+		if (this.traced) {
+			this.stageSpan = this.tracingHandler.startChildSpan(stage.name(), this.processingSpan);
+		}
+	}
+
+	/**
+	 * End of the current processing stage which succeeded : record its duration if the stages are timed and end its
+	 * span if traced.
+	 */
+	protected void endStage() {
+		if (this.timed) {
+			final long stageNanos = System.nanoTime() - this.stageStart;
+			if (this.metered) {
+				this.metricsHandler.recordStage(this.currentStage, this.getClass().getSimpleName(),
+						this.getBinding(), this.getKnownIdpEntityId(), stageNanos);
+			}
+			if (this.slowCaptured) {
+				BaseSamlQueryProcessor.STAGE_NANOS.get()[this.currentStage.ordinal()] = stageNanos;
+			}
+		}
+
+		if (this.traced) {
+			this.tracingHandler.endSpan(this.stageSpan);
+			this.stageSpan = null;
+		}
+
+		this.currentStage = null;
+	}
+
+	/**
+	 * Open the span of the whole processing if traced. The trace of the request waiting for this message is continued.
+	 */
+	protected void startProcessingSpan() {
+		if (this.traced) {
+			this.processingSpan = this.tracingHandler.startSpan(this.getClass().getSimpleName(),
+					this.findTraceParent());
+			final SamlBindingEnum binding = this.getBinding();
+			if (binding != null) {
+				this.processingSpan.setAttribute(ITracingHandler.BINDING_ATTRIBUTE, binding.name());
+			}
+			this.processingSpan.setAttribute(ITracingHandler.IDP_ATTRIBUTE, this.getIdpEntityId());
+		}
+	}
+
+	/**
+	 * End the span of the whole processing and the span of the failed stage if any.
+	 * 
+	 * @param succeeded
+	 *            false if the processing failed
+	 */
+	protected void endProcessingSpan(final boolean succeeded) {
+		if (this.traced) {
+			if (this.stageSpan != null) {
+				this.stageSpan.setError();
+				this.tracingHandler.endSpan(this.stageSpan);
+				this.stageSpan = null;
+			}
+			if (!succeeded) {
+				this.processingSpan.setError();
+			}
+			this.tracingHandler.endSpan(this.processingSpan);
+			this.processingSpan = null;
+		}
+	}
+
+	/**
+	 * Start the timing of the whole processing if slow messages are captured.
+	 */
+	protected void startSlowMessageTiming() {
+		if (this.slowCaptured) {
+			final long[] stageNanos = BaseSamlQueryProcessor.STAGE_NANOS.get();
+			Arrays.fill(stageNanos, -1L);
+			stageNanos[ProcessingStageEnum.DECODE.ordinal()] = this.decodeNanos;
+			this.processingStart = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Capture the message if its processing, decoding included, exceeded the slow message threshold. The failed stage
+	 * if any is timed up to now.
+	 * 
+	 * @param succeeded
+	 *            false if the processing failed
+	 */
+	protected void captureSlowMessage(final boolean succeeded) {
+		if (this.slowCaptured) {
+			final long now = System.nanoTime();
+			final long totalNanos = this.decodeNanos + now - this.processingStart;
+			if (totalNanos >= this.slowMessageHandler.getThresholdNanos()) {
+				final long[] stageNanos = BaseSamlQueryProcessor.STAGE_NANOS.get();
+				if (this.currentStage != null) {
+					stageNanos[this.currentStage.ordinal()] = now - this.stageStart;
+				}
+				this.slowMessageHandler.capture(this.buildSlowMessage(succeeded, totalNanos, stageNanos));
+			}
+		}
+	}
+
+	/**
+	 * Build the slow message capture.
+	 * 
+	 * @param succeeded
+	 *            false if the processing failed
+	 * @param totalNanos
+	 *            the duration of the whole processing
+	 * @param stageNanos
+	 *            the durations of the stages by ordinal
+	 * @return the slow message
+	 */
+	protected ISlowMessage buildSlowMessage(final boolean succeeded, final long totalNanos, final long[] stageNanos) {
+		final Map<ProcessingStageEnum, Long> stages = new EnumMap<ProcessingStageEnum, Long>(
+				ProcessingStageEnum.class);
+		for (final ProcessingStageEnum stage : ProcessingStageEnum.values()) {
+			if (stageNanos[stage.ordinal()] > -1L) {
+				stages.put(stage, stageNanos[stage.ordinal()]);
+			}
+		}
+
+		final SamlSlowMessage slowMessage = new SamlSlowMessage();
+		slowMessage.setTimestamp(System.currentTimeMillis());
+		slowMessage.setProcessorType(this.getClass().getSimpleName());
+		slowMessage.setMessageId(this.getMessageId());
+		slowMessage.setBinding(this.getBinding());
+		slowMessage.setIdpEntityId(this.getIdpEntityId());
+		slowMessage.setTotalNanos(totalNanos);
+		slowMessage.setStageNanos(stages);
+		slowMessage.setPayloadSize(this.getSamlMessageSize());
+		slowMessage.setAssertionCount(this.getAssertionCount());
+		slowMessage.setAttributeCount(this.getAttributeCount());
+		slowMessage.setSucceeded(succeeded);
+		if (this.slowMessageHandler.isMessageCaptured()) {
+			slowMessage.setRedactedMessage(SamlHelper.redactSamlMessage(this.getSamlMessage()));
+		}
+
+		return slowMessage;
+	}
+
 	/** Check the query processor initialization. */
 	protected void checkInitialization() {
 		Assert.notNull(this.spProcessor, "SP Processor wasn't provided !");
@@ -122,10 +395,8 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 	}
 
 	/**
-	 * Marshall the SAML message.
+	 * Marshall the SAML message. Only used if the SAML message cannot be decoded from the HTTP request.
 	 * 
-	 * @param httpRequest the HTTP request
-	 * @param binding the binding used
 	 * @return the SAML message in plain XML text
 	 * @throws SamlProcessingException if unable to initialize the processor
 	 * @throws SamlSecurityException if security problem
@@ -193,7 +464,7 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 	 * 
 	 * @param inResponseToId the original request Id
 	 * @return the Response
-	 * @throws SamlProcessingException if no request found in cache (may have expired)
+	 * @throws OrphanResponseException if no request found in cache (may have expired)
 	 * @throws SamlSecurityException if request not of expected type
 	 */
 	@SuppressWarnings("unchecked")
@@ -203,13 +474,13 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 		Assert.notNull(expectedRequestType, "No expected request type provided !");
 
 		// Try to retrieve original request
-		IRequestWaitingForResponse originalRequest =
-				this.getSpProcessor().getSaml20Storage().findRequestWaitingForResponse(inResponseToId);
+		final IRequestWaitingForResponse originalRequest = this.findOriginalRequest(inResponseToId);
 
 		// Original request cannot be null
 		if (originalRequest == null) {
-			throw new SamlProcessingException(
-					"No original AuthnRequest found matching the AuthnResponse (Request may have expired) !");
+			throw new OrphanResponseException(String.format(
+					"No original request [%s] found matching the response (Request may have expired) !",
+					inResponseToId));
 		}
 
 		// Original request must be of expected type
@@ -221,6 +492,24 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 		return (X) originalRequest;
 	}
 
+	/**
+	 * The request waiting for the response processed. Looked up in the storage on the first call only : the tracing
+	 * and the legitimacy check share the same lookup, the cache statistics don't depend on the tracing.
+	 * 
+	 * @param inResponseToId
+	 *            the original request Id
+	 * @return the original request, null if not found
+	 */
+	protected IRequestWaitingForResponse findOriginalRequest(final String inResponseToId) {
+		if (!this.originalRequestLookedUp) {
+			this.originalRequest = this.getSpProcessor().getSaml20Storage().findRequestWaitingForResponse(
+					inResponseToId);
+			this.originalRequestLookedUp = true;
+		}
+
+		return this.originalRequest;
+	}
+
 	/**
 	 * Build the IIncomingSaml object to return by processIncomingHttpRequest().
 	 * 
@@ -232,10 +521,6 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 			throws SamlProcessingException, SamlSecurityException {
 		Assert.notNull(this.httpRequest, "HTTP request is null !");
 
-		// SamlMessage
-		final String samlMessage = this.getSamlMessage();
-		Assert.hasText(samlMessage, "SAML message was not built yet !");
-
 		// Endpoint URL
 		final String endpointUrl = this.httpRequest.getRequestURL().toString();
 
@@ -246,7 +531,18 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 		final IQuery samlQuery = this.buildSamlQuery();
 
 		final SamlIncomingMessage samlIncMessage = new SamlIncomingMessage();
-		samlIncMessage.setSamlMessage(samlMessage);
+
+		// SamlMessage : kept encoded until read if not read yet
+		final String encodedSamlMessage = this.getEncodedSamlMessage();
+		if ((this.samlMessage == null) && (encodedSamlMessage != null) && (this.getBinding() != null)) {
+			samlIncMessage.setEncodedSamlMessage(encodedSamlMessage, this.getBinding());
+		} else {
+			if (this.samlMessage == null) {
+				this.samlMessage = this.marshallSamlMessage();
+			}
+			Assert.hasText(this.samlMessage, "SAML message was not built !");
+			samlIncMessage.setSamlMessage(this.samlMessage);
+		}
 		samlIncMessage.setEndpointUrl(endpointUrl);
 		samlIncMessage.setRelayState(relayState);
 		samlIncMessage.setSamlQuery(samlQuery);
@@ -254,6 +550,106 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 		return samlIncMessage;
 	}
 
+	/**
+	 * The binding used to transport the message, for the metrics.
+	 * 
+	 * @return the binding, null if unknown
+	 */
+	protected SamlBindingEnum getBinding() {
+		return null;
+	}
+
+	/**
+	 * The entity ID of the IdP issuer of the message, for the metrics.
+	 * 
+	 * @return the IdP entity ID, null if unknown
+	 */
+	public String getIdpEntityId() {
+		return null;
+	}
+
+	/**
+	 * The entity ID of the IdP issuer of the message if it is a configured IdP, for the metrics : the issuer is not
+	 * validated yet, it must not be used as a label.
+	 * 
+	 * @return the configured IdP entity ID, UNKNOWN_IDP if the issuer is not a configured IdP
+	 */
+	public String getKnownIdpEntityId() {
+		if (this.knownIdpEntityId == null) {
+			String idpLabel = IProcessingMetricsHandler.UNKNOWN_IDP;
+
+			final String idpEntityId = this.getIdpEntityId();
+			if ((idpEntityId != null) && (this.spProcessor != null)) {
+				final ISaml20IdpConnector idpConnector = this.spProcessor.findSaml20IdpConnectorToUse(idpEntityId);
+				if (idpConnector != null) {
+					idpLabel = idpConnector.getIdpConfig().getIdpEntityId();
+				}
+			}
+
+			this.knownIdpEntityId = idpLabel;
+		}
+
+		return this.knownIdpEntityId;
+	}
+
+	/**
+	 * The ID of the message, for the slow messages capture.
+	 * 
+	 * @return the message ID, null if unknown
+	 */
+	protected String getMessageId() {
+		return null;
+	}
+
+	/**
+	 * Count of assertions carried by the message, for the slow messages capture.
+	 * 
+	 * @return the count, -1 if not applicable
+	 */
+	protected int getAssertionCount() {
+		return -1;
+	}
+
+	/**
+	 * Count of attributes carried by the assertions of the message, for the slow messages capture.
+	 * 
+	 * @return the count, -1 if not applicable
+	 */
+	protected int getAttributeCount() {
+		return -1;
+	}
+
+	/**
+	 * Size of the SAML message : its length in plain XML text if already read, else the approximate size of the
+	 * Base64 decoded message of the HTTP request (deflated for the HTTP-Redirect binding), not to decode it only to
+	 * measure it.
+	 * 
+	 * @return the size in chars or bytes, -1 if unknown
+	 */
+	protected long getSamlMessageSize() {
+		long size = -1;
+
+		if (this.samlMessage != null) {
+			size = this.samlMessage.length();
+		} else {
+			final String encodedSamlMessage = this.getEncodedSamlMessage();
+			if (encodedSamlMessage != null) {
+				size = (encodedSamlMessage.length() / 4) * 3;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * The trace parent propagated by the request waiting for this message, for the tracing.
+	 * 
+	 * @return the trace parent, null to start a new trace
+	 */
+	protected String findTraceParent() {
+		return null;
+	}
+
 	/**
 	 * The SP Processor.
 	 * 
@@ -274,13 +670,67 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 	}
 
 	/**
-	 * SAML message in plain XML text.
-	 * @return the SAML message
+	 * Source of the message for the security audit.
+	 * 
+	 * @return the remote address of the HTTP request, null if unknown
+	 */
+	protected String getSource() {
+		return (this.httpRequest != null) ? this.httpRequest.getRemoteAddr() : null;
+	}
+
+	/**
+	 * SAML message in plain XML text. Read on the first call : the message as received in the HTTP request if
+	 * available, else marshalled from the SAML object.
+	 * 
+	 * @return the SAML message, null if unable to read it
 	 */
 	protected String getSamlMessage() {
+		if (this.samlMessage == null) {
+			this.samlMessage = this.readSamlMessage();
+		}
+
 		return this.samlMessage;
 	}
 
+	/**
+	 * Read the SAML message : decode the original message of the HTTP request, else marshall the SAML object.
+	 * 
+	 * @return the SAML message in plain XML text, null if unable to read it
+	 */
+	protected String readSamlMessage() {
+		String message = null;
+
+		final String encodedSamlMessage = this.getEncodedSamlMessage();
+		if ((encodedSamlMessage != null) && (this.getBinding() != null)) {
+			try {
+				message = SamlHelper.decodeSamlMessage(encodedSamlMessage, this.getBinding());
+			} catch (final IOException e) {
+				this.logger.warn("Unable to decode the SAML message of the HTTP request, it will be marshalled !", e);
+			}
+		}
+
+		if (message == null) {
+			try {
+				message = this.marshallSamlMessage();
+			} catch (final SamlProcessingException e) {
+				this.logger.warn("Unable to marshall the SAML message !", e);
+			} catch (final SamlSecurityException e) {
+				this.logger.warn("Unable to marshall the SAML message !", e);
+			}
+		}
+
+		return message;
+	}
+
+	/**
+	 * SAML message as received in the HTTP request, still encoded.
+	 * 
+	 * @return the encoded SAML message, null if not available
+	 */
+	protected String getEncodedSamlMessage() {
+		return (this.httpRequest != null) ? SamlHelper.getEncodedSamlMesage(this.httpRequest) : null;
+	}
+
 	public String getEndpointLocation() {
 		return this.endpointLocation;
 	}
@@ -289,4 +739,50 @@ public abstract class BaseSamlQueryProcessor<T extends IQuery> implements IQuery
 		this.endpointLocation = endpointLocation;
 	}
 
+	public IProcessingMetricsHandler getMetricsHandler() {
+		return this.metricsHandler;
+	}
+
+	public void setMetricsHandler(final IProcessingMetricsHandler metricsHandler) {
+		Assert.notNull(metricsHandler, "The metrics handler cannot be null !");
+		this.metricsHandler = metricsHandler;
+	}
+
+	public ISlowMessageHandler getSlowMessageHandler() {
+		return this.slowMessageHandler;
+	}
+
+	public void setSlowMessageHandler(final ISlowMessageHandler slowMessageHandler) {
+		Assert.notNull(slowMessageHandler, "The slow message handler cannot be null !");
+		this.slowMessageHandler = slowMessageHandler;
+	}
+
+	public ISecurityAuditHandler getSecurityAuditHandler() {
+		return this.securityAuditHandler;
+	}
+
+	public void setSecurityAuditHandler(final ISecurityAuditHandler securityAuditHandler) {
+		Assert.notNull(securityAuditHandler, "The security audit handler cannot be null !");
+		this.securityAuditHandler = securityAuditHandler;
+	}
+
+	/**
+	 * Duration of the decoding of the message by the query processor factory, part of the slow messages capture.
+	 * 
+	 * @param decodeNanos
+	 *            the duration in ns
+	 */
+	public void setDecodeNanos(final long decodeNanos) {
+		this.decodeNanos = decodeNanos;
+	}
+
+	public ITracingHandler getTracingHandler() {
+		return this.tracingHandler;
+	}
+
+	public void setTracingHandler(final ITracingHandler tracingHandler) {
+		Assert.notNull(tracingHandler, "The tracing handler cannot be null !");
+		this.tracingHandler = tracingHandler;
+	}
+
 }
@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.binding;
+
+import java.io.InputStream;
+
+import org.opensaml.saml2.binding.decoding.HTTPPostDecoder;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.ws.transport.http.HTTPInTransport;
+import org.opensaml.xml.parse.ParserPool;
+import org.springframework.util.StringUtils;
+
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * HTTP-POST decoder streaming the Base64 decoding of the SAML message straight into the XML parser. The OpenSAML
+ * decoder decodes the whole message in a byte array first. The posted message is already a String read by the servlet
+ * container, it is not copied again.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class StreamingHTTPPostDecoder extends HTTPPostDecoder {
+
+	/** Constructor with the default parser pool. */
+	public StreamingHTTPPostDecoder() {
+		super();
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param pool
+	 *            the parser pool used to deserialize messages
+	 */
+	public StreamingHTTPPostDecoder(final ParserPool pool) {
+		super(pool);
+	}
+
+	@Override
+	protected InputStream getBase64DecodedMessage(final HTTPInTransport transport) throws MessageDecodingException {
+		String encodedMessage = transport.getParameterValue(SamlHelper.SAML_REQUEST_PARAM_KEY);
+		if (!StringUtils.hasText(encodedMessage)) {
+			encodedMessage = transport.getParameterValue(SamlHelper.SAML_RESPONSE_PARAM_KEY);
+		}
+
+		if (!StringUtils.hasText(encodedMessage)) {
+			throw new MessageDecodingException("Request did not contain the SAMLRequest or SAMLResponse parameter. "
+					+ "Invalid request for SAML 2 HTTP POST binding.");
+		}
+
+		return SamlHelper.base64DecodeStream(encodedMessage);
+	}
+
+}
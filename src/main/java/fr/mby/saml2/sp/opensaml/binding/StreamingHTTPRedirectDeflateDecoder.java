@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.binding;
+
+import java.io.InputStream;
+
+import org.opensaml.saml2.binding.decoding.HTTPRedirectDeflateDecoder;
+import org.opensaml.ws.message.decoder.MessageDecodingException;
+import org.opensaml.xml.parse.ParserPool;
+
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * HTTP-Redirect decoder streaming the Base64 decoding and the inflation of the SAML message straight into the XML
+ * parser. The OpenSAML decoder decodes the whole message in a byte array first.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class StreamingHTTPRedirectDeflateDecoder extends HTTPRedirectDeflateDecoder {
+
+	/** Constructor with the default parser pool. */
+	public StreamingHTTPRedirectDeflateDecoder() {
+		super();
+	}
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param pool
+	 *            the parser pool used to deserialize messages
+	 */
+	public StreamingHTTPRedirectDeflateDecoder(final ParserPool pool) {
+		super(pool);
+	}
+
+	@Override
+	protected InputStream decodeMessage(final String message) throws MessageDecodingException {
+		return SamlHelper.httpRedirectDecodeStream(message);
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.core;
+
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.event.CacheEventListener;
+
+import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
+
+/**
+ * Ehcache listener of the requests waiting for response cache : an answered AuthnRequest is removed from the cache, so
+ * an AuthnRequest expiring is an abandoned login, recorded by the IdP connector which built it. Ehcache notices the
+ * expiry lazily (lookup, eviction or expired elements purge).
+ * 
+ * Stateless : all the instances are equal, so registering the listener twice on a cache is harmless.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class AbandonedLoginListener implements CacheEventListener {
+
+	@Override
+	public void notifyElementExpired(final Ehcache cache, final Element element) {
+		final Object value = (element != null) ? element.getObjectValue() : null;
+		if (value instanceof QueryAuthnRequest) {
+			final QueryAuthnRequest authnRequest = (QueryAuthnRequest) value;
+			if (authnRequest.getIdpConnectorBuilder() instanceof OpenSaml20IdpConnector) {
+				((OpenSaml20IdpConnector) authnRequest.getIdpConnectorBuilder()).recordAbandonedLogin(authnRequest);
+			}
+		}
+	}
+
+	@Override
+	public void notifyElementRemoved(final Ehcache cache, final Element element) throws CacheException {
+		// Not an abandon
+	}
+
+	@Override
+	public void notifyElementPut(final Ehcache cache, final Element element) throws CacheException {
+		// Nothing to do
+	}
+
+	@Override
+	public void notifyElementUpdated(final Ehcache cache, final Element element) throws CacheException {
+		// Nothing to do
+	}
+
+	@Override
+	public void notifyElementEvicted(final Ehcache cache, final Element element) {
+		// Lack of room, counted by the storage statistics
+	}
+
+	@Override
+	public void notifyRemoveAll(final Ehcache cache) {
+		// Nothing to do
+	}
+
+	@Override
+	public void dispose() {
+		// Nothing to release
+	}
+
+	@Override
+	public Object clone() throws CloneNotSupportedException {
+		return new AbandonedLoginListener();
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		return (obj != null) && (obj.getClass() == this.getClass());
+	}
+
+	@Override
+	public int hashCode() {
+		return this.getClass().hashCode();
+	}
+
+}
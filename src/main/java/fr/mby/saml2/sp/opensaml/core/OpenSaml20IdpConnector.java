@@ -66,11 +66,19 @@ import fr.mby.saml2.sp.api.core.ISaml20Storage;
 import fr.mby.saml2.sp.api.core.SamlBindingEnum;
 import fr.mby.saml2.sp.api.exception.SamlBuildingException;
 import fr.mby.saml2.sp.api.handler.ISamlDataAdaptor;
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
 import fr.mby.saml2.sp.api.om.IAuthentication;
 import fr.mby.saml2.sp.api.om.IOutgoingSaml;
 import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.api.om.ISpan;
 import fr.mby.saml2.sp.api.query.IQuery;
 import fr.mby.saml2.sp.impl.handler.BasicSamlDataAdaptor;
+import fr.mby.saml2.sp.impl.handler.NullTracingHandler;
+import fr.mby.saml2.sp.impl.helper.LoginStatistics;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
 import fr.mby.saml2.sp.impl.om.SamlOutgoingMessage;
 import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
 import fr.mby.saml2.sp.impl.query.QuerySloRequest;
@@ -88,6 +96,15 @@ import fr.mby.saml2.sp.opensaml.helper.OpenSamlHelper;
 @Service
 public class OpenSaml20IdpConnector implements ISaml20IdpConnector, InitializingBean {
 
+	/** Message type of the AuthnRequests. */
+	private static final String AUTHN_REQUEST_TYPE = "AuthnRequest";
+
+	/** Message type of the SLO Requests. */
+	private static final String SLO_REQUEST_TYPE = "SloRequest";
+
+	/** Message type of the SLO Responses. */
+	private static final String SLO_RESPONSE_TYPE = "SloResponse";
+
 	/** Logger. */
 	private final Logger logger = LoggerFactory.getLogger(OpenSaml20IdpConnector.class);
 
@@ -100,6 +117,15 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 	/** SAML data adaptor. Configure the shape of SAML datas in HTTP request. */
 	private ISamlDataAdaptor dataAdaptor;
 
+	/** Tracing handler. */
+	private ITracingHandler tracingHandler = NullTracingHandler.INSTANCE;
+
+	/** Live counters of the outgoing messages by type. */
+	private final MessageStatistics statistics = new MessageStatistics();
+
+	/** Live counters of the logins through this IdP. */
+	private final LoginStatistics loginStatistics = new LoginStatistics();
+
 	private final AuthnContextClassRefBuilder authnContextClassRefBuilder = new AuthnContextClassRefBuilder();
 
 	private final RequestedAuthnContextBuilder requestedAuthnContextBuilder = new RequestedAuthnContextBuilder();
@@ -124,19 +150,26 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 			final SamlBindingEnum binding) throws SamlBuildingException {
 		this.logger.debug("Building new SAML 2.0 Authentication Request ...");
 
-		final AuthnRequest authnRequest = this.buildAuthnRequest(binding);
+		final long start = System.nanoTime();
+		final ISpan span = this.startOutgoingSpan(OpenSaml20IdpConnector.AUTHN_REQUEST_TYPE, binding);
 
-		final IOutgoingSaml outgoingSaml;
+		IOutgoingSaml outgoingSaml = null;
 		try {
+			final AuthnRequest authnRequest = this.buildAuthnRequest(binding);
 			final QueryAuthnRequest samlQuery = this.buildQueryAuthnRequest(parametersMap);
+			samlQuery.setTraceParent(this.tracingHandler.buildTraceParent(span));
 			final String ssoEndpointUrl = this.idpConfig.getIdpSsoEndpointUrl(binding);
 			outgoingSaml = this.buildSamlOutgoingRequest(samlQuery, authnRequest, binding, ssoEndpointUrl);
+			samlQuery.setIssueTimeMillis(System.currentTimeMillis());
 			this.getSaml20SpProcessor().getSaml20Storage().storeRequestWaitingForResponse(samlQuery);
 
 		} catch (final MarshallingException e) {
 			throw new SamlBuildingException("Unable to build SAML 2.0 AuthnRequest !", e);
 		} catch (final SignatureException e) {
 			throw new SamlBuildingException("Unable to sign SAML 2.0 AuthnRequest !", e);
+		} finally {
+			this.endOutgoingSpan(span, outgoingSaml);
+			this.recordOutgoing(OpenSaml20IdpConnector.AUTHN_REQUEST_TYPE, start, outgoingSaml);
 		}
 
 		return outgoingSaml;
@@ -155,11 +188,14 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 		final IAuthentication auth = samlStorage.findAuthentication(sessionIndex);
 		Assert.notNull(auth, "SAML authentication cannot be null here !");
 
-		final LogoutRequest logoutRequest = this.buildLogoutRequest(binding, auth);
+		final long start = System.nanoTime();
+		final ISpan span = this.startOutgoingSpan(OpenSaml20IdpConnector.SLO_REQUEST_TYPE, binding);
 
-		final IOutgoingSaml outgoingSaml;
+		IOutgoingSaml outgoingSaml = null;
 		try {
+			final LogoutRequest logoutRequest = this.buildLogoutRequest(binding, auth);
 			final QuerySloRequest samlQuery = this.buildQuerySloRequest();
+			samlQuery.setTraceParent(this.tracingHandler.buildTraceParent(span));
 			final String sloEndpointUrl = this.idpConfig.getIdpSloEndpointUrl(binding);
 			outgoingSaml = this.buildSamlOutgoingRequest(samlQuery, logoutRequest, binding, sloEndpointUrl);
 			this.getSaml20SpProcessor().getSaml20Storage().storeRequestWaitingForResponse(samlQuery);
@@ -168,6 +204,9 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 			throw new SamlBuildingException("Unable to build SAML 2.0 SLO Request !", e);
 		} catch (final SignatureException e) {
 			throw new SamlBuildingException("Unable to sign SAML 2.0 SLO Request !", e);
+		} finally {
+			this.endOutgoingSpan(span, outgoingSaml);
+			this.recordOutgoing(OpenSaml20IdpConnector.SLO_REQUEST_TYPE, start, outgoingSaml);
 		}
 
 		return outgoingSaml;
@@ -178,10 +217,11 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 			final String relayState) throws SamlBuildingException {
 		this.logger.debug("Building new SAML 2.0 Single Logout Response ...");
 
-		final LogoutResponse logoutResponse = this.buildLogoutResponse(binding);
+		final long start = System.nanoTime();
 
-		final IOutgoingSaml outgoingSaml;
+		IOutgoingSaml outgoingSaml = null;
 		try {
+			final LogoutResponse logoutResponse = this.buildLogoutResponse(binding);
 			final IQuery samlQuery = this.buildQuerySloResponse(originRequestId);
 			final String sloEndpointUrl = this.idpConfig.getIdpSloEndpointUrl(binding);
 			outgoingSaml = this
@@ -191,6 +231,8 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 			throw new SamlBuildingException("Unable to build SAML 2.0 SLO Response !", e);
 		} catch (final SignatureException e) {
 			throw new SamlBuildingException("Unable to sign SAML 2.0 SLO Response !", e);
+		} finally {
+			this.recordOutgoing(OpenSaml20IdpConnector.SLO_RESPONSE_TYPE, start, outgoingSaml);
 		}
 
 		return outgoingSaml;
@@ -208,6 +250,59 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 		return this.spProcessor;
 	}
 
+	/**
+	 * Open the root span of a request waiting for a response if traced : the response processing continues its trace.
+	 * 
+	 * @param name
+	 *            the name of the span
+	 * @param binding
+	 *            the binding used to send the request
+	 * @return the span, null if not traced
+	 */
+	protected ISpan startOutgoingSpan(final String name, final SamlBindingEnum binding) {
+		ISpan span = null;
+
+		if (this.tracingHandler.isEnabled()) {
+			span = this.tracingHandler.startSpan(name, null);
+			span.setAttribute(ITracingHandler.BINDING_ATTRIBUTE, binding.name());
+			span.setAttribute(ITracingHandler.IDP_ATTRIBUTE, this.idpConfig.getIdpEntityId());
+		}
+
+		return span;
+	}
+
+	/**
+	 * End the root span of a request waiting for a response.
+	 * 
+	 * @param span
+	 *            the span, null if not traced
+	 * @param outgoingSaml
+	 *            the built request, null if the building failed
+	 */
+	protected void endOutgoingSpan(final ISpan span, final IOutgoingSaml outgoingSaml) {
+		if (span != null) {
+			if (outgoingSaml == null) {
+				span.setError();
+			}
+			this.tracingHandler.endSpan(span);
+		}
+	}
+
+	/**
+	 * Record an outgoing message in the live counters.
+	 * 
+	 * @param messageType
+	 *            the type of the message
+	 * @param start
+	 *            the start time of the building in ns
+	 * @param outgoingSaml
+	 *            the built message, null if the building failed
+	 */
+	protected void recordOutgoing(final String messageType, final long start, final IOutgoingSaml outgoingSaml) {
+		final String outcome = (outgoingSaml != null) ? MessageStatistics.SUCCESS : MessageStatistics.FAILURE;
+		this.statistics.record(messageType, outcome, System.nanoTime() - start);
+	}
+
 	/**
 	 * Prepare a new SAML 2.0 outgoing request to send to IdP with a new generated relayState.
 	 * 
@@ -264,10 +359,19 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 
 		// MBD bug : Forgot to sign the SAML Object
 		// Xml outgoing message
-		final String xmlOutgoingMsg;
+		String xmlOutgoingMsg = null;
 		if (SignableSAMLObject.class.isAssignableFrom(samlObject.getClass())) {
 			final SignableSAMLObject signableSamlObject = (SignableSAMLObject) samlObject;
-			xmlOutgoingMsg = OpenSamlHelper.marshallSignableSamlObject(signableSamlObject);
+			final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.OUTBOUND_SIGNING);
+			try {
+				xmlOutgoingMsg = OpenSamlHelper.marshallSignableSamlObject(signableSamlObject);
+			} finally {
+				if (SamlFlightRecorder.isRecording()) {
+					event.commit(signableSamlObject.getSignatureReferenceID(), this.getIdpConfig().getIdpEntityId(),
+							(xmlOutgoingMsg != null) ? xmlOutgoingMsg.length() : -1,
+							(xmlOutgoingMsg != null) ? SamlFlightRecorder.SUCCESS : SamlFlightRecorder.FAILURE);
+				}
+			}
 		} else {
 			xmlOutgoingMsg = OpenSamlHelper.marshallXmlObject(samlObject);
 		}
@@ -504,6 +608,31 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 
 	}
 
+	/**
+	 * Record the Response to an AuthnRequest built by this connector. Called once by the processor which removed the
+	 * answered AuthnRequest from the storage.
+	 * 
+	 * @param authnRequest
+	 *            the AuthnRequest matched by the Response
+	 */
+	public void recordLoginRoundTrip(final QueryAuthnRequest authnRequest) {
+		if (authnRequest.getIssueTimeMillis() > 0L) {
+			this.loginStatistics.recordRoundTrip(System.currentTimeMillis() - authnRequest.getIssueTimeMillis());
+		}
+	}
+
+	/**
+	 * Record an AuthnRequest built by this connector which expired unanswered.
+	 * 
+	 * @param authnRequest
+	 *            the expired AuthnRequest
+	 */
+	public void recordAbandonedLogin(final QueryAuthnRequest authnRequest) {
+		this.loginStatistics.recordAbandoned();
+		this.logger.debug("AuthnRequest [{}] expired without response from IdP [{}] !", authnRequest.getId(),
+				this.idpConfig.getIdpEntityId());
+	}
+
 	@Override
 	public IIdpConfig getIdpConfig() {
 		return this.idpConfig;
@@ -513,6 +642,33 @@ public class OpenSaml20IdpConnector implements ISaml20IdpConnector, Initializing
 		this.idpConfig = idpConfig;
 	}
 
+	/**
+	 * Live counters of the outgoing messages by type and outcome.
+	 * 
+	 * @return the statistics
+	 */
+	public MessageStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Live counters of the logins through this IdP : round trips and abandons.
+	 * 
+	 * @return the login statistics
+	 */
+	public LoginStatistics getLoginStatistics() {
+		return this.loginStatistics;
+	}
+
+	public ITracingHandler getTracingHandler() {
+		return this.tracingHandler;
+	}
+
+	public void setTracingHandler(final ITracingHandler tracingHandler) {
+		Assert.notNull(tracingHandler, "The tracing handler cannot be null !");
+		this.tracingHandler = tracingHandler;
+	}
+
 	public void setDataAdaptor(final ISamlDataAdaptor dataAdaptor) {
 		this.dataAdaptor = dataAdaptor;
 	}
@@ -53,8 +53,10 @@ import fr.mby.saml2.sp.api.config.ISpConfig;
 import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
 import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
 import fr.mby.saml2.sp.api.core.ISaml20Storage;
+import fr.mby.saml2.sp.api.exception.OrphanResponseException;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
+import fr.mby.saml2.sp.api.exception.SamlSecurityRejectionException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
 import fr.mby.saml2.sp.api.handler.IAuthenticationHandler;
 import fr.mby.saml2.sp.api.handler.ISingleLogoutHandler;
@@ -64,8 +66,13 @@ import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
 import fr.mby.saml2.sp.api.query.IQuery;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessor;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessorFactory;
+import fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
+import fr.mby.saml2.sp.impl.helper.ResourceUsageStatistics;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.impl.helper.ThreadResourceHelper;
 import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
+import fr.mby.saml2.sp.impl.query.engine.BaseSamlQueryProcessor;
 
 /**
  * Basic OpenSaml impl.
@@ -76,6 +83,12 @@ import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
 @Service
 public class OpenSaml20SpProcessor implements ISaml20SpProcessor, InitializingBean {
 
+	/** Message type of the incoming messages which cannot be decoded. */
+	private static final String UNKNOWN_MESSAGE_TYPE = "Unknown";
+
+	/** IdP of the incoming messages whose issuer is unknown. */
+	private static final String UNKNOWN_IDP = "UnknownIdP";
+
 	/** Logger. */
 	private final Logger logger = LoggerFactory.getLogger(OpenSaml20SpProcessor.class);
 
@@ -109,18 +122,53 @@ public class OpenSaml20SpProcessor implements ISaml20SpProcessor, InitializingBe
 	/** Query Processor Factory. */
 	private IQueryProcessorFactory queryProcessorFactory;
 
+	/** Live counters of the incoming messages by query processor type. */
+	private final MessageStatistics statistics = new MessageStatistics();
+
+	/** Measure the CPU time and the allocated bytes of each incoming message, disabled by default. */
+	private volatile boolean resourceAccountingEnabled = false;
+
+	/** Live totals of the CPU time and allocated bytes by IdP and query processor type. */
+	private final ResourceUsageStatistics resourceUsageStatistics = new ResourceUsageStatistics();
+
 	@Override
 	public IIncomingSaml processSaml20IncomingRequest(final HttpServletRequest request) throws SamlProcessingException,
 			UnsupportedSamlOperation {
 		IIncomingSaml incomingSaml = null;
 
-		// Build the adapted query processor
-		final IQueryProcessor queryProcessor = this.queryProcessorFactory.buildQueryProcessor(this, request);
-
-		// Process the message
-		incomingSaml = queryProcessor.processIncomingSamlMessage();
+		final long start = System.nanoTime();
+		final boolean accounted = this.resourceAccountingEnabled;
+		final long startCpuNanos = accounted ? ThreadResourceHelper.getCurrentThreadCpuNanos() : -1L;
+		final long startAllocatedBytes = accounted ? ThreadResourceHelper.getCurrentThreadAllocatedBytes() : -1L;
+		String messageType = OpenSaml20SpProcessor.UNKNOWN_MESSAGE_TYPE;
+		String idpEntityId = null;
+		String outcome = MessageStatistics.FAILURE;
+		try {
+			// Build the adapted query processor
+			final IQueryProcessor queryProcessor = this.queryProcessorFactory.buildQueryProcessor(this, request);
+			messageType = queryProcessor.getClass().getSimpleName();
+			if (queryProcessor instanceof BaseSamlQueryProcessor) {
+				idpEntityId = ((BaseSamlQueryProcessor<?>) queryProcessor).getKnownIdpEntityId();
+			}
 
-		this.tryAuthenticationPropagation(incomingSaml);
+			// Process the message
+			incomingSaml = queryProcessor.processIncomingSamlMessage();
+
+			this.tryAuthenticationPropagation(incomingSaml);
+
+			outcome = MessageStatistics.SUCCESS;
+		} catch (final OrphanResponseException e) {
+			outcome = MessageStatistics.ORPHAN;
+			throw e;
+		} catch (final SamlSecurityRejectionException e) {
+			outcome = MessageStatistics.REJECTED;
+			throw e;
+		} finally {
+			this.statistics.record(messageType, outcome, System.nanoTime() - start);
+			if (accounted) {
+				this.recordResourceUsage(idpEntityId, messageType, startCpuNanos, startAllocatedBytes);
+			}
+		}
 
 		return incomingSaml;
 	}
@@ -195,6 +243,12 @@ public class OpenSaml20SpProcessor implements ISaml20SpProcessor, InitializingBe
 		// Register this processor in the Helper
 		SamlHelper.registerSpProcessor(this);
 
+		// Count the AuthnRequests expiring unanswered
+		if (this.saml20Storage instanceof EhcacheSaml20Storage) {
+			((EhcacheSaml20Storage) this.saml20Storage).getSamlRequestWaitingForResponseCache()
+					.getCacheEventNotificationService().registerListener(new AbandonedLoginListener());
+		}
+
 		if (this.authenticationHandler == null) {
 			this.logger.warn("No Authentication Handler configured !");
 		}
@@ -228,6 +282,30 @@ public class OpenSaml20SpProcessor implements ISaml20SpProcessor, InitializingBe
 		return request;
 	}
 
+	/**
+	 * Record the CPU time and the bytes allocated by the current thread since the start of an incoming message
+	 * processing.
+	 * 
+	 * @param idpEntityId
+	 *            the configured IdP issuer of the message, null if unknown
+	 * @param messageType
+	 *            the query processor type
+	 * @param startCpuNanos
+	 *            the thread CPU time at the start
+	 * @param startAllocatedBytes
+	 *            the thread allocated bytes at the start
+	 */
+	protected void recordResourceUsage(final String idpEntityId, final String messageType, final long startCpuNanos,
+			final long startAllocatedBytes) {
+		final long cpuNanos = (startCpuNanos < 0) ? -1L : ThreadResourceHelper.getCurrentThreadCpuNanos()
+				- startCpuNanos;
+		final long allocatedBytes = (startAllocatedBytes < 0) ? -1L : ThreadResourceHelper
+				.getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+
+		final String idp = (idpEntityId != null) ? idpEntityId : OpenSaml20SpProcessor.UNKNOWN_IDP;
+		this.resourceUsageStatistics.record(idp, messageType, cpuNanos, allocatedBytes);
+	}
+
 	/**
 	 * Find the SAML 2.0 IdP Connector to use to process the SAML Object.
 	 * 
@@ -343,6 +421,32 @@ public class OpenSaml20SpProcessor implements ISaml20SpProcessor, InitializingBe
 		}
 	}
 
+	/**
+	 * Live counters of the incoming messages by query processor type and outcome.
+	 * 
+	 * @return the statistics
+	 */
+	public MessageStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Live totals of the CPU time and of the allocated bytes of the incoming messages by IdP and query processor type.
+	 * 
+	 * @return the resource usage statistics
+	 */
+	public ResourceUsageStatistics getResourceUsageStatistics() {
+		return this.resourceUsageStatistics;
+	}
+
+	public boolean isResourceAccountingEnabled() {
+		return this.resourceAccountingEnabled;
+	}
+
+	public void setResourceAccountingEnabled(final boolean resourceAccountingEnabled) {
+		this.resourceAccountingEnabled = resourceAccountingEnabled;
+	}
+
 	public Collection<ISaml20IdpConnector> getIdpConnectors() {
 		return this.idpConnectors;
 	}
@@ -37,8 +37,12 @@ import fr.mby.saml2.sp.impl.helper.SamlHelper;
 import fr.mby.saml2.sp.opensaml.wrapper.SpringResourceWrapper;
 
 import org.opensaml.common.IdentifierGenerator;
+import org.opensaml.common.SAMLObject;
 import org.opensaml.common.SignableSAMLObject;
 import org.opensaml.common.impl.SecureRandomIdentifierGenerator;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.RequestAbstractType;
+import org.opensaml.saml2.core.StatusResponseType;
 import org.opensaml.saml2.metadata.provider.MetadataProvider;
 import org.opensaml.saml2.metadata.provider.MetadataProviderException;
 import org.opensaml.saml2.metadata.provider.ResourceBackedMetadataProvider;
@@ -170,6 +174,40 @@ public abstract class OpenSamlHelper {
 		return xmlObject;
 	}
 
+	/**
+	 * Retrieve the entity ID of the issuer of a SAML 2.0 request or response.
+	 * 
+	 * @param samlObject the SAML object
+	 * @return the issuer entity ID, null if not a request or a response or if no issuer
+	 */
+	public static String getIssuerEntityId(final SAMLObject samlObject) {
+		Issuer issuer = null;
+
+		if (samlObject instanceof RequestAbstractType) {
+			issuer = ((RequestAbstractType) samlObject).getIssuer();
+		} else if (samlObject instanceof StatusResponseType) {
+			issuer = ((StatusResponseType) samlObject).getIssuer();
+		}
+
+		return (issuer != null) ? issuer.getValue() : null;
+	}
+
+	/**
+	 * Retrieve the ID of a signable SAML object (message or assertion).
+	 * 
+	 * @param samlObject the SAML object
+	 * @return the ID, null if the object is not signable
+	 */
+	public static String getSamlObjectId(final SAMLObject samlObject) {
+		String id = null;
+
+		if (samlObject instanceof SignableSAMLObject) {
+			id = ((SignableSAMLObject) samlObject).getSignatureReferenceID();
+		}
+
+		return id;
+	}
+
 	/**
 	 * Generate the relay state token.
 	 * It embbed the IdP config Id and the SAML binding used.
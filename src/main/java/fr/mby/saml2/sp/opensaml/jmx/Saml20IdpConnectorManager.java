@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.config.IIdpConfig;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
+
+/**
+ * JMX management of an IdP connector : outgoing messages counters and metadata refresh.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class Saml20IdpConnectorManager implements Saml20IdpConnectorManagerMBean {
+
+	/** The managed IdP connector. */
+	private final OpenSaml20IdpConnector idpConnector;
+
+	/**
+	 * Manage an IdP connector.
+	 * 
+	 * @param idpConnector
+	 *            the IdP connector
+	 */
+	public Saml20IdpConnectorManager(final OpenSaml20IdpConnector idpConnector) {
+		super();
+		Assert.notNull(idpConnector, "No IdP connector provided !");
+		this.idpConnector = idpConnector;
+	}
+
+	@Override
+	public String getIdpConfigId() {
+		return this.idpConnector.getIdpConfig().getId();
+	}
+
+	@Override
+	public String getIdpEntityId() {
+		return this.idpConnector.getIdpConfig().getIdpEntityId();
+	}
+
+	@Override
+	public long getMessageCount() {
+		return this.getStatistics().getCount();
+	}
+
+	@Override
+	public double getAverageLatencyMillis() {
+		return this.getStatistics().getMeanMillis();
+	}
+
+	@Override
+	public double getMaxLatencyMillis() {
+		return this.getStatistics().getMaxMillis();
+	}
+
+	@Override
+	public String[] getMessageStatistics() {
+		return this.getStatistics().report();
+	}
+
+	@Override
+	public String getLoginStatistics() {
+		return this.idpConnector.getLoginStatistics().report();
+	}
+
+	@Override
+	public long getAbandonedLoginCount() {
+		return this.idpConnector.getLoginStatistics().getAbandonedCount();
+	}
+
+	@Override
+	public String[] getEndpoints() {
+		final IIdpConfig idpConfig = this.idpConnector.getIdpConfig();
+		final List<String> endpoints = new ArrayList<String>();
+
+		for (final SamlBindingEnum binding : SamlBindingEnum.values()) {
+			endpoints.add(String.format("SSO %s %s", binding.name(), idpConfig.getIdpSsoEndpointUrl(binding)));
+			endpoints.add(String.format("SLO %s %s", binding.name(), idpConfig.getIdpSloEndpointUrl(binding)));
+		}
+
+		return endpoints.toArray(new String[endpoints.size()]);
+	}
+
+	@Override
+	public String refreshMetadata() {
+		String result;
+
+		final IIdpConfig idpConfig = this.idpConnector.getIdpConfig();
+		try {
+			idpConfig.refreshIdpMetadata();
+			result = String.format("%s refreshed", idpConfig.getId());
+		} catch (final Exception e) {
+			result = String.format("%s not refreshed: %s", idpConfig.getId(), e.getMessage());
+		}
+
+		return result;
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.getStatistics().reset();
+		this.idpConnector.getLoginStatistics().reset();
+	}
+
+	protected MessageStatistics getStatistics() {
+		return this.idpConnector.getStatistics();
+	}
+
+}
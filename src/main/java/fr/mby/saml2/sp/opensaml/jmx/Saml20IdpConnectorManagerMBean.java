@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+/**
+ * JMX management interface of an IdP connector.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface Saml20IdpConnectorManagerMBean {
+
+	/**
+	 * @return the IdP config ID
+	 */
+	String getIdpConfigId();
+
+	/**
+	 * @return the IdP entity ID
+	 */
+	String getIdpEntityId();
+
+	/**
+	 * @return the count of outgoing messages built
+	 */
+	long getMessageCount();
+
+	/**
+	 * @return the mean building latency of the outgoing messages in ms
+	 */
+	double getAverageLatencyMillis();
+
+	/**
+	 * @return the max building latency of the outgoing messages in ms
+	 */
+	double getMaxLatencyMillis();
+
+	/**
+	 * @return one line by outgoing message type and outcome : count and latencies
+	 */
+	String[] getMessageStatistics();
+
+	/**
+	 * @return the login round trips from the AuthnRequest issue to the Response receipt in ms, and the count of
+	 *         AuthnRequests expired unanswered
+	 */
+	String getLoginStatistics();
+
+	/**
+	 * @return the count of AuthnRequests expired unanswered
+	 */
+	long getAbandonedLoginCount();
+
+	/**
+	 * @return one line by IdP endpoint read in the metadata
+	 */
+	String[] getEndpoints();
+
+	/**
+	 * Reload the IdP metadata.
+	 * 
+	 * @return refreshed or the error
+	 */
+	String refreshMetadata();
+
+	/**
+	 * Reset the message statistics and the login statistics.
+	 */
+	void resetStatistics();
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.query.engine.IQueryProcessorFactory;
+import fr.mby.saml2.sp.impl.handler.HistogramProcessingMetricsHandler;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20SpProcessor;
+import fr.mby.saml2.sp.opensaml.query.engine.OpenSaml2QueryProcessorFactory;
+
+/**
+ * Register the JMX MBeans of an SP processor and of its IdP connectors, and unregister them on context shutdown.
+ * 
+ * The MBeans are named : [domain]:type=SpProcessor,name=[SP entity ID] and
+ * [domain]:type=IdpConnector,sp=[SP entity ID],name=[IdP config ID].
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class Saml20MBeanRegistrar implements InitializingBean, DisposableBean {
+
+	/** Default domain of the MBeans names. */
+	public static final String DEFAULT_DOMAIN = "fr.mby.saml2";
+
+	/** Logger. */
+	private final Logger logger = LoggerFactory.getLogger(Saml20MBeanRegistrar.class);
+
+	/** The SP processor to manage. */
+	private OpenSaml20SpProcessor spProcessor;
+
+	/** MBean server. Default : the platform MBean server. */
+	private MBeanServer mbeanServer;
+
+	/** Domain of the MBeans names. */
+	private String domain = Saml20MBeanRegistrar.DEFAULT_DOMAIN;
+
+	/** Metrics handler of the detailed timings. Default : the one of the factory if any. */
+	private HistogramProcessingMetricsHandler detailedTimingsHandler;
+
+	/** Names of the registered MBeans. */
+	private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		Assert.notNull(this.spProcessor, "No SP processor injected !");
+
+		if (this.mbeanServer == null) {
+			this.mbeanServer = ManagementFactory.getPlatformMBeanServer();
+		}
+
+		if (this.detailedTimingsHandler == null) {
+			this.detailedTimingsHandler = this.findFactoryMetricsHandler();
+		}
+
+		final String spName = ObjectName.quote(this.spProcessor.getSpConfig().getEntityId());
+		this.register(new Saml20SpProcessorManager(this.spProcessor, this.detailedTimingsHandler),
+				String.format("%s:type=SpProcessor,name=%s", this.domain, spName));
+
+		for (final ISaml20IdpConnector idpConnector : this.spProcessor.getIdpConnectors()) {
+			if (idpConnector instanceof OpenSaml20IdpConnector) {
+				final String idpName = ObjectName.quote(idpConnector.getIdpConfig().getId());
+				this.register(new Saml20IdpConnectorManager((OpenSaml20IdpConnector) idpConnector),
+						String.format("%s:type=IdpConnector,sp=%s,name=%s", this.domain, spName, idpName));
+			}
+		}
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		for (final ObjectName name : this.registeredNames) {
+			try {
+				this.mbeanServer.unregisterMBean(name);
+			} catch (final JMException e) {
+				this.logger.warn(String.format("Unable to unregister the MBean [%s] !", name), e);
+			}
+		}
+		this.registeredNames.clear();
+	}
+
+	/**
+	 * Register an MBean.
+	 * 
+	 * @param mbean
+	 *            the MBean
+	 * @param name
+	 *            the MBean name
+	 * @throws JMException
+	 */
+	protected void register(final Object mbean, final String name) throws JMException {
+		final ObjectName objectName = new ObjectName(name);
+		this.mbeanServer.registerMBean(mbean, objectName);
+		this.registeredNames.add(objectName);
+
+		this.logger.info("Registered the MBean [{}].", objectName);
+	}
+
+	/**
+	 * The detailed timings reuse the histogram metrics handler of the factory if one is configured.
+	 * 
+	 * @return the metrics handler of the factory or a new one
+	 */
+	protected HistogramProcessingMetricsHandler findFactoryMetricsHandler() {
+		HistogramProcessingMetricsHandler handler = null;
+
+		final IQueryProcessorFactory factory = this.spProcessor.getQueryProcessorFactory();
+		if (factory instanceof OpenSaml2QueryProcessorFactory) {
+			final IProcessingMetricsHandler factoryHandler = ((OpenSaml2QueryProcessorFactory) factory)
+					.getMetricsHandler();
+			if (factoryHandler instanceof HistogramProcessingMetricsHandler) {
+				handler = (HistogramProcessingMetricsHandler) factoryHandler;
+			}
+		}
+
+		if (handler == null) {
+			handler = new HistogramProcessingMetricsHandler();
+		}
+
+		return handler;
+	}
+
+	/**
+	 * Names of the registered MBeans.
+	 * 
+	 * @return the names
+	 */
+	public List<ObjectName> getRegisteredNames() {
+		return new ArrayList<ObjectName>(this.registeredNames);
+	}
+
+	public void setSpProcessor(final OpenSaml20SpProcessor spProcessor) {
+		this.spProcessor = spProcessor;
+	}
+
+	public void setMbeanServer(final MBeanServer mbeanServer) {
+		this.mbeanServer = mbeanServer;
+	}
+
+	public void setDomain(final String domain) {
+		this.domain = domain;
+	}
+
+	public void setDetailedTimingsHandler(final HistogramProcessingMetricsHandler detailedTimingsHandler) {
+		this.detailedTimingsHandler = detailedTimingsHandler;
+	}
+
+}
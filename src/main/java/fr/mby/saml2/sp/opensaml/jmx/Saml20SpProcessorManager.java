@@ -0,0 +1,312 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.sf.ehcache.Ehcache;
+
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20Storage;
+import fr.mby.saml2.sp.api.query.engine.IQueryProcessorFactory;
+import fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage;
+import fr.mby.saml2.sp.impl.handler.HistogramProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.NullProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.AsyncSecurityAuditHandler;
+import fr.mby.saml2.sp.impl.handler.RingBufferSlowMessageHandler;
+import fr.mby.saml2.sp.impl.helper.LatencyHistogram;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20SpProcessor;
+import fr.mby.saml2.sp.opensaml.query.engine.OpenSaml2QueryProcessorFactory;
+
+/**
+ * JMX management of an SP processor : incoming messages counters, storage caches and replay cache statistics. The
+ * detailed timings switch gives or removes the metrics handler to the query processor factory.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class Saml20SpProcessorManager implements Saml20SpProcessorManagerMBean {
+
+	/** The managed SP processor. */
+	private final OpenSaml20SpProcessor spProcessor;
+
+	/** Metrics handler given to the query processor factory while the detailed timings are enabled. */
+	private final HistogramProcessingMetricsHandler detailedTimingsHandler;
+
+	/**
+	 * Manage an SP processor.
+	 * 
+	 * @param spProcessor
+	 *            the SP processor
+	 * @param detailedTimingsHandler
+	 *            the metrics handler of the detailed timings
+	 */
+	public Saml20SpProcessorManager(final OpenSaml20SpProcessor spProcessor,
+			final HistogramProcessingMetricsHandler detailedTimingsHandler) {
+		super();
+		Assert.notNull(spProcessor, "No SP processor provided !");
+		Assert.notNull(detailedTimingsHandler, "No detailed timings handler provided !");
+		this.spProcessor = spProcessor;
+		this.detailedTimingsHandler = detailedTimingsHandler;
+	}
+
+	@Override
+	public String getSpEntityId() {
+		return this.spProcessor.getSpConfig().getEntityId();
+	}
+
+	@Override
+	public long getMessageCount() {
+		return this.getStatistics().getCount();
+	}
+
+	@Override
+	public double getAverageLatencyMillis() {
+		return this.getStatistics().getMeanMillis();
+	}
+
+	@Override
+	public double getMaxLatencyMillis() {
+		return this.getStatistics().getMaxMillis();
+	}
+
+	@Override
+	public String[] getMessageStatistics() {
+		return this.getStatistics().report();
+	}
+
+	@Override
+	public boolean isResourceAccountingEnabled() {
+		return this.spProcessor.isResourceAccountingEnabled();
+	}
+
+	@Override
+	public void setResourceAccountingEnabled(final boolean enabled) {
+		this.spProcessor.setResourceAccountingEnabled(enabled);
+	}
+
+	@Override
+	public double getTotalCpuMillis() {
+		return this.spProcessor.getResourceUsageStatistics().getTotalCpuNanos() / 1000000d;
+	}
+
+	@Override
+	public double getTotalAllocatedMegabytes() {
+		return this.spProcessor.getResourceUsageStatistics().getTotalAllocatedBytes() / 1048576d;
+	}
+
+	@Override
+	public String[] getResourceUsage() {
+		return this.spProcessor.getResourceUsageStatistics().report();
+	}
+
+	@Override
+	public long getOrphanResponseCount() {
+		return this.getStatistics().getCount(MessageStatistics.ORPHAN);
+	}
+
+	@Override
+	public String[] getCacheStatistics() {
+		String[] lines = new String[0];
+
+		final EhcacheSaml20Storage storage = this.getEhcacheStorage();
+		if (storage != null) {
+			lines = storage.reportStatistics();
+		}
+
+		return lines;
+	}
+
+	@Override
+	public String[] estimateRetainedSize(final int sampleSize) {
+		String[] lines = new String[0];
+
+		final EhcacheSaml20Storage storage = this.getEhcacheStorage();
+		if (storage != null) {
+			lines = storage.reportRetainedSize(sampleSize);
+		}
+
+		return lines;
+	}
+
+	@Override
+	public int getReplayCacheSize() {
+		int size = -1;
+
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		if (factory != null) {
+			size = factory.getReplayCacheSize();
+		}
+
+		return size;
+	}
+
+	@Override
+	public boolean isDetailedTimingsEnabled() {
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		return (factory != null) && (factory.getMetricsHandler() == this.detailedTimingsHandler);
+	}
+
+	@Override
+	public void setDetailedTimingsEnabled(final boolean enabled) {
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		Assert.notNull(factory, "The query processor factory doesn't support the detailed timings !");
+
+		if (enabled) {
+			factory.setMetricsHandler(this.detailedTimingsHandler);
+		} else {
+			factory.setMetricsHandler(NullProcessingMetricsHandler.INSTANCE);
+		}
+	}
+
+	@Override
+	public String[] getDetailedTimings() {
+		final Collection<LatencyHistogram> histograms = this.detailedTimingsHandler.getHistograms().values();
+		final String[] lines = new String[histograms.size()];
+
+		int k = 0;
+		for (final LatencyHistogram histogram : histograms) {
+			lines[k++] = histogram.report();
+		}
+
+		return lines;
+	}
+
+	@Override
+	public String[] getSlowMessages() {
+		String[] lines = new String[0];
+
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		if ((factory != null) && (factory.getSlowMessageHandler() instanceof RingBufferSlowMessageHandler)) {
+			lines = ((RingBufferSlowMessageHandler) factory.getSlowMessageHandler()).report();
+		}
+
+		return lines;
+	}
+
+	@Override
+	public String[] getSecurityAudit() {
+		String[] lines = new String[0];
+
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		if ((factory != null) && (factory.getSecurityAuditHandler() instanceof AsyncSecurityAuditHandler)) {
+			lines = ((AsyncSecurityAuditHandler) factory.getSecurityAuditHandler()).report();
+		}
+
+		return lines;
+	}
+
+	@Override
+	public int clearExpiredEntries() {
+		int removed = 0;
+
+		final EhcacheSaml20Storage storage = this.getEhcacheStorage();
+		if (storage != null) {
+			final int sizeBefore = this.getStorageSize(storage);
+			storage.evictExpiredElements();
+			removed += Math.max(0, sizeBefore - this.getStorageSize(storage));
+		}
+
+		final OpenSaml2QueryProcessorFactory factory = this.getOpenSamlFactory();
+		if (factory != null) {
+			removed += factory.purgeExpiredReplayEntries();
+		}
+
+		return removed;
+	}
+
+	@Override
+	public String[] refreshMetadata() {
+		final List<String> results = new ArrayList<String>();
+
+		for (final ISaml20IdpConnector idpConnector : this.spProcessor.getIdpConnectors()) {
+			final String idpId = idpConnector.getIdpConfig().getId();
+			try {
+				idpConnector.getIdpConfig().refreshIdpMetadata();
+				results.add(String.format("%s refreshed", idpId));
+			} catch (final Exception e) {
+				results.add(String.format("%s not refreshed: %s", idpId, e.getMessage()));
+			}
+		}
+
+		return results.toArray(new String[results.size()]);
+	}
+
+	@Override
+	public void resetStatistics() {
+		this.getStatistics().reset();
+		this.spProcessor.getResourceUsageStatistics().reset();
+		this.detailedTimingsHandler.reset();
+	}
+
+	/**
+	 * Count of elements in the storage caches.
+	 * 
+	 * @param storage
+	 *            the storage
+	 * @return the count
+	 */
+	protected int getStorageSize(final EhcacheSaml20Storage storage) {
+		int size = 0;
+
+		for (final Ehcache cache : storage.getCaches()) {
+			size += cache.getSize();
+		}
+
+		return size;
+	}
+
+	/**
+	 * @return the Ehcache storage, null if the storage is not backed by Ehcache
+	 */
+	protected EhcacheSaml20Storage getEhcacheStorage() {
+		EhcacheSaml20Storage result = null;
+
+		final ISaml20Storage storage = this.spProcessor.getSaml20Storage();
+		if (storage instanceof EhcacheSaml20Storage) {
+			result = (EhcacheSaml20Storage) storage;
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the OpenSaml query processor factory, null if another factory is used
+	 */
+	protected OpenSaml2QueryProcessorFactory getOpenSamlFactory() {
+		OpenSaml2QueryProcessorFactory result = null;
+
+		final IQueryProcessorFactory factory = this.spProcessor.getQueryProcessorFactory();
+		if (factory instanceof OpenSaml2QueryProcessorFactory) {
+			result = (OpenSaml2QueryProcessorFactory) factory;
+		}
+
+		return result;
+	}
+
+	protected MessageStatistics getStatistics() {
+		return this.spProcessor.getStatistics();
+	}
+
+}
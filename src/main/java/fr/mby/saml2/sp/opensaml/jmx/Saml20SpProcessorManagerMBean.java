@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+/**
+ * JMX management interface of an SP processor.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public interface Saml20SpProcessorManagerMBean {
+
+	/**
+	 * @return the SP entity ID
+	 */
+	String getSpEntityId();
+
+	/**
+	 * @return the count of incoming messages processed
+	 */
+	long getMessageCount();
+
+	/**
+	 * @return the mean processing latency of the incoming messages in ms
+	 */
+	double getAverageLatencyMillis();
+
+	/**
+	 * @return the max processing latency of the incoming messages in ms
+	 */
+	double getMaxLatencyMillis();
+
+	/**
+	 * @return one line by incoming message type and outcome : count and latencies
+	 */
+	String[] getMessageStatistics();
+
+	/**
+	 * @return true if the CPU time and the allocated bytes of the incoming messages are measured (false by default)
+	 */
+	boolean isResourceAccountingEnabled();
+
+	/**
+	 * Measure the CPU time and the allocated bytes of the incoming messages, or stop measuring them.
+	 * 
+	 * @param enabled
+	 *            true to measure them
+	 */
+	void setResourceAccountingEnabled(boolean enabled);
+
+	/**
+	 * @return the total CPU time of the incoming messages processing in ms
+	 */
+	double getTotalCpuMillis();
+
+	/**
+	 * @return the total bytes allocated by the incoming messages processing in MB
+	 */
+	double getTotalAllocatedMegabytes();
+
+	/**
+	 * @return one line by IdP and incoming message type : CPU time and allocated bytes, totals and by message
+	 */
+	String[] getResourceUsage();
+
+	/**
+	 * @return the count of responses matching no request waiting for a response : expired, evicted or forged
+	 */
+	long getOrphanResponseCount();
+
+	/**
+	 * @return by storage cache : one line of counters (size, stores, hits, misses, removals, evictions,
+	 *         expirations), then the ages of the removed, evicted and expired entries
+	 */
+	String[] getCacheStatistics();
+
+	/**
+	 * Estimate the heap retained by the storage entries, attributes maps, parameters maps, strings and objects. The
+	 * last stored entries are sampled.
+	 * 
+	 * @param sampleSize
+	 *            the max count of entries read by storage cache
+	 * @return one line by storage cache : bytes by entry and extrapolated to the cache, then the total
+	 */
+	String[] estimateRetainedSize(int sampleSize);
+
+	/**
+	 * @return the counters of the asynchronous security audit : queued, audited, sampled, rate limited, archived,
+	 *         dropped and written events
+	 */
+	String[] getSecurityAudit();
+
+	/**
+	 * @return the count of message IDs in the replay cache
+	 */
+	int getReplayCacheSize();
+
+	/**
+	 * @return true if the processing stages are timed
+	 */
+	boolean isDetailedTimingsEnabled();
+
+	/**
+	 * Time the processing stages of the incoming messages, or stop timing them.
+	 * 
+	 * @param enabled
+	 *            true to time the processing stages
+	 */
+	void setDetailedTimingsEnabled(boolean enabled);
+
+	/**
+	 * @return one line by processing stage, query processor, binding and IdP : count and latencies
+	 */
+	String[] getDetailedTimings();
+
+	/**
+	 * @return one line by slow message captured by the slow message handler of the query processors, oldest first
+	 */
+	String[] getSlowMessages();
+
+	/**
+	 * Remove the expired entries from the storage caches and from the replay cache.
+	 * 
+	 * @return the count of removed entries
+	 */
+	int clearExpiredEntries();
+
+	/**
+	 * Reload the metadata of all the IdPs.
+	 * 
+	 * @return one line by IdP : refreshed or the error
+	 */
+	String[] refreshMetadata();
+
+	/**
+	 * Reset the message statistics, the resource usage and the detailed timings.
+	 */
+	void resetStatistics();
+
+}
@@ -56,10 +56,15 @@ import fr.mby.saml2.sp.api.exception.SamlValidationException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
 import fr.mby.saml2.sp.api.om.IAuthentication;
 import fr.mby.saml2.sp.api.om.IInternalAuthentication;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
 import fr.mby.saml2.sp.impl.helper.SamlValidationHelper;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
 import fr.mby.saml2.sp.impl.om.BasicSamlAuthentication;
 import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
 import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
 import fr.mby.saml2.sp.opensaml.helper.OpenSamlHelper;
 
 /**
@@ -153,6 +158,13 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 		final String inResponseToId = authnResponse.getInResponseTo();
 		final QueryAuthnRequest originalRequest = this.checkResponseLegitimacy(inResponseToId, QueryAuthnRequest.class);
 
+		// The answered request leaves the storage : an AuthnRequest expiring in the storage is an abandoned login
+		final IRequestWaitingForResponse removedRequest = this.getSpProcessor().getSaml20Storage()
+				.removeRequestWaitingForResponse(inResponseToId);
+		if ((removedRequest != null) && (originalRequest.getIdpConnectorBuilder() instanceof OpenSaml20IdpConnector)) {
+			((OpenSaml20IdpConnector) originalRequest.getIdpConnectorBuilder()).recordLoginRoundTrip(originalRequest);
+		}
+
 		final QueryAuthnResponse query = new QueryAuthnResponse(authnResponse.getID());
 		query.setInResponseToId(inResponseToId);
 		query.setOriginalRequest(originalRequest);
@@ -161,6 +173,30 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 		return query;
 	}
 
+	@Override
+	protected int getAssertionCount() {
+		return (this.assertions != null) ? this.assertions.size() : -1;
+	}
+
+	/**
+	 * Attributes in clear of the assertions : the encrypted ones are counted once decrypted.
+	 */
+	@Override
+	protected int getAttributeCount() {
+		int count = -1;
+
+		if (this.assertions != null) {
+			count = 0;
+			for (final Assertion assertion : this.assertions) {
+				for (final AttributeStatement statement : assertion.getAttributeStatements()) {
+					count += statement.getAttributes().size();
+				}
+			}
+		}
+
+		return count;
+	}
+
 	/**
 	 * Retrieve all assertions, normal ones and encrypted ones if a private key was provided.
 	 * 
@@ -211,7 +247,12 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 			final ISaml20SpProcessor spProcessor = this.getSpProcessor();
 			final Decrypter decrypter = spProcessor.getDecrypter();
 
-			assertion = (Assertion) decrypter.decryptData(encAssertion.getEncryptedData(), true);
+			final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.ASSERTION_DECRYPTION);
+			try {
+				assertion = (Assertion) decrypter.decryptData(encAssertion.getEncryptedData(), true);
+			} finally {
+				this.commitDecryptionEvent(event, assertion != null);
+			}
 
 			if (this.logger.isDebugEnabled()) {
 				try {
@@ -225,6 +266,21 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 		return assertion;
 	}
 
+	/**
+	 * Commit a decryption event of the Response.
+	 * 
+	 * @param event
+	 *            the decryption event
+	 * @param decrypted
+	 *            true if the decryption succeeded
+	 */
+	private void commitDecryptionEvent(final ISamlEvent event, final boolean decrypted) {
+		if (SamlFlightRecorder.isRecording()) {
+			event.commit(this.getOpenSamlObject().getID(), this.getIdpEntityId(), this.getSamlMessageSize(),
+					decrypted ? SamlFlightRecorder.SUCCESS : SamlFlightRecorder.FAILURE);
+		}
+	}
+
 	/**
 	 * Decrypt Assertion Identifier and add it in the Subject.
 	 * 
@@ -240,7 +296,13 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 			if (encryptedId != null) {
 				final ISaml20SpProcessor spProcessor = this.getSpProcessor();
 				final Decrypter decrypter = spProcessor.getDecrypter();
-				final SAMLObject identifier = decrypter.decrypt(encryptedId);
+				SAMLObject identifier = null;
+				final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.NAME_ID_DECRYPTION);
+				try {
+					identifier = decrypter.decrypt(encryptedId);
+				} finally {
+					this.commitDecryptionEvent(event, identifier != null);
+				}
 				if ((identifier == null) || !NameID.class.isAssignableFrom(identifier.getClass())) {
 					// Encrypted ID not a NameID !
 					final String message = String.format("Encrypted ID type not supported: [%1$s] ! "
@@ -277,7 +339,13 @@ public class AuthnResponseQueryProcessor extends BaseOpenSaml2QueryProcessor<Que
 					while (encryptAttrIt.hasNext()) {
 						final EncryptedAttribute encryptedAttribute = encryptAttrIt.next();
 						// For every encrypted attribute
-						final Attribute attribute = decrypter.decrypt(encryptedAttribute);
+						Attribute attribute = null;
+						final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.ATTRIBUTE_DECRYPTION);
+						try {
+							attribute = decrypter.decrypt(encryptedAttribute);
+						} finally {
+							this.commitDecryptionEvent(event, attribute != null);
+						}
 
 						// Inject the Attribute in the assertion
 						attributeStmt.getAttributes().add(attribute);
@@ -27,6 +27,7 @@ import org.opensaml.common.xml.SAMLConstants;
 import org.opensaml.saml2.core.Assertion;
 import org.opensaml.saml2.core.Conditions;
 import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.StatusResponseType;
 import org.opensaml.saml2.metadata.IDPSSODescriptor;
 import org.opensaml.security.MetadataCriteria;
 import org.opensaml.xml.io.MarshallingException;
@@ -40,6 +41,7 @@ import org.opensaml.xml.signature.SignatureTrustEngine;
 import org.opensaml.xml.validation.ValidationException;
 import org.opensaml.xml.validation.Validator;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
 import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
@@ -48,8 +50,12 @@ import fr.mby.saml2.sp.api.exception.NotSignedException;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
 import fr.mby.saml2.sp.api.exception.SamlValidationException;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
 import fr.mby.saml2.sp.api.query.IQuery;
 import fr.mby.saml2.sp.impl.helper.SamlValidationHelper;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
 import fr.mby.saml2.sp.impl.query.engine.BaseSamlQueryProcessor;
 import fr.mby.saml2.sp.opensaml.helper.OpenSamlHelper;
 
@@ -80,13 +86,30 @@ public abstract class BaseOpenSaml2QueryProcessor<T extends IQuery, V extends SA
 	 * @param pHttpRequest
 	 * @param pSpProcessor
 	 */
-	@SuppressWarnings("unchecked")
 	public void initialize(final OpenSaml2QueryProcessorFactory pFactory, final SAMLObject samlObject,
 			final HttpServletRequest pHttpRequest, final ISaml20SpProcessor pSpProcessor) {
+		this.initialize(pFactory, samlObject, null, pHttpRequest, pSpProcessor);
+	}
+
+	/**
+	 * Initialize the OpenSaml 2 query processor.
+	 * 
+	 * @param pFactory
+	 * @param samlObject
+	 * @param pBinding
+	 *            the binding used for the message
+	 * @param pHttpRequest
+	 * @param pSpProcessor
+	 */
+	@SuppressWarnings("unchecked")
+	public void initialize(final OpenSaml2QueryProcessorFactory pFactory, final SAMLObject samlObject,
+			final SamlBindingEnum pBinding, final HttpServletRequest pHttpRequest,
+			final ISaml20SpProcessor pSpProcessor) {
 
 		super.initialize(pHttpRequest, pSpProcessor);
 		this.factory = pFactory;
 		this.openSamlObject = (V) samlObject;
+		this.binding = pBinding;
 	}
 
 	@Override
@@ -127,38 +150,70 @@ public abstract class BaseOpenSaml2QueryProcessor<T extends IQuery, V extends SA
 		Assert.notNull(idpConnector, "No IdP Connector provided to check the signature !");
 
 		if (signableObject != null) {
-			final CriteriaSet criteriaSet = new CriteriaSet();
-			criteriaSet.add(new EntityIDCriteria(issuer.getValue()));
+			final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.SIGNATURE_TRUST);
+			String outcome = SamlFlightRecorder.FAILURE;
+			try {
+				final Signature signature = signableObject.getSignature();
+				if ((signature == null) || signature.isNil()) {
+					outcome = SamlFlightRecorder.NOT_SIGNED;
+					throw new NotSignedException("The signature is missing !");
+				}
 
-			final Signature signature = signableObject.getSignature();
-			if ((signature == null) || signature.isNil()) {
-				throw new NotSignedException("The signature is missing !");
-			}
+				if (!this.isSignatureTrusted(signature, issuer, idpConnector)) {
+					outcome = SamlFlightRecorder.UNTRUSTED;
+					throw new SamlSecurityException("Signature is not valid or emitted by an untrusted party !");
+				}
 
-			final Validator<Signature> signatureValidator = this.factory.getSignatureValidator();
-			if (signatureValidator != null) {
-				try {
-					signatureValidator.validate(signature);
-				} catch (final ValidationException e) {
-					throw new SamlSecurityException("Signature is not a valid XML element !", e);
+				outcome = SamlFlightRecorder.SUCCESS;
+			} finally {
+				if (SamlFlightRecorder.isRecording()) {
+					event.commit(signableObject.getSignatureReferenceID(), issuer.getValue(),
+							this.getSamlMessageSize(), outcome);
 				}
 			}
+		}
+	}
 
-			// On test mode only if security keys are provided
-			criteriaSet.add(new MetadataCriteria(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
-			criteriaSet.add(new UsageCriteria(UsageType.SIGNING));
+	/**
+	 * Validate a signature if a signature profile validator was provided and verify it with IdP Metadata.
+	 * 
+	 * @param signature
+	 *            the signature to validate and verify
+	 * @param issuer
+	 *            issuer of the message
+	 * @param idpConnector
+	 *            the IdP connector holding the trust engine
+	 * @return true if the signature is trusted
+	 * @throws SamlSecurityException
+	 *             if the signature is not valid or if its trust cannot be validated
+	 */
+	protected boolean isSignatureTrusted(final Signature signature, final Issuer issuer,
+			final ISaml20IdpConnector idpConnector) throws SamlSecurityException {
+		final CriteriaSet criteriaSet = new CriteriaSet();
+		criteriaSet.add(new EntityIDCriteria(issuer.getValue()));
 
-			final SignatureTrustEngine signatureTrustEngine = idpConnector.getIdpConfig().getSignatureTrustEngine();
-			boolean isSignatureTrusted = false;
+		final Validator<Signature> signatureValidator = this.factory.getSignatureValidator();
+		if (signatureValidator != null) {
 			try {
-				isSignatureTrusted = signatureTrustEngine.validate(signature, criteriaSet);
-			} catch (final SecurityException e) {
-				throw new SamlSecurityException("Unable to validate signature trust !", e);
-			}
-			if (!isSignatureTrusted) {
-				throw new SamlSecurityException("Signature is not valid or emitted by an untrusted party !");
+				signatureValidator.validate(signature);
+			} catch (final ValidationException e) {
+				throw new SamlSecurityException("Signature is not a valid XML element !", e);
 			}
 		}
+
+		// On test mode only if security keys are provided
+		criteriaSet.add(new MetadataCriteria(IDPSSODescriptor.DEFAULT_ELEMENT_NAME, SAMLConstants.SAML20P_NS));
+		criteriaSet.add(new UsageCriteria(UsageType.SIGNING));
+
+		final SignatureTrustEngine signatureTrustEngine = idpConnector.getIdpConfig().getSignatureTrustEngine();
+		boolean isSignatureTrusted = false;
+		try {
+			isSignatureTrusted = signatureTrustEngine.validate(signature, criteriaSet);
+		} catch (final SecurityException e) {
+			throw new SamlSecurityException("Unable to validate signature trust !", e);
+		}
+
+		return isSignatureTrusted;
 	}
 
 	/**
@@ -212,10 +267,41 @@ public abstract class BaseOpenSaml2QueryProcessor<T extends IQuery, V extends SA
 	 * 
 	 * @return the binding
 	 */
+	@Override
 	protected SamlBindingEnum getBinding() {
 		return this.binding;
 	}
 
+	@Override
+	public String getIdpEntityId() {
+		return OpenSamlHelper.getIssuerEntityId(this.openSamlObject);
+	}
+
+	@Override
+	protected String getMessageId() {
+		return OpenSamlHelper.getSamlObjectId(this.openSamlObject);
+	}
+
+	/**
+	 * The trace of a response is the trace of the request it responds to.
+	 */
+	@Override
+	protected String findTraceParent() {
+		String traceParent = null;
+
+		if (this.openSamlObject instanceof StatusResponseType) {
+			final String inResponseToId = ((StatusResponseType) this.openSamlObject).getInResponseTo();
+			if (StringUtils.hasText(inResponseToId)) {
+				final IRequestWaitingForResponse originalRequest = this.findOriginalRequest(inResponseToId);
+				if (originalRequest != null) {
+					traceParent = originalRequest.getTraceParent();
+				}
+			}
+		}
+
+		return traceParent;
+	}
+
 	/**
 	 * The Abstract Factory which built the query processor.
 	 * 
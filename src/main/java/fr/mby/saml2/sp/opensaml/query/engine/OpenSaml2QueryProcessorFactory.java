@@ -28,9 +28,7 @@ import org.opensaml.common.SAMLObject;
 import org.opensaml.common.binding.BasicSAMLMessageContext;
 import org.opensaml.common.binding.decoding.SAMLMessageDecoder;
 import org.opensaml.common.binding.security.MessageReplayRule;
-import org.opensaml.util.storage.MapBasedStorageService;
 import org.opensaml.util.storage.ReplayCache;
-import org.opensaml.util.storage.ReplayCacheEntry;
 import org.opensaml.util.storage.StorageService;
 import org.opensaml.ws.message.MessageContext;
 import org.opensaml.ws.message.decoder.MessageDecodingException;
@@ -54,9 +52,22 @@ import fr.mby.saml2.sp.api.core.SamlBindingEnum;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.handler.ISecurityAuditHandler;
+import fr.mby.saml2.sp.api.handler.ISlowMessageHandler;
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessor;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessorFactory;
+import fr.mby.saml2.sp.impl.handler.NullProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.LoggerSecurityAuditHandler;
+import fr.mby.saml2.sp.impl.handler.NullSlowMessageHandler;
+import fr.mby.saml2.sp.impl.handler.NullTracingHandler;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.impl.jfr.ISamlEvent;
+import fr.mby.saml2.sp.impl.jfr.SamlEventTypeEnum;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
+import fr.mby.saml2.sp.opensaml.helper.OpenSamlHelper;
 
 /**
  * OpenSaml 2 implementation of QueryProcessorFactory. This factory build the OpenSaml tree object representing the SAML
@@ -80,6 +91,9 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 
 	private MessageReplayRule rule;
 
+	/** Storage of the replay cache. */
+	private ReplayStorageService replayStorage;
+
 	/** SAML Message Decoder (Base64, inflater, ...). */
 	private Map<SamlBindingEnum, SAMLMessageDecoder> samlMessageDecoders;
 
@@ -101,6 +115,18 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 	/** Spring bean factory. */
 	private BeanFactory beanFactory;
 
+	/** Processing metrics handler, given to the built query processors. */
+	private IProcessingMetricsHandler metricsHandler = NullProcessingMetricsHandler.INSTANCE;
+
+	/** Tracing handler, given to the built query processors. */
+	private ITracingHandler tracingHandler = NullTracingHandler.INSTANCE;
+
+	/** Slow message handler given to the query processors. */
+	private ISlowMessageHandler slowMessageHandler = NullSlowMessageHandler.INSTANCE;
+
+	/** Security audit handler given to the query processors. */
+	private ISecurityAuditHandler securityAuditHandler = LoggerSecurityAuditHandler.INSTANCE;
+
 	@Override
 	public IQueryProcessor buildQueryProcessor(final ISaml20SpProcessor spProcessor, final HttpServletRequest request)
 			throws UnsupportedSamlOperation, SamlProcessingException {
@@ -111,11 +137,17 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 		// Use OpenSaml to build OpenSaml representation of the message
 		final SamlBindingEnum bindingUsed = this.extractBindingFromRequest(request);
 		SAMLObject openSamlObject = null;
+		final boolean decodeTimed = this.metricsHandler.isEnabled() || this.slowMessageHandler.isEnabled();
+		final long decodeStart = decodeTimed ? System.nanoTime() : 0L;
+		final ISamlEvent decodeEvent = SamlFlightRecorder.begin(SamlEventTypeEnum.DECODE);
 		try {
 			openSamlObject = this.extractOpenSamlObjectFromRequest(request, bindingUsed);
 		} catch (final SamlSecurityException e) {
-			SamlHelper.logSecurityProblem(e, null);
+			SamlHelper.logSecurityProblem(this.securityAuditHandler, request.getRemoteAddr(), e, null);
+		} finally {
+			this.commitDecodeEvent(decodeEvent, request, openSamlObject);
 		}
+		final long decodeNanos = decodeTimed ? System.nanoTime() - decodeStart : 0L;
 
 		final String localElementName = openSamlObject.getElementQName().getLocalPart();
 
@@ -133,7 +165,17 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 			throw new SamlProcessingException("Unable to build new instance of OpenSaml Query Processor !", e);
 		}
 
-		newInstance.initialize(this, openSamlObject, request, spProcessor);
+		newInstance.initialize(this, openSamlObject, bindingUsed, request, spProcessor);
+		newInstance.setMetricsHandler(this.metricsHandler);
+		newInstance.setTracingHandler(this.tracingHandler);
+		newInstance.setSlowMessageHandler(this.slowMessageHandler);
+		newInstance.setSecurityAuditHandler(this.securityAuditHandler);
+		newInstance.setDecodeNanos(decodeNanos);
+
+		if (this.metricsHandler.isEnabled()) {
+			this.metricsHandler.recordStage(ProcessingStageEnum.DECODE, newInstance.getClass().getSimpleName(),
+					bindingUsed, newInstance.getKnownIdpEntityId(), decodeNanos);
+		}
 
 		this.logger.debug("Built a new QueryProcessor: [{}] for OpenSaml element: [{}] with binding: [{}]",
 				new Object[]{newInstance.getClass().getName(), localElementName, bindingUsed});
@@ -154,8 +196,8 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 		Assert.notNull(this.signatureValidator, "No signature validator configured !");
 
 		// TODO MBD: what to do with this ?
-		final StorageService<String, ReplayCacheEntry> storageEngine = new MapBasedStorageService<String, ReplayCacheEntry>();
-		final ReplayCache replayCache = new ReplayCache(storageEngine, 60 * 1000 * this.replayMinutes);
+		this.replayStorage = new ReplayStorageService();
+		final ReplayCache replayCache = new ReplayCache(this.replayStorage, 60 * 1000 * this.replayMinutes);
 		this.rule = new MessageReplayRule(replayCache);
 
 		Assert.notNull(this.samlMessageDecoders, "No SAML message decoders provided for this IdP connector !");
@@ -166,6 +208,58 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 
 	}
 
+	/**
+	 * Count of message IDs in the replay cache, expired or not.
+	 * 
+	 * @return the replay cache size
+	 */
+	public int getReplayCacheSize() {
+		int size = 0;
+
+		if (this.replayStorage != null) {
+			size = this.replayStorage.size();
+		}
+
+		return size;
+	}
+
+	/**
+	 * Remove the expired message IDs from the replay cache. The replay cache only removes an expired entry when the
+	 * same message ID is received again. An entry refreshed concurrently by the replay cache is not removed.
+	 * 
+	 * @return the count of removed entries
+	 */
+	public int purgeExpiredReplayEntries() {
+		int purged = 0;
+
+		if (this.replayStorage != null) {
+			purged = this.replayStorage.purgeExpiredEntries();
+		}
+
+		return purged;
+	}
+
+	/**
+	 * Commit the decoding event of a message.
+	 * 
+	 * @param event
+	 *            the decoding event
+	 * @param request
+	 *            the HTTP request
+	 * @param openSamlObject
+	 *            the decoded SAML object, null if the decoding failed
+	 */
+	protected void commitDecodeEvent(final ISamlEvent event, final HttpServletRequest request,
+			final SAMLObject openSamlObject) {
+		if (SamlFlightRecorder.isRecording()) {
+			final String encodedMessage = SamlHelper.getEncodedSamlMesage(request);
+			event.commit(OpenSamlHelper.getSamlObjectId(openSamlObject),
+					OpenSamlHelper.getIssuerEntityId(openSamlObject),
+					(encodedMessage != null) ? encodedMessage.length() : -1,
+					(openSamlObject != null) ? SamlFlightRecorder.SUCCESS : SamlFlightRecorder.FAILURE);
+		}
+	}
+
 	protected SamlBindingEnum extractBindingFromRequest(final HttpServletRequest request)
 			throws UnsupportedSamlOperation {
 		SamlBindingEnum binding = null;
@@ -338,6 +432,42 @@ public class OpenSaml2QueryProcessorFactory implements IQueryProcessorFactory, I
 		this.signatureValidator = signatureValidator;
 	}
 
+	public IProcessingMetricsHandler getMetricsHandler() {
+		return this.metricsHandler;
+	}
+
+	public void setMetricsHandler(final IProcessingMetricsHandler metricsHandler) {
+		Assert.notNull(metricsHandler, "The metrics handler cannot be null !");
+		this.metricsHandler = metricsHandler;
+	}
+
+	public ITracingHandler getTracingHandler() {
+		return this.tracingHandler;
+	}
+
+	public void setTracingHandler(final ITracingHandler tracingHandler) {
+		Assert.notNull(tracingHandler, "The tracing handler cannot be null !");
+		this.tracingHandler = tracingHandler;
+	}
+
+	public ISlowMessageHandler getSlowMessageHandler() {
+		return this.slowMessageHandler;
+	}
+
+	public void setSlowMessageHandler(final ISlowMessageHandler slowMessageHandler) {
+		Assert.notNull(slowMessageHandler, "The slow message handler cannot be null !");
+		this.slowMessageHandler = slowMessageHandler;
+	}
+
+	public ISecurityAuditHandler getSecurityAuditHandler() {
+		return this.securityAuditHandler;
+	}
+
+	public void setSecurityAuditHandler(final ISecurityAuditHandler securityAuditHandler) {
+		Assert.notNull(securityAuditHandler, "The security audit handler cannot be null !");
+		this.securityAuditHandler = securityAuditHandler;
+	}
+
 	public int getClockSkewSeconds() {
 		return this.clockSkewSeconds;
 	}
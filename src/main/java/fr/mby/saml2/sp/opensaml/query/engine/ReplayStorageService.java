@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opensaml.util.storage.MapBasedStorageService;
+import org.opensaml.util.storage.ReplayCacheEntry;
+
+/**
+ * Storage of the replay cache able to purge the expired message IDs. The lock of the ReplayCache is not reachable, so
+ * an entry is only removed if it is still the expired one : an entry refreshed meanwhile by the ReplayCache for the
+ * same message ID is a new entry and is kept.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class ReplayStorageService extends MapBasedStorageService<String, ReplayCacheEntry> {
+
+	/** Entries indexed by partition, the partitions are ConcurrentHashMap built by the super class. */
+	private final Map<String, Map<String, ReplayCacheEntry>> store;
+
+	/** Count of stored entries, maintained on each put and remove : the partitions are never walked to count. */
+	private final AtomicInteger size = new AtomicInteger();
+
+	public ReplayStorageService() {
+		this(new ConcurrentHashMap<String, Map<String, ReplayCacheEntry>>());
+	}
+
+	private ReplayStorageService(final Map<String, Map<String, ReplayCacheEntry>> pStore) {
+		super(pStore);
+		this.store = pStore;
+	}
+
+	@Override
+	public ReplayCacheEntry put(final String partition, final String key, final ReplayCacheEntry value) {
+		final ReplayCacheEntry previous = super.put(partition, key, value);
+
+		if ((key != null) && (previous == null)) {
+			this.size.incrementAndGet();
+		}
+
+		return previous;
+	}
+
+	@Override
+	public ReplayCacheEntry remove(final String partition, final String key) {
+		final ReplayCacheEntry removed = super.remove(partition, key);
+
+		if (removed != null) {
+			this.size.decrementAndGet();
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Count of stored entries, expired or not.
+	 * 
+	 * @return the count of stored entries
+	 */
+	public int size() {
+		return this.size.get();
+	}
+
+	/**
+	 * Remove the expired entries of every partition.
+	 * 
+	 * @return the count of removed entries
+	 */
+	public int purgeExpiredEntries() {
+		int purged = 0;
+
+		for (final Map<String, ReplayCacheEntry> entries : this.store.values()) {
+			final Iterator<Map.Entry<String, ReplayCacheEntry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				final Map.Entry<String, ReplayCacheEntry> mapEntry = iterator.next();
+				final ReplayCacheEntry entry = mapEntry.getValue();
+				if ((entry != null) && entry.isExpired() && this.removeIfSame(entries, mapEntry.getKey(), entry)) {
+					purged++;
+				}
+			}
+		}
+
+		return purged;
+	}
+
+	/**
+	 * Remove an entry only if it is still mapped to the key.
+	 * 
+	 * @param entries
+	 *            the entries of the partition
+	 * @param key
+	 *            the message ID
+	 * @param entry
+	 *            the expired entry
+	 * @return true if removed
+	 */
+	protected boolean removeIfSame(final Map<String, ReplayCacheEntry> entries, final String key,
+			final ReplayCacheEntry entry) {
+		boolean removed = false;
+
+		if (entries instanceof ConcurrentMap) {
+			removed = ((ConcurrentMap<String, ReplayCacheEntry>) entries).remove(key, entry);
+		} else {
+			synchronized (entries) {
+				if (entries.get(key) == entry) {
+					entries.remove(key);
+					removed = true;
+				}
+			}
+		}
+
+		if (removed) {
+			this.size.decrementAndGet();
+		}
+
+		return removed;
+	}
+
+}
@@ -116,8 +116,9 @@ public class SloRequestQueryProcessor extends BaseOpenSaml2QueryProcessor<QueryS
 	protected QuerySloRequest buildSamlQuery() throws SamlProcessingException, SamlSecurityException {
 		final LogoutRequest sloRequest = this.getOpenSamlObject();
 
-		// Incoming Request : No IdP connector builder, build by the IdP !
-		final QuerySloRequest query = new QuerySloRequest(sloRequest.getID(), null);
+		// Incoming Request : build by the IdP, attach the connector of the issuing IdP.
+		final ISaml20IdpConnector idpConnector = this.findIdpConnector(sloRequest.getIssuer());
+		final QuerySloRequest query = new QuerySloRequest(sloRequest.getID(), idpConnector);
 
 		return query;
 	}
@@ -189,6 +190,7 @@ public class SloRequestQueryProcessor extends BaseOpenSaml2QueryProcessor<QueryS
 					sloUrl = new URL(sloEndpointUrl);
 					sloConnexion = (HttpURLConnection) sloUrl.openConnection();
 					sloConnexion.setDoInput(true);
+					sloConnexion.setDoOutput(true);
 
 					final OutputStreamWriter writer = new OutputStreamWriter(sloConnexion.getOutputStream());
 					writer.write(samlDatas.toString());
@@ -0,0 +1,247 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.core;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.cache.ehcache.EhCacheFactoryBean;
+
+import fr.mby.saml2.sp.api.config.IIdpConfig;
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.impl.helper.CacheStatistics;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeCategoryEnum;
+import fr.mby.saml2.sp.impl.helper.RetainedSizeEstimate;
+import fr.mby.saml2.sp.impl.jfr.SamlFlightRecorder;
+import fr.mby.saml2.sp.impl.om.BasicSamlAuthentication;
+import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
+
+/**
+ * Test of the statistics and of the retained size estimates of the EhcacheSaml20Storage caches.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class EhcacheSaml20StorageTest {
+
+	/** Capacity of the requests waiting for response cache, tiny to trigger evictions. */
+	private static final int RWFR_CAPACITY = 2;
+
+	private EhcacheSaml20Storage storage;
+
+	private Ehcache rwfrCache;
+
+	@Before
+	public void initStorage() throws Exception {
+		final EhCacheFactoryBean cacheFactory = new EhCacheFactoryBean();
+		cacheFactory.setCacheName("testRwfrCache" + System.nanoTime());
+		cacheFactory.setMaxElementsInMemory(EhcacheSaml20StorageTest.RWFR_CAPACITY);
+		cacheFactory.setOverflowToDisk(false);
+		cacheFactory.afterPropertiesSet();
+		this.rwfrCache = cacheFactory.getObject();
+
+		this.storage = new EhcacheSaml20Storage();
+		this.storage.setSamlRequestWaitingForResponseCache(this.rwfrCache);
+		this.storage.afterPropertiesSet();
+	}
+
+	@Test
+	public void testRequestWaitingForResponseStatistics() throws Exception {
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_1"));
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_2"));
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_3"));
+
+		final CacheStatistics statistics = this.storage.getStatistics().get(this.rwfrCache.getName());
+		Assert.assertNotNull("No statistics for the RWFR cache !", statistics);
+		Assert.assertEquals("Wrong stores count !", 3, statistics.getStores());
+		Assert.assertEquals("The overflowing request was not evicted !", 1, statistics.getEvictions());
+		Assert.assertEquals("No evicted entry age recorded !", 1, statistics.getEvictedAges().getCount());
+
+		Assert.assertNotNull("Request not found !", this.storage.findRequestWaitingForResponse("_request_3"));
+		Assert.assertNull("Unknown request found !", this.storage.findRequestWaitingForResponse("_unknown"));
+		Assert.assertEquals("Wrong hits count !", 1, statistics.getHits());
+		Assert.assertEquals("Wrong misses count !", 1, statistics.getMisses());
+
+		this.storage.removeRequestWaitingForResponse("_request_3");
+		Assert.assertEquals("Wrong removals count !", 1, statistics.getRemovals());
+		Assert.assertEquals("Wrong expirations count !", 0, statistics.getExpirations());
+
+		Assert.assertTrue("No report for the RWFR cache !", this.storage.reportStatistics()[0].length() > 0);
+	}
+
+	@Test
+	public void testStatisticsInitializedTwice() throws Exception {
+		final int listenersCount = this.rwfrCache.getCacheEventNotificationService().getCacheEventListeners().size();
+		this.storage.afterPropertiesSet();
+		Assert.assertEquals("The statistics listener was registered again !", listenersCount, this.rwfrCache
+				.getCacheEventNotificationService().getCacheEventListeners().size());
+
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_1"));
+
+		final CacheStatistics statistics = this.storage.getStatistics().get(this.rwfrCache.getName());
+		Assert.assertEquals("The store was counted twice !", 1, statistics.getStores());
+	}
+
+	@Test
+	public void testLookupEventWithoutKey() throws Exception {
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_secret_request"));
+
+		final File dump = File.createTempFile("saml_storage_events", ".jfr");
+		final Recording recording = new Recording();
+		try {
+			recording.enable("fr.mby.saml2.StorageLookup");
+			recording.start();
+			this.storage.findRequestWaitingForResponse("_secret_request");
+			this.storage.findRequestWaitingForResponse("_other_secret_request");
+			recording.stop();
+			recording.dump(dump.toPath());
+
+			final List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+			Assert.assertEquals("Both lookups should be recorded !", 2, events.size());
+			for (final RecordedEvent event : events) {
+				Assert.assertEquals("Only the cache name should be recorded !", this.rwfrCache.getName(),
+						event.getString("messageId"));
+			}
+			Assert.assertEquals("Bad outcome for the first lookup !", SamlFlightRecorder.HIT, events.get(0)
+					.getString("outcome"));
+			Assert.assertEquals("Bad outcome for the second lookup !", SamlFlightRecorder.MISS, events.get(1)
+					.getString("outcome"));
+		} finally {
+			recording.close();
+			dump.delete();
+		}
+	}
+
+	@Test
+	public void testEstimateRetainedSize() throws Exception {
+		final BasicSamlAuthentication authentication = new BasicSamlAuthentication();
+		authentication.setSubjectId("subject");
+		authentication.setSessionIndex("_session_index");
+		authentication.addAttribute("mail", Arrays.asList("subject@recia.fr"));
+		authentication.addAttribute("groups", Arrays.asList("group1", "group2", "group3"));
+		this.storage.storeAuthentication("_session_index", authentication);
+
+		final IIdpConfig idpConfig = Mockito.mock(IIdpConfig.class);
+		Mockito.when(idpConfig.getId()).thenReturn("idpConfig");
+		final ISaml20IdpConnector idpConnector = Mockito.mock(ISaml20IdpConnector.class);
+		Mockito.when(idpConnector.getIdpConfig()).thenReturn(idpConfig);
+		final Map<String, String[]> parameters = new HashMap<String, String[]>();
+		parameters.put("service", new String[]{"https://service.recia.fr/login"});
+		this.storage.storeRequestWaitingForResponse(new QueryAuthnRequest("_request_1", idpConnector, parameters));
+
+		final List<RetainedSizeEstimate> estimates = this.storage.estimateRetainedSize(10);
+		Assert.assertEquals("One estimate by cache expected !", this.storage.getCaches().size(), estimates.size());
+
+		final RetainedSizeEstimate authEstimate = estimates.get(0);
+		Assert.assertEquals("Wrong sampled authentications count !", 1, authEstimate.getSampledCount());
+		Assert.assertTrue("No attributes maps estimated !",
+				authEstimate.getBytesPerEntry(RetainedSizeCategoryEnum.ATTRIBUTE_MAPS) > 0);
+		Assert.assertEquals("No parameters map in an authentication !", 0,
+				authEstimate.getBytesPerEntry(RetainedSizeCategoryEnum.PARAMETER_MAPS));
+		Assert.assertTrue("Strings underestimated !",
+				authEstimate.getBytesPerEntry(RetainedSizeCategoryEnum.STRINGS) > 6 * 24);
+
+		final RetainedSizeEstimate rwfrEstimate = estimates.get(estimates.size() - 1);
+		Assert.assertEquals("Wrong sampled requests count !", 1, rwfrEstimate.getSampledCount());
+		Assert.assertTrue("No parameters map estimated !",
+				rwfrEstimate.getBytesPerEntry(RetainedSizeCategoryEnum.PARAMETER_MAPS) > 0);
+		Assert.assertEquals("Wrong extrapolation !", rwfrEstimate.getBytesPerEntry(),
+				rwfrEstimate.getEstimatedTotalBytes());
+
+		final String[] report = this.storage.reportRetainedSize(10);
+		Assert.assertEquals("One line by cache and a total expected !", estimates.size() + 1, report.length);
+		Assert.assertTrue("The Name ID must be sampled !", report[1].contains("sampled=1 "));
+		Assert.assertTrue("The empty Base ID cache must not be sampled !", report[2].contains("sampled=0 "));
+	}
+
+	@Test
+	public void testEstimateSamplesLastStoredEntries() throws Exception {
+		final int count = CacheStatisticsListener.RECENT_KEYS_SIZE * 2;
+		for (int k = 0; k < count; k++) {
+			this.storage.storeAuthentication("_session_" + k, new BasicSamlAuthentication());
+		}
+
+		final RetainedSizeEstimate authEstimate = this.storage.estimateRetainedSize(count).get(0);
+		Assert.assertEquals("Wrong authentications count !", this.storage.getCaches().get(0).getKeys().size(),
+				authEstimate.getEntryCount());
+		Assert.assertEquals("The sample must be bounded by the recent keys !", CacheStatisticsListener.RECENT_KEYS_SIZE,
+				authEstimate.getSampledCount());
+
+		final CacheStatisticsListener listener = new CacheStatisticsListener(new CacheStatistics("test"));
+		final Ehcache cache = this.storage.getCaches().get(0);
+		for (int k = 0; k < count; k++) {
+			listener.notifyElementPut(cache, new Element("key" + k, "value"));
+		}
+		final List<Object> recentKeys = listener.getRecentKeys();
+		Assert.assertEquals("Wrong recent keys count !", CacheStatisticsListener.RECENT_KEYS_SIZE, recentKeys.size());
+		Assert.assertTrue("The last key must be kept !", recentKeys.contains("key" + (count - 1)));
+		Assert.assertFalse("The first key must be overwritten !", recentKeys.contains("key0"));
+	}
+
+	@Test
+	public void testRecentKeysNotRetained() throws Exception {
+		CacheStatisticsListener listener = null;
+		for (final Object cacheListener : this.rwfrCache.getCacheEventNotificationService().getCacheEventListeners()) {
+			if (cacheListener instanceof CacheStatisticsListener) {
+				listener = (CacheStatisticsListener) cacheListener;
+			}
+		}
+		Assert.assertNotNull("No statistics listener registered !", listener);
+
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_1"));
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_2"));
+		this.storage.removeRequestWaitingForResponse("_request_1");
+		Assert.assertEquals("The removed key must not be retained !", Arrays.asList("_request_2"),
+				listener.getRecentKeys());
+
+		// Evicts one of the stored requests
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_3"));
+		this.storage.storeRequestWaitingForResponse(this.buildRequest("_request_4"));
+		Assert.assertEquals("The evicted key must not be retained !", new HashSet<Object>(this.rwfrCache.getKeys()),
+				new HashSet<Object>(listener.getRecentKeys()));
+
+		listener.notifyElementExpired(this.rwfrCache, new Element("_request_4", "value"));
+		Assert.assertFalse("The expired key must not be retained !", listener.getRecentKeys().contains("_request_4"));
+
+		this.rwfrCache.removeAll();
+		Assert.assertTrue("No key must be retained after a clear !", listener.getRecentKeys().isEmpty());
+	}
+
+	protected IRequestWaitingForResponse buildRequest(final String id) {
+		final IRequestWaitingForResponse request = Mockito.mock(IRequestWaitingForResponse.class);
+		Mockito.when(request.getId()).thenReturn(id);
+		return request;
+	}
+
+}
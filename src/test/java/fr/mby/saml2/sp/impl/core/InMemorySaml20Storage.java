@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.impl.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import fr.mby.saml2.sp.api.core.ISaml20Storage;
+import fr.mby.saml2.sp.api.om.IAuthentication;
+import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+
+/**
+ * In memory SAML 2.0 storage without any expiration. This class is not a test but a helper for the tests and
+ * benchmarks which need a real storage instead of a mock recording every invocation.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public class InMemorySaml20Storage implements ISaml20Storage {
+
+	/** Authentications by session index. */
+	private final Map<String, IAuthentication> authentications = new ConcurrentHashMap<String, IAuthentication>();
+
+	/** Session index by SAML Name ID. */
+	private final Map<String, String> sessionIndexByNameId = new ConcurrentHashMap<String, String>();
+
+	/** Requests waiting for a response by request Id. */
+	private final Map<String, IRequestWaitingForResponse> requestsWaitingForResponse = new ConcurrentHashMap<String, IRequestWaitingForResponse>();
+
+	@Override
+	public void storeAuthentication(final String sessionIndex, final IAuthentication authentication) {
+		if (StringUtils.hasText(sessionIndex) && (authentication != null)) {
+			this.authentications.put(sessionIndex, authentication);
+
+			final String idpSubject = authentication.getSubjectId();
+			if (StringUtils.hasText(idpSubject)) {
+				this.sessionIndexByNameId.put(idpSubject, sessionIndex);
+			}
+		}
+	}
+
+	@Override
+	public IAuthentication findAuthentication(final String sessionIndex) {
+		IAuthentication auth = null;
+
+		if (StringUtils.hasText(sessionIndex)) {
+			auth = this.authentications.get(sessionIndex);
+		}
+
+		return auth;
+	}
+
+	@Override
+	public IAuthentication removeAuthentication(final String sessionIndex) {
+		IAuthentication auth = null;
+
+		if (StringUtils.hasText(sessionIndex)) {
+			auth = this.authentications.remove(sessionIndex);
+		}
+
+		if (auth != null) {
+			final String idpSubject = auth.getSubjectId();
+			if (StringUtils.hasText(idpSubject)) {
+				this.sessionIndexByNameId.remove(idpSubject);
+			}
+		}
+
+		return auth;
+	}
+
+	@Override
+	public String findSessionIndexBySamlNameId(final String nameId) {
+		String sessionIndex = null;
+
+		if (StringUtils.hasText(nameId)) {
+			sessionIndex = this.sessionIndexByNameId.get(nameId);
+		}
+
+		return sessionIndex;
+	}
+
+	@Override
+	public void storeRequestWaitingForResponse(final IRequestWaitingForResponse request) {
+		Assert.notNull(request, "Trying to store a null request in cache !");
+		Assert.hasText(request.getId(), "Trying to store a request without Id in cache !");
+		this.requestsWaitingForResponse.put(request.getId(), request);
+	}
+
+	@Override
+	public IRequestWaitingForResponse findRequestWaitingForResponse(final String requestId) {
+		Assert.hasText(requestId, "No requestId supplied !");
+		return this.requestsWaitingForResponse.get(requestId);
+	}
+
+	@Override
+	public IRequestWaitingForResponse removeRequestWaitingForResponse(final String requestId) {
+		Assert.hasText(requestId, "No requestId supplied !");
+		return this.requestsWaitingForResponse.remove(requestId);
+	}
+
+	@Override
+	public void clear() {
+		this.authentications.clear();
+		this.sessionIndexByNameId.clear();
+		this.requestsWaitingForResponse.clear();
+	}
+
+}
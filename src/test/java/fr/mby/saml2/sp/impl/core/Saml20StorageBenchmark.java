@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.impl.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.config.IIdpConfig;
+import fr.mby.saml2.sp.api.core.ISaml20Storage;
+import fr.mby.saml2.sp.impl.config.BasicIdpConfig;
+import fr.mby.saml2.sp.impl.config.WayfConfig;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.om.BasicSamlAuthentication;
+import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
+
+/**
+ * Multi-threaded JMH benchmark of an ISaml20Storage implementation.
+ * 
+ * Each operation is drawn at random following the weights of the mix parameter :
+ * storeRequest:findRequest:removeRequest:storeAuthentication:findAuthentication:removeAuthentication. The default
+ * mix 1:1:1:0:0:0 is the login path (store the RWFR, find it, then remove it).
+ * 
+ * Keys live in a sliding window : stores use a new key at the head of the window, finds and removes target a random
+ * key in the last "population" keys. The storage is filled with "population" requests and authentications before the
+ * measurement, so finds mostly hit while stores and removes are balanced.
+ * 
+ * Any implementation with a default constructor can be benchmarked on the same workload (InitializingBean and
+ * DisposableBean are honored) :
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="Saml20StorageBenchmark -t 16 -p population=1000000
+ * -p storageClass=fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class Saml20StorageBenchmark {
+
+	/** Thread counts run by main(). */
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+	/** Operations in the order of the mix parameter. */
+	private static final int STORE_REQUEST = 0;
+
+	private static final int FIND_REQUEST = 1;
+
+	private static final int REMOVE_REQUEST = 2;
+
+	private static final int STORE_AUTHENTICATION = 3;
+
+	private static final int FIND_AUTHENTICATION = 4;
+
+	private static final int REMOVE_AUTHENTICATION = 5;
+
+	/** ISaml20Storage implementation to benchmark. */
+	@Param({"fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage", "fr.mby.saml2.sp.impl.core.InMemorySaml20Storage"})
+	private String storageClass;
+
+	/** Number of live keys. */
+	@Param({"10000", "1000000"})
+	private int population;
+
+	/** Operations weights. */
+	@Param({"1:1:1:0:0:0", "1:1:1:1:4:1"})
+	private String mix;
+
+	private ISaml20Storage storage;
+
+	private OpenSaml20IdpConnector idpConnector;
+
+	private final Map<String, String[]> parametersMap = Collections.emptyMap();
+
+	/** Cumulated operation weights. */
+	private int[] cumulatedWeights;
+
+	/** Head of the request keys window. */
+	private final AtomicLong requestSequence = new AtomicLong();
+
+	/** Head of the authentication keys window. */
+	private final AtomicLong authenticationSequence = new AtomicLong();
+
+	/**
+	 * Per thread random generator.
+	 */
+	@State(Scope.Thread)
+	public static class ThreadState {
+
+		private final Random random = new Random();
+
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SamlBenchmarkHelper.configureLogging();
+
+		this.cumulatedWeights = new int[6];
+		final String[] weights = this.mix.split(":");
+		Assert.isTrue(weights.length == this.cumulatedWeights.length,
+				"The mix must provide 6 weights separated by ':' !");
+		int cumulated = 0;
+		for (int k = 0; k < weights.length; k++) {
+			cumulated += Integer.parseInt(weights[k].trim());
+			this.cumulatedWeights[k] = cumulated;
+		}
+		Assert.isTrue(cumulated > 0, "The mix must provide at least one positive weight !");
+
+		this.idpConnector = Saml20StorageBenchmark.buildIdpConnector();
+
+		this.storage = (ISaml20Storage) Class.forName(this.storageClass).newInstance();
+		if (this.storage instanceof InitializingBean) {
+			((InitializingBean) this.storage).afterPropertiesSet();
+		}
+		this.storage.clear();
+
+		for (int k = 0; k < this.population; k++) {
+			this.storeRequest(this.requestSequence.incrementAndGet());
+			this.storeAuthentication(this.authenticationSequence.incrementAndGet());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		this.storage.clear();
+		if (this.storage instanceof DisposableBean) {
+			((DisposableBean) this.storage).destroy();
+		}
+	}
+
+	@Benchmark
+	public void mixedWorkload(final ThreadState threadState, final Blackhole blackhole) {
+		final Random random = threadState.random;
+		final int draw = random.nextInt(this.cumulatedWeights[this.cumulatedWeights.length - 1]);
+
+		int operation = 0;
+		while (draw >= this.cumulatedWeights[operation]) {
+			operation++;
+		}
+
+		switch (operation) {
+			case STORE_REQUEST :
+				this.storeRequest(this.requestSequence.incrementAndGet());
+				break;
+			case FIND_REQUEST :
+				blackhole.consume(this.storage.findRequestWaitingForResponse(this.requestKey(this.randomLiveKey(
+						this.requestSequence, random))));
+				break;
+			case REMOVE_REQUEST :
+				blackhole.consume(this.storage.removeRequestWaitingForResponse(this.requestKey(this.randomLiveKey(
+						this.requestSequence, random))));
+				break;
+			case STORE_AUTHENTICATION :
+				this.storeAuthentication(this.authenticationSequence.incrementAndGet());
+				break;
+			case FIND_AUTHENTICATION :
+				blackhole.consume(this.storage.findAuthentication(this.sessionIndex(this.randomLiveKey(
+						this.authenticationSequence, random))));
+				break;
+			case REMOVE_AUTHENTICATION :
+				blackhole.consume(this.storage.removeAuthentication(this.sessionIndex(this.randomLiveKey(
+						this.authenticationSequence, random))));
+				break;
+			default :
+				throw new IllegalStateException("Unknown operation !");
+		}
+	}
+
+	protected void storeRequest(final long key) {
+		this.storage.storeRequestWaitingForResponse(new QueryAuthnRequest(this.requestKey(key), this.idpConnector,
+				this.parametersMap));
+	}
+
+	protected void storeAuthentication(final long key) {
+		final BasicSamlAuthentication authentication = new BasicSamlAuthentication();
+		final String sessionIndex = this.sessionIndex(key);
+		authentication.setSessionIndex(sessionIndex);
+		authentication.setSubjectId("subject_" + key);
+		authentication.lock();
+		this.storage.storeAuthentication(sessionIndex, authentication);
+	}
+
+	protected long randomLiveKey(final AtomicLong sequence, final Random random) {
+		return sequence.get() - random.nextInt(this.population);
+	}
+
+	protected String requestKey(final long key) {
+		return "_rwfr_" + key;
+	}
+
+	protected String sessionIndex(final long key) {
+		return "_session_" + key;
+	}
+
+	/**
+	 * Build a bare IdP connector registered in the WAYF config, so the requests can be deserialized by the stores
+	 * overflowing to disk.
+	 * 
+	 * @return the IdP connector
+	 * @throws Exception
+	 */
+	protected static OpenSaml20IdpConnector buildIdpConnector() throws Exception {
+		final BasicIdpConfig idpConfig = new BasicIdpConfig();
+		idpConfig.setId("benchIdpConfig");
+
+		final OpenSaml20IdpConnector idpConnector = new OpenSaml20IdpConnector();
+		idpConnector.setIdpConfig(idpConfig);
+		idpConfig.registerSaml20IdpConnector(idpConnector);
+
+		final WayfConfig wayfConfig = new WayfConfig();
+		wayfConfig.setIdpIdParamKey("idpId");
+		wayfConfig.setConfig(Collections.<IIdpConfig> singletonList(idpConfig));
+		wayfConfig.afterPropertiesSet();
+
+		return idpConnector;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		for (final int threads : Saml20StorageBenchmark.THREAD_COUNTS) {
+			final Options options = new OptionsBuilder().include(Saml20StorageBenchmark.class.getSimpleName())
+					.threads(threads).build();
+			new Runner(options).run();
+		}
+	}
+
+}
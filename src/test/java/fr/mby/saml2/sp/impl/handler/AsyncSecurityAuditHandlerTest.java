@@ -0,0 +1,343 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.mby.saml2.sp.api.exception.SamlSecurityException;
+import fr.mby.saml2.sp.api.handler.ISamlMessageProvider;
+
+/**
+ * Test of the AsyncSecurityAuditHandler.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class AsyncSecurityAuditHandlerTest {
+
+	private File directory;
+
+	private AsyncSecurityAuditHandler auditHandler;
+
+	@Before
+	public void initDirectory() throws Exception {
+		this.directory = File.createTempFile("saml_audit", "");
+		this.directory.delete();
+
+		// Frozen clock : all the events in the same rate window
+		this.auditHandler = new AsyncSecurityAuditHandler() {
+
+			@Override
+			protected long currentSecond() {
+				return 42L;
+			}
+		};
+		this.auditHandler.setDirectory(this.directory);
+	}
+
+	@After
+	public void deleteDirectory() throws Exception {
+		this.auditHandler.destroy();
+		FileUtils.deleteDirectory(this.directory);
+	}
+
+	@Test
+	public void testRateLimitingAndSampling() throws Exception {
+		this.auditHandler.setEventsPerSecond(2);
+		this.auditHandler.setSamplingRate(5);
+		this.auditHandler.afterPropertiesSet();
+
+		final SamlSecurityException problem = new SamlSecurityException("Untrusted signature !");
+		for (int k = 0; k < 20; k++) {
+			this.auditHandler.audit("10.0.0.1", problem, this.message("<samlp:Response ID=\"_" + k + "\"/>"));
+		}
+		this.auditHandler.audit("10.0.0.2", problem, null);
+		this.auditHandler.destroy();
+
+		Assert.assertEquals("Wrong audited count !", 3, this.auditHandler.getAuditedCount());
+		Assert.assertEquals("Wrong sampled count !", 3, this.auditHandler.getSampledCount());
+		Assert.assertEquals("Wrong rate limited count !", 15, this.auditHandler.getRateLimitedCount());
+		Assert.assertEquals("No event should be dropped !", 0, this.auditHandler.getDroppedCount());
+		Assert.assertEquals("Wrong written count !", 6, this.auditHandler.getWrittenCount());
+
+		final String audit = FileUtils.readFileToString(new File(this.directory, "saml-security-audit.log"), "UTF-8");
+		Assert.assertTrue("Sampled event not written !",
+				audit.contains("sampled=[true] message=[<samlp:Response ID=\"_6\"/>]"));
+		Assert.assertTrue("Problem not written !", audit.contains("Untrusted signature !"));
+		Assert.assertTrue("Rate limited events not reported !", audit.contains("RATE_LIMITED source=[10.0.0.1]"));
+		Assert.assertFalse("Rate limited event written !", audit.contains("ID=\"_7\""));
+	}
+
+	@Test
+	public void testArchiveRotation() throws Exception {
+		this.auditHandler.setArchiving(true);
+		this.auditHandler.setEventsPerSecond(20);
+		this.auditHandler.setMaxFileBytes(300);
+		this.auditHandler.setMaxRotatedFiles(3);
+		this.auditHandler.afterPropertiesSet();
+
+		for (int k = 0; k < 20; k++) {
+			this.auditHandler.archive("10.0.0.1", this.message("<samlp:Response ID=\"_" + k + "\">"
+					+ String.format("%0100d", k) + "</samlp:Response>"));
+		}
+		this.auditHandler.destroy();
+
+		Assert.assertEquals("Wrong archived count !", 20, this.auditHandler.getArchivedCount());
+		Assert.assertEquals("Wrong written count !", 20, this.auditHandler.getWrittenCount());
+
+		final File[] rotatedFiles = new AsyncSecurityAuditHandler.RotatingFile(this.directory, "saml-inbound-archive",
+				300, 3).getRotatedFiles();
+		Assert.assertEquals("Oldest rotated files not deleted !", 3, rotatedFiles.length);
+		final GZIPInputStream rotated = new GZIPInputStream(new FileInputStream(rotatedFiles[0]));
+		try {
+			Assert.assertTrue("Bad rotated file content !", IOUtils.toString(rotated, "UTF-8").contains("INBOUND"));
+		} finally {
+			rotated.close();
+		}
+	}
+
+	@Test
+	public void testArchiveRateLimiting() throws Exception {
+		this.auditHandler.setArchiving(true);
+		this.auditHandler.setEventsPerSecond(2);
+		this.auditHandler.setSamplingRate(0);
+		this.auditHandler.afterPropertiesSet();
+
+		for (int k = 0; k < 5; k++) {
+			this.auditHandler.archive("10.0.0.1", this.message("<samlp:Response ID=\"_" + k + "\"/>"));
+		}
+		this.auditHandler.audit("10.0.0.1", new SamlSecurityException("Untrusted signature !"), null);
+		this.auditHandler.destroy();
+
+		Assert.assertEquals("Wrong archived count !", 2, this.auditHandler.getArchivedCount());
+		Assert.assertEquals("Archives must not consume the audit rate !", 1, this.auditHandler.getAuditedCount());
+		Assert.assertEquals("Wrong rate limited count !", 3, this.auditHandler.getRateLimitedCount());
+
+		final String archive = FileUtils.readFileToString(new File(this.directory, "saml-inbound-archive.log"),
+				"UTF-8");
+		Assert.assertTrue("Rate limited archives not reported !",
+				archive.contains("RATE_LIMITED source=[10.0.0.1] suppressed=[3]"));
+		Assert.assertFalse("Rate limited archive written !", archive.contains("ID=\"_2\""));
+	}
+
+	@Test
+	public void testQueueBoundedByBytes() throws Exception {
+		final AsyncSecurityAuditHandler stalledHandler = this.buildStalledHandler();
+		stalledHandler.setEventsPerSecond(100);
+		stalledHandler.setMaxMessageChars(1024);
+		stalledHandler.setQueueMaxBytes(3 * (AsyncSecurityAuditHandler.AuditRecord.RECORD_BYTES + 2L * 1100L));
+		stalledHandler.afterPropertiesSet();
+
+		final AtomicInteger reads = new AtomicInteger();
+		final String forgedMessage = String.format("<samlp:Response>%0100000d</samlp:Response>", 0);
+		for (int k = 0; k < 10; k++) {
+			stalledHandler.audit("10.0.0.1", new SamlSecurityException("Untrusted signature !"),
+					this.countedMessage(forgedMessage, reads));
+		}
+		stalledHandler.destroy();
+
+		Assert.assertEquals("Only the queued events must be counted as audited !", 3,
+				stalledHandler.getAuditedCount());
+		Assert.assertEquals("The queue must be bounded by bytes !", 7, stalledHandler.getDroppedCount());
+		Assert.assertEquals("The messages refused by a full queue must not be read !", 3, reads.get());
+	}
+
+	@Test
+	public void testFullQueueMessagesNotRead() throws Exception {
+		final AsyncSecurityAuditHandler stalledHandler = this.buildStalledHandler();
+		stalledHandler.setArchiving(true);
+		stalledHandler.setEventsPerSecond(100);
+		stalledHandler.setQueueCapacity(2);
+		stalledHandler.afterPropertiesSet();
+
+		final AtomicInteger reads = new AtomicInteger();
+		for (int k = 0; k < 5; k++) {
+			stalledHandler.archive("10.0.0.1", this.countedMessage("<samlp:Response/>", reads));
+		}
+		stalledHandler.destroy();
+
+		Assert.assertEquals("Only the queued events must be counted as archived !", 2,
+				stalledHandler.getArchivedCount());
+		Assert.assertEquals("The queue must be bounded by count !", 3, stalledHandler.getDroppedCount());
+		Assert.assertEquals("The messages refused by a full queue must not be read !", 2, reads.get());
+	}
+
+	@Test
+	public void testWriterSurvivesFailingEvent() throws Exception {
+		this.auditHandler.afterPropertiesSet();
+
+		final SamlSecurityException failingProblem = new SamlSecurityException("Unprintable problem !") {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public String toString() {
+				throw new IllegalStateException("Broken problem !");
+			}
+		};
+		this.auditHandler.audit("10.0.0.1", failingProblem, null);
+		this.auditHandler.audit("10.0.0.1", new SamlSecurityException("Untrusted signature !"), null);
+		this.auditHandler.destroy();
+
+		Assert.assertEquals("Failing event not counted !", 1, this.auditHandler.getWriteFailureCount());
+		Assert.assertEquals("The writer must write the next events !", 1, this.auditHandler.getWrittenCount());
+		final String audit = FileUtils.readFileToString(new File(this.directory, "saml-security-audit.log"), "UTF-8");
+		Assert.assertTrue("Next event not written !", audit.contains("Untrusted signature !"));
+	}
+
+	@Test
+	public void testRotatedFilesSortedByRotationTime() throws Exception {
+		this.directory.mkdirs();
+		final String[] names = new String[]{"saml-inbound-archive-20130101-000000-000-10.log.gz",
+				"saml-inbound-archive-20130101-000000-000.log.gz", "saml-inbound-archive-20130101-000000-001.log.gz",
+				"saml-inbound-archive-20130101-000000-000-2.log.gz",
+				"saml-inbound-archive-20121231-235959-999-1.log.gz",
+				"saml-inbound-archive-20130101-000000-000-1.log.gz"};
+		for (final String name : names) {
+			FileUtils.touch(new File(this.directory, name));
+		}
+
+		final File[] rotatedFiles = new AsyncSecurityAuditHandler.RotatingFile(this.directory, "saml-inbound-archive",
+				300, 3).getRotatedFiles();
+
+		final String[] expectedNames = new String[]{"saml-inbound-archive-20121231-235959-999-1.log.gz",
+				"saml-inbound-archive-20130101-000000-000.log.gz", "saml-inbound-archive-20130101-000000-000-1.log.gz",
+				"saml-inbound-archive-20130101-000000-000-2.log.gz",
+				"saml-inbound-archive-20130101-000000-000-10.log.gz",
+				"saml-inbound-archive-20130101-000000-001.log.gz"};
+		Assert.assertEquals("Wrong rotated files count !", expectedNames.length, rotatedFiles.length);
+		for (int k = 0; k < expectedNames.length; k++) {
+			Assert.assertEquals("Rotated files not sorted by rotation time !", expectedNames[k],
+					rotatedFiles[k].getName());
+		}
+	}
+
+	@Test
+	public void testLongMessageTruncated() throws Exception {
+		this.auditHandler.setMaxMessageChars(20);
+		this.auditHandler.afterPropertiesSet();
+
+		this.auditHandler.audit("10.0.0.1", new SamlSecurityException("Untrusted signature !"),
+				this.message("<samlp:Response ID=\"_forged\">" + String.format("%01000d", 0) + "</samlp:Response>"));
+		this.auditHandler.destroy();
+
+		final String audit = FileUtils.readFileToString(new File(this.directory, "saml-security-audit.log"), "UTF-8");
+		Assert.assertTrue("Message not truncated !",
+				audit.contains("message=[<samlp:Response ID=\"...[1026 chars cut]]"));
+	}
+
+	@Test
+	public void testSuppressedMessagesNotRead() throws Exception {
+		this.auditHandler.setArchiving(true);
+		this.auditHandler.setEventsPerSecond(2);
+		this.auditHandler.setSamplingRate(0);
+		this.auditHandler.afterPropertiesSet();
+
+		final AtomicInteger reads = new AtomicInteger();
+		final ISamlMessageProvider samlMessage = new ISamlMessageProvider() {
+
+			@Override
+			public String getSamlMessage() {
+				reads.incrementAndGet();
+				return "<samlp:Response/>";
+			}
+		};
+		for (int k = 0; k < 10; k++) {
+			this.auditHandler.audit("10.0.0.1", new SamlSecurityException("Untrusted signature !"), samlMessage);
+			this.auditHandler.archive("10.0.0.1", samlMessage);
+		}
+
+		Assert.assertEquals("Only the messages within the rate must be read !", 4, reads.get());
+	}
+
+	@Test
+	public void testStoppedHandlerCountsDroppedEvents() throws Exception {
+		this.auditHandler.audit("10.0.0.1", new SamlSecurityException("Replayed message !"), null);
+
+		Assert.assertEquals("Event not counted as dropped !", 1, this.auditHandler.getDroppedCount());
+		Assert.assertEquals("Dropped event counted as audited !", 0, this.auditHandler.getAuditedCount());
+		Assert.assertEquals("Event counted as written !", 0, this.auditHandler.getWrittenCount());
+	}
+
+	/**
+	 * Handler whose writer never runs : the queue keeps every accepted event.
+	 * 
+	 * @return the handler, not started
+	 */
+	protected AsyncSecurityAuditHandler buildStalledHandler() {
+		final AsyncSecurityAuditHandler stalledHandler = new AsyncSecurityAuditHandler() {
+
+			@Override
+			protected void writeLoop() {
+				// Stalled disk
+			}
+		};
+		stalledHandler.setDirectory(this.directory);
+
+		return stalledHandler;
+	}
+
+	/**
+	 * SAML message already in plain XML text, counting its reads.
+	 * 
+	 * @param samlMessage
+	 *            the message
+	 * @param reads
+	 *            the count of reads
+	 * @return the provider of the message
+	 */
+	protected ISamlMessageProvider countedMessage(final String samlMessage, final AtomicInteger reads) {
+		return new ISamlMessageProvider() {
+
+			@Override
+			public String getSamlMessage() {
+				reads.incrementAndGet();
+				return samlMessage;
+			}
+		};
+	}
+
+	/**
+	 * SAML message already in plain XML text.
+	 * 
+	 * @param samlMessage
+	 *            the message
+	 * @return the provider of the message
+	 */
+	protected ISamlMessageProvider message(final String samlMessage) {
+		return new ISamlMessageProvider() {
+
+			@Override
+			public String getSamlMessage() {
+				return samlMessage;
+			}
+		};
+	}
+
+}
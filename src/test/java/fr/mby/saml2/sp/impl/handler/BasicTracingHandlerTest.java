@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import fr.mby.saml2.sp.api.om.ISpan;
+
+/**
+ * Test of the BasicTracingHandler with a RingBufferSpanExporter.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@RunWith(value=BlockJUnit4ClassRunner.class)
+public class BasicTracingHandlerTest {
+
+	@Test
+	public void testTraceParentPropagation() throws Exception {
+		final BasicTracingHandler tracingHandler = this.buildTracingHandler(16);
+
+		final ISpan requestSpan = tracingHandler.startSpan("AuthnRequest", null);
+		Assert.assertNull("A new trace should be a root span !", requestSpan.getParentSpanId());
+
+		final String traceParent = tracingHandler.buildTraceParent(requestSpan);
+		Assert.assertTrue("Bad trace parent format !", traceParent.matches("00-[0-9a-f]{32}-[0-9a-f]{16}-01"));
+
+		final ISpan responseSpan = tracingHandler.startSpan("AuthnResponse", traceParent);
+		Assert.assertEquals("The trace was not continued !", requestSpan.getTraceId(), responseSpan.getTraceId());
+		Assert.assertEquals("Bad parent span !", requestSpan.getSpanId(), responseSpan.getParentSpanId());
+
+		final ISpan stageSpan = tracingHandler.startChildSpan("PROCESS", responseSpan);
+		Assert.assertEquals("Bad trace for the child span !", requestSpan.getTraceId(), stageSpan.getTraceId());
+		Assert.assertEquals("Bad parent for the child span !", responseSpan.getSpanId(), stageSpan.getParentSpanId());
+
+		final ISpan newSpan = tracingHandler.startSpan("AuthnResponse", "garbage");
+		Assert.assertFalse("An invalid trace parent should start a new trace !",
+				requestSpan.getTraceId().equals(newSpan.getTraceId()));
+		Assert.assertNull("An invalid trace parent should start a root span !", newSpan.getParentSpanId());
+	}
+
+	@Test
+	public void testSpansExportedOnceEnded() throws Exception {
+		final BasicTracingHandler tracingHandler = this.buildTracingHandler(16);
+		final RingBufferSpanExporter spanExporter = (RingBufferSpanExporter) tracingHandler.getSpanExporter();
+
+		final ISpan span = tracingHandler.startSpan("AuthnRequest", null);
+		Assert.assertEquals("The span should not be exported before its end !", 0, spanExporter.getExportedCount());
+		Assert.assertEquals("The span should not have a duration before its end !", -1L, span.getDurationNanos());
+
+		tracingHandler.endSpan(span);
+		tracingHandler.endSpan(span);
+		Assert.assertEquals("The span should be exported once !", 1, spanExporter.getExportedCount());
+		Assert.assertTrue("The ended span should have a duration !", span.getDurationNanos() >= 0);
+	}
+
+	@Test
+	public void testRingBufferOverwrite() throws Exception {
+		final BasicTracingHandler tracingHandler = this.buildTracingHandler(4);
+		final RingBufferSpanExporter spanExporter = (RingBufferSpanExporter) tracingHandler.getSpanExporter();
+
+		for (int k = 0; k < 10; k++) {
+			tracingHandler.endSpan(tracingHandler.startSpan("span" + k, null));
+		}
+
+		final List<ISpan> spans = spanExporter.getSpans();
+		Assert.assertEquals("The buffer should keep its capacity of spans !", 4, spans.size());
+		Assert.assertEquals("The oldest spans should be overwritten !", "span6", spans.get(0).getName());
+		Assert.assertEquals("The spans should be kept in order !", "span9", spans.get(3).getName());
+		Assert.assertEquals("All the exports should be counted !", 10, spanExporter.getExportedCount());
+
+		spanExporter.clear();
+		Assert.assertTrue("The buffer should be empty !", spanExporter.getSpans().isEmpty());
+	}
+
+	protected BasicTracingHandler buildTracingHandler(final int capacity) throws Exception {
+		final RingBufferSpanExporter spanExporter = new RingBufferSpanExporter();
+		spanExporter.setCapacity(capacity);
+
+		final BasicTracingHandler tracingHandler = new BasicTracingHandler();
+		tracingHandler.setSpanExporter(spanExporter);
+		tracingHandler.afterPropertiesSet();
+
+		return tracingHandler;
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+/**
+ * 
+ */
+package fr.mby.saml2.sp.impl.handler;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
+import fr.mby.saml2.sp.impl.helper.LatencyHistogram;
+
+/**
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@RunWith(value = BlockJUnit4ClassRunner.class)
+public class HistogramProcessingMetricsHandlerTest {
+
+	private static final String IDP_ENTITY_ID = "http://www.recia.fr/idp";
+
+	@Test
+	public void testHistogramsByLabels() throws Exception {
+		final HistogramProcessingMetricsHandler handler = new HistogramProcessingMetricsHandler();
+
+		handler.recordStage(ProcessingStageEnum.PROCESS, "AuthnResponseQueryProcessor",
+				SamlBindingEnum.SAML_20_HTTP_POST, HistogramProcessingMetricsHandlerTest.IDP_ENTITY_ID, 1000L);
+		handler.recordStage(ProcessingStageEnum.PROCESS, "AuthnResponseQueryProcessor",
+				SamlBindingEnum.SAML_20_HTTP_POST, HistogramProcessingMetricsHandlerTest.IDP_ENTITY_ID, 2000L);
+		handler.recordStage(ProcessingStageEnum.PROCESS, "AuthnResponseQueryProcessor", null,
+				HistogramProcessingMetricsHandlerTest.IDP_ENTITY_ID, 3000L);
+
+		final Map<String, LatencyHistogram> histograms = handler.getHistograms();
+		Assert.assertEquals("Bad histograms count !", 2, histograms.size());
+
+		final LatencyHistogram postHistogram = histograms
+				.get("PROCESS AuthnResponseQueryProcessor SAML_20_HTTP_POST http://www.recia.fr/idp");
+		Assert.assertNotNull("No histogram for the HTTP-POST binding !", postHistogram);
+		Assert.assertEquals("Bad count for the HTTP-POST binding !", 2, postHistogram.getCount());
+
+		final LatencyHistogram unknownBindingHistogram = histograms
+				.get("PROCESS AuthnResponseQueryProcessor null http://www.recia.fr/idp");
+		Assert.assertNotNull("No histogram for the unknown binding !", unknownBindingHistogram);
+		Assert.assertEquals("Bad count for the unknown binding !", 1, unknownBindingHistogram.getCount());
+
+		handler.reset();
+		Assert.assertTrue("Histograms not reset !", handler.getHistograms().isEmpty());
+	}
+
+	@Test
+	public void testUnknownIdp() throws Exception {
+		final HistogramProcessingMetricsHandler handler = new HistogramProcessingMetricsHandler();
+
+		handler.recordStage(ProcessingStageEnum.DECODE, "AuthnResponseQueryProcessor",
+				SamlBindingEnum.SAML_20_HTTP_POST, null, 1000L);
+		handler.recordStage(ProcessingStageEnum.DECODE, "AuthnResponseQueryProcessor",
+				SamlBindingEnum.SAML_20_HTTP_POST, IProcessingMetricsHandler.UNKNOWN_IDP, 1000L);
+
+		final Map<String, LatencyHistogram> histograms = handler.getHistograms();
+		Assert.assertEquals("The unknown IdPs should share one histogram !", 1, histograms.size());
+		Assert.assertEquals("Bad labels for the unknown IdP !",
+				"DECODE AuthnResponseQueryProcessor SAML_20_HTTP_POST UnknownIdP", histograms.keySet().iterator().next());
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * This class is not a benchmark but a lock contention recorder for the benchmarks : a Java Flight Recorder recording
+ * of the JavaMonitorEnter (contended synchronized) and ThreadPark (contended j.u.c locks) events, summarized by lock
+ * class and by the first application frame waiting on it. Requires a JVM with JFR (JDK 8u262+).
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class ContentionRecorder {
+
+	/** Contended synchronized blocks. */
+	private static final String MONITOR_ENTER_EVENT = "jdk.JavaMonitorEnter";
+
+	/** Parked threads (ReentrantLock, ReadWriteLock, ...). */
+	private static final String THREAD_PARK_EVENT = "jdk.ThreadPark";
+
+	/** Frames of these packages are not attributed a contention. */
+	private static final String[] LIBRARY_PACKAGES = {"java.", "javax.", "sun.", "jdk."};
+
+	/** Events of the benchmark harness threads are ignored. */
+	private static final String HARNESS_PACKAGE = "org.openjdk.jmh.";
+
+	/** Minimal duration of the recorded events, in ms. */
+	private final long thresholdMillis;
+
+	private Recording recording;
+
+	/**
+	 * Build a recorder.
+	 *
+	 * @param pThresholdMillis
+	 *            minimal duration of the recorded events, in ms
+	 */
+	public ContentionRecorder(final long pThresholdMillis) {
+		this.thresholdMillis = pThresholdMillis;
+	}
+
+	/** Start the recording. */
+	public void start() {
+		this.recording = new Recording();
+		this.recording.setName("contention");
+		this.recording.enable(ContentionRecorder.MONITOR_ENTER_EVENT)
+				.withThreshold(java.time.Duration.ofMillis(this.thresholdMillis)).withStackTrace();
+		this.recording.enable(ContentionRecorder.THREAD_PARK_EVENT)
+				.withThreshold(java.time.Duration.ofMillis(this.thresholdMillis)).withStackTrace();
+		this.recording.start();
+	}
+
+	/**
+	 * Stop the recording and summarize the contention.
+	 *
+	 * @param maxLines
+	 *            count of contention points reported by event type
+	 * @return the summary
+	 * @throws IOException
+	 */
+	public String stopAndSummarize(final int maxLines) throws IOException {
+		this.recording.stop();
+		final File recordingFile = File.createTempFile("bench_contention", ".jfr");
+		try {
+			this.recording.dump(recordingFile.toPath());
+			this.recording.close();
+
+			final Map<String, long[]> monitorEnters = new HashMap<String, long[]>();
+			final Map<String, long[]> threadParks = new HashMap<String, long[]>();
+			for (final RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())) {
+				final String eventName = event.getEventType().getName();
+				if (ContentionRecorder.MONITOR_ENTER_EVENT.equals(eventName)) {
+					this.aggregate(monitorEnters, event, "monitorClass");
+				} else if (ContentionRecorder.THREAD_PARK_EVENT.equals(eventName)) {
+					this.aggregate(threadParks, event, "parkedClass");
+				}
+			}
+
+			final StringBuilder summary = new StringBuilder(1024);
+			this.appendSummary(summary, "JavaMonitorEnter", monitorEnters, maxLines);
+			this.appendSummary(summary, "ThreadPark", threadParks, maxLines);
+			return summary.toString();
+		} finally {
+			recordingFile.delete();
+		}
+	}
+
+	/**
+	 * Add an event to the count and the duration of its contention point, unless it was raised by the harness.
+	 */
+	protected void aggregate(final Map<String, long[]> contentionPoints, final RecordedEvent event,
+			final String lockClassField) {
+		final String applicationFrame = this.findApplicationFrame(event.getStackTrace());
+		if (!applicationFrame.startsWith(ContentionRecorder.HARNESS_PACKAGE)) {
+			final RecordedClass lockClass = event.getValue(lockClassField);
+			final String key = String.format("%s <- %s", (lockClass != null) ? lockClass.getName() : "?",
+					applicationFrame);
+
+			long[] countAndNanos = contentionPoints.get(key);
+			if (countAndNanos == null) {
+				countAndNanos = new long[2];
+				contentionPoints.put(key, countAndNanos);
+			}
+			countAndNanos[0]++;
+			countAndNanos[1] += event.getDuration().toNanos();
+		}
+	}
+
+	/**
+	 * First frame of the stack trace which is not in the JDK.
+	 *
+	 * @return the frame description
+	 */
+	protected String findApplicationFrame(final RecordedStackTrace stackTrace) {
+		String applicationFrame = "(JDK only)";
+		if (stackTrace != null) {
+			for (final RecordedFrame frame : stackTrace.getFrames()) {
+				if (frame.isJavaFrame()) {
+					final String typeName = frame.getMethod().getType().getName();
+					boolean library = false;
+					for (final String libraryPackage : ContentionRecorder.LIBRARY_PACKAGES) {
+						library |= typeName.startsWith(libraryPackage);
+					}
+					if (!library) {
+						applicationFrame = String.format("%s.%s:%d", typeName, frame.getMethod().getName(),
+								frame.getLineNumber());
+						break;
+					}
+				}
+			}
+		}
+		return applicationFrame;
+	}
+
+	/**
+	 * Append the contention points sorted by cumulated duration.
+	 */
+	protected void appendSummary(final StringBuilder summary, final String title,
+			final Map<String, long[]> contentionPoints, final int maxLines) {
+		final List<Map.Entry<String, long[]>> sorted = new ArrayList<Map.Entry<String, long[]>>(
+				contentionPoints.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<String, long[]>>() {
+
+			@Override
+			public int compare(final Map.Entry<String, long[]> first, final Map.Entry<String, long[]> second) {
+				return Long.valueOf(second.getValue()[1]).compareTo(first.getValue()[1]);
+			}
+		});
+
+		summary.append(String.format("%s (events >= %d ms): %d contention points%n", title, this.thresholdMillis,
+				sorted.size()));
+		for (final Map.Entry<String, long[]> point : sorted.subList(0, Math.min(maxLines, sorted.size()))) {
+			summary.append(String.format("  %10.1f ms %8d events  %s%n", point.getValue()[1] / 1e6d,
+					point.getValue()[0], point.getKey()));
+		}
+	}
+
+}
@@ -0,0 +1,371 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.security.spec.EncodedKeySpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
+import org.opensaml.xml.Configuration;
+import org.opensaml.common.SignableSAMLObject;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.parse.BasicParserPool;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.x509.BasicX509Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.opensaml.xml.util.XMLHelper;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import ch.qos.logback.classic.Level;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import ch.qos.logback.classic.Logger;
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20Storage;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
+
+/**
+ * This class is not a benchmark but a helper for the JMH benchmarks !
+ * 
+ * The benchmarks run outside of the Spring test runner : this helper boot the Spring context, tune the logging and
+ * build the HTTP requests the way a servlet container would.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+public abstract class SamlBenchmarkHelper {
+
+	/** Spring context used by the benchmarks : the integration context with an in memory storage. */
+	public static final String BENCHMARK_CONTEXT = "classpath:benchmarkContext.xml";
+
+	/** System property to tune the log level during benchmarks (default to ERROR). */
+	public static final String LOG_LEVEL_PROPERTY = "bench.log.level";
+
+	/** SP server name. */
+	public static final String SP_SERVER_NAME = "www.recia.fr";
+
+	/** SP AuthnResponse endpoint for HTTP-POST binding. */
+	public static final String SP_AUTHN_POST_URI = "/cas/Shibboleth.sso/SAML2/POST";
+
+	/** SP AuthnResponse endpoint for HTTP-Redirect binding. */
+	public static final String SP_AUTHN_REDIRECT_URI = "/cas/Shibboleth.sso/SAML2/Redirect";
+
+	/** SP Single Logout endpoint for HTTP-POST binding. */
+	public static final String SP_SLO_POST_URI = "/cas/Shibboleth.sso/SLO/POST";
+
+	/** SP Single Logout endpoint for HTTP-Redirect binding. */
+	public static final String SP_SLO_REDIRECT_URI = "/cas/Shibboleth.sso/SLO/Redirect";
+
+	/** Id of the original AuthnRequest the test responses are responding to. */
+	public static final String AUTHN_REQUEST_ID =
+			"_db6a228bfd85e374bc998817a031c3c6f595bf7b0257443a09039b89eda38971451ee7c4fa5ed213ec1b";
+
+	/** IdP private key (PKCS8 DER) used to sign the messages a test IdP would send. */
+	public static final String IDP_KEY = "saml/keys/idp_key.der";
+
+	/** IdP certificate, published in idp_metadata.xml. */
+	public static final String IDP_CERTIFICATE = "saml/keys/idp_key_crt.pem";
+
+	/**
+	 * Set the root log level from the bench.log.level system property. Benchmarks must not be measuring the DEBUG
+	 * console logging of the test classpath.
+	 */
+	public static void configureLogging() {
+		final String level = System.getProperty(SamlBenchmarkHelper.LOG_LEVEL_PROPERTY, "ERROR");
+		final Logger rootLogger = (Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME);
+		rootLogger.setLevel(Level.toLevel(level, Level.ERROR));
+	}
+
+	/**
+	 * Boot the benchmark Spring context.
+	 * 
+	 * @return the Spring context
+	 */
+	public static ClassPathXmlApplicationContext loadBenchmarkContext() {
+		return SamlBenchmarkHelper.loadContext(SamlBenchmarkHelper.BENCHMARK_CONTEXT);
+	}
+
+	/**
+	 * Boot a Spring context after the logging configuration.
+	 * 
+	 * @param locations
+	 *            the context locations
+	 * @return the Spring context
+	 */
+	public static ClassPathXmlApplicationContext loadContext(final String... locations) {
+		SamlBenchmarkHelper.configureLogging();
+		return new ClassPathXmlApplicationContext(locations);
+	}
+
+	/**
+	 * Store the original AuthnRequest the test responses are responding to.
+	 * 
+	 * @param storage
+	 *            the storage
+	 * @param idpConnector
+	 *            the IdP connector which emitted the request
+	 */
+	public static void storeOriginalAuthnRequest(final ISaml20Storage storage, final ISaml20IdpConnector idpConnector) {
+		final Map<String, String[]> parametersMap = new HashMap<String, String[]>();
+		storage.storeRequestWaitingForResponse(new QueryAuthnRequest(SamlBenchmarkHelper.AUTHN_REQUEST_ID,
+				idpConnector, parametersMap));
+	}
+
+	/**
+	 * Build a synthetic SAML Response of approximately the size supplied. The response embed an assertion with as
+	 * many attributes as needed, valued with pseudo-random hexadecimal strings so the message compress like a real
+	 * one. The message is always the same for a given size.
+	 * 
+	 * @param size
+	 *            the message size in chars
+	 * @return the XML message
+	 */
+	public static String buildSyntheticSamlMessage(final int size) {
+		final String header = "<samlp:Response xmlns:samlp=\"urn:oasis:names:tc:SAML:2.0:protocol\" "
+				+ "xmlns:saml=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"b453af33772c04c6a73d066893c84881\" "
+				+ "InResponseTo=\"" + SamlBenchmarkHelper.AUTHN_REQUEST_ID + "\" "
+				+ "IssueInstant=\"2013-02-04T09:44:37.000Z\" Version=\"2.0\">"
+				+ "<saml:Issuer>http://www.recia.fr/idp</saml:Issuer><saml:Assertion><saml:AttributeStatement>";
+		final String footer = "</saml:AttributeStatement></saml:Assertion></samlp:Response>";
+
+		final Random random = new Random(size);
+		final StringBuilder message = new StringBuilder(size + 256);
+		message.append(header);
+		int attributeIndex = 0;
+		while (message.length() + footer.length() < size) {
+			message.append("<saml:Attribute Name=\"attribute").append(attributeIndex++)
+					.append("\"><saml:AttributeValue>").append(Long.toHexString(random.nextLong()))
+					.append(Long.toHexString(random.nextLong())).append("</saml:AttributeValue></saml:Attribute>");
+		}
+		message.append(footer);
+
+		return message.toString();
+	}
+
+	/**
+	 * Generate a key pair.
+	 * 
+	 * @param algorithm
+	 *            RSA or EC
+	 * @param keySize
+	 *            the key size
+	 * @return the key pair
+	 * @throws NoSuchAlgorithmException
+	 */
+	public static KeyPair generateKeyPair(final String algorithm, final int keySize) throws NoSuchAlgorithmException {
+		final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(algorithm);
+		keyPairGenerator.initialize(keySize);
+		return keyPairGenerator.generateKeyPair();
+	}
+
+	/**
+	 * Build the signing credential of the test IdP from idp_key.
+	 * 
+	 * @return the IdP credential
+	 * @throws Exception
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static Credential buildIdpCredential() throws Exception {
+		final PrivateKey privateKey = SecurityHelper.buildPrivateKey(new ClassPathResource(
+				SamlBenchmarkHelper.IDP_KEY), (Class<EncodedKeySpec>) (Class) PKCS8EncodedKeySpec.class, "RSA");
+		final X509Certificate certificate = (X509Certificate) SecurityHelper.buildCertificate(new ClassPathResource(
+				SamlBenchmarkHelper.IDP_CERTIFICATE), "X.509");
+
+		final BasicX509Credential credential = new BasicX509Credential();
+		credential.setEntityCertificate(certificate);
+		credential.setPrivateKey(privateKey);
+		return credential;
+	}
+
+	/**
+	 * Sign a SAML object with the credential supplied, the way OpenSaml20SpProcessor.buildSignature() does (no
+	 * KeyInfo : the SP find the key in the IdP metadata). OpenSAML must be bootstrapped.
+	 * 
+	 * @param signable
+	 *            the object to sign
+	 * @param credential
+	 *            the signing credential
+	 * @return the signed object, marshalled
+	 * @throws Exception
+	 */
+	public static <T extends SignableSAMLObject> T signSamlObject(final T signable, final Credential credential)
+			throws Exception {
+		final Signature signature = new SignatureBuilder().buildObject();
+		org.opensaml.xml.security.SecurityHelper.prepareSignatureParams(signature, credential,
+				Configuration.getGlobalSecurityConfiguration(), null);
+		signature.setSigningCredential(credential);
+		signature.setKeyInfo(null);
+		signable.setSignature(signature);
+
+		Configuration.getMarshallerFactory().getMarshaller(signable).marshall(signable);
+		Signer.signObject(signature);
+
+		return signable;
+	}
+
+	/**
+	 * Parse and unmarshall an XML message. OpenSAML must be bootstrapped.
+	 * 
+	 * @param xmlMessage
+	 *            the XML message
+	 * @return the OpenSAML object
+	 * @throws Exception
+	 */
+	public static XMLObject unmarshall(final String xmlMessage) throws Exception {
+		final BasicParserPool parserPool = new BasicParserPool();
+		parserPool.setNamespaceAware(true);
+		final Document document = parserPool.parse(new StringReader(xmlMessage));
+		final Element rootElement = document.getDocumentElement();
+
+		return Configuration.getUnmarshallerFactory().getUnmarshaller(rootElement).unmarshall(rootElement);
+	}
+
+	/**
+	 * Marshall and serialize an OpenSAML object.
+	 * 
+	 * @param xmlObject
+	 *            the OpenSAML object
+	 * @return the XML message
+	 * @throws Exception
+	 */
+	public static String serialize(final XMLObject xmlObject) throws Exception {
+		Element element = xmlObject.getDOM();
+		if (element == null) {
+			element = Configuration.getMarshallerFactory().getMarshaller(xmlObject).marshall(xmlObject);
+		}
+
+		return XMLHelper.nodeToString(element);
+	}
+
+	/**
+	 * Read a classpath resource.
+	 * 
+	 * @param path
+	 *            the classpath location
+	 * @return the content of the resource
+	 * @throws IOException
+	 */
+	public static String readClasspathFile(final String path) throws IOException {
+		final Resource resource = new ClassPathResource(path);
+		return IOUtils.toString(resource.getInputStream(), "UTF-8");
+	}
+
+	/**
+	 * Build the request received by the SP for a message sent with HTTP-POST binding.
+	 * 
+	 * @param requestUri
+	 *            the SP endpoint URI
+	 * @param messageParamKey
+	 *            SAMLRequest or SAMLResponse
+	 * @param postEncodedMessage
+	 *            the base64 encoded message
+	 * @param relayState
+	 *            the relay state
+	 * @return the mock request
+	 */
+	public static MockHttpServletRequest buildPostRequest(final String requestUri, final String messageParamKey,
+			final String postEncodedMessage, final String relayState) {
+		final MockHttpServletRequest request = new MockHttpServletRequest(
+				SamlBindingEnum.SAML_20_HTTP_POST.getHttpMethod(), requestUri);
+		request.setServerName(SamlBenchmarkHelper.SP_SERVER_NAME);
+		request.setParameter(messageParamKey, postEncodedMessage);
+		request.setParameter(SamlHelper.RELAY_STATE_PARAM_KEY, relayState);
+		return request;
+	}
+
+	/**
+	 * Build the request received by the SP for a message sent with HTTP-Redirect binding.
+	 * 
+	 * @param requestUri
+	 *            the SP endpoint URI
+	 * @param messageParamKey
+	 *            SAMLRequest or SAMLResponse
+	 * @param redirectEncodedMessage
+	 *            the deflated, base64 and URL encoded message
+	 * @param relayState
+	 *            the relay state
+	 * @return the mock request
+	 * @throws UnsupportedEncodingException
+	 */
+	public static MockHttpServletRequest buildRedirectRequest(final String requestUri, final String messageParamKey,
+			final String redirectEncodedMessage, final String relayState) throws UnsupportedEncodingException {
+		final MockHttpServletRequest request = new MockHttpServletRequest(
+				SamlBindingEnum.SAML_20_HTTP_REDIRECT.getHttpMethod(), requestUri);
+		request.setServerName(SamlBenchmarkHelper.SP_SERVER_NAME);
+		request.setQueryString("?" + messageParamKey + "=" + redirectEncodedMessage + "&"
+				+ SamlHelper.RELAY_STATE_PARAM_KEY + "=" + relayState);
+		request.setParameter(messageParamKey, URLDecoder.decode(redirectEncodedMessage, "UTF-8"));
+		request.setParameter(SamlHelper.RELAY_STATE_PARAM_KEY, relayState);
+		return request;
+	}
+
+	/**
+	 * Build the request received by the SP for a message sent with the binding supplied.
+	 * 
+	 * @param binding
+	 *            the binding
+	 * @param requestUri
+	 *            the SP endpoint URI
+	 * @param messageParamKey
+	 *            SAMLRequest or SAMLResponse
+	 * @param encodedMessage
+	 *            the message encoded for the binding
+	 * @param relayState
+	 *            the relay state
+	 * @return the mock request
+	 * @throws UnsupportedEncodingException
+	 */
+	public static MockHttpServletRequest buildRequest(final SamlBindingEnum binding, final String requestUri,
+			final String messageParamKey, final String encodedMessage, final String relayState)
+			throws UnsupportedEncodingException {
+		final MockHttpServletRequest request;
+		switch (binding) {
+			case SAML_20_HTTP_REDIRECT :
+				request = SamlBenchmarkHelper.buildRedirectRequest(requestUri, messageParamKey, encodedMessage,
+						relayState);
+				break;
+			default :
+				request = SamlBenchmarkHelper.buildPostRequest(requestUri, messageParamKey, encodedMessage,
+						relayState);
+				break;
+		}
+		return request;
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH microbenchmarks of the SamlHelper codec primitives run on every SAML message, for message sizes from 1 KB to
+ * 200 KB.
+ * 
+ * Allocated bytes per operation are reported by the GC profiler (gc.alloc.rate.norm) :
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="SamlHelperBenchmark -prof gc"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class SamlHelperBenchmark {
+
+	/** Message size in chars. */
+	@Param({"1024", "10240", "51200", "204800"})
+	private int messageSize;
+
+	private String samlMessage;
+
+	private String postEncodedMessage;
+
+	private String redirectEncodedMessage;
+
+	private String sessionUrl;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SamlBenchmarkHelper.configureLogging();
+
+		this.samlMessage = SamlBenchmarkHelper.buildSyntheticSamlMessage(this.messageSize);
+		this.postEncodedMessage = SamlHelper.httpPostEncode(this.samlMessage);
+		this.redirectEncodedMessage = SamlHelper.httpRedirectEncode(this.samlMessage);
+		this.sessionUrl = "http://www.recia.fr" + SamlBenchmarkHelper.SP_AUTHN_REDIRECT_URI
+				+ ";jsessionid=0123456789ABCDEF0123456789ABCDEF?" + SamlHelper.SAML_RESPONSE_PARAM_KEY + "="
+				+ URLEncoder.encode(this.redirectEncodedMessage, "UTF-8");
+
+		if (!this.samlMessage.equals(SamlHelper.httpRedirectDecode(this.redirectEncodedMessage))) {
+			throw new IllegalStateException("HTTP-Redirect encoding is not reversible !");
+		}
+	}
+
+	@Benchmark
+	public String httpRedirectEncode() throws Exception {
+		return SamlHelper.httpRedirectEncode(this.samlMessage);
+	}
+
+	@Benchmark
+	public String httpRedirectDecode() throws Exception {
+		return SamlHelper.httpRedirectDecode(this.redirectEncodedMessage);
+	}
+
+	@Benchmark
+	public String httpPostEncode() throws Exception {
+		return SamlHelper.httpPostEncode(this.samlMessage);
+	}
+
+	@Benchmark
+	public String base64Encode() {
+		return SamlHelper.base64Encode(this.samlMessage);
+	}
+
+	@Benchmark
+	public String base64Decode() {
+		return SamlHelper.base64Decode(this.postEncodedMessage);
+	}
+
+	@Benchmark
+	public String cleanupUrl() {
+		return SamlHelper.cleanupUrl(this.sessionUrl);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(SamlHelperBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
@@ -18,9 +18,16 @@
  */
 package fr.mby.saml2.sp.impl.helper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.BlockJUnit4ClassRunner;
+import org.opensaml.xml.util.Base64;
 import org.springframework.util.Assert;
 
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
@@ -43,4 +50,44 @@ public class SamlHelperTest {
 		System.out.println(decodedRequest);
 	}
 
+	@Test
+	public void base64DecodeStream() throws Exception {
+		final Random random = new Random(42L);
+		for (int length = 0; length < 200; length++) {
+			final byte[] bytes = new byte[length];
+			random.nextBytes(bytes);
+			// Lines broken every 76 chars
+			final String encoded = Base64.encodeBytes(bytes);
+
+			org.junit.Assert.assertArrayEquals("Bad decoding of " + length + " bytes !", bytes,
+					this.readFully(SamlHelper.base64DecodeStream(encoded)));
+			org.junit.Assert.assertArrayEquals("Bad decoding of " + length + " bytes without padding !", bytes,
+					this.readFully(SamlHelper.base64DecodeStream(encoded.replace("=", ""))));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void base64DecodeStreamInvalidChar() throws Exception {
+		this.readFully(SamlHelper.base64DecodeStream("PHNhbWw+*Pc2FtbD4="));
+	}
+
+	@Test
+	public void httpRedirectDecodeStream() throws Exception {
+		final String samlMessage = SamlHelper.httpRedirectDecode(SamlHelperTest.REDIRECT_BIND_SAML_REQUEST);
+		final String encoded = SamlHelper.httpRedirectEncode(samlMessage);
+
+		org.junit.Assert.assertEquals("Bad redirect decoding !", samlMessage,
+				new String(this.readFully(SamlHelper.httpRedirectDecodeStream(encoded)), "UTF-8"));
+	}
+
+	protected byte[] readFully(final InputStream stream) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			IOUtils.copy(stream, bytes);
+		} finally {
+			stream.close();
+		}
+		return bytes.toByteArray();
+	}
+
 }
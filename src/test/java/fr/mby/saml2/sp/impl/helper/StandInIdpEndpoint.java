@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is not a benchmark but a local HTTP server standing in for the IdP back-channel endpoints (SLO
+ * responses sent by SloRequestQueryProcessor). Each message is answered with an HTTP 200 after a configurable delay to
+ * simulate a slow IdP.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class StandInIdpEndpoint {
+
+	/** IdP SLO endpoint location declared in idp_metadata.xml. */
+	public static final String IDP_SLO_LOCATION = "http://www.recia.fr/slo/request/AP";
+
+	/** IdP metadata the endpoints are rewritten from. */
+	public static final String IDP_METADATA = "saml/metadatas/idp_metadata.xml";
+
+	/** System property read by sloBenchmarkContext.xml to load the rewritten IdP metadata. */
+	public static final String IDP_METADATA_PROPERTY = "bench.idp.metadata";
+
+	/** Context path of the stand-in SLO endpoint. */
+	private static final String SLO_PATH = "/slo/request/AP";
+
+	/** Delay before answering each message, in ms. */
+	private final long latencyMillis;
+
+	/** Count of messages received. */
+	private final AtomicLong receivedMessages = new AtomicLong();
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	private File idpMetadataFile;
+
+	/**
+	 * Build a stand-in endpoint.
+	 *
+	 * @param pLatencyMillis
+	 *            delay before answering each message, in ms
+	 */
+	public StandInIdpEndpoint(final long pLatencyMillis) {
+		this.latencyMillis = pLatencyMillis;
+	}
+
+	/**
+	 * Start the server on a free local port, then write the IdP metadata pointing to it and publish its location in
+	 * the bench.idp.metadata system property.
+	 *
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext(StandInIdpEndpoint.SLO_PATH, new HttpHandler() {
+
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				StandInIdpEndpoint.this.answer(exchange);
+			}
+		});
+		// One thread per pending message : the IdP delay must not serialize the SP threads.
+		this.executor = Executors.newCachedThreadPool();
+		this.server.setExecutor(this.executor);
+		this.server.start();
+
+		final String metadata = SamlBenchmarkHelper.readClasspathFile(StandInIdpEndpoint.IDP_METADATA).replace(
+				StandInIdpEndpoint.IDP_SLO_LOCATION, this.getSloEndpointUrl());
+		this.idpMetadataFile = File.createTempFile("bench_idp_metadata", ".xml");
+		this.idpMetadataFile.deleteOnExit();
+		FileUtils.writeStringToFile(this.idpMetadataFile, metadata, "UTF-8");
+		System.setProperty(StandInIdpEndpoint.IDP_METADATA_PROPERTY, this.idpMetadataFile.getAbsolutePath());
+	}
+
+	/** Stop the server. */
+	public void stop() {
+		if (this.server != null) {
+			this.server.stop(0);
+			this.executor.shutdownNow();
+		}
+		if (this.idpMetadataFile != null) {
+			this.idpMetadataFile.delete();
+		}
+	}
+
+	/**
+	 * URL of the stand-in SLO endpoint.
+	 *
+	 * @return the URL
+	 */
+	public String getSloEndpointUrl() {
+		return String.format("http://127.0.0.1:%d%s", this.server.getAddress().getPort(), StandInIdpEndpoint.SLO_PATH);
+	}
+
+	/**
+	 * Count of messages received since the start.
+	 *
+	 * @return the count
+	 */
+	public long getReceivedMessages() {
+		return this.receivedMessages.get();
+	}
+
+	/**
+	 * Consume the message, wait for the configured delay then answer 200.
+	 *
+	 * @param exchange
+	 *            the HTTP exchange
+	 * @throws IOException
+	 */
+	protected void answer(final HttpExchange exchange) throws IOException {
+		try {
+			final InputStream body = exchange.getRequestBody();
+			IOUtils.toByteArray(body);
+			body.close();
+
+			this.receivedMessages.incrementAndGet();
+
+			if (this.latencyMillis > 0) {
+				Thread.sleep(this.latencyMillis);
+			}
+
+			final byte[] response = "OK".getBytes("UTF-8");
+			exchange.sendResponseHeaders(200, response.length);
+			final OutputStream responseBody = exchange.getResponseBody();
+			responseBody.write(response);
+			responseBody.close();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+}
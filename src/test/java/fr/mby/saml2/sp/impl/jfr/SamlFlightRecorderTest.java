@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.jfr;
+
+import java.io.File;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+
+/**
+ * Test of the SAML events for the JDK Flight Recorder.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@RunWith(value=BlockJUnit4ClassRunner.class)
+public class SamlFlightRecorderTest {
+
+	@Test
+	public void testNoEventWithoutRecording() throws Exception {
+		Assert.assertFalse("No recording should be running !", SamlFlightRecorder.isRecording());
+
+		final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.DECODE);
+		Assert.assertFalse("The event should do nothing without recording !", event instanceof BaseSamlEvent);
+		event.commit("_messageId", "idpEntityId", 42, SamlFlightRecorder.SUCCESS);
+	}
+
+	@Test
+	public void testEventRecorded() throws Exception {
+		final File dump = File.createTempFile("saml_events", ".jfr");
+		final Recording recording = new Recording();
+		try {
+			recording.enable("fr.mby.saml2.Decryption");
+			recording.start();
+			Assert.assertTrue("The recording should be running !", SamlFlightRecorder.isRecording());
+
+			final ISamlEvent event = SamlFlightRecorder.begin(SamlEventTypeEnum.NAME_ID_DECRYPTION);
+			event.commit("_messageId", "idpEntityId", 42, SamlFlightRecorder.SUCCESS);
+
+			recording.stop();
+			Assert.assertFalse("The recording should be stopped !", SamlFlightRecorder.isRecording());
+			recording.dump(dump.toPath());
+
+			final List<RecordedEvent> events = RecordingFile.readAllEvents(dump.toPath());
+			Assert.assertEquals("The event should be recorded once !", 1, events.size());
+			final RecordedEvent recorded = events.get(0);
+			Assert.assertEquals("Bad event type !", "fr.mby.saml2.Decryption", recorded.getEventType().getName());
+			Assert.assertEquals("Bad operation !", "NAME_ID_DECRYPTION", recorded.getString("operation"));
+			Assert.assertEquals("Bad message ID !", "_messageId", recorded.getString("messageId"));
+			Assert.assertEquals("Bad IdP entity ID !", "idpEntityId", recorded.getString("idpEntityId"));
+			Assert.assertEquals("Bad payload size !", 42, recorded.getLong("payloadSize"));
+			Assert.assertEquals("Bad outcome !", SamlFlightRecorder.SUCCESS, recorded.getString("outcome"));
+		} finally {
+			recording.close();
+			dump.delete();
+		}
+	}
+
+}
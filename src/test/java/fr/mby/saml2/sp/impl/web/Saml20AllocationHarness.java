@@ -0,0 +1,344 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.web;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
+import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.ThreadResourceHelper;
+import fr.mby.saml2.sp.impl.web.Saml20BrowserSimulator.SamlPost;
+import fr.mby.saml2.sp.opensaml.core.SyntheticIdp;
+import fr.mby.saml2.sp.opensaml.query.engine.OpenSaml2QueryProcessorFactory;
+
+/**
+ * This class is not a test but an allocation regression harness : warmed-up logins run one after the other on the
+ * main thread through the real Spring context, and the bytes allocated by the thread are read before and after each
+ * step. A login is the AuthnRequest build and the AuthnResponse processing by the filter ; the Response minting by the
+ * SyntheticIdp is measured apart and is not part of the login.
+ *
+ * Two measured passes : the first one with the context as configured gives the bytes per login checked against the
+ * budget. The second one sets a metrics handler on the query processor factory which reads the allocated bytes at the
+ * end of each processing stage to break the AuthnResponse processing down. The stages figures include the cost of the
+ * metrics calls, the residual is the filter work outside the query processor. The harness fails (exit code 1) when a
+ * budget is exceeded.
+ *
+ * Run with : mvn -Ploadtest test-compile exec:exec -Dloadtest.main=fr.mby.saml2.sp.impl.web.Saml20AllocationHarness
+ * -Dloadtest.args="logins=2000 budget=786432"
+ *
+ * Arguments (key=value) : warmup (3000 logins), logins (1000 logins per pass), budget (1048576 bytes per login, 0 to
+ * report only), requestBudget and responseBudget (bytes per AuthnRequest build and per AuthnResponse processing, 0 to
+ * report only), budget.STAGE (bytes per login for a processing stage, e.g. budget.CHECK_SECURITY=262144).
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class Saml20AllocationHarness {
+
+	/** Key prefix of the stages budgets. */
+	private static final String STAGE_BUDGET_PREFIX = "budget.";
+
+	/** Label of the filter work outside the query processor. */
+	private static final String RESIDUAL_LABEL = "FILTER_RESIDUAL";
+
+	private final Map<String, String> args;
+
+	private final int warmup;
+
+	private final int logins;
+
+	private final long budget;
+
+	private final long requestBudget;
+
+	private final long responseBudget;
+
+	private final Map<ProcessingStageEnum, Long> stageBudgets = new EnumMap<ProcessingStageEnum, Long>(
+			ProcessingStageEnum.class);
+
+	private final AllocationMetricsHandler stagesHandler = new AllocationMetricsHandler();
+
+	private Saml20BrowserSimulator browser;
+
+	private int sequence;
+
+	/** Bytes allocated by one read of the allocated bytes, subtracted from each measure. */
+	private long readOverhead;
+
+	private long requestBytes;
+
+	private long idpBytes;
+
+	private long responseBytes;
+
+	/** Failures of the budgets checks. */
+	private final StringBuilder failures = new StringBuilder();
+
+	/**
+	 * Build the allocation harness.
+	 *
+	 * @param pArgs
+	 *            the key=value arguments
+	 */
+	public Saml20AllocationHarness(final Map<String, String> pArgs) {
+		this.args = pArgs;
+		this.warmup = Integer.parseInt(this.arg("warmup", "3000"));
+		this.logins = Integer.parseInt(this.arg("logins", "1000"));
+		this.budget = Long.parseLong(this.arg("budget", "1048576"));
+		this.requestBudget = Long.parseLong(this.arg("requestBudget", "0"));
+		this.responseBudget = Long.parseLong(this.arg("responseBudget", "0"));
+
+		for (final Map.Entry<String, String> arg : pArgs.entrySet()) {
+			if (arg.getKey().startsWith(Saml20AllocationHarness.STAGE_BUDGET_PREFIX)) {
+				final ProcessingStageEnum stage = ProcessingStageEnum.valueOf(arg.getKey().substring(
+						Saml20AllocationHarness.STAGE_BUDGET_PREFIX.length()));
+				this.stageBudgets.put(stage, Long.valueOf(arg.getValue()));
+			}
+		}
+	}
+
+	/**
+	 * Boot the SP and the IdP, warm up then run the measured passes and check the budgets.
+	 *
+	 * @return true if the budgets were respected
+	 * @throws Exception
+	 */
+	public boolean run() throws Exception {
+		if (!ThreadResourceHelper.isAllocationSupported()) {
+			throw new IllegalStateException("The JVM does not measure the thread allocated bytes !");
+		}
+
+		final ClassPathXmlApplicationContext context = SamlBenchmarkHelper
+				.loadContext(SamlBenchmarkHelper.BENCHMARK_CONTEXT);
+		try {
+			final ISaml20IdpConnector idpConnector = context.getBean("idpConnector", ISaml20IdpConnector.class);
+			final String spSloUrl = context.getBean("spProcessor", ISaml20SpProcessor.class).getSpConfig()
+					.getSingleLogoutServiceUrl(SamlBindingEnum.SAML_20_HTTP_POST);
+			final OpenSaml2QueryProcessorFactory factory = context.getBean("queryProcessorFactory",
+					OpenSaml2QueryProcessorFactory.class);
+
+			// OpenSAML is bootstrapped by the SP processor of the context.
+			this.browser = new Saml20BrowserSimulator(idpConnector, new SyntheticIdp(), spSloUrl);
+			this.calibrate();
+
+			for (int k = 0; k < this.warmup; k++) {
+				this.login();
+			}
+
+			this.resetCounters();
+			for (int k = 0; k < this.logins; k++) {
+				this.login();
+			}
+			final long loginBytes = (this.requestBytes + this.responseBytes) / this.logins;
+			final long requestBytesPerLogin = this.requestBytes / this.logins;
+			final long responseBytesPerLogin = this.responseBytes / this.logins;
+			final long idpBytesPerLogin = this.idpBytes / this.logins;
+
+			// Breakdown pass : the stages handler is warmed up with the processing.
+			final IProcessingMetricsHandler configuredHandler = factory.getMetricsHandler();
+			factory.setMetricsHandler(this.stagesHandler);
+			try {
+				for (int k = 0; k < this.warmup; k++) {
+					this.login();
+				}
+				this.resetCounters();
+				this.stagesHandler.reset();
+				for (int k = 0; k < this.logins; k++) {
+					this.login();
+				}
+			} finally {
+				factory.setMetricsHandler(configuredHandler);
+			}
+
+			System.out.println(String.format("Allocation per login over [%d] logins after [%d] warmup logins :",
+					this.logins, this.warmup));
+			System.out.println(String.format("  %-24s %12d bytes", "LOGIN", loginBytes));
+			System.out.println(String.format("  %-24s %12d bytes", "AUTHN_REQUEST_BUILD", requestBytesPerLogin));
+			System.out.println(String.format("  %-24s %12d bytes", "AUTHN_RESPONSE_PROCESS", responseBytesPerLogin));
+			System.out.println(String.format("  %-24s %12d bytes (not in the login)", "IDP_RESPONSE_MINTING",
+					idpBytesPerLogin));
+			System.out.println("AuthnResponse processing per stage (metrics calls included) :");
+			long stagesBytes = 0L;
+			for (final ProcessingStageEnum stage : ProcessingStageEnum.values()) {
+				final long stageBytes = this.stagesHandler.getStageBytes(stage) / this.logins;
+				stagesBytes += stageBytes;
+				System.out.println(String.format("  %-24s %12d bytes", stage.name(), stageBytes));
+				this.checkBudget(stage.name(), stageBytes, this.stageBudgets.get(stage));
+			}
+			System.out.println(String.format("  %-24s %12d bytes", Saml20AllocationHarness.RESIDUAL_LABEL,
+					(this.responseBytes / this.logins) - stagesBytes));
+
+			this.checkBudget("LOGIN", loginBytes, this.budget);
+			this.checkBudget("AUTHN_REQUEST_BUILD", requestBytesPerLogin, this.requestBudget);
+			this.checkBudget("AUTHN_RESPONSE_PROCESS", responseBytesPerLogin, this.responseBudget);
+		} finally {
+			context.close();
+		}
+
+		final boolean passed = this.failures.length() == 0;
+		if (passed) {
+			System.out.println("Allocation budgets respected.");
+		} else {
+			System.out.print(this.failures);
+		}
+
+		return passed;
+	}
+
+	/**
+	 * One login on the current thread, each step measured.
+	 *
+	 * @throws Exception
+	 */
+	protected void login() throws Exception {
+		final int number = this.sequence++;
+
+		final long start = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+		final IOutgoingSaml authnRequest = this.browser.requestAuthentication("https://service/" + number);
+		final long requested = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+		final SamlPost post = this.browser.authenticateAtIdp(authnRequest, "subject_" + number, "_alloc_session_"
+				+ number);
+		final long minted = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+		this.stagesHandler.mark(minted);
+		this.browser.postToSp(post);
+		final long processed = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+
+		this.requestBytes += requested - start - this.readOverhead;
+		this.idpBytes += minted - requested - this.readOverhead;
+		this.responseBytes += processed - minted - this.readOverhead;
+	}
+
+	/**
+	 * Measure the bytes allocated by one read of the allocated bytes.
+	 */
+	protected void calibrate() {
+		long overhead = Long.MAX_VALUE;
+		for (int k = 0; k < 10000; k++) {
+			final long start = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+			final long end = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+			overhead = Math.min(overhead, end - start);
+		}
+		this.readOverhead = overhead;
+		this.stagesHandler.setReadOverhead(overhead);
+	}
+
+	/**
+	 * Record a failure if a budget is exceeded.
+	 *
+	 * @param label
+	 *            the measured step
+	 * @param bytes
+	 *            the bytes per login
+	 * @param stepBudget
+	 *            the budget, null or 0 if not checked
+	 */
+	protected void checkBudget(final String label, final long bytes, final Long stepBudget) {
+		if ((stepBudget != null) && (stepBudget > 0) && (bytes > stepBudget)) {
+			this.failures.append(String.format("FAILED : [%s] allocates [%d] bytes per login, budget [%d] bytes !%n",
+					label, bytes, stepBudget));
+		}
+	}
+
+	protected void resetCounters() {
+		this.requestBytes = 0L;
+		this.idpBytes = 0L;
+		this.responseBytes = 0L;
+	}
+
+	protected String arg(final String key, final String defaultValue) {
+		final String value = this.args.get(key);
+		return (value != null) ? value : defaultValue;
+	}
+
+	/**
+	 * Metrics handler attributing to each stage the bytes allocated by the current thread since the previous mark,
+	 * i.e. the end of the previous stage or the start of the message posting. Single threaded.
+	 */
+	protected static class AllocationMetricsHandler implements IProcessingMetricsHandler {
+
+		private final long[] stagesBytes = new long[ProcessingStageEnum.values().length];
+
+		private long lastMark;
+
+		private long readOverhead;
+
+		@Override
+		public boolean isEnabled() {
+			return true;
+		}
+
+		@Override
+		public void recordStage(final ProcessingStageEnum stage, final String processorType,
+				final SamlBindingEnum binding, final String idpEntityId, final long durationNanos) {
+			final long now = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+			this.stagesBytes[stage.ordinal()] += now - this.lastMark - this.readOverhead;
+			this.lastMark = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+		}
+
+		/**
+		 * Mark the start of the message posting.
+		 *
+		 * @param allocatedBytes
+		 *            the bytes allocated by the current thread at the start
+		 */
+		public void mark(final long allocatedBytes) {
+			this.lastMark = allocatedBytes;
+		}
+
+		public long getStageBytes(final ProcessingStageEnum stage) {
+			return this.stagesBytes[stage.ordinal()];
+		}
+
+		public void reset() {
+			for (int k = 0; k < this.stagesBytes.length; k++) {
+				this.stagesBytes[k] = 0L;
+			}
+		}
+
+		public void setReadOverhead(final long readOverhead) {
+			this.readOverhead = readOverhead;
+		}
+
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> parsedArgs = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (separator > 0) {
+				parsedArgs.put(arg.substring(0, separator), arg.substring(separator + 1));
+			}
+		}
+
+		final boolean passed = new Saml20AllocationHarness(parsedArgs).run();
+
+		// The metadata refresh timers are not daemon threads.
+		System.exit(passed ? 0 : 1);
+	}
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.web;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.opensaml.saml2.core.Response;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.exception.SamlProcessingException;
+import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.opensaml.core.SyntheticIdp;
+
+/**
+ * This class is not a test but a browser simulator for the load tests : it carries the SAML messages between the SP
+ * (Saml20ProcessingFilter with mocked servlet objects) and an in-process SyntheticIdp. Each step of a login or a
+ * logout is exposed to be timed. Thread safe.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class Saml20BrowserSimulator {
+
+	/** Id of the IdP config in the test contexts. */
+	public static final String IDP_CONFIG_ID = "testIdpConfig";
+
+	/** Forward URL of the filter when a message is processed. */
+	private static final String FORWARD_URL = "/login";
+
+	/** Binding of the AuthnRequests of the test IdP config. */
+	private static final SamlBindingEnum REQUEST_BINDING = SamlBindingEnum.SAML_20_HTTP_REDIRECT;
+
+	private final RecordingFilter filter = new RecordingFilter();
+
+	private final ISaml20IdpConnector idpConnector;
+
+	private final SyntheticIdp idp;
+
+	/** SP SLO endpoint URL for the HTTP-POST binding. */
+	private final String spSloUrl;
+
+	/**
+	 * Build the simulator.
+	 *
+	 * @param pIdpConnector
+	 *            the SP connector of the IdP
+	 * @param pIdp
+	 *            the in-process IdP
+	 * @param pSpSloUrl
+	 *            the SP SLO endpoint for the HTTP-POST binding
+	 */
+	public Saml20BrowserSimulator(final ISaml20IdpConnector pIdpConnector, final SyntheticIdp pIdp,
+			final String pSpSloUrl) {
+		this.idpConnector = pIdpConnector;
+		this.idp = pIdp;
+		this.spSloUrl = pSpSloUrl;
+	}
+
+	/**
+	 * Complete login : the AuthnRequest, the IdP Response and its processing by the SP.
+	 *
+	 * @param service
+	 *            the service requested by the browser
+	 * @param subjectId
+	 *            the subject authenticated by the IdP
+	 * @param sessionIndex
+	 *            the IdP session index
+	 * @return the incoming SAML of the Response
+	 * @throws Exception
+	 */
+	public IIncomingSaml login(final String service, final String subjectId, final String sessionIndex)
+			throws Exception {
+		final IOutgoingSaml authnRequest = this.requestAuthentication(service);
+		return this.postToSp(this.authenticateAtIdp(authnRequest, subjectId, sessionIndex));
+	}
+
+	/**
+	 * Complete IdP initiated logout : the IdP LogoutRequest and its processing by the SP.
+	 *
+	 * @param subjectId
+	 *            the subject to logout
+	 * @param sessionIndex
+	 *            the IdP session index
+	 * @return the incoming SAML of the LogoutRequest
+	 * @throws Exception
+	 */
+	public IIncomingSaml logout(final String subjectId, final String sessionIndex) throws Exception {
+		return this.postToSp(this.logoutAtIdp(subjectId, sessionIndex));
+	}
+
+	/**
+	 * The SP builds the AuthnRequest sent to the IdP.
+	 *
+	 * @param service
+	 *            the service requested by the browser
+	 * @return the AuthnRequest
+	 * @throws Exception
+	 */
+	public IOutgoingSaml requestAuthentication(final String service) throws Exception {
+		final Map<String, String[]> parametersMap = new HashMap<String, String[]>();
+		parametersMap.put(SamlHelper.getWayfConfig().getIdpIdParamKey(),
+				new String[]{Saml20BrowserSimulator.IDP_CONFIG_ID});
+		parametersMap.put("service", new String[]{service});
+		return this.idpConnector.buildSaml20AuthnRequest(parametersMap, Saml20BrowserSimulator.REQUEST_BINDING);
+	}
+
+	/**
+	 * The IdP reads the AuthnRequest and answers with a Response posted to the SP.
+	 *
+	 * @return the Response post
+	 * @throws Exception
+	 */
+	public SamlPost authenticateAtIdp(final IOutgoingSaml outgoingRequest, final String subjectId,
+			final String sessionIndex) throws Exception {
+		final AuthnRequest authnRequest = this.idp.readAuthnRequest(outgoingRequest,
+				Saml20BrowserSimulator.REQUEST_BINDING);
+		final Response response = this.idp.buildResponse(authnRequest, subjectId, sessionIndex);
+		return new SamlPost(authnRequest.getAssertionConsumerServiceURL(), SamlHelper.SAML_RESPONSE_PARAM_KEY,
+				this.idp.httpPostEncode(response), outgoingRequest.getRelayState());
+	}
+
+	/**
+	 * The IdP sends a LogoutRequest posted to the SP.
+	 *
+	 * @return the LogoutRequest post
+	 * @throws Exception
+	 */
+	public SamlPost logoutAtIdp(final String subjectId, final String sessionIndex) throws Exception {
+		final LogoutRequest logoutRequest = this.idp.buildLogoutRequest(this.spSloUrl, subjectId, sessionIndex);
+		return new SamlPost(this.spSloUrl, SamlHelper.SAML_REQUEST_PARAM_KEY, this.idp.httpPostEncode(logoutRequest),
+				"rs_" + sessionIndex);
+	}
+
+	/**
+	 * Process a SAML message through the filter as the servlet container would.
+	 *
+	 * @param post
+	 *            the message posted by the browser
+	 * @return the incoming SAML
+	 * @throws Exception
+	 *             if the message was not processed and forwarded
+	 */
+	public IIncomingSaml postToSp(final SamlPost post) throws Exception {
+		final MockHttpServletResponse response = new MockHttpServletResponse();
+		this.filter.doFilter(this.buildPostRequest(post), response, new MockFilterChain());
+
+		final Object outcome = this.filter.takeOutcome();
+		if (outcome instanceof Exception) {
+			throw (Exception) outcome;
+		}
+		if ((outcome == null) || !Saml20BrowserSimulator.FORWARD_URL.equals(response.getForwardedUrl())) {
+			throw new IllegalStateException("SAML message not forwarded by the filter !");
+		}
+
+		return (IIncomingSaml) outcome;
+	}
+
+	/**
+	 * Build the HTTP-POST request received by the servlet container on a SP endpoint. The request URL is the endpoint
+	 * URL as is : the mock request would add the default port.
+	 *
+	 * @param post
+	 *            the message posted by the browser
+	 * @return the request
+	 * @throws MalformedURLException
+	 */
+	protected HttpServletRequest buildPostRequest(final SamlPost post) throws MalformedURLException {
+		final URL url = new URL(post.endpointUrl);
+		final MockHttpServletRequest request = new MockHttpServletRequest(
+				SamlBindingEnum.SAML_20_HTTP_POST.getHttpMethod(), url.getPath()) {
+
+			@Override
+			public StringBuffer getRequestURL() {
+				return new StringBuffer(post.endpointUrl);
+			}
+		};
+		request.setScheme(url.getProtocol());
+		request.setServerName(url.getHost());
+		request.setParameter(post.messageParamKey, post.encodedMessage);
+		request.setParameter(SamlHelper.RELAY_STATE_PARAM_KEY, post.relayState);
+		return request;
+	}
+
+	/**
+	 * A SAML message posted by the browser to the SP (HTTP-POST binding).
+	 *
+	 * @author GIP RECIA 2013 - Maxime BOSSARD.
+	 *
+	 */
+	public static class SamlPost {
+
+		private final String endpointUrl;
+
+		private final String messageParamKey;
+
+		private final String encodedMessage;
+
+		private final String relayState;
+
+		protected SamlPost(final String pEndpointUrl, final String pMessageParamKey, final String pEncodedMessage,
+				final String pRelayState) {
+			this.endpointUrl = pEndpointUrl;
+			this.messageParamKey = pMessageParamKey;
+			this.encodedMessage = pEncodedMessage;
+			this.relayState = pRelayState;
+		}
+
+	}
+
+	/**
+	 * Filter recording the outcome of the SAML processing, which the filter only logs.
+	 *
+	 * @author GIP RECIA 2013 - Maxime BOSSARD.
+	 *
+	 */
+	private static class RecordingFilter extends Saml20ProcessingFilter {
+
+		/** Incoming SAML or exception of the last message processed by the thread. */
+		private final ThreadLocal<Object> outcome = new ThreadLocal<Object>();
+
+		@Override
+		protected IIncomingSaml processSaml2Request(final HttpServletRequest samlRequest)
+				throws SamlProcessingException, UnsupportedSamlOperation {
+			try {
+				final IIncomingSaml incomingSaml = super.processSaml2Request(samlRequest);
+				this.outcome.set(incomingSaml);
+				return incomingSaml;
+			} catch (final SamlProcessingException e) {
+				this.outcome.set(e);
+				throw e;
+			} catch (final UnsupportedSamlOperation e) {
+				this.outcome.set(e);
+				throw e;
+			} catch (final RuntimeException e) {
+				this.outcome.set(e);
+				throw e;
+			}
+		}
+
+		/**
+		 * Get and clear the outcome of the last message.
+		 *
+		 * @return the outcome
+		 */
+		public Object takeOutcome() {
+			final Object last = this.outcome.get();
+			this.outcome.remove();
+			return last;
+		}
+
+	}
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.web;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.impl.helper.LatencyHistogram;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.StandInIdpEndpoint;
+import fr.mby.saml2.sp.impl.web.Saml20BrowserSimulator.SamlPost;
+import fr.mby.saml2.sp.opensaml.core.SyntheticIdp;
+
+/**
+ * This class is not a test but a load generator : thousands of concurrent login / logout round trips driven through
+ * Saml20ProcessingFilter with mocked servlet objects, against an in-process IdP (SyntheticIdp). Nothing leaves the
+ * JVM but the LogoutResponses, POSTed by the SP to a loopback stand-in endpoint.
+ *
+ * One round trip : the IdP connector builds the AuthnRequest, the IdP reads it and mints the Response, the filter
+ * processes the Response, then the IdP mints a LogoutRequest processed by the filter. The throughput, the latency
+ * histogram of each phase and the errors breakdown are reported on stdout.
+ *
+ * Run with : mvn -Ploadtest test-compile exec:exec -Dloadtest.args="threads=32 roundTrips=5000 encrypt=true"
+ *
+ * Arguments (key=value) : threads (32), roundTrips (2000), warmup (200), encrypt (false), signResponse (true),
+ * signAssertion (true), assertions (1), attributes (2) and values (1) per attribute.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class Saml20LoadGenerator {
+
+	/** Context with the IdP SLO endpoints rewritten to the stand-in endpoint. */
+	private static final String LOAD_CONTEXT = "classpath:sloBenchmarkContext.xml";
+
+	/** Phases of a round trip. */
+	private enum Phase {
+		AUTHN_REQUEST, IDP_RESPONSE, AUTHN_RESPONSE, IDP_LOGOUT_REQUEST, LOGOUT_REQUEST, ROUND_TRIP
+	}
+
+	private final Map<String, String> args;
+
+	private final int threads;
+
+	private final int roundTrips;
+
+	private final int warmup;
+
+	private final AtomicInteger sequence = new AtomicInteger();
+
+	/** LogoutRequests processed, warmup included. */
+	private final AtomicLong processedLogouts = new AtomicLong();
+
+	private final Map<Phase, LatencyHistogram> histograms = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+	private Saml20BrowserSimulator browser;
+
+	/**
+	 * Build the load generator.
+	 *
+	 * @param pArgs
+	 *            the key=value arguments
+	 */
+	public Saml20LoadGenerator(final Map<String, String> pArgs) {
+		this.args = pArgs;
+		this.threads = Integer.parseInt(this.arg("threads", "32"));
+		this.roundTrips = Integer.parseInt(this.arg("roundTrips", "2000"));
+		this.warmup = Integer.parseInt(this.arg("warmup", "200"));
+	}
+
+	/**
+	 * Boot the SP and the IdP, run the warmup then the measured round trips and print the report.
+	 *
+	 * @throws Exception
+	 */
+	public void run() throws Exception {
+		final StandInIdpEndpoint idpEndpoint = new StandInIdpEndpoint(0);
+		idpEndpoint.start();
+		final ClassPathXmlApplicationContext context = SamlBenchmarkHelper
+				.loadContext(Saml20LoadGenerator.LOAD_CONTEXT);
+		try {
+			final ISaml20IdpConnector idpConnector = context.getBean("idpConnector", ISaml20IdpConnector.class);
+			final String spSloUrl = context.getBean("spProcessor", ISaml20SpProcessor.class).getSpConfig()
+					.getSingleLogoutServiceUrl(SamlBindingEnum.SAML_20_HTTP_POST);
+
+			// OpenSAML is bootstrapped by the SP processor of the context.
+			final SyntheticIdp idp = new SyntheticIdp();
+			idp.setEncryptAssertion(Boolean.parseBoolean(this.arg("encrypt", "false")));
+			idp.setSignResponse(Boolean.parseBoolean(this.arg("signResponse", "true")));
+			idp.setSignAssertion(Boolean.parseBoolean(this.arg("signAssertion", "true")));
+			idp.getResponseGenerator().setAssertions(Integer.parseInt(this.arg("assertions", "1")));
+			idp.getResponseGenerator().setAttributesPerAssertion(Integer.parseInt(this.arg("attributes", "2")));
+			idp.getResponseGenerator().setValuesPerAttribute(Integer.parseInt(this.arg("values", "1")));
+			this.browser = new Saml20BrowserSimulator(idpConnector, idp, spSloUrl);
+
+			this.resetStatistics();
+			this.execute(this.warmup);
+			this.report("Warmup", this.warmup, 0);
+
+			this.resetStatistics();
+			final long start = System.nanoTime();
+			this.execute(this.roundTrips);
+			final long elapsed = System.nanoTime() - start;
+			this.report("Load", this.roundTrips, elapsed);
+
+			System.out.println(String.format("LogoutResponses received by the IdP: [%d] / expected: [%d]",
+					idpEndpoint.getReceivedMessages(), this.processedLogouts.get()));
+		} finally {
+			context.close();
+			idpEndpoint.stop();
+		}
+	}
+
+	/**
+	 * Run round trips on the thread pool and wait for their end.
+	 *
+	 * @param count
+	 *            the round trips count
+	 * @throws InterruptedException
+	 */
+	protected void execute(final int count) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		for (int k = 0; k < count; k++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					Saml20LoadGenerator.this.roundTrip();
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.DAYS);
+	}
+
+	/** One login / logout round trip of a new subject. */
+	protected void roundTrip() {
+		final int number = this.sequence.incrementAndGet();
+		final String subjectId = "load_user_" + number;
+		final String sessionIndex = "_load_session_" + number;
+
+		final long roundTripStart = System.nanoTime();
+		long phaseStart = roundTripStart;
+		Phase phase = Phase.AUTHN_REQUEST;
+		try {
+			final IOutgoingSaml authnRequest = this.browser.requestAuthentication("http://www.recia.fr/service/"
+					+ number);
+			phaseStart = this.endPhase(phase, phaseStart);
+
+			phase = Phase.IDP_RESPONSE;
+			final SamlPost authnResponse = this.browser.authenticateAtIdp(authnRequest, subjectId, sessionIndex);
+			phaseStart = this.endPhase(phase, phaseStart);
+
+			phase = Phase.AUTHN_RESPONSE;
+			this.browser.postToSp(authnResponse);
+			phaseStart = this.endPhase(phase, phaseStart);
+
+			phase = Phase.IDP_LOGOUT_REQUEST;
+			final SamlPost logoutRequest = this.browser.logoutAtIdp(subjectId, sessionIndex);
+			phaseStart = this.endPhase(phase, phaseStart);
+
+			phase = Phase.LOGOUT_REQUEST;
+			this.browser.postToSp(logoutRequest);
+			this.processedLogouts.incrementAndGet();
+			this.endPhase(phase, phaseStart);
+
+			this.endPhase(Phase.ROUND_TRIP, roundTripStart);
+		} catch (final Exception e) {
+			this.recordError(phase, e);
+		}
+	}
+
+	protected long endPhase(final Phase phase, final long phaseStart) {
+		final long now = System.nanoTime();
+		this.histograms.get(phase).record(now - phaseStart);
+		return now;
+	}
+
+	/**
+	 * Count an error by phase and root cause.
+	 *
+	 * @param phase
+	 *            the failing phase
+	 * @param e
+	 *            the error
+	 */
+	protected void recordError(final Phase phase, final Exception e) {
+		final Throwable rootCause = (ExceptionUtils.getRootCause(e) != null) ? ExceptionUtils.getRootCause(e) : e;
+		final String key = String.format("%-20s %s", phase, rootCause.getClass().getName());
+
+		AtomicLong counter = this.errors.get(key);
+		if (counter == null) {
+			final AtomicLong newCounter = new AtomicLong();
+			counter = this.errors.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+				System.err.println(String.format("First error [%s]: %s", key, rootCause.getMessage()));
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	protected void resetStatistics() {
+		for (final Phase phase : Phase.values()) {
+			this.histograms.put(phase, new LatencyHistogram(phase.name()));
+		}
+		this.errors.clear();
+	}
+
+	/**
+	 * Print the histograms and the errors breakdown.
+	 *
+	 * @param title
+	 *            the title of the run
+	 * @param count
+	 *            the round trips count
+	 * @param elapsedNanos
+	 *            the duration of the run, 0 to skip the throughput
+	 */
+	protected void report(final String title, final int count, final long elapsedNanos) {
+		final long succeeded = this.histograms.get(Phase.ROUND_TRIP).getCount();
+
+		System.out.println(String.format("===== %s : %d round trips, %d threads, %d succeeded, %d failed =====", title,
+				count, this.threads, succeeded, count - succeeded));
+		if (elapsedNanos > 0) {
+			final double seconds = elapsedNanos / 1e9d;
+			System.out.println(String.format("Duration: %.3f s - Throughput: %.1f round trips/s (%.1f messages/s)",
+					seconds, succeeded / seconds, 2 * succeeded / seconds));
+		}
+		for (final Phase phase : Phase.values()) {
+			System.out.println(this.histograms.get(phase).report());
+		}
+		for (final Entry<String, AtomicLong> error : new TreeMap<String, AtomicLong>(this.errors).entrySet()) {
+			System.out.println(String.format("Error %s : %d", error.getKey(), error.getValue().get()));
+		}
+	}
+
+	protected String arg(final String key, final String defaultValue) {
+		final String value = this.args.get(key);
+		return (value != null) ? value : defaultValue;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> parsedArgs = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (separator > 0) {
+				parsedArgs.put(arg.substring(0, separator), arg.substring(separator + 1));
+			}
+		}
+
+		new Saml20LoadGenerator(parsedArgs).run();
+
+		// The metadata refresh timers are not daemon threads.
+		System.exit(0);
+	}
+
+}
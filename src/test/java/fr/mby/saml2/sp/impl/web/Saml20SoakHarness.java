@@ -0,0 +1,584 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.impl.web;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import net.sf.ehcache.Ehcache;
+
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IAuthentication;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.StandInIdpEndpoint;
+import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
+import fr.mby.saml2.sp.opensaml.core.SyntheticIdp;
+
+/**
+ * This class is not a test but a soak test harness : logins at a fixed rate for hours, each session being logged out
+ * by the IdP after a fixed lifetime, so the count of active sessions reaches a plateau (rate x session lifetime). The
+ * SP runs with EhcacheSaml20Storage and each authentication is stored by its session index as the CAS authentication
+ * handler would do, then removed at logout.
+ *
+ * Every sample period : heap occupancy after a full GC, GC pauses (count, cumulated and max) since the previous
+ * sample, sizes of the storage caches and, less often, the top of the class histogram. The samples are printed and
+ * written to a CSV file. The harness fails (exit code 1) when the heap retained per active session since the baseline
+ * exceeds the budget : a leak grows with the time while the plateau does not.
+ *
+ * Run with : mvn -Ploadtest test-compile exec:exec -Dloadtest.main=fr.mby.saml2.sp.impl.web.Saml20SoakHarness
+ * -Dloadtest.args="rate=50 durationMinutes=240 budget=32768"
+ *
+ * Arguments (key=value) : rate (20 logins/s), durationMinutes (60), sessionSeconds (300), sampleSeconds (60),
+ * histogramEvery (10 samples), histogramLines (20), budget (65536 bytes per active session), minSessions (200 active
+ * sessions before checking the budget), threads (8), csv (soak.csv).
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class Saml20SoakHarness {
+
+	/** Context with the stand-in IdP SLO endpoint and the Ehcache storage. */
+	private static final String SOAK_CONTEXT = "classpath:soakContext.xml";
+
+	/** Logins and logouts run before the baseline is measured. */
+	private static final int WARMUP_SESSIONS = 200;
+
+	/** Header of the CSV file. */
+	private static final String CSV_HEADER = "elapsedSeconds,logins,logouts,errors,activeSessions,pendingTasks,"
+			+ "heapUsedBytes,retainedBytesPerSession,gcCount,gcMillis,gcMaxPauseMillis,authenticationsCache,"
+			+ "nameIdCache,baseIdCache,requestsWaitingCache,cachesOnDisk";
+
+	private final Map<String, String> args;
+
+	private final double rate;
+
+	private final long durationMillis;
+
+	private final long sessionMillis;
+
+	private final long sampleMillis;
+
+	private final int histogramEvery;
+
+	private final int histogramLines;
+
+	private final long budget;
+
+	private final int minSessions;
+
+	private final int threads;
+
+	private final File csvFile;
+
+	private final AtomicInteger sequence = new AtomicInteger();
+
+	private final AtomicLong logins = new AtomicLong();
+
+	private final AtomicLong logouts = new AtomicLong();
+
+	private final AtomicLong submittedTasks = new AtomicLong();
+
+	private final AtomicLong completedTasks = new AtomicLong();
+
+	/** Max GC pause since the previous sample, in ms, fed by the GC notifications. */
+	private final AtomicLong maxPauseMillis = new AtomicLong();
+
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+	private Saml20BrowserSimulator browser;
+
+	private EhcacheSaml20Storage storage;
+
+	private ExecutorService workers;
+
+	private ScheduledExecutorService scheduler;
+
+	private long baselineHeap;
+
+	private long previousGcCount;
+
+	private long previousGcMillis;
+
+	/** Failure reason of the budget check, null while the budget is respected. */
+	private volatile String failure;
+
+	/**
+	 * Build the soak harness.
+	 *
+	 * @param pArgs
+	 *            the key=value arguments
+	 */
+	public Saml20SoakHarness(final Map<String, String> pArgs) {
+		this.args = pArgs;
+		this.rate = Double.parseDouble(this.arg("rate", "20"));
+		this.durationMillis = TimeUnit.MINUTES.toMillis(Long.parseLong(this.arg("durationMinutes", "60")));
+		this.sessionMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(this.arg("sessionSeconds", "300")));
+		this.sampleMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(this.arg("sampleSeconds", "60")));
+		this.histogramEvery = Integer.parseInt(this.arg("histogramEvery", "10"));
+		this.histogramLines = Integer.parseInt(this.arg("histogramLines", "20"));
+		this.budget = Long.parseLong(this.arg("budget", "65536"));
+		this.minSessions = Integer.parseInt(this.arg("minSessions", "200"));
+		this.threads = Integer.parseInt(this.arg("threads", "8"));
+		this.csvFile = new File(this.arg("csv", "soak.csv"));
+	}
+
+	/**
+	 * Boot the SP and the IdP, measure the baseline then run the soak test until its end or the budget failure.
+	 *
+	 * @return true if the budget was respected
+	 * @throws Exception
+	 */
+	public boolean run() throws Exception {
+		final StandInIdpEndpoint idpEndpoint = new StandInIdpEndpoint(0);
+		idpEndpoint.start();
+		final ClassPathXmlApplicationContext context = SamlBenchmarkHelper
+				.loadContext(Saml20SoakHarness.SOAK_CONTEXT);
+		final PrintWriter csv = new PrintWriter(new FileWriter(this.csvFile));
+		try {
+			final ISaml20IdpConnector idpConnector = context.getBean("idpConnector", ISaml20IdpConnector.class);
+			final String spSloUrl = context.getBean("spProcessor", ISaml20SpProcessor.class).getSpConfig()
+					.getSingleLogoutServiceUrl(SamlBindingEnum.SAML_20_HTTP_POST);
+			this.storage = context.getBean("saml20Storage", EhcacheSaml20Storage.class);
+
+			// OpenSAML is bootstrapped by the SP processor of the context.
+			this.browser = new Saml20BrowserSimulator(idpConnector, new SyntheticIdp(), spSloUrl);
+			this.listenGcPauses();
+
+			this.workers = Executors.newFixedThreadPool(this.threads);
+			this.scheduler = Executors.newScheduledThreadPool(2);
+
+			this.warmup();
+			this.baselineHeap = this.collectAndMeasureHeap();
+			System.out.println(String.format("Baseline heap after warmup: %d KB", this.baselineHeap / 1024));
+
+			csv.println(Saml20SoakHarness.CSV_HEADER);
+			this.soak(csv);
+		} finally {
+			csv.close();
+			if (this.scheduler != null) {
+				this.scheduler.shutdownNow();
+				this.workers.shutdownNow();
+				this.workers.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			context.close();
+			idpEndpoint.stop();
+		}
+
+		this.report();
+		return this.failure == null;
+	}
+
+	/**
+	 * Run the sessions of the warmup : the JIT and the lazy caches of the libraries must not be seen as a leak.
+	 *
+	 * @throws InterruptedException
+	 */
+	protected void warmup() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(Saml20SoakHarness.WARMUP_SESSIONS);
+		for (int k = 0; k < Saml20SoakHarness.WARMUP_SESSIONS; k++) {
+			this.workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					final int number = Saml20SoakHarness.this.sequence.incrementAndGet();
+					if (Saml20SoakHarness.this.login(number)) {
+						Saml20SoakHarness.this.logout(number);
+					}
+					latch.countDown();
+				}
+			});
+		}
+		latch.await();
+		System.out.println(String.format("Warmup: %d sessions, %d errors", Saml20SoakHarness.WARMUP_SESSIONS,
+				this.countErrors()));
+	}
+
+	/**
+	 * Pace the logins at the configured rate and take the samples until the end of the run or the budget failure.
+	 *
+	 * @param csv
+	 *            the CSV output
+	 * @throws InterruptedException
+	 */
+	protected void soak(final PrintWriter csv) throws InterruptedException {
+		final long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / this.rate);
+		this.scheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				Saml20SoakHarness.this.submitSession();
+			}
+		}, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+		final long start = System.currentTimeMillis();
+		final long end = start + this.durationMillis;
+		int sampleNumber = 0;
+		while ((this.failure == null) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(Math.min(this.sampleMillis, Math.max(1, end - System.currentTimeMillis())));
+			sampleNumber++;
+			final boolean withHistogram = (this.histogramEvery > 0) && ((sampleNumber % this.histogramEvery) == 0);
+			this.sample(csv, (System.currentTimeMillis() - start) / 1000, withHistogram);
+		}
+	}
+
+	/** Start a login on the workers, its logout will follow after the session lifetime. */
+	protected void submitSession() {
+		final int number = this.sequence.incrementAndGet();
+		this.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				if (Saml20SoakHarness.this.login(number)) {
+					Saml20SoakHarness.this.scheduleLogout(number);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Schedule the logout of a session after the session lifetime.
+	 *
+	 * @param number
+	 *            the session number
+	 */
+	protected void scheduleLogout(final int number) {
+		try {
+			this.scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					Saml20SoakHarness.this.submit(new Runnable() {
+
+						@Override
+						public void run() {
+							Saml20SoakHarness.this.logout(number);
+						}
+					});
+				}
+			}, this.sessionMillis, TimeUnit.MILLISECONDS);
+		} catch (final RejectedExecutionException e) {
+			// End of the run : the session stays active.
+		}
+	}
+
+	/**
+	 * Run a task on the workers, counting the pending tasks : a growing count means the SP doesn't sustain the rate.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	protected void submit(final Runnable task) {
+		try {
+			this.submittedTasks.incrementAndGet();
+			this.workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						Saml20SoakHarness.this.completedTasks.incrementAndGet();
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			// End of the run : the sessions still active are abandoned.
+			this.completedTasks.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Login of a subject and storage of its authentication by session index.
+	 *
+	 * @param number
+	 *            the session number
+	 * @return true if the subject is authenticated
+	 */
+	protected boolean login(final int number) {
+		boolean authenticated = false;
+		final String sessionIndex = this.sessionIndex(number);
+		try {
+			final IIncomingSaml incomingSaml = this.browser.login("http://www.recia.fr/service/" + number,
+					"soak_user_" + number, sessionIndex);
+			final List<IAuthentication> authentications = ((QueryAuthnResponse) incomingSaml.getSamlQuery())
+					.getSamlAuthentications();
+			this.storage.storeAuthentication(sessionIndex, authentications.get(0));
+			this.logins.incrementAndGet();
+			authenticated = true;
+		} catch (final Exception e) {
+			this.recordError("LOGIN", e);
+		}
+		return authenticated;
+	}
+
+	/**
+	 * IdP initiated logout of a subject and removal of its authentication.
+	 *
+	 * @param number
+	 *            the session number
+	 */
+	protected void logout(final int number) {
+		final String sessionIndex = this.sessionIndex(number);
+		try {
+			this.browser.logout("soak_user_" + number, sessionIndex);
+			this.logouts.incrementAndGet();
+		} catch (final Exception e) {
+			this.recordError("LOGOUT", e);
+		} finally {
+			// Even a failed logout ends the session : the storage must only hold the active ones.
+			this.storage.removeAuthentication(sessionIndex);
+		}
+	}
+
+	/**
+	 * Take a sample, print it, write it to the CSV file and check the budget.
+	 *
+	 * @param csv
+	 *            the CSV output
+	 * @param elapsedSeconds
+	 *            the elapsed time since the start of the soak
+	 * @param withHistogram
+	 *            print the top of the class histogram
+	 */
+	protected void sample(final PrintWriter csv, final long elapsedSeconds, final boolean withHistogram) {
+		final long heapUsed = this.collectAndMeasureHeap();
+
+		long gcCount = 0;
+		long gcMillis = 0;
+		for (final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += gcBean.getCollectionCount();
+			gcMillis += gcBean.getCollectionTime();
+		}
+		final long gcCountDelta = gcCount - this.previousGcCount;
+		final long gcMillisDelta = gcMillis - this.previousGcMillis;
+		this.previousGcCount = gcCount;
+		this.previousGcMillis = gcMillis;
+		final long maxPause = this.maxPauseMillis.getAndSet(0);
+
+		final long activeSessions = this.logins.get() - this.logouts.get() - this.countLogoutErrors();
+		final long pendingTasks = this.submittedTasks.get() - this.completedTasks.get();
+		final long retainedPerSession = (activeSessions > 0) ? (heapUsed - this.baselineHeap) / activeSessions : 0;
+
+		final Ehcache authnCache = this.storage.getSamlAuthenticationsCache();
+		final Ehcache nameIdCache = this.storage.getSaml2NameIdCache();
+		final Ehcache baseIdCache = this.storage.getSaml2BaseIdCache();
+		final Ehcache requestsCache = this.storage.getSamlRequestWaitingForResponseCache();
+		final long onDisk = authnCache.getDiskStoreSize() + nameIdCache.getDiskStoreSize()
+				+ baseIdCache.getDiskStoreSize() + requestsCache.getDiskStoreSize();
+
+		csv.println(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d", elapsedSeconds,
+				this.logins.get(), this.logouts.get(), this.countErrors(), activeSessions, pendingTasks, heapUsed,
+				retainedPerSession, gcCountDelta, gcMillisDelta, maxPause, authnCache.getSize(),
+				nameIdCache.getSize(), baseIdCache.getSize(), requestsCache.getSize(), onDisk));
+		csv.flush();
+
+		System.out.println(String.format("[%6ds] logins: %d, logouts: %d, errors: %d, active: %d, pending: %d | "
+				+ "heap: %d KB, retained/session: %d B | GC: %d, %d ms, max pause %d ms | caches authn: %d, "
+				+ "nameId: %d, baseId: %d, waiting: %d, on disk: %d", elapsedSeconds, this.logins.get(),
+				this.logouts.get(), this.countErrors(), activeSessions, pendingTasks, heapUsed / 1024,
+				retainedPerSession, gcCountDelta, gcMillisDelta, maxPause, authnCache.getSize(),
+				nameIdCache.getSize(), baseIdCache.getSize(), requestsCache.getSize(), onDisk));
+
+		if (withHistogram) {
+			System.out.println(this.classHistogram());
+		}
+
+		if ((activeSessions >= this.minSessions) && (retainedPerSession > this.budget)) {
+			this.failure = String.format(
+					"Retained heap per active session [%d B] exceeds the budget [%d B] with [%d] active sessions !",
+					retainedPerSession, this.budget, activeSessions);
+			System.out.println(this.classHistogram());
+		}
+	}
+
+	/**
+	 * Heap occupancy after a full GC : the live objects only.
+	 *
+	 * @return the used heap in bytes
+	 */
+	protected long collectAndMeasureHeap() {
+		final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+		System.gc();
+		System.runFinalization();
+		System.gc();
+		return memoryBean.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Top of the class histogram of the live objects (jcmd GC.class_histogram).
+	 *
+	 * @return the first lines of the histogram
+	 */
+	protected String classHistogram() {
+		String histogram;
+		try {
+			final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			final String fullHistogram = (String) server.invoke(new ObjectName(
+					"com.sun.management:type=DiagnosticCommand"), "gcClassHistogram",
+					new Object[]{new String[0]}, new String[]{String[].class.getName()});
+			final String[] lines = fullHistogram.split("\n");
+			final StringBuilder top = new StringBuilder("Class histogram:");
+			// Header (2 lines) then the classes sorted by size.
+			for (int k = 0; k < Math.min(lines.length, this.histogramLines + 2); k++) {
+				top.append('\n').append(lines[k]);
+			}
+			histogram = top.toString();
+		} catch (final Exception e) {
+			histogram = "Class histogram not available: " + e;
+		}
+		return histogram;
+	}
+
+	/** Record the max GC pause of the sample period from the GC notifications. */
+	protected void listenGcPauses() {
+		for (final GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gcBean instanceof NotificationEmitter) {
+				((NotificationEmitter) gcBean).addNotificationListener(new NotificationListener() {
+
+					@Override
+					public void handleNotification(final Notification notification, final Object handback) {
+						if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification
+								.getType())) {
+							final long duration = GarbageCollectionNotificationInfo
+									.from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+							Saml20SoakHarness.this.updateMaxPause(duration);
+						}
+					}
+				}, null, null);
+			}
+		}
+	}
+
+	protected void updateMaxPause(final long duration) {
+		long max = this.maxPauseMillis.get();
+		while ((duration > max) && !this.maxPauseMillis.compareAndSet(max, duration)) {
+			max = this.maxPauseMillis.get();
+		}
+	}
+
+	/**
+	 * Count an error by step and root cause.
+	 *
+	 * @param step
+	 *            the failing step
+	 * @param e
+	 *            the error
+	 */
+	protected void recordError(final String step, final Exception e) {
+		final Throwable rootCause = (ExceptionUtils.getRootCause(e) != null) ? ExceptionUtils.getRootCause(e) : e;
+		final String key = String.format("%-6s %s", step, rootCause.getClass().getName());
+
+		AtomicLong counter = this.errors.get(key);
+		if (counter == null) {
+			final AtomicLong newCounter = new AtomicLong();
+			counter = this.errors.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+				System.err.println(String.format("First error [%s]: %s", key, rootCause.getMessage()));
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	protected long countErrors() {
+		long count = 0;
+		for (final AtomicLong counter : this.errors.values()) {
+			count += counter.get();
+		}
+		return count;
+	}
+
+	protected long countLogoutErrors() {
+		long count = 0;
+		for (final Map.Entry<String, AtomicLong> error : this.errors.entrySet()) {
+			if (error.getKey().startsWith("LOGOUT")) {
+				count += error.getValue().get();
+			}
+		}
+		return count;
+	}
+
+	/** Print the outcome of the soak test. */
+	protected void report() {
+		System.out.println(String.format("===== Soak : %d logins, %d logouts, %d errors, samples in [%s] =====",
+				this.logins.get(), this.logouts.get(), this.countErrors(), this.csvFile.getAbsolutePath()));
+		for (final Map.Entry<String, AtomicLong> error : this.errors.entrySet()) {
+			System.out.println(String.format("Error %s : %d", error.getKey(), error.getValue().get()));
+		}
+		System.out.println((this.failure != null) ? "FAILED: " + this.failure : "PASSED: budget respected.");
+	}
+
+	protected String sessionIndex(final int number) {
+		return "_soak_session_" + number;
+	}
+
+	protected String arg(final String key, final String defaultValue) {
+		final String value = this.args.get(key);
+		return (value != null) ? value : defaultValue;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Map<String, String> parsedArgs = new HashMap<String, String>();
+		for (final String arg : args) {
+			final int separator = arg.indexOf('=');
+			if (separator > 0) {
+				parsedArgs.put(arg.substring(0, separator), arg.substring(separator + 1));
+			}
+		}
+
+		final boolean passed = new Saml20SoakHarness(parsedArgs).run();
+
+		// The metadata refresh timers are not daemon threads.
+		System.exit(passed ? 0 : 1);
+	}
+
+}
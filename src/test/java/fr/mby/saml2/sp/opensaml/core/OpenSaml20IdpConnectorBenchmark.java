@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.io.StringWriter;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.common.SignableSAMLObject;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.io.MarshallingException;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.opensaml.xml.util.XMLHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.w3c.dom.Element;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.handler.ISamlDataAdaptor;
+import fr.mby.saml2.sp.api.query.IQuery;
+import fr.mby.saml2.sp.impl.handler.BasicSamlDataAdaptor;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.om.BasicSamlAuthentication;
+import fr.mby.saml2.sp.impl.om.SamlOutgoingMessage;
+
+/**
+ * JMH benchmark of the outbound path of OpenSaml20IdpConnector : buildSaml20AuthnRequest() and
+ * buildSaml20SingleLogoutRequest() broken down by step for each binding and SP signing key size.
+ * 
+ * Steps are cumulative because a SAML object can only be marshalled and signed once : the cost of a step is the
+ * difference with the previous one. Serialization and encoding are measured alone on a message prepared at setup.
+ * <ol>
+ * <li>build : OpenSAML object built and signature prepared</li>
+ * <li>buildAndMarshall : + DOM marshalling</li>
+ * <li>buildMarshallAndSign : + XML signature</li>
+ * <li>serialize : DOM serialization alone</li>
+ * <li>encode : BasicSamlDataAdaptor encoding alone (HTTP-POST params or HTTP-Redirect URL)</li>
+ * <li>outboundMessage : the whole path, from the OpenSAML object to the encoded message</li>
+ * </ol>
+ * The request waiting for response is not stored, so the benchmark does not measure the storage growth.
+ * 
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="OpenSaml20IdpConnectorBenchmark"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class OpenSaml20IdpConnectorBenchmark {
+
+	/**
+	 * Outgoing SAML message type.
+	 */
+	public enum OutgoingMessage {
+		/** buildSaml20AuthnRequest(). */
+		AUTHN_REQUEST,
+		/** buildSaml20SingleLogoutRequest(). */
+		SLO_REQUEST;
+	}
+
+	@Param
+	private OutgoingMessage message;
+
+	@Param
+	private SamlBindingEnum binding;
+
+	/** RSA SP signing key size. */
+	@Param({"1024", "2048", "3072", "4096"})
+	private int keySize;
+
+	private ClassPathXmlApplicationContext context;
+
+	private OpenSaml20IdpConnector idpConnector;
+
+	private final SignatureBuilder signatureBuilder = new SignatureBuilder();
+
+	private final ISamlDataAdaptor dataAdaptor = new BasicSamlDataAdaptor();
+
+	private final Map<String, String[]> parametersMap = new HashMap<String, String[]>();
+
+	private BasicSamlAuthentication authentication;
+
+	private Credential signingCredential;
+
+	private Element signedElement;
+
+	private SamlOutgoingMessage serializedMessage;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.context = SamlBenchmarkHelper.loadBenchmarkContext();
+		this.idpConnector = this.context.getBean("idpConnector", OpenSaml20IdpConnector.class);
+
+		final KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+		keyPairGenerator.initialize(this.keySize);
+		final KeyPair keyPair = keyPairGenerator.generateKeyPair();
+		this.signingCredential = SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+		this.authentication = new BasicSamlAuthentication();
+		this.authentication.setSubjectId("bench_subject_id");
+		this.authentication.setSessionIndex("bench_session_index");
+
+		this.signedElement = this.buildMarshallAndSign();
+		this.serializedMessage = this.outboundMessage();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.context.close();
+	}
+
+	@Benchmark
+	public SignableSAMLObject build() throws Exception {
+		final SignableSAMLObject samlObject;
+		switch (this.message) {
+			case SLO_REQUEST :
+				samlObject = this.idpConnector.buildLogoutRequest(this.binding, this.authentication);
+				break;
+			default :
+				samlObject = this.idpConnector.buildAuthnRequest(this.binding);
+				break;
+		}
+
+		// Replace the SP signature by a signature with the key of the benchmarked size
+		final Signature signature = this.signatureBuilder.buildObject();
+		SecurityHelper.prepareSignatureParams(signature, this.signingCredential,
+				Configuration.getGlobalSecurityConfiguration(), null);
+		signature.setSigningCredential(this.signingCredential);
+		signature.setKeyInfo(null);
+		samlObject.setSignature(signature);
+
+		return samlObject;
+	}
+
+	@Benchmark
+	public Element buildAndMarshall() throws Exception {
+		return this.marshall(this.build());
+	}
+
+	@Benchmark
+	public Element buildMarshallAndSign() throws Exception {
+		final SignableSAMLObject samlObject = this.build();
+		final Element element = this.marshall(samlObject);
+		Signer.signObject(samlObject.getSignature());
+		return element;
+	}
+
+	@Benchmark
+	public String serialize() {
+		final StringWriter writer = new StringWriter();
+		XMLHelper.writeNode(this.signedElement, writer);
+		return writer.toString();
+	}
+
+	@Benchmark
+	public Object encode() {
+		final Object encoded;
+		switch (this.binding) {
+			case SAML_20_HTTP_REDIRECT :
+				encoded = this.dataAdaptor.buildHttpRedirectBindingUrl(this.serializedMessage);
+				break;
+			default :
+				encoded = this.dataAdaptor.buildHttpPostBindingParams(this.serializedMessage);
+				break;
+		}
+		return encoded;
+	}
+
+	@Benchmark
+	public SamlOutgoingMessage outboundMessage() throws Exception {
+		final IQuery samlQuery;
+		final String endpointUrl;
+		switch (this.message) {
+			case SLO_REQUEST :
+				samlQuery = this.idpConnector.buildQuerySloRequest();
+				endpointUrl = this.idpConnector.getIdpConfig().getIdpSloEndpointUrl(this.binding);
+				break;
+			default :
+				samlQuery = this.idpConnector.buildQueryAuthnRequest(this.parametersMap);
+				endpointUrl = this.idpConnector.getIdpConfig().getIdpSsoEndpointUrl(this.binding);
+				break;
+		}
+
+		final SignableSAMLObject samlObject = this.build();
+		final SamlOutgoingMessage outgoingMessage = this.idpConnector.buildSamlOutgoingMessage(samlQuery, samlObject,
+				this.binding, "rs_bench", endpointUrl);
+
+		// Encoding is lazy : force it as the web layer would
+		switch (this.binding) {
+			case SAML_20_HTTP_REDIRECT :
+				outgoingMessage.getHttpRedirectBindingUrl();
+				break;
+			default :
+				outgoingMessage.getHttpPostBindingParams();
+				break;
+		}
+
+		return outgoingMessage;
+	}
+
+	/**
+	 * Marshall a SAML object into its DOM representation.
+	 * 
+	 * @param samlObject
+	 *            the SAML object
+	 * @return the DOM element
+	 * @throws MarshallingException
+	 */
+	protected Element marshall(final SignableSAMLObject samlObject) throws MarshallingException {
+		return Configuration.getMarshallerFactory().getMarshaller(samlObject).marshall(samlObject);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(OpenSaml20IdpConnectorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
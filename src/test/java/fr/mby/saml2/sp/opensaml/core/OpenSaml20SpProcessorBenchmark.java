@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * JMH benchmark of the full inbound AuthnResponse pipeline : OpenSaml20SpProcessor.processSaml20IncomingRequest()
+ * from the HTTP request to the IIncomingSaml (decoding, replay check, signature trust, decryption, conditions and
+ * authentications extraction).
+ * 
+ * Throughput and latency percentiles are reported for each binding and signing layout.
+ * 
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="OpenSaml20SpProcessorBenchmark"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class OpenSaml20SpProcessorBenchmark {
+
+	/**
+	 * Signing layout of the AuthnResponse.
+	 */
+	public enum ResponseLayout {
+		/** Response and Assertion signed, captured already encoded for each binding. */
+		FULL_SIGNED_CAPTURED(null),
+		/** Signature only on Response. */
+		RESPONSE_SIGNED("saml/requests/response_signed_simple.xml"),
+		/** Signature only on Assertion. */
+		ASSERTION_SIGNED("saml/requests/response_signed_assert.xml"),
+		/** Signature on Response and Assertion. */
+		FULL_SIGNED("saml/requests/response_signed_full.xml");
+
+		/** Raw XML resource to encode, null for captured messages. */
+		private final String resource;
+
+		private ResponseLayout(final String resource) {
+			this.resource = resource;
+		}
+
+		/**
+		 * Build the message encoded for the binding.
+		 * 
+		 * @param binding
+		 *            the binding
+		 * @return the encoded message
+		 * @throws Exception
+		 */
+		public String encode(final SamlBindingEnum binding) throws Exception {
+			final String encoded;
+			if (this.resource == null) {
+				final String capturedResource;
+				switch (binding) {
+					case SAML_20_HTTP_REDIRECT :
+						capturedResource = "saml/requests/incoming_response_signed_full_redirect_encoded.xml";
+						break;
+					default :
+						capturedResource = "saml/requests/incoming_response_signed_full_post_encoded.xml";
+						break;
+				}
+				encoded = SamlBenchmarkHelper.readClasspathFile(capturedResource).trim();
+			} else {
+				final String samlMessage = SamlBenchmarkHelper.readClasspathFile(this.resource);
+				switch (binding) {
+					case SAML_20_HTTP_REDIRECT :
+						// HTTP-Redirect messages are URL encoded in the query string
+						encoded = URLEncoder.encode(SamlHelper.httpRedirectEncode(samlMessage), "UTF-8");
+						break;
+					default :
+						encoded = SamlHelper.httpPostEncode(samlMessage);
+						break;
+				}
+			}
+			return encoded;
+		}
+	}
+
+	@Param
+	private ResponseLayout layout;
+
+	@Param
+	private SamlBindingEnum binding;
+
+	private ClassPathXmlApplicationContext context;
+
+	private ISaml20SpProcessor spProcessor;
+
+	private String encodedResponse;
+
+	private String endpointUri;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.context = SamlBenchmarkHelper.loadBenchmarkContext();
+		this.spProcessor = this.context.getBean("spProcessor", ISaml20SpProcessor.class);
+		final ISaml20IdpConnector idpConnector = this.context.getBean("idpConnector", ISaml20IdpConnector.class);
+
+		// The original request is only looked up by the pipeline : store it once.
+		SamlBenchmarkHelper.storeOriginalAuthnRequest(this.spProcessor.getSaml20Storage(), idpConnector);
+
+		this.encodedResponse = this.layout.encode(this.binding);
+		switch (this.binding) {
+			case SAML_20_HTTP_REDIRECT :
+				this.endpointUri = SamlBenchmarkHelper.SP_AUTHN_REDIRECT_URI;
+				break;
+			default :
+				this.endpointUri = SamlBenchmarkHelper.SP_AUTHN_POST_URI;
+				break;
+		}
+
+		// Fail fast : do not measure a rejection path.
+		if (this.processAuthnResponse() == null) {
+			throw new IllegalStateException(String.format("Unable to process the AuthnResponse [%s] with binding [%s] !",
+					this.layout, this.binding));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.spProcessor.getSaml20Storage().clear();
+		this.context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public IIncomingSaml throughput() throws Exception {
+		return this.processAuthnResponse();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public IIncomingSaml latency() throws Exception {
+		return this.processAuthnResponse();
+	}
+
+	/**
+	 * Process the AuthnResponse as received by the servlet container.
+	 * 
+	 * @return the incoming SAML
+	 * @throws Exception
+	 */
+	protected IIncomingSaml processAuthnResponse() throws Exception {
+		final HttpServletRequest request = SamlBenchmarkHelper.buildRequest(this.binding, this.endpointUri,
+				SamlHelper.SAML_RESPONSE_PARAM_KEY, this.encodedResponse, "rs_bench");
+		return this.spProcessor.processSaml20IncomingRequest(request);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(OpenSaml20SpProcessorBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+
+}
@@ -22,6 +22,7 @@ package fr.mby.saml2.sp.opensaml.core;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Assert;
@@ -39,6 +40,9 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import fr.mby.saml2.sp.api.handler.IAuthenticationHandler;
 import fr.mby.saml2.sp.api.om.IAuthentication;
 import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.ResourceUsageStatistics;
+import fr.mby.saml2.sp.impl.helper.ResourceUsageStatistics.ResourceUsage;
+import fr.mby.saml2.sp.impl.helper.ThreadResourceHelper;
 import fr.mby.saml2.sp.impl.om.BasicSamlAuthentication;
 import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
 
@@ -126,4 +130,48 @@ public class OpenSaml20SpProcessorTest {
 		Assert.assertTrue("Authentication wasn't propagated !", authPropagated.get());
 	}
 
+	@Test
+	public void testRecordResourceUsage() throws Exception {
+		final long startCpuNanos = ThreadResourceHelper.getCurrentThreadCpuNanos();
+		final long startAllocatedBytes = ThreadResourceHelper.getCurrentThreadAllocatedBytes();
+
+		final StringBuilder work = new StringBuilder();
+		for (int k = 0; k < 10000; k++) {
+			work.append(k);
+		}
+		Assert.assertTrue("No work done !", work.length() > 0);
+
+		this.spProcessor.recordResourceUsage("urn:test:idp", "TestQueryProcessor", startCpuNanos, startAllocatedBytes);
+
+		final ResourceUsage usage = this.spProcessor.getResourceUsageStatistics().getUsages()
+				.get("urn:test:idp TestQueryProcessor");
+		Assert.assertNotNull("Resource usage not recorded !", usage);
+		Assert.assertEquals("Wrong messages count !", 1, usage.getCount());
+		if (ThreadResourceHelper.isAllocationSupported()) {
+			Assert.assertTrue("Allocated bytes not recorded !", usage.getAllocatedBytes() > 0);
+		}
+		Assert.assertEquals("Wrong report size !", this.spProcessor.getResourceUsageStatistics().getUsages().size(),
+				this.spProcessor.getResourceUsageStatistics().report().length);
+	}
+
+	@Test
+	public void testResourceAccountingDisabledByDefault() throws Exception {
+		Assert.assertFalse("The resource accounting should be disabled by default !",
+				new OpenSaml20SpProcessor().isResourceAccountingEnabled());
+	}
+
+	@Test
+	public void testResourceUsageBounded() throws Exception {
+		final ResourceUsageStatistics statistics = new ResourceUsageStatistics(2);
+		for (int k = 0; k < 5; k++) {
+			statistics.record("urn:test:idp" + k, "TestQueryProcessor", 1000L, 1000L);
+		}
+
+		final Map<String, ResourceUsage> usages = statistics.getUsages();
+		Assert.assertEquals("The count of totals is not bounded !", 3, usages.size());
+		final ResourceUsage others = usages.get(ResourceUsageStatistics.OTHERS);
+		Assert.assertNotNull("No totals for the messages beyond the limit !", others);
+		Assert.assertEquals("Wrong messages count beyond the limit !", 3, others.getCount());
+	}
+
 }
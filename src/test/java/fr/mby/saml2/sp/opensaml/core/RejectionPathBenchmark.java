@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.opensaml.query.engine.OpenSaml2QueryProcessorFactory;
+
+/**
+ * JMH benchmark of the rejection paths of OpenSaml20SpProcessor.processSaml20IncomingRequest() : malformed, replayed,
+ * wrongly signed, expired and attacked (response_attacked1..4) AuthnResponses, compared with a successful login.
+ *
+ * The average time of one single threaded call is the CPU cost of a rejection. Allocation per rejection is reported by
+ * the GC profiler (gc.alloc.rate.norm, in bytes/op). The pipeline stage which rejects each scenario is printed at setup.
+ *
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="RejectionPathBenchmark -prof gc"
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RejectionPathBenchmark {
+
+	/** Fully signed response : the reference successful login. */
+	private static final String VALID_RESOURCE = "saml/requests/response_signed_full.xml";
+
+	/** Response signed only at the Response level : easy to sign again with another key. */
+	private static final String RESPONSE_SIGNED_RESOURCE = "saml/requests/response_signed_simple.xml";
+
+	/** Server time used to expire the fixtures (their conditions end in 2033). */
+	private static final long EXPIRED_SERVER_TIME = new DateTime(2040, 1, 1, 0, 0, 0, 0).getMillis();
+
+	/**
+	 * Stage of the inbound pipeline, guessed from the stack of the deepest cause of the rejection.
+	 */
+	public enum PipelineStage {
+		/** OpenSaml2QueryProcessorFactory : binding, base64 / inflate and XML parsing. */
+		DECODE,
+		/** OpenSaml2QueryProcessorFactory.validateMessageContext() : MessageReplayRule. */
+		REPLAY_CHECK,
+		/** BaseSamlQueryProcessor.readSamlMessage() for the archiving. */
+		ARCHIVE,
+		/** BaseSamlQueryProcessor.validateRequestType(). */
+		REQUEST_TYPE,
+		/** BaseSamlQueryProcessor.preProcess(). */
+		PRE_PROCESS,
+		/** BaseSamlQueryProcessor.checkSecurity() : signature profile and trust. */
+		SIGNATURE,
+		/** BaseSamlQueryProcessor.validateConditions(). */
+		CONDITIONS,
+		/** BaseSamlQueryProcessor.process() and incoming SAML building. */
+		PROCESS,
+		/** The message was not rejected. */
+		NONE,
+		/** No known stage found in the stack trace. */
+		UNKNOWN;
+
+		/**
+		 * Find the stage which rejected a message.
+		 *
+		 * @param rejection
+		 *            the exception thrown by the pipeline
+		 * @return the rejecting stage
+		 */
+		public static PipelineStage of(final Throwable rejection) {
+			if (rejection == null) {
+				return NONE;
+			}
+
+			// Innermost frames first : the first pipeline method met is the rejecting one
+			for (final StackTraceElement frame : RejectionPathBenchmark.deepestCause(rejection).getStackTrace()) {
+				if (frame.getClassName().startsWith("fr.mby.saml2.sp.")) {
+					final PipelineStage stage = PipelineStage.ofMethod(frame.getMethodName());
+					if (stage != null) {
+						return stage;
+					}
+				}
+			}
+
+			return UNKNOWN;
+		}
+
+		private static PipelineStage ofMethod(final String methodName) {
+			PipelineStage stage = null;
+			if ("validateMessageContext".equals(methodName)) {
+				stage = REPLAY_CHECK;
+			} else if ("buildMessageContext".equals(methodName)
+					|| "extractOpenSamlObjectFromRequest".equals(methodName)
+					|| "extractBindingFromRequest".equals(methodName) || "buildQueryProcessor".equals(methodName)) {
+				stage = DECODE;
+			} else if ("readSamlMessage".equals(methodName)) {
+				stage = ARCHIVE;
+			} else if ("validateRequestType".equals(methodName)
+					|| "processIncomingSamlMessage".equals(methodName)) {
+				stage = REQUEST_TYPE;
+			} else if ("preProcess".equals(methodName)) {
+				stage = PRE_PROCESS;
+			} else if ("checkSecurity".equals(methodName)) {
+				stage = SIGNATURE;
+			} else if ("validateConditions".equals(methodName)) {
+				stage = CONDITIONS;
+			} else if ("process".equals(methodName) || "buildIncomingSamlObject".equals(methodName)
+					|| "buildSamlQuery".equals(methodName)) {
+				stage = PROCESS;
+			}
+			return stage;
+		}
+	}
+
+	/**
+	 * Incoming AuthnResponse scenario.
+	 */
+	public enum Scenario {
+		/** Successful login, reference cost. */
+		VALID,
+		/** POST parameter which is not base64. */
+		MALFORMED_BASE64,
+		/** Truncated XML document. */
+		MALFORMED_XML,
+		/** Valid response received again inside the replay window. */
+		REPLAYED,
+		/** Signed response with a modified attribute value. */
+		TAMPERED,
+		/** Response signed with a key which is not the IdP one. */
+		UNTRUSTED_SIGNER,
+		/** Valid response processed after its NotOnOrAfter condition. */
+		EXPIRED,
+		/** Corruption of the XML tree : invalid XML. */
+		ATTACKED_1,
+		/** Unsigned assertion added in an unsigned response. */
+		ATTACKED_2,
+		/** XML Signature Wrapping : an assertion included in the signed assertion. */
+		ATTACKED_3,
+		/** Unsigned assertion added in a signed response. */
+		ATTACKED_4;
+	}
+
+	@Param
+	private Scenario scenario;
+
+	private ClassPathXmlApplicationContext context;
+
+	private ISaml20SpProcessor spProcessor;
+
+	private String encodedResponse;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.context = SamlBenchmarkHelper.loadBenchmarkContext();
+		this.spProcessor = this.context.getBean("spProcessor", ISaml20SpProcessor.class);
+		final ISaml20IdpConnector idpConnector = this.context.getBean("idpConnector", ISaml20IdpConnector.class);
+
+		// The original request is only looked up by the pipeline : store it once.
+		SamlBenchmarkHelper.storeOriginalAuthnRequest(this.spProcessor.getSaml20Storage(), idpConnector);
+
+		if (this.scenario == Scenario.MALFORMED_BASE64) {
+			this.encodedResponse = "%%% not a base64 SAML message %%%";
+		} else {
+			this.encodedResponse = SamlHelper.httpPostEncode(this.buildResponse());
+		}
+
+		switch (this.scenario) {
+			case REPLAYED :
+				// The test context disable the replay cache : open a window, then consume the message once.
+				final OpenSaml2QueryProcessorFactory factory = this.context.getBean("queryProcessorFactory",
+						OpenSaml2QueryProcessorFactory.class);
+				factory.setReplayMinutes(60);
+				factory.afterPropertiesSet();
+				this.processAuthnResponse();
+				break;
+			case EXPIRED :
+				DateTimeUtils.setCurrentMillisFixed(RejectionPathBenchmark.EXPIRED_SERVER_TIME);
+				break;
+			default :
+				break;
+		}
+
+		final Object result = this.processAuthnResponse();
+		final Throwable rejection = (result instanceof Throwable) ? (Throwable) result : null;
+		final PipelineStage stage = PipelineStage.of(rejection);
+
+		if ((this.scenario == Scenario.VALID) && (stage != PipelineStage.NONE)) {
+			throw new IllegalStateException("Unable to process the reference AuthnResponse !", rejection);
+		}
+
+		final String cause;
+		if (rejection != null) {
+			final Throwable deepest = RejectionPathBenchmark.deepestCause(rejection);
+			cause = String.format("%s: %s", deepest.getClass().getSimpleName(), deepest.getMessage());
+		} else {
+			cause = "accepted";
+		}
+		System.out.println(String.format("Scenario [%s] rejected at stage [%s] (%s)", this.scenario, stage,
+				StringUtils.abbreviate(cause, 200)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		DateTimeUtils.setCurrentMillisSystem();
+		this.spProcessor.getSaml20Storage().clear();
+		this.context.close();
+	}
+
+	/**
+	 * Process the scenario AuthnResponse.
+	 *
+	 * @return the incoming SAML, or the rejection exception
+	 */
+	@Benchmark
+	public Object processResponse() {
+		return this.processAuthnResponse();
+	}
+
+	/**
+	 * Process the AuthnResponse as received by the servlet container.
+	 *
+	 * @return the incoming SAML, or the rejection exception
+	 */
+	protected Object processAuthnResponse() {
+		final HttpServletRequest request = SamlBenchmarkHelper.buildPostRequest(
+				SamlBenchmarkHelper.SP_AUTHN_POST_URI, SamlHelper.SAML_RESPONSE_PARAM_KEY, this.encodedResponse,
+				"rs_bench");
+		try {
+			return this.spProcessor.processSaml20IncomingRequest(request);
+		} catch (final Exception e) {
+			return e;
+		}
+	}
+
+	/**
+	 * Build the AuthnResponse XML of the scenario.
+	 *
+	 * @return the response XML
+	 * @throws Exception
+	 */
+	protected String buildResponse() throws Exception {
+		final String response;
+		switch (this.scenario) {
+			case MALFORMED_XML :
+				final String valid = SamlBenchmarkHelper.readClasspathFile(RejectionPathBenchmark.VALID_RESOURCE);
+				response = valid.substring(0, valid.length() / 2);
+				break;
+			case TAMPERED :
+				response = SamlBenchmarkHelper.readClasspathFile(RejectionPathBenchmark.RESPONSE_SIGNED_RESOURCE)
+						.replace("testValue", "hackValue");
+				break;
+			case UNTRUSTED_SIGNER :
+				response = this.signWithUntrustedKey(SamlBenchmarkHelper
+						.readClasspathFile(RejectionPathBenchmark.RESPONSE_SIGNED_RESOURCE));
+				break;
+			case ATTACKED_1 :
+			case ATTACKED_2 :
+			case ATTACKED_3 :
+			case ATTACKED_4 :
+				final String attackNumber = this.scenario.name().substring(this.scenario.name().length() - 1);
+				response = SamlBenchmarkHelper.readClasspathFile(String.format(
+						"saml/requests/response_attacked%s.xml", attackNumber));
+				break;
+			default :
+				response = SamlBenchmarkHelper.readClasspathFile(RejectionPathBenchmark.VALID_RESOURCE);
+				break;
+		}
+
+		return response;
+	}
+
+	/**
+	 * Replace the Response signature by a valid one made with a freshly generated key.
+	 *
+	 * @param responseXml
+	 *            the signed response
+	 * @return the response signed by an untrusted key
+	 * @throws Exception
+	 */
+	protected String signWithUntrustedKey(final String responseXml) throws Exception {
+		final KeyPair keyPair = SamlBenchmarkHelper.generateKeyPair("RSA", 1024);
+		final Credential untrustedCredential = SecurityHelper.getSimpleCredential(keyPair.getPublic(),
+				keyPair.getPrivate());
+
+		final Response response = (Response) SamlBenchmarkHelper.unmarshall(responseXml);
+		final Signature signature = new SignatureBuilder().buildObject();
+		SecurityHelper.prepareSignatureParams(signature, untrustedCredential,
+				Configuration.getGlobalSecurityConfiguration(), null);
+		signature.setSigningCredential(untrustedCredential);
+		signature.setKeyInfo(null);
+		response.setSignature(signature);
+
+		Configuration.getMarshallerFactory().getMarshaller(response).marshall(response);
+		Signer.signObject(signature);
+
+		return SamlBenchmarkHelper.serialize(response);
+	}
+
+	/**
+	 * Find the deepest cause of an exception.
+	 *
+	 * @param throwable
+	 *            the exception
+	 * @return the deepest cause
+	 */
+	protected static Throwable deepestCause(final Throwable throwable) {
+		Throwable deepest = throwable;
+		while ((deepest.getCause() != null) && (deepest.getCause() != deepest)) {
+			deepest = deepest.getCause();
+		}
+		return deepest;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(RejectionPathBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
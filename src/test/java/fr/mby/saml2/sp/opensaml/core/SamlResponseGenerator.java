@@ -0,0 +1,438 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.security.cert.X509Certificate;
+
+import javax.xml.namespace.QName;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLVersion;
+import org.opensaml.common.impl.SecureRandomIdentifierGenerator;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.Attribute;
+import org.opensaml.saml2.core.AttributeStatement;
+import org.opensaml.saml2.core.AttributeValue;
+import org.opensaml.saml2.core.Audience;
+import org.opensaml.saml2.core.AudienceRestriction;
+import org.opensaml.saml2.core.AuthnContext;
+import org.opensaml.saml2.core.AuthnContextClassRef;
+import org.opensaml.saml2.core.AuthnStatement;
+import org.opensaml.saml2.core.Conditions;
+import org.opensaml.saml2.core.Issuer;
+import org.opensaml.saml2.core.NameID;
+import org.opensaml.saml2.core.NameIDType;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.Status;
+import org.opensaml.saml2.core.StatusCode;
+import org.opensaml.saml2.core.Subject;
+import org.opensaml.saml2.core.SubjectConfirmation;
+import org.opensaml.saml2.core.SubjectConfirmationData;
+import org.opensaml.saml2.encryption.Encrypter;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObject;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.opensaml.xml.encryption.EncryptionConstants;
+import org.opensaml.xml.encryption.EncryptionException;
+import org.opensaml.xml.encryption.EncryptionParameters;
+import org.opensaml.xml.encryption.KeyEncryptionParameters;
+import org.opensaml.xml.schema.XSString;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.security.x509.BasicX509Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SecurityHelper;
+
+/**
+ * This class is not a test but a parametric generator of AuthnResponses for scale tests : the count of assertions,
+ * attributes per assertion and values per attribute, the encryption of assertions, attributes and NameIDs, and the
+ * signature placement are configurable. Messages are signed with the test IdP key (idp_key) and encrypted with the SP
+ * certificate (sp_key_crt.pem), so they are accepted by the SP of the test contexts.
+ *
+ * OpenSAML must be bootstrapped. Configure it first, then generate from any thread.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class SamlResponseGenerator {
+
+	/** Entity Id of the IdP in idp_metadata.xml. */
+	public static final String IDP_ENTITY_ID = "http://www.recia.fr/idp";
+
+	/** SP certificate used to encrypt the assertions. */
+	public static final String SP_CERTIFICATE = "saml/keys/sp_key_crt.pem";
+
+	/** Validity of the generated assertions, in minutes. */
+	private static final int VALIDITY_MINUTES = 5;
+
+	/**
+	 * Signatures of the generated Response.
+	 */
+	public enum SignaturePlacement {
+		/** No signature at all : rejected by the SP. */
+		NONE,
+		/** Signature only on the Response. */
+		RESPONSE,
+		/** Signature only on each Assertion. */
+		ASSERTIONS,
+		/** Signature on the Response and on each Assertion. */
+		BOTH;
+
+		public boolean signResponse() {
+			return (this == SignaturePlacement.RESPONSE) || (this == SignaturePlacement.BOTH);
+		}
+
+		public boolean signAssertions() {
+			return (this == SignaturePlacement.ASSERTIONS) || (this == SignaturePlacement.BOTH);
+		}
+	}
+
+	/** IdP signing credential. */
+	private final Credential signingCredential;
+
+	/** SP encryption credential. */
+	private final Credential encryptionCredential;
+
+	/** Message Ids generator. */
+	private final SecureRandomIdentifierGenerator idGenerator;
+
+	/** Count of assertions, each one with an AuthnStatement. */
+	private int assertions = 1;
+
+	/** Count of attributes in each assertion. */
+	private int attributesPerAssertion = 2;
+
+	/** Count of values of each attribute. */
+	private int valuesPerAttribute = 1;
+
+	private boolean encryptAssertions = false;
+
+	private boolean encryptAttributes = false;
+
+	private boolean encryptNameIds = false;
+
+	private SignaturePlacement signaturePlacement = SignaturePlacement.BOTH;
+
+	/**
+	 * Build the generator with idp_key and the SP certificate.
+	 *
+	 * @throws Exception
+	 */
+	public SamlResponseGenerator() throws Exception {
+		super();
+		this.signingCredential = SamlBenchmarkHelper.buildIdpCredential();
+
+		final BasicX509Credential spCredential = new BasicX509Credential();
+		spCredential.setEntityCertificate((X509Certificate) SecurityHelper.buildCertificate(new ClassPathResource(
+				SamlResponseGenerator.SP_CERTIFICATE), "X.509"));
+		this.encryptionCredential = spCredential;
+
+		this.idGenerator = new SecureRandomIdentifierGenerator();
+	}
+
+	/**
+	 * Generate a Response.
+	 *
+	 * @param inResponseTo
+	 *            Id of the AuthnRequest
+	 * @param destination
+	 *            the SP Assertion Consumer URL
+	 * @param audience
+	 *            the SP entity Id
+	 * @param subjectId
+	 *            the authenticated subject
+	 * @param sessionIndex
+	 *            the IdP session index
+	 * @return the Response, signed and marshalled
+	 * @throws Exception
+	 */
+	public Response generate(final String inResponseTo, final String destination, final String audience,
+			final String subjectId, final String sessionIndex) throws Exception {
+		final DateTime now = new DateTime();
+		// Encrypter is not thread safe.
+		final Encrypter encrypter = this.buildEncrypter();
+
+		final Response response = this.build(Response.DEFAULT_ELEMENT_NAME);
+		response.setID(this.idGenerator.generateIdentifier());
+		response.setInResponseTo(inResponseTo);
+		response.setIssueInstant(now);
+		response.setVersion(SAMLVersion.VERSION_20);
+		response.setDestination(destination);
+		response.setIssuer(this.buildIssuer());
+
+		final Status status = this.build(Status.DEFAULT_ELEMENT_NAME);
+		final StatusCode statusCode = this.build(StatusCode.DEFAULT_ELEMENT_NAME);
+		statusCode.setValue(StatusCode.SUCCESS_URI);
+		status.setStatusCode(statusCode);
+		response.setStatus(status);
+
+		final Signature[] assertionSignatures = new Signature[this.assertions];
+		for (int k = 0; k < this.assertions; k++) {
+			final Assertion assertion = this.buildAssertion(inResponseTo, destination, audience, subjectId,
+					sessionIndex, now, encrypter);
+
+			if (this.encryptAssertions) {
+				if (this.signaturePlacement.signAssertions()) {
+					// The assertion is signed before being encrypted
+					SamlBenchmarkHelper.signSamlObject(assertion, this.signingCredential);
+				}
+				response.getEncryptedAssertions().add(encrypter.encrypt(assertion));
+			} else {
+				if (this.signaturePlacement.signAssertions()) {
+					assertionSignatures[k] = this.prepareSignature();
+					assertion.setSignature(assertionSignatures[k]);
+				}
+				response.getAssertions().add(assertion);
+			}
+		}
+
+		Signature responseSignature = null;
+		if (this.signaturePlacement.signResponse()) {
+			responseSignature = this.prepareSignature();
+			response.setSignature(responseSignature);
+		}
+
+		// Marshall the whole response, then sign the inner signatures first.
+		Configuration.getMarshallerFactory().getMarshaller(response).marshall(response);
+		for (final Signature assertionSignature : assertionSignatures) {
+			if (assertionSignature != null) {
+				Signer.signObject(assertionSignature);
+			}
+		}
+		if (responseSignature != null) {
+			Signer.signObject(responseSignature);
+		}
+
+		return response;
+	}
+
+	/**
+	 * Generate a Response and serialize it.
+	 *
+	 * @see #generate(String, String, String, String, String)
+	 * @return the Response XML
+	 * @throws Exception
+	 */
+	public String generateXml(final String inResponseTo, final String destination, final String audience,
+			final String subjectId, final String sessionIndex) throws Exception {
+		return SamlBenchmarkHelper.serialize(this.generate(inResponseTo, destination, audience, subjectId,
+				sessionIndex));
+	}
+
+	/**
+	 * Build one authentication assertion.
+	 *
+	 * @return the assertion
+	 * @throws EncryptionException
+	 */
+	protected Assertion buildAssertion(final String inResponseTo, final String recipient, final String audienceUri,
+			final String subjectId, final String sessionIndex, final DateTime now, final Encrypter encrypter)
+			throws EncryptionException {
+		final DateTime notOnOrAfter = now.plusMinutes(SamlResponseGenerator.VALIDITY_MINUTES);
+
+		final Assertion assertion = this.build(Assertion.DEFAULT_ELEMENT_NAME);
+		assertion.setID(this.idGenerator.generateIdentifier());
+		assertion.setIssueInstant(now);
+		assertion.setVersion(SAMLVersion.VERSION_20);
+		assertion.setIssuer(this.buildIssuer());
+
+		// Subject
+		final SubjectConfirmationData confirmationData = this.build(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
+		confirmationData.setInResponseTo(inResponseTo);
+		confirmationData.setRecipient(recipient);
+		confirmationData.setNotOnOrAfter(notOnOrAfter);
+		final SubjectConfirmation confirmation = this.build(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
+		confirmation.setMethod(SubjectConfirmation.METHOD_BEARER);
+		confirmation.setSubjectConfirmationData(confirmationData);
+		final Subject subject = this.build(Subject.DEFAULT_ELEMENT_NAME);
+		if (this.encryptNameIds) {
+			subject.setEncryptedID(encrypter.encrypt(this.buildNameId(subjectId)));
+		} else {
+			subject.setNameID(this.buildNameId(subjectId));
+		}
+		subject.getSubjectConfirmations().add(confirmation);
+		assertion.setSubject(subject);
+
+		// Conditions
+		final Audience audience = this.build(Audience.DEFAULT_ELEMENT_NAME);
+		audience.setAudienceURI(audienceUri);
+		final AudienceRestriction audienceRestriction = this.build(AudienceRestriction.DEFAULT_ELEMENT_NAME);
+		audienceRestriction.getAudiences().add(audience);
+		final Conditions conditions = this.build(Conditions.DEFAULT_ELEMENT_NAME);
+		conditions.setNotBefore(now.minusMinutes(1));
+		conditions.setNotOnOrAfter(notOnOrAfter);
+		conditions.getAudienceRestrictions().add(audienceRestriction);
+		assertion.setConditions(conditions);
+
+		// AuthnStatement
+		final AuthnContextClassRef classRef = this.build(AuthnContextClassRef.DEFAULT_ELEMENT_NAME);
+		classRef.setAuthnContextClassRef(AuthnContext.PPT_AUTHN_CTX);
+		final AuthnContext authnContext = this.build(AuthnContext.DEFAULT_ELEMENT_NAME);
+		authnContext.setAuthnContextClassRef(classRef);
+		final AuthnStatement authnStatement = this.build(AuthnStatement.DEFAULT_ELEMENT_NAME);
+		authnStatement.setAuthnInstant(now);
+		authnStatement.setSessionIndex(sessionIndex);
+		authnStatement.setAuthnContext(authnContext);
+		assertion.getAuthnStatements().add(authnStatement);
+
+		// Attributes
+		if (this.attributesPerAssertion > 0) {
+			final AttributeStatement attributeStatement = this.build(AttributeStatement.DEFAULT_ELEMENT_NAME);
+			for (int k = 0; k < this.attributesPerAssertion; k++) {
+				final Attribute attribute = this.buildAttribute(String.format("attribute_%d", k), subjectId);
+				if (this.encryptAttributes) {
+					attributeStatement.getEncryptedAttributes().add(encrypter.encrypt(attribute));
+				} else {
+					attributeStatement.getAttributes().add(attribute);
+				}
+			}
+			assertion.getAttributeStatements().add(attributeStatement);
+		}
+
+		return assertion;
+	}
+
+	/**
+	 * Build a basic attribute with the configured count of string values.
+	 *
+	 * @return the attribute
+	 */
+	protected Attribute buildAttribute(final String name, final String subjectId) {
+		final Attribute attribute = this.build(Attribute.DEFAULT_ELEMENT_NAME);
+		attribute.setName(name);
+		attribute.setFriendlyName(name);
+		attribute.setNameFormat(Attribute.BASIC);
+
+		@SuppressWarnings("unchecked")
+		final XMLObjectBuilder<XSString> valueBuilder = Configuration.getBuilderFactory().getBuilder(
+				XSString.TYPE_NAME);
+		for (int k = 0; k < this.valuesPerAttribute; k++) {
+			final XSString attributeValue = valueBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME,
+					XSString.TYPE_NAME);
+			attributeValue.setValue(String.format("cn=group_%d,ou=%s,ou=groups,dc=recia,dc=fr", k, name));
+			attribute.getAttributeValues().add(attributeValue);
+		}
+
+		return attribute;
+	}
+
+	protected Issuer buildIssuer() {
+		final Issuer issuer = this.build(Issuer.DEFAULT_ELEMENT_NAME);
+		issuer.setValue(SamlResponseGenerator.IDP_ENTITY_ID);
+		return issuer;
+	}
+
+	protected NameID buildNameId(final String subjectId) {
+		final NameID nameId = this.build(NameID.DEFAULT_ELEMENT_NAME);
+		nameId.setFormat(NameIDType.TRANSIENT);
+		nameId.setNameQualifier(SamlResponseGenerator.IDP_ENTITY_ID);
+		nameId.setValue(subjectId);
+		return nameId;
+	}
+
+	/**
+	 * Build a not yet computed signature with the IdP credential.
+	 *
+	 * @return the signature
+	 * @throws Exception
+	 */
+	protected Signature prepareSignature() throws Exception {
+		final Signature signature = new SignatureBuilder().buildObject();
+		org.opensaml.xml.security.SecurityHelper.prepareSignatureParams(signature, this.signingCredential,
+				Configuration.getGlobalSecurityConfiguration(), null);
+		signature.setSigningCredential(this.signingCredential);
+		signature.setKeyInfo(null);
+		return signature;
+	}
+
+	/**
+	 * Build an encrypter for the SP : AES-128 data key transported with RSA-OAEP, inlined like the SP Decrypter
+	 * expects it.
+	 *
+	 * @return a new encrypter
+	 */
+	protected Encrypter buildEncrypter() {
+		final EncryptionParameters encryptionParameters = new EncryptionParameters();
+		encryptionParameters.setAlgorithm(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128);
+
+		final KeyEncryptionParameters keyEncryptionParameters = new KeyEncryptionParameters();
+		keyEncryptionParameters.setEncryptionCredential(this.encryptionCredential);
+		keyEncryptionParameters.setAlgorithm(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP);
+
+		final Encrypter encrypter = new Encrypter(encryptionParameters, keyEncryptionParameters);
+		encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+		return encrypter;
+	}
+
+	/**
+	 * Build a SAML object with the OpenSAML builder factory.
+	 *
+	 * @param elementName
+	 *            the element name
+	 * @return the new object
+	 */
+	@SuppressWarnings("unchecked")
+	protected <T extends XMLObject> T build(final QName elementName) {
+		return (T) Configuration.getBuilderFactory().getBuilder(elementName).buildObject(elementName);
+	}
+
+	protected Credential getSigningCredential() {
+		return this.signingCredential;
+	}
+
+	protected String generateIdentifier() {
+		return this.idGenerator.generateIdentifier();
+	}
+
+	public void setAssertions(final int assertions) {
+		Assert.isTrue(assertions > 0, "At least one assertion is required !");
+		this.assertions = assertions;
+	}
+
+	public void setAttributesPerAssertion(final int attributesPerAssertion) {
+		this.attributesPerAssertion = attributesPerAssertion;
+	}
+
+	public void setValuesPerAttribute(final int valuesPerAttribute) {
+		this.valuesPerAttribute = valuesPerAttribute;
+	}
+
+	public void setEncryptAssertions(final boolean encryptAssertions) {
+		this.encryptAssertions = encryptAssertions;
+	}
+
+	public void setEncryptAttributes(final boolean encryptAttributes) {
+		this.encryptAttributes = encryptAttributes;
+	}
+
+	public void setEncryptNameIds(final boolean encryptNameIds) {
+		this.encryptNameIds = encryptNameIds;
+	}
+
+	public void setSignaturePlacement(final SignaturePlacement signaturePlacement) {
+		Assert.notNull(signaturePlacement, "No signature placement supplied !");
+		this.signaturePlacement = signaturePlacement;
+	}
+
+}
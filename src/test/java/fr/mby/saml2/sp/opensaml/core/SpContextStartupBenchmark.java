@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.opensaml.DefaultBootstrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.beans.factory.support.ManagedList;
+import org.springframework.beans.factory.xml.XmlBeanDefinitionReader;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.StandInIdpEndpoint;
+
+/**
+ * JMH startup benchmark : cold boot of the benchmark Spring context (the integration context of the tests) with 1, 50
+ * and 500 IdP configs. Each IdP has its own metadata file, so each BasicIdpConfig parses its own metadata.
+ *
+ * Every boot runs in a fresh JVM (SingleShotTime, one measurement per fork) and prints its breakdown : the time of
+ * the first DefaultBootstrap.bootstrap() call, the afterPropertiesSet time of each SP / IdP bean class, the remaining
+ * Spring time, and the cost of one more DefaultBootstrap.bootstrap() call which is paid again by every BasicIdpConfig
+ * and every OpenSaml20IdpConnector.
+ *
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="SpContextStartupBenchmark"
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 5, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class SpContextStartupBenchmark {
+
+	/** IdP config bean cloned for each additional IdP. */
+	private static final String IDP_CONFIG_BEAN = "idpConfig";
+
+	/** IdP connector bean cloned for each additional IdP. */
+	private static final String IDP_CONNECTOR_BEAN = "idpConnector";
+
+	/** Entity Id attribute of the IdP metadata, rewritten for each IdP. */
+	private static final String IDP_ENTITY_ID_ATTRIBUTE = "entityID=\"http://www.recia.fr/idp\"";
+
+	/** Count of warm DefaultBootstrap.bootstrap() calls averaged. */
+	private static final int WARM_BOOTSTRAP_CALLS = 5;
+
+	@Param({"1", "50", "500"})
+	private int idpCount;
+
+	/** Metadata of the additional IdPs. */
+	private File[] idpMetadataFiles;
+
+	private GenericApplicationContext context;
+
+	private PhaseRecorder phaseRecorder;
+
+	private long firstBootstrapNanos;
+
+	private long bootNanos;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SamlBenchmarkHelper.configureLogging();
+
+		final String idpMetadata = SamlBenchmarkHelper.readClasspathFile(StandInIdpEndpoint.IDP_METADATA);
+		this.idpMetadataFiles = new File[this.idpCount];
+		for (int k = 1; k < this.idpCount; k++) {
+			final File metadataFile = File.createTempFile("bench_idp_metadata_" + k, ".xml");
+			metadataFile.deleteOnExit();
+			FileUtils.writeStringToFile(metadataFile, idpMetadata.replace(
+					SpContextStartupBenchmark.IDP_ENTITY_ID_ATTRIBUTE, this.idpEntityIdAttribute(k)), "UTF-8");
+			this.idpMetadataFiles[k] = metadataFile;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		for (final File metadataFile : this.idpMetadataFiles) {
+			if (metadataFile != null) {
+				metadataFile.delete();
+			}
+		}
+	}
+
+	@Benchmark
+	public GenericApplicationContext boot() throws Exception {
+		final long start = System.nanoTime();
+
+		DefaultBootstrap.bootstrap();
+		this.firstBootstrapNanos = System.nanoTime() - start;
+
+		this.context = this.buildContext();
+		this.context.refresh();
+
+		this.bootNanos = System.nanoTime() - start;
+		return this.context;
+	}
+
+	@TearDown(Level.Iteration)
+	public void printBreakdown() throws Exception {
+		// Cost of the bootstrap calls made after the first one.
+		final long warmStart = System.nanoTime();
+		for (int k = 0; k < SpContextStartupBenchmark.WARM_BOOTSTRAP_CALLS; k++) {
+			DefaultBootstrap.bootstrap();
+		}
+		final long warmBootstrapNanos = (System.nanoTime() - warmStart) / SpContextStartupBenchmark.WARM_BOOTSTRAP_CALLS;
+		this.context.close();
+
+		final StringBuilder breakdown = new StringBuilder(512);
+		breakdown.append(String.format("%nStartup breakdown with [%d] IdP configs, total [%.1f] ms :%n", this.idpCount,
+				this.bootNanos / 1e6d));
+		breakdown.append(String.format("  %-50s %10.1f ms%n", "DefaultBootstrap.bootstrap() first call",
+				this.firstBootstrapNanos / 1e6d));
+
+		long initNanos = 0;
+		for (final Entry<String, long[]> phase : new TreeMap<String, long[]>(this.phaseRecorder.getPhases())
+				.entrySet()) {
+			final long[] countAndNanos = phase.getValue();
+			initNanos += countAndNanos[1];
+			breakdown.append(String.format("  %-50s %10.1f ms (%d beans)%n", phase.getKey() + ".afterPropertiesSet",
+					countAndNanos[1] / 1e6d, countAndNanos[0]));
+		}
+		breakdown.append(String.format("  %-50s %10.1f ms%n", "Spring (definitions, instantiation, wiring)",
+				(this.bootNanos - this.firstBootstrapNanos - initNanos) / 1e6d));
+
+		final int bootstrapCalls = 2 * this.idpCount;
+		breakdown.append(String.format("  %-50s %10.1f ms x %d calls = %.1f ms (included above)%n",
+				"DefaultBootstrap.bootstrap() next calls", warmBootstrapNanos / 1e6d, bootstrapCalls,
+				warmBootstrapNanos * bootstrapCalls / 1e6d));
+		System.out.println(breakdown);
+	}
+
+	/**
+	 * Build the benchmark context with the IdP configs count of the trial : the first IdP of the integration context,
+	 * then clones of it with their own metadata.
+	 *
+	 * @return the context, not refreshed
+	 */
+	@SuppressWarnings("unchecked")
+	protected GenericApplicationContext buildContext() {
+		final GenericApplicationContext newContext = new GenericApplicationContext();
+		new XmlBeanDefinitionReader(newContext).loadBeanDefinitions(SamlBenchmarkHelper.BENCHMARK_CONTEXT);
+
+		final DefaultListableBeanFactory beanFactory = newContext.getDefaultListableBeanFactory();
+		this.phaseRecorder = new PhaseRecorder();
+		beanFactory.addBeanPostProcessor(this.phaseRecorder);
+
+		// Only keep the first IdP of the integration context.
+		beanFactory.removeBeanDefinition("idpConnector2");
+		beanFactory.removeBeanDefinition("idpConfig2");
+
+		final ManagedList<Object> idpConnectors = new ManagedList<Object>();
+		idpConnectors.add(new RuntimeBeanReference(SpContextStartupBenchmark.IDP_CONNECTOR_BEAN));
+		final ManagedList<Object> idpConfigs = new ManagedList<Object>();
+		idpConfigs.add(new RuntimeBeanReference(SpContextStartupBenchmark.IDP_CONFIG_BEAN));
+
+		final BeanDefinition idpConfigTemplate = beanFactory
+				.getBeanDefinition(SpContextStartupBenchmark.IDP_CONFIG_BEAN);
+		final BeanDefinition idpConnectorTemplate = beanFactory
+				.getBeanDefinition(SpContextStartupBenchmark.IDP_CONNECTOR_BEAN);
+		for (int k = 1; k < this.idpCount; k++) {
+			final String idpConfigName = SpContextStartupBenchmark.IDP_CONFIG_BEAN + k;
+			final GenericBeanDefinition idpConfig = new GenericBeanDefinition(idpConfigTemplate);
+			idpConfig.getPropertyValues().add("id", "benchIdpConfig" + k);
+			idpConfig.getPropertyValues().add("idpEntityId", this.idpEntityId(k));
+			idpConfig.getPropertyValues().add("idpMetadata", new FileSystemResource(this.idpMetadataFiles[k]));
+			beanFactory.registerBeanDefinition(idpConfigName, idpConfig);
+			idpConfigs.add(new RuntimeBeanReference(idpConfigName));
+
+			final String idpConnectorName = SpContextStartupBenchmark.IDP_CONNECTOR_BEAN + k;
+			final GenericBeanDefinition idpConnector = new GenericBeanDefinition(idpConnectorTemplate);
+			idpConnector.getPropertyValues().add("idpConfig", new RuntimeBeanReference(idpConfigName));
+			beanFactory.registerBeanDefinition(idpConnectorName, idpConnector);
+			idpConnectors.add(new RuntimeBeanReference(idpConnectorName));
+		}
+
+		beanFactory.getBeanDefinition("spProcessor").getPropertyValues().add("idpConnectors", idpConnectors);
+		beanFactory.getBeanDefinition("wayfConfig").getPropertyValues().add("config", idpConfigs);
+
+		return newContext;
+	}
+
+	protected String idpEntityId(final int number) {
+		return "http://www.recia.fr/idp/" + number;
+	}
+
+	protected String idpEntityIdAttribute(final int number) {
+		return "entityID=\"" + this.idpEntityId(number) + "\"";
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(SpContextStartupBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+	/**
+	 * Bean post processor recording the initialization time (afterPropertiesSet) of the beans by class. Beans are
+	 * initialized once their dependencies are, so the recorded times are not nested.
+	 *
+	 * @author GIP RECIA 2013 - Maxime BOSSARD.
+	 *
+	 */
+	private static class PhaseRecorder implements BeanPostProcessor {
+
+		/** Initialization start of the beans being initialized. */
+		private final Map<String, Long> starts = new ConcurrentHashMap<String, Long>();
+
+		/** Beans count and initialization time by bean class. */
+		private final Map<String, long[]> phases = new ConcurrentHashMap<String, long[]>();
+
+		@Override
+		public Object postProcessBeforeInitialization(final Object bean, final String beanName)
+				throws BeansException {
+			this.starts.put(beanName, System.nanoTime());
+			return bean;
+		}
+
+		@Override
+		public Object postProcessAfterInitialization(final Object bean, final String beanName)
+				throws BeansException {
+			final Long start = this.starts.remove(beanName);
+			if ((start != null) && bean.getClass().getName().startsWith("fr.mby.saml2")) {
+				final String phase = bean.getClass().getSimpleName();
+				long[] countAndNanos = this.phases.get(phase);
+				if (countAndNanos == null) {
+					countAndNanos = new long[2];
+					this.phases.put(phase, countAndNanos);
+				}
+				countAndNanos[0]++;
+				countAndNanos[1] += System.nanoTime() - start;
+			}
+			return bean;
+		}
+
+		public Map<String, long[]> getPhases() {
+			return this.phases;
+		}
+
+	}
+
+}
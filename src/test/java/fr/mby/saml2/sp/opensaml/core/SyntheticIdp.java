@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.net.URLDecoder;
+import java.util.Map.Entry;
+
+import org.joda.time.DateTime;
+import org.opensaml.common.SAMLVersion;
+import org.opensaml.saml2.core.AuthnRequest;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.opensaml.saml2.core.Response;
+import org.opensaml.saml2.core.SessionIndex;
+import org.opensaml.xml.XMLObject;
+import org.springframework.util.Assert;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * This class is not a test but an in-process IdP for load tests !
+ *
+ * It reads the AuthnRequests built by OpenSaml20IdpConnector and mints the messages the IdP of the test metadata
+ * (idp_metadata.xml) would send : Responses built by a SamlResponseGenerator and signed LogoutRequests. OpenSAML must
+ * be bootstrapped. Thread safe once configured.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+public class SyntheticIdp {
+
+	/** Validity of the minted LogoutRequests, in minutes. */
+	private static final int VALIDITY_MINUTES = 5;
+
+	/** Responses generator, configurable for the payload of the Responses. */
+	private final SamlResponseGenerator responseGenerator;
+
+	/** Sign the Response. */
+	private boolean signResponse = true;
+
+	/** Sign the Assertion. */
+	private boolean signAssertion = true;
+
+	/**
+	 * Build the IdP with idp_key and the SP certificate.
+	 *
+	 * @throws Exception
+	 */
+	public SyntheticIdp() throws Exception {
+		super();
+		this.responseGenerator = new SamlResponseGenerator();
+	}
+
+	/**
+	 * Read an AuthnRequest as the IdP would receive it from the browser.
+	 *
+	 * @param outgoingRequest
+	 *            the request built by OpenSaml20IdpConnector
+	 * @param binding
+	 *            the binding used to send the request
+	 * @return the AuthnRequest
+	 * @throws Exception
+	 */
+	public AuthnRequest readAuthnRequest(final IOutgoingSaml outgoingRequest, final SamlBindingEnum binding)
+			throws Exception {
+		final String samlMessage;
+		switch (binding) {
+			case SAML_20_HTTP_REDIRECT :
+				final String redirectUrl = outgoingRequest.getHttpRedirectBindingUrl();
+				final String encodedMessage = this.findQueryParameter(redirectUrl, SamlHelper.SAML_REQUEST_PARAM_KEY);
+				samlMessage = SamlHelper.httpRedirectDecode(URLDecoder.decode(encodedMessage, "UTF-8"));
+				break;
+			default :
+				String postedMessage = null;
+				for (final Entry<String, String> param : outgoingRequest.getHttpPostBindingParams()) {
+					if (SamlHelper.SAML_REQUEST_PARAM_KEY.equals(param.getKey())) {
+						postedMessage = param.getValue();
+					}
+				}
+				Assert.notNull(postedMessage, "No SAMLRequest in HTTP-POST params !");
+				samlMessage = SamlHelper.base64Decode(postedMessage);
+				break;
+		}
+
+		return (AuthnRequest) SamlBenchmarkHelper.unmarshall(samlMessage);
+	}
+
+	/**
+	 * Mint the Response to an AuthnRequest.
+	 *
+	 * @param authnRequest
+	 *            the AuthnRequest
+	 * @param subjectId
+	 *            the authenticated subject
+	 * @param sessionIndex
+	 *            the IdP session index
+	 * @return the Response, signed and marshalled
+	 * @throws Exception
+	 */
+	public Response buildResponse(final AuthnRequest authnRequest, final String subjectId, final String sessionIndex)
+			throws Exception {
+		return this.responseGenerator.generate(authnRequest.getID(), authnRequest.getAssertionConsumerServiceURL(),
+				authnRequest.getIssuer().getValue(), subjectId, sessionIndex);
+	}
+
+	/**
+	 * Mint an IdP initiated LogoutRequest.
+	 *
+	 * @param spSloUrl
+	 *            the SP SLO endpoint
+	 * @param subjectId
+	 *            the subject to logout
+	 * @param sessionIndex
+	 *            the IdP session index to logout
+	 * @return the LogoutRequest, signed and marshalled
+	 * @throws Exception
+	 */
+	public LogoutRequest buildLogoutRequest(final String spSloUrl, final String subjectId, final String sessionIndex)
+			throws Exception {
+		final DateTime now = new DateTime();
+		final SamlResponseGenerator generator = this.responseGenerator;
+
+		final LogoutRequest logoutRequest = generator.build(LogoutRequest.DEFAULT_ELEMENT_NAME);
+		logoutRequest.setID(generator.generateIdentifier());
+		logoutRequest.setIssueInstant(now);
+		logoutRequest.setNotOnOrAfter(now.plusMinutes(SyntheticIdp.VALIDITY_MINUTES));
+		logoutRequest.setVersion(SAMLVersion.VERSION_20);
+		logoutRequest.setDestination(spSloUrl);
+		logoutRequest.setIssuer(generator.buildIssuer());
+		logoutRequest.setNameID(generator.buildNameId(subjectId));
+
+		final SessionIndex index = generator.build(SessionIndex.DEFAULT_ELEMENT_NAME);
+		index.setSessionIndex(sessionIndex);
+		logoutRequest.getSessionIndexes().add(index);
+
+		return SamlBenchmarkHelper.signSamlObject(logoutRequest, generator.getSigningCredential());
+	}
+
+	/**
+	 * Encode a minted message for the HTTP-POST binding.
+	 *
+	 * @param samlObject
+	 *            the message
+	 * @return the encoded message
+	 * @throws Exception
+	 */
+	public String httpPostEncode(final XMLObject samlObject) throws Exception {
+		return SamlHelper.httpPostEncode(SamlBenchmarkHelper.serialize(samlObject));
+	}
+
+	/**
+	 * Find a parameter in the query string of an URL.
+	 *
+	 * @return the raw (URL encoded) value
+	 */
+	protected String findQueryParameter(final String url, final String paramKey) {
+		String value = null;
+
+		final int queryStart = url.indexOf('?');
+		Assert.isTrue(queryStart > -1, String.format("No query string in URL [%s] !", url));
+		for (final String param : url.substring(queryStart + 1).split("&")) {
+			if (param.startsWith(paramKey + "=")) {
+				value = param.substring(paramKey.length() + 1);
+			}
+		}
+
+		Assert.notNull(value, String.format("No parameter [%s] in URL [%s] !", paramKey, url));
+		return value;
+	}
+
+	/**
+	 * Update the signature placement of the generator.
+	 */
+	protected void updateSignaturePlacement() {
+		final SamlResponseGenerator.SignaturePlacement placement;
+		if (this.signResponse && this.signAssertion) {
+			placement = SamlResponseGenerator.SignaturePlacement.BOTH;
+		} else if (this.signResponse) {
+			placement = SamlResponseGenerator.SignaturePlacement.RESPONSE;
+		} else if (this.signAssertion) {
+			placement = SamlResponseGenerator.SignaturePlacement.ASSERTIONS;
+		} else {
+			placement = SamlResponseGenerator.SignaturePlacement.NONE;
+		}
+		this.responseGenerator.setSignaturePlacement(placement);
+	}
+
+	/**
+	 * Generator of the Responses, to configure their payload.
+	 *
+	 * @return the generator
+	 */
+	public SamlResponseGenerator getResponseGenerator() {
+		return this.responseGenerator;
+	}
+
+	public void setSignResponse(final boolean signResponse) {
+		this.signResponse = signResponse;
+		this.updateSignaturePlacement();
+	}
+
+	public void setSignAssertion(final boolean signAssertion) {
+		this.signAssertion = signAssertion;
+		this.updateSignaturePlacement();
+	}
+
+	public void setEncryptAssertion(final boolean encryptAssertion) {
+		this.responseGenerator.setEncryptAssertions(encryptAssertion);
+	}
+
+}
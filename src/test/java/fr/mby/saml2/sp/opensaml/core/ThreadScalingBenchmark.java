@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.IterationType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.config.ISpConfig;
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.api.om.IOutgoingSaml;
+import fr.mby.saml2.sp.impl.helper.ContentionRecorder;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+
+/**
+ * JMH thread scaling benchmark of the inbound pipeline (signed Response with an encrypted assertion, processed by
+ * OpenSaml20SpProcessor) and of the outbound pipeline (AuthnRequest built and signed by OpenSaml20IdpConnector), with
+ * the Ehcache storage.
+ *
+ * main() runs each pipeline at 1, 2, 4 ... 64 threads and prints the speedup curves. During the measurement
+ * iterations, each fork records the contended locks with JFR (JavaMonitorEnter and ThreadPark events) and prints the
+ * top contention points : the static SecureRandomIdentifierGenerator, the shared Decrypter and SignatureBuilder, the
+ * replay cache and the Ehcache segments all show up there if they serialize the threads.
+ *
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="ThreadScalingBenchmark -t 8" for one thread count,
+ * or the main() for the whole curves.
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class ThreadScalingBenchmark {
+
+	/** Thread counts of the speedup curves. */
+	private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+	/** Context with the Ehcache storage. */
+	private static final String SCALING_CONTEXT = "classpath:scalingBenchmarkContext.xml";
+
+	/**
+	 * Count of distinct Responses sent in turn : concurrent threads must not send the same message ID in the same
+	 * millisecond, the replay cache would reject it.
+	 */
+	private static final int RESPONSES_POOL_SIZE = 256;
+
+	/** Minimal duration of the recorded lock events, in ms. */
+	private static final long CONTENTION_THRESHOLD_MILLIS = 1;
+
+	/** Contention points printed by event type. */
+	private static final int CONTENTION_LINES = 10;
+
+	private ClassPathXmlApplicationContext context;
+
+	private ISaml20SpProcessor spProcessor;
+
+	private ISaml20IdpConnector idpConnector;
+
+	private final String[] encodedResponses = new String[ThreadScalingBenchmark.RESPONSES_POOL_SIZE];
+
+	private final AtomicInteger responsesSequence = new AtomicInteger();
+
+	private final Map<String, String[]> parametersMap = new HashMap<String, String[]>();
+
+	private ContentionRecorder contentionRecorder;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.context = SamlBenchmarkHelper.loadContext(ThreadScalingBenchmark.SCALING_CONTEXT);
+		this.spProcessor = this.context.getBean("spProcessor", ISaml20SpProcessor.class);
+		this.idpConnector = this.context.getBean("idpConnector", ISaml20IdpConnector.class);
+
+		// The original request is only looked up by the pipeline : store it once.
+		SamlBenchmarkHelper.storeOriginalAuthnRequest(this.spProcessor.getSaml20Storage(), this.idpConnector);
+
+		final SamlResponseGenerator generator = new SamlResponseGenerator();
+		generator.setEncryptAssertions(true);
+		final ISpConfig spConfig = this.spProcessor.getSpConfig();
+		for (int k = 0; k < this.encodedResponses.length; k++) {
+			this.encodedResponses[k] = SamlHelper.httpPostEncode(generator.generateXml(
+					SamlBenchmarkHelper.AUTHN_REQUEST_ID, spConfig.getEndpointUrl(SamlBindingEnum.SAML_20_HTTP_POST),
+					spConfig.getEntityId(), "bench_user_" + k, "_bench_session_" + k));
+		}
+
+		this.parametersMap.put("service", new String[]{"http://www.recia.fr/service"});
+
+		// Fail fast, and first use of the libraries by a single thread.
+		if ((this.inbound() == null) || (this.outbound() == null)) {
+			throw new IllegalStateException("Unable to run the inbound or the outbound pipeline !");
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void startContentionRecording(final IterationParams iterationParams) {
+		if ((iterationParams.getType() == IterationType.MEASUREMENT) && (this.contentionRecorder == null)) {
+			this.contentionRecorder = new ContentionRecorder(ThreadScalingBenchmark.CONTENTION_THRESHOLD_MILLIS);
+			this.contentionRecorder.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(final BenchmarkParams benchmarkParams) throws Exception {
+		if (this.contentionRecorder != null) {
+			System.out.println(String.format("%nLock contention of [%s] with [%d] threads:%n%s",
+					benchmarkParams.getBenchmark(), benchmarkParams.getThreads(),
+					this.contentionRecorder.stopAndSummarize(ThreadScalingBenchmark.CONTENTION_LINES)));
+		}
+		this.spProcessor.getSaml20Storage().clear();
+		this.context.close();
+	}
+
+	/**
+	 * Inbound pipeline : process the next Response of the pool as received by the servlet container.
+	 *
+	 * @return the incoming SAML
+	 * @throws Exception
+	 */
+	@Benchmark
+	public IIncomingSaml inbound() throws Exception {
+		final int next = (this.responsesSequence.getAndIncrement() & Integer.MAX_VALUE)
+				% this.encodedResponses.length;
+		final HttpServletRequest request = SamlBenchmarkHelper.buildPostRequest(SamlBenchmarkHelper.SP_AUTHN_POST_URI,
+				SamlHelper.SAML_RESPONSE_PARAM_KEY, this.encodedResponses[next], "rs_bench");
+		return this.spProcessor.processSaml20IncomingRequest(request);
+	}
+
+	/**
+	 * Outbound pipeline : build, sign, store and encode an AuthnRequest.
+	 *
+	 * @return the outgoing SAML
+	 * @throws Exception
+	 */
+	@Benchmark
+	public IOutgoingSaml outbound() throws Exception {
+		return this.idpConnector.buildSaml20AuthnRequest(this.parametersMap, SamlBindingEnum.SAML_20_HTTP_POST);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		for (final String pipeline : new String[]{"inbound", "outbound"}) {
+			final List<String> curve = new ArrayList<String>();
+			double singleThreadScore = 0;
+			for (final int threads : ThreadScalingBenchmark.THREAD_COUNTS) {
+				final Options options = new OptionsBuilder()
+						.include(ThreadScalingBenchmark.class.getSimpleName() + "." + pipeline + "$")
+						.threads(threads).build();
+				final Collection<RunResult> results = new Runner(options).run();
+				final double score = results.iterator().next().getPrimaryResult().getScore();
+				if (threads == 1) {
+					singleThreadScore = score;
+				}
+				final double speedup = score / singleThreadScore;
+				curve.add(String.format("%8d %12.1f %8.2f %10.0f%%", threads, score, speedup, 100 * speedup / threads));
+			}
+
+			System.out.println(String.format("%nSpeedup curve of the [%s] pipeline (%d CPUs):", pipeline, Runtime
+					.getRuntime().availableProcessors()));
+			System.out.println(String.format("%8s %12s %8s %11s", "threads", "ops/s", "speedup", "efficiency"));
+			for (final String line : curve) {
+				System.out.println(line);
+			}
+		}
+	}
+
+}
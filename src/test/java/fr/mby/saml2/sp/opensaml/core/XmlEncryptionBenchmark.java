@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.saml2.core.EncryptedAssertion;
+import org.opensaml.saml2.encryption.Decrypter;
+import org.opensaml.saml2.encryption.Encrypter;
+import org.opensaml.xml.encryption.EncryptionConstants;
+import org.opensaml.xml.encryption.EncryptionParameters;
+import org.opensaml.xml.encryption.InlineEncryptedKeyResolver;
+import org.opensaml.xml.encryption.KeyEncryptionParameters;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.BasicCredential;
+import org.opensaml.xml.security.keyinfo.StaticKeyInfoCredentialResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+
+/**
+ * JMH benchmark of the assertion decryption done by AuthnResponseQueryProcessor with the Decrypter built by
+ * OpenSaml20SpProcessor, for each SP key size and each encryption combination an IdP may send.
+ * 
+ * Covers RSA 2048/3072/4096 keys, RSA-OAEP and RSA 1.5 key transport, AES-128 and AES-256 CBC data encryption.
+ * AES-GCM (XML Encryption 1.1) is not supported by the xmlsec version shipped with OpenSAML 2.5, so an IdP sending it
+ * cannot be decrypted at all.
+ * 
+ * Single threaded throughput is the number of operations per second per core :
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="XmlEncryptionBenchmark"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class XmlEncryptionBenchmark {
+
+	/** Assertion to encrypt. */
+	private static final String ASSERTION_RESOURCE = "saml/requests/assertion.xml";
+
+	/**
+	 * Key transport algorithm.
+	 */
+	public enum KeyTransport {
+		RSA_OAEP(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSAOAEP),
+		RSA_1_5(EncryptionConstants.ALGO_ID_KEYTRANSPORT_RSA15);
+
+		private final String uri;
+
+		private KeyTransport(final String uri) {
+			this.uri = uri;
+		}
+	}
+
+	/**
+	 * Data encryption algorithm.
+	 */
+	public enum DataEncryption {
+		AES128_CBC(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128),
+		AES256_CBC(EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256);
+
+		private final String uri;
+
+		private DataEncryption(final String uri) {
+			this.uri = uri;
+		}
+	}
+
+	/** SP RSA key size. */
+	@Param({"2048", "3072", "4096"})
+	private int keySize;
+
+	@Param
+	private KeyTransport keyTransport;
+
+	@Param
+	private DataEncryption dataEncryption;
+
+	private Decrypter decrypter;
+
+	private EncryptedAssertion encryptedAssertion;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SamlBenchmarkHelper.configureLogging();
+		DefaultBootstrap.bootstrap();
+
+		final KeyPair keyPair = SamlBenchmarkHelper.generateKeyPair("RSA", this.keySize);
+
+		// IdP side : encrypt the assertion with the SP public key
+		final EncryptionParameters encryptionParameters = new EncryptionParameters();
+		encryptionParameters.setAlgorithm(this.dataEncryption.uri);
+		final KeyEncryptionParameters keyEncryptionParameters = new KeyEncryptionParameters();
+		keyEncryptionParameters.setEncryptionCredential(SecurityHelper.getSimpleCredential(keyPair.getPublic(), null));
+		keyEncryptionParameters.setAlgorithm(this.keyTransport.uri);
+		final Encrypter encrypter = new Encrypter(encryptionParameters, keyEncryptionParameters);
+		encrypter.setKeyPlacement(Encrypter.KeyPlacement.INLINE);
+
+		final Assertion assertion = (Assertion) SamlBenchmarkHelper.unmarshall(SamlBenchmarkHelper
+				.readClasspathFile(XmlEncryptionBenchmark.ASSERTION_RESOURCE));
+		this.encryptedAssertion = (EncryptedAssertion) SamlBenchmarkHelper.unmarshall(SamlBenchmarkHelper
+				.serialize(encrypter.encrypt(assertion)));
+
+		// SP side : the decrypter built like OpenSaml20SpProcessor.buildDecrypter()
+		final BasicCredential credential = new BasicCredential();
+		credential.setPrivateKey(keyPair.getPrivate());
+		this.decrypter = new Decrypter(null, new StaticKeyInfoCredentialResolver(credential),
+				new InlineEncryptedKeyResolver());
+
+		// Fail fast
+		if (!assertion.getID().equals(this.decryptAssertion().getID())) {
+			throw new IllegalStateException("The decrypted assertion doesn't match the encrypted one !");
+		}
+	}
+
+	@Benchmark
+	public Assertion decryptAssertion() throws Exception {
+		return (Assertion) this.decrypter.decryptData(this.encryptedAssertion.getEncryptedData(), true);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(XmlEncryptionBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
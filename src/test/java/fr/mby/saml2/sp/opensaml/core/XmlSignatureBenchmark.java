@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+
+package fr.mby.saml2.sp.opensaml.core;
+
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.saml2.core.Assertion;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.security.SecurityHelper;
+import org.opensaml.xml.security.credential.BasicCredential;
+import org.opensaml.xml.security.credential.Credential;
+import org.opensaml.xml.signature.Signature;
+import org.opensaml.xml.signature.SignatureValidator;
+import org.opensaml.xml.signature.Signer;
+import org.opensaml.xml.signature.impl.SignatureBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+
+/**
+ * JMH benchmark of the XML signature operations : verification of a signed assertion, as done for each incoming
+ * message, and signing, as done by OpenSaml20SpProcessor.buildSignature() and Signer for each outgoing request.
+ * 
+ * Covers RSA 2048/3072/4096 keys with rsa-sha1, the algorithm chosen by the global security configuration. EC keys
+ * are not supported by OpenSAML 2.5 : the KeyInfo generator only accept RSA and DSA keys and xmlsec 1.4 maps
+ * ecdsa-sha1 to a JCE algorithm name only provided by BouncyCastle.
+ * 
+ * Single threaded throughput is the number of operations per second per core. Run with -t to check the scaling :
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="XmlSignatureBenchmark"
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class XmlSignatureBenchmark {
+
+	/** Assertion to sign. */
+	private static final String ASSERTION_RESOURCE = "saml/requests/assertion.xml";
+
+	/** RSA key size. */
+	@Param({"2048", "3072", "4096"})
+	private int keySize;
+
+	private String assertionXml;
+
+	private Credential signingCredential;
+
+	private SignatureValidator signatureValidator;
+
+	private Signature signatureToVerify;
+
+	/**
+	 * A marshalled but unsigned assertion for each signing operation. Signing cost at least a hundred microseconds so
+	 * the invocation level setup does not disturb the measure.
+	 */
+	@State(Scope.Thread)
+	public static class UnsignedAssertion {
+
+		private Signature signature;
+
+		@Setup(Level.Invocation)
+		public void prepare(final XmlSignatureBenchmark benchmark) throws Exception {
+			final Assertion assertion = benchmark.buildAssertionToSign();
+			Configuration.getMarshallerFactory().getMarshaller(assertion).marshall(assertion);
+			this.signature = assertion.getSignature();
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		SamlBenchmarkHelper.configureLogging();
+		DefaultBootstrap.bootstrap();
+
+		this.assertionXml = SamlBenchmarkHelper.readClasspathFile(XmlSignatureBenchmark.ASSERTION_RESOURCE);
+
+		final KeyPair keyPair = SamlBenchmarkHelper.generateKeyPair("RSA", this.keySize);
+		this.signingCredential = SecurityHelper.getSimpleCredential(keyPair.getPublic(), keyPair.getPrivate());
+
+		// Sign an assertion, then parse it again like an incoming message
+		final Assertion assertion = this.buildAssertionToSign();
+		Configuration.getMarshallerFactory().getMarshaller(assertion).marshall(assertion);
+		Signer.signObject(assertion.getSignature());
+		final Assertion signedAssertion = (Assertion) SamlBenchmarkHelper.unmarshall(SamlBenchmarkHelper
+				.serialize(assertion));
+		this.signatureToVerify = signedAssertion.getSignature();
+
+		final BasicCredential verificationCredential = new BasicCredential();
+		verificationCredential.setPublicKey(keyPair.getPublic());
+		this.signatureValidator = new SignatureValidator(verificationCredential);
+
+		// Fail fast
+		this.signatureValidator.validate(this.signatureToVerify);
+	}
+
+	@Benchmark
+	public Signature verify() throws Exception {
+		this.signatureValidator.validate(this.signatureToVerify);
+		return this.signatureToVerify;
+	}
+
+	@Benchmark
+	public Signature sign(final UnsignedAssertion unsignedAssertion) throws Exception {
+		Signer.signObject(unsignedAssertion.signature);
+		return unsignedAssertion.signature;
+	}
+
+	/**
+	 * Build a new assertion with a signature prepared like OpenSaml20SpProcessor.buildSignature() does.
+	 * 
+	 * @return the assertion to sign
+	 * @throws Exception
+	 */
+	protected Assertion buildAssertionToSign() throws Exception {
+		final Assertion assertion = (Assertion) SamlBenchmarkHelper.unmarshall(this.assertionXml);
+
+		final Signature signature = new SignatureBuilder().buildObject();
+		SecurityHelper.prepareSignatureParams(signature, this.signingCredential,
+				Configuration.getGlobalSecurityConfiguration(), null);
+		signature.setSigningCredential(this.signingCredential);
+		signature.setKeyInfo(null);
+		assertion.setSignature(signature);
+
+		return assertion;
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(XmlSignatureBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+}
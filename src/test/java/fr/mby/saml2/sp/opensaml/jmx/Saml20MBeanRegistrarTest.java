@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.jmx;
+
+import java.util.HashMap;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opensaml.DefaultBootstrap;
+import org.opensaml.xml.ConfigurationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.impl.handler.HistogramProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.NullProcessingMetricsHandler;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20SpProcessor;
+import fr.mby.saml2.sp.opensaml.query.engine.OpenSaml2QueryProcessorFactory;
+
+/**
+ * Test of the JMX MBeans of the SP processor and of the IdP connectors.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@RunWith(value = SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = "classpath:openSaml20SpProcessorContext.xml")
+public class Saml20MBeanRegistrarTest {
+
+	@Autowired
+	private OpenSaml20SpProcessor spProcessor;
+
+	@Autowired
+	private OpenSaml20IdpConnector idpConnector;
+
+	@Autowired
+	private OpenSaml2QueryProcessorFactory factory;
+
+	@BeforeClass
+	public static void initOpenSaml() throws ConfigurationException {
+		DefaultBootstrap.bootstrap();
+	}
+
+	@Test
+	public void testMBeansRegistration() throws Exception {
+		final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		final Saml20MBeanRegistrar registrar = new Saml20MBeanRegistrar();
+		registrar.setSpProcessor(this.spProcessor);
+		registrar.setMbeanServer(mbeanServer);
+		registrar.afterPropertiesSet();
+
+		try {
+			Assert.assertEquals("One MBean by SP processor and by IdP connector should be registered !", 2, registrar
+					.getRegisteredNames().size());
+
+			final ObjectName spName = registrar.getRegisteredNames().get(0);
+			Assert.assertEquals("Wrong SP processor MBean type !", "SpProcessor", spName.getKeyProperty("type"));
+			Assert.assertEquals("Wrong SP entity ID !", this.spProcessor.getSpConfig().getEntityId(),
+					mbeanServer.getAttribute(spName, "SpEntityId"));
+			Assert.assertEquals("The replay cache should be empty !", 0,
+					mbeanServer.getAttribute(spName, "ReplayCacheSize"));
+
+			final ObjectName idpName = registrar.getRegisteredNames().get(1);
+			Assert.assertEquals("Wrong IdP connector MBean type !", "IdpConnector", idpName.getKeyProperty("type"));
+			final long messageCount = (Long) mbeanServer.getAttribute(idpName, "MessageCount");
+			this.idpConnector.buildSaml20AuthnRequest(new HashMap<String, String[]>(),
+					SamlBindingEnum.SAML_20_HTTP_POST);
+			Assert.assertEquals("The AuthnRequest should be counted !", messageCount + 1,
+					mbeanServer.getAttribute(idpName, "MessageCount"));
+
+			final String refreshResult = (String) mbeanServer.invoke(idpName, "refreshMetadata", null, null);
+			Assert.assertTrue("The IdP metadata should be refreshed !", refreshResult.endsWith("refreshed"));
+			Assert.assertFalse("The IdP metadata should be refreshed !", refreshResult.contains("not refreshed"));
+		} finally {
+			registrar.destroy();
+		}
+
+		Assert.assertTrue("The MBeans should be unregistered !",
+				mbeanServer.queryNames(new ObjectName(Saml20MBeanRegistrar.DEFAULT_DOMAIN + ":*"), null).isEmpty());
+	}
+
+	@Test
+	public void testDetailedTimingsToggle() throws Exception {
+		final MBeanServer mbeanServer = MBeanServerFactory.newMBeanServer();
+		final Saml20MBeanRegistrar registrar = new Saml20MBeanRegistrar();
+		registrar.setSpProcessor(this.spProcessor);
+		registrar.setMbeanServer(mbeanServer);
+		registrar.afterPropertiesSet();
+
+		try {
+			final ObjectName spName = registrar.getRegisteredNames().get(0);
+			Assert.assertEquals("The detailed timings should be disabled by default !", Boolean.FALSE,
+					mbeanServer.getAttribute(spName, "DetailedTimingsEnabled"));
+
+			mbeanServer.setAttribute(spName, new Attribute("DetailedTimingsEnabled", Boolean.TRUE));
+			Assert.assertTrue("The factory should time the processing stages !",
+					this.factory.getMetricsHandler() instanceof HistogramProcessingMetricsHandler);
+
+			mbeanServer.setAttribute(spName, new Attribute("DetailedTimingsEnabled", Boolean.FALSE));
+			Assert.assertSame("The factory should not time the processing stages anymore !",
+					NullProcessingMetricsHandler.INSTANCE, this.factory.getMetricsHandler());
+		} finally {
+			this.factory.setMetricsHandler(NullProcessingMetricsHandler.INSTANCE);
+			registrar.destroy();
+		}
+	}
+
+}
@@ -27,6 +27,8 @@ import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 
+import net.sf.ehcache.Ehcache;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -38,25 +40,40 @@ import org.opensaml.saml2.core.AuthnRequest;
 import org.opensaml.saml2.core.Response;
 import org.opensaml.xml.ConfigurationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.ehcache.EhCacheFactoryBean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fr.mby.saml2.sp.api.core.ISaml20Storage;
 import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.exception.OrphanResponseException;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
+import fr.mby.saml2.sp.api.handler.ITracingHandler;
+import fr.mby.saml2.sp.api.handler.ProcessingStageEnum;
 import fr.mby.saml2.sp.api.om.IAuthentication;
 import fr.mby.saml2.sp.api.om.IIncomingSaml;
-import fr.mby.saml2.sp.api.om.IRequestWaitingForResponse;
+import fr.mby.saml2.sp.api.om.ISlowMessage;
+import fr.mby.saml2.sp.api.om.ISpan;
 import fr.mby.saml2.sp.api.query.IQuery;
+import fr.mby.saml2.sp.impl.core.EhcacheSaml20Storage;
+import fr.mby.saml2.sp.impl.handler.BasicTracingHandler;
+import fr.mby.saml2.sp.impl.handler.NullSlowMessageHandler;
+import fr.mby.saml2.sp.impl.handler.NullTracingHandler;
+import fr.mby.saml2.sp.impl.handler.RingBufferSlowMessageHandler;
+import fr.mby.saml2.sp.impl.handler.RingBufferSpanExporter;
+import fr.mby.saml2.sp.impl.helper.LoginStatistics;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
 import fr.mby.saml2.sp.impl.helper.SamlTestResourcesHelper;
 import fr.mby.saml2.sp.impl.query.QueryAuthnRequest;
 import fr.mby.saml2.sp.impl.query.QueryAuthnResponse;
+import fr.mby.saml2.sp.opensaml.core.AbandonedLoginListener;
 import fr.mby.saml2.sp.opensaml.core.OpenSaml20IdpConnector;
 import fr.mby.saml2.sp.opensaml.core.OpenSaml20SpProcessor;
 import fr.mby.saml2.sp.opensaml.query.engine.AuthnResponseQueryProcessor;
@@ -85,6 +102,8 @@ public class AuthnResponseQueryProcessorTest {
 	private AuthnResponseQueryProcessor processor;
 
 	private ISaml20Storage samlStorage;
+
+	private QueryAuthnRequest requestData;
 	
 	private static final String SAML_ATTRIBUTE_KEY_SCENARIO_1 = "ctemail";
 
@@ -130,8 +149,8 @@ public class AuthnResponseQueryProcessorTest {
 		final String id = openSamlAuthnRequest.getID();
 		
 		final Map<String, String[]> parametersMap = new HashMap<String, String[]>();
-		final IRequestWaitingForResponse requestData = new QueryAuthnRequest(id, this.idpConnector, parametersMap);
-		Mockito.when(this.samlStorage.findRequestWaitingForResponse(id)).thenReturn(requestData);
+		this.requestData = new QueryAuthnRequest(id, this.idpConnector, parametersMap);
+		Mockito.when(this.samlStorage.findRequestWaitingForResponse(id)).thenReturn(this.requestData);
 		this.spProcessor.setSaml20Storage(this.samlStorage);
 	}
 
@@ -146,6 +165,38 @@ public class AuthnResponseQueryProcessorTest {
 		this.testAuthnResponseProcessingScenario1(this.responseAssertSigned);
 	}
 
+	/**
+	 * Test a valid AuthnResponse without original AuthnRequest is counted as orphan by the SP processor. The message
+	 * ID stays in the replay cache of the shared context.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	@DirtiesContext
+	public void testOrphanAuthnResponseCounted() throws Exception {
+		this.spProcessor.setSaml20Storage(Mockito.mock(ISaml20Storage.class));
+		final MessageStatistics statistics = this.spProcessor.getStatistics();
+		final long orphanBefore = statistics.getCount(MessageStatistics.ORPHAN);
+		final long failedBefore = statistics.getCount(MessageStatistics.FAILURE);
+
+		final HttpServletRequest mockHttpRequest = this.managePostMessage(SamlBindingEnum.SAML_20_HTTP_POST,
+				"/cas/Shibboleth.sso/SAML2/POST", this.responseSimpleSigned);
+
+		SamlProcessingException orphan = null;
+		try {
+			this.spProcessor.processSaml20IncomingRequest(mockHttpRequest);
+		} catch (final SamlProcessingException e) {
+			orphan = e;
+		}
+
+		Assert.assertNotNull("AuthnResponse without original AuthnRequest not rejected !", orphan);
+		Assert.assertEquals("Not rejected as an orphan response !", OrphanResponseException.class, orphan.getClass());
+		Assert.assertEquals("Orphan response not counted !", orphanBefore + 1,
+				statistics.getCount(MessageStatistics.ORPHAN));
+		Assert.assertEquals("Orphan response counted as a failure !", failedBefore,
+				statistics.getCount(MessageStatistics.FAILURE));
+	}
+
 	/**
 	 * Test a valid AuthnResponse with assertions signed on all bindings.
 	 * 
@@ -179,6 +230,167 @@ public class AuthnResponseQueryProcessorTest {
 		this.testAuthnResponseProcessingScenario1(this.responseFullSigned);
 	}
 
+	/**
+	 * Test the processing of an AuthnResponse continues the trace of the original AuthnRequest.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTracedAuthnResponseProcessing() throws Exception {
+		final RingBufferSpanExporter spanExporter = new RingBufferSpanExporter();
+		final BasicTracingHandler tracingHandler = new BasicTracingHandler();
+		tracingHandler.setSpanExporter(spanExporter);
+
+		final ISpan requestSpan = tracingHandler.startSpan("AuthnRequest", null);
+		this.requestData.setTraceParent(tracingHandler.buildTraceParent(requestSpan));
+
+		this.processor.setTracingHandler(tracingHandler);
+		try {
+			this.testAuthnResponseProcessingScenario1(SamlBindingEnum.SAML_20_HTTP_POST,
+					"/cas/Shibboleth.sso/SAML2/POST", this.responseSimpleSigned);
+		} finally {
+			this.processor.setTracingHandler(NullTracingHandler.INSTANCE);
+		}
+
+		final List<ISpan> spans = spanExporter.findTrace(requestSpan.getTraceId());
+		Assert.assertEquals("All the spans were not exported in the trace of the request !", 7, spans.size());
+		// The trace parent and the legitimacy check share the same lookup
+		Mockito.verify(this.samlStorage, Mockito.times(1)).findRequestWaitingForResponse(this.requestData.getId());
+
+		final ISpan processingSpan = spans.get(spans.size() - 1);
+		Assert.assertEquals("Wrong name for the processing span !", "AuthnResponseQueryProcessor",
+				processingSpan.getName());
+		Assert.assertEquals("The processing span is not a child of the request span !", requestSpan.getSpanId(),
+				processingSpan.getParentSpanId());
+		Assert.assertNotNull("No IdP attribute !", processingSpan.getAttributes().get(ITracingHandler.IDP_ATTRIBUTE));
+		Assert.assertFalse("The processing span is in error !", processingSpan.isError());
+
+		// Not archiving : no archive stage
+		Assert.assertEquals("Wrong name for the first stage span !", "VALIDATE_REQUEST_TYPE", spans.get(0).getName());
+		for (final ISpan stageSpan : spans.subList(0, spans.size() - 1)) {
+			Assert.assertEquals("The stage span is not a child of the processing span !",
+					processingSpan.getSpanId(), stageSpan.getParentSpanId());
+			Assert.assertTrue("The stage span is not ended !", stageSpan.getDurationNanos() >= 0);
+		}
+	}
+
+	/**
+	 * Test the login round trip is recorded by the IdP connector once the AuthnResponse matched. The answered
+	 * AuthnRequest leaves a real expiring cache, so only the unanswered one is counted as abandoned when it expires.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLoginRoundTripRecording() throws Exception {
+		final LoginStatistics loginStatistics = this.idpConnector.getLoginStatistics();
+		final long roundTripsBefore = loginStatistics.getRoundTrips().getCount();
+		final long abandonedBefore = loginStatistics.getAbandonedCount();
+
+		final EhCacheFactoryBean cacheFactory = new EhCacheFactoryBean();
+		cacheFactory.setCacheName("testExpiringRwfrCache" + System.nanoTime());
+		cacheFactory.setTimeToLive(1);
+		cacheFactory.setOverflowToDisk(false);
+		cacheFactory.afterPropertiesSet();
+		final Ehcache rwfrCache = cacheFactory.getObject();
+		rwfrCache.getCacheEventNotificationService().registerListener(new AbandonedLoginListener());
+
+		final EhcacheSaml20Storage storage = new EhcacheSaml20Storage();
+		storage.setSamlRequestWaitingForResponseCache(rwfrCache);
+		storage.afterPropertiesSet();
+		this.spProcessor.setSaml20Storage(storage);
+
+		this.requestData.setIssueTimeMillis(System.currentTimeMillis() - 1000L);
+		storage.storeRequestWaitingForResponse(this.requestData);
+		storage.storeRequestWaitingForResponse(new QueryAuthnRequest("_unanswered", this.idpConnector,
+				new HashMap<String, String[]>()));
+
+		this.testAuthnResponseProcessingScenario1(SamlBindingEnum.SAML_20_HTTP_POST, "/cas/Shibboleth.sso/SAML2/POST",
+				this.responseSimpleSigned);
+
+		Assert.assertNull("The answered AuthnRequest is still stored !",
+				rwfrCache.getQuiet(this.requestData.getId()));
+		Assert.assertEquals("The round trip was not recorded once !", roundTripsBefore + 1, loginStatistics
+				.getRoundTrips().getCount());
+		Assert.assertTrue("Wrong round trip !", loginStatistics.getRoundTrips().getMax() >= 1000000L);
+
+		// Let the cache expire its elements
+		Thread.sleep(1500L);
+		rwfrCache.evictExpiredElements();
+
+		Assert.assertEquals("Only the unanswered AuthnRequest should be counted as abandoned !", abandonedBefore + 1,
+				loginStatistics.getAbandonedCount());
+	}
+
+	/**
+	 * Test the capture of an AuthnResponse exceeding the slow message threshold.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSlowAuthnResponseCapture() throws Exception {
+		final RingBufferSlowMessageHandler slowMessageHandler = new RingBufferSlowMessageHandler();
+		slowMessageHandler.setThresholdMillis(0);
+		slowMessageHandler.setMessageCaptured(true);
+
+		this.processor.setSlowMessageHandler(slowMessageHandler);
+		try {
+			this.testAuthnResponseProcessingScenario1(SamlBindingEnum.SAML_20_HTTP_POST,
+					"/cas/Shibboleth.sso/SAML2/POST", this.responseSimpleSigned);
+		} finally {
+			this.processor.setSlowMessageHandler(NullSlowMessageHandler.INSTANCE);
+		}
+
+		final List<ISlowMessage> slowMessages = slowMessageHandler.getSlowMessages();
+		Assert.assertEquals("The slow message was not captured !", 1, slowMessages.size());
+
+		final ISlowMessage slowMessage = slowMessages.get(0);
+		Assert.assertTrue("The processing didn't succeed !", slowMessage.isSucceeded());
+		Assert.assertEquals("Wrong processor type !", "AuthnResponseQueryProcessor", slowMessage.getProcessorType());
+		Assert.assertNotNull("No message ID !", slowMessage.getMessageId());
+		Assert.assertNotNull("No IdP entity ID !", slowMessage.getIdpEntityId());
+		Assert.assertTrue("No payload size !", slowMessage.getPayloadSize() > 0);
+		Assert.assertEquals("Wrong assertion count !", 1, slowMessage.getAssertionCount());
+		Assert.assertEquals("Wrong attribute count !", 1, slowMessage.getAttributeCount());
+		Assert.assertTrue("Stage breakdown without the processing stage !",
+				slowMessage.getStageNanos().containsKey(ProcessingStageEnum.PROCESS));
+		Assert.assertTrue("Stage breakdown without the last stage !",
+				slowMessage.getStageNanos().containsKey(ProcessingStageEnum.BUILD_INCOMING_SAML));
+		Assert.assertTrue("The redacted message is not redacted !", slowMessage.getRedactedMessage().contains(">***<"));
+	}
+
+	/**
+	 * Test the SAML message of the incoming SAML is the message as received, not the re-marshalled OpenSaml object.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIncomingSamlMessageKeptAsReceived() throws Exception {
+		this.initStorageWithAuthnRequest();
+		final String samlMessage = SamlTestResourcesHelper.readFile(this.responseSimpleSigned);
+
+		for (final SamlBindingEnum binding : SamlBindingEnum.values()) {
+			final MockHttpServletRequest mockHttpRequest;
+			if (SamlBindingEnum.SAML_20_HTTP_REDIRECT == binding) {
+				// The parameter value of the HTTP request is already URL decoded
+				mockHttpRequest = this.manageMessage(binding, "/cas/Shibboleth.sso/SAML2/Redirect",
+						SamlHelper.httpRedirectEncode(samlMessage));
+			} else {
+				mockHttpRequest = this.managePostMessage(binding, "/cas/Shibboleth.sso/SAML2/POST",
+						this.responseSimpleSigned);
+			}
+			final Response openSamlAuthnResponse = (Response) SamlTestResourcesHelper
+					.buildOpenSamlXmlObjectFromResource(this.responseSimpleSigned);
+			this.processor.initialize(this.factory, openSamlAuthnResponse, binding, mockHttpRequest,
+					this.spProcessor);
+
+			final IIncomingSaml incomingSaml = this.processor.processIncomingSamlMessage();
+
+			Assert.assertNotNull("Incoming SAML is null !", incomingSaml);
+			Assert.assertEquals("The SAML message is not the message as received !", samlMessage,
+					incomingSaml.getSamlMessage());
+		}
+	}
+
 	/**
 	 * Test Attack 2 of AuthnResponse with all bindings. Attack 2 : Add an unsigned assertion in an unsigned response
 	 * 
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.config.ISpConfig;
+import fr.mby.saml2.sp.api.core.ISaml20IdpConnector;
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.opensaml.core.SamlResponseGenerator;
+import fr.mby.saml2.sp.opensaml.core.SamlResponseGenerator.SignaturePlacement;
+
+/**
+ * JMH benchmark of AuthnResponseQueryProcessor with realistic payloads built by SamlResponseGenerator : many
+ * assertions, many attributes, thousands of values per attribute (group memberships), encrypted assertions,
+ * attributes and NameIDs.
+ *
+ * Every parameter can be overridden, ex: mvn -Pbenchmark test-compile exec:exec
+ * -Djmh.args="AuthnResponseScaleBenchmark -p valuesPerAttribute=2000 -p encryptAttributes=true"
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class AuthnResponseScaleBenchmark {
+
+	/** Count of distinct Responses sent in turn, to stay away from the replay cache. */
+	private static final int RESPONSES_POOL_SIZE = 16;
+
+	@Param({"1", "10"})
+	private int assertions;
+
+	@Param({"1", "10"})
+	private int attributesPerAssertion;
+
+	@Param({"1", "2000"})
+	private int valuesPerAttribute;
+
+	@Param({"false", "true"})
+	private boolean encryptAssertions;
+
+	@Param({"false"})
+	private boolean encryptAttributes;
+
+	@Param({"false"})
+	private boolean encryptNameIds;
+
+	@Param({"BOTH"})
+	private SignaturePlacement signaturePlacement;
+
+	private ClassPathXmlApplicationContext context;
+
+	private ISaml20SpProcessor spProcessor;
+
+	private final String[] encodedResponses = new String[AuthnResponseScaleBenchmark.RESPONSES_POOL_SIZE];
+
+	private final AtomicInteger responsesSequence = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.context = SamlBenchmarkHelper.loadBenchmarkContext();
+		this.spProcessor = this.context.getBean("spProcessor", ISaml20SpProcessor.class);
+		final ISaml20IdpConnector idpConnector = this.context.getBean("idpConnector", ISaml20IdpConnector.class);
+
+		// The original request is only looked up by the pipeline : store it once.
+		SamlBenchmarkHelper.storeOriginalAuthnRequest(this.spProcessor.getSaml20Storage(), idpConnector);
+
+		final SamlResponseGenerator generator = new SamlResponseGenerator();
+		generator.setAssertions(this.assertions);
+		generator.setAttributesPerAssertion(this.attributesPerAssertion);
+		generator.setValuesPerAttribute(this.valuesPerAttribute);
+		generator.setEncryptAssertions(this.encryptAssertions);
+		generator.setEncryptAttributes(this.encryptAttributes);
+		generator.setEncryptNameIds(this.encryptNameIds);
+		generator.setSignaturePlacement(this.signaturePlacement);
+
+		final ISpConfig spConfig = this.spProcessor.getSpConfig();
+		int messageSize = 0;
+		for (int k = 0; k < this.encodedResponses.length; k++) {
+			final String response = generator.generateXml(SamlBenchmarkHelper.AUTHN_REQUEST_ID,
+					spConfig.getEndpointUrl(SamlBindingEnum.SAML_20_HTTP_POST), spConfig.getEntityId(),
+					"bench_user_" + k, "_bench_session_" + k);
+			messageSize = response.length();
+			this.encodedResponses[k] = SamlHelper.httpPostEncode(response);
+		}
+		System.out.println(String.format("Generated Response size: [%d] chars", messageSize));
+
+		// Fail fast : do not measure a rejection path (see RejectionPathBenchmark).
+		if (this.processAuthnResponse() == null) {
+			throw new IllegalStateException("Unable to process the generated AuthnResponse !");
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.spProcessor.getSaml20Storage().clear();
+		this.context.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public IIncomingSaml processResponse() throws Exception {
+		return this.processAuthnResponse();
+	}
+
+	/**
+	 * Process the next Response of the pool as received by the servlet container.
+	 *
+	 * @return the incoming SAML
+	 * @throws Exception
+	 */
+	protected IIncomingSaml processAuthnResponse() throws Exception {
+		final int next = (this.responsesSequence.getAndIncrement() & Integer.MAX_VALUE)
+				% this.encodedResponses.length;
+		final HttpServletRequest request = SamlBenchmarkHelper.buildPostRequest(SamlBenchmarkHelper.SP_AUTHN_POST_URI,
+				SamlHelper.SAML_RESPONSE_PARAM_KEY, this.encodedResponses[next], "rs_bench");
+		return this.spProcessor.processSaml20IncomingRequest(request);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new OptionsBuilder().include(AuthnResponseScaleBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class).build();
+		new Runner(options).run();
+	}
+
+}
@@ -19,6 +19,7 @@
 package fr.mby.saml2.sp.opensaml.query.engine;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -39,7 +40,11 @@ import fr.mby.saml2.sp.api.core.SamlBindingEnum;
 import fr.mby.saml2.sp.api.exception.SamlProcessingException;
 import fr.mby.saml2.sp.api.exception.SamlSecurityException;
 import fr.mby.saml2.sp.api.exception.UnsupportedSamlOperation;
+import fr.mby.saml2.sp.api.handler.IProcessingMetricsHandler;
 import fr.mby.saml2.sp.api.query.engine.IQueryProcessor;
+import fr.mby.saml2.sp.impl.handler.HistogramProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.handler.NullProcessingMetricsHandler;
+import fr.mby.saml2.sp.impl.helper.LatencyHistogram;
 import fr.mby.saml2.sp.impl.helper.SamlHelper;
 import fr.mby.saml2.sp.impl.helper.SamlTestResourcesHelper;
 import fr.mby.saml2.sp.opensaml.query.engine.AuthnResponseQueryProcessor;
@@ -106,6 +111,36 @@ public class OpenSaml2QueryProcessorFactoryTest {
 		Assert.assertEquals("Wrong type of query processor built !", AuthnResponseQueryProcessor.class, queryProcessor.getClass());
 	}
 
+	/**
+	 * Valid case : the decoding time of an Authn Response is recorded by the metrics handler.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPostAuthnResponseDecodeMetrics() throws Exception {
+		final HistogramProcessingMetricsHandler metricsHandler = new HistogramProcessingMetricsHandler();
+		this.factory.setMetricsHandler(metricsHandler);
+		try {
+			SamlBindingEnum binding = SamlBindingEnum.SAML_20_HTTP_POST;
+			IQueryProcessor queryProcessor = this.managePostMessage(binding, "/cas/Shibboleth.sso/SAML2/POST", this.responseSimpleSigned);
+
+			Assert.assertSame("Metrics handler not given to the query processor !", metricsHandler,
+					((AuthnResponseQueryProcessor) queryProcessor).getMetricsHandler());
+
+			final Map<String, LatencyHistogram> histograms = metricsHandler.getHistograms();
+			Assert.assertEquals("Only the decoding should be recorded !", 1, histograms.size());
+			final LatencyHistogram decodeHistogram = histograms.values().iterator().next();
+			Assert.assertTrue("Wrong labels for the decoding histogram !", decodeHistogram.getName().startsWith(
+					"DECODE AuthnResponseQueryProcessor SAML_20_HTTP_POST "));
+			// The mocked SP processor has no IdP connector : the issuer must not be used as label
+			Assert.assertTrue("An issuer without IdP connector is used as label !", decodeHistogram.getName()
+					.endsWith(" " + IProcessingMetricsHandler.UNKNOWN_IDP));
+			Assert.assertEquals("Decoding not recorded once !", 1, decodeHistogram.getCount());
+		} finally {
+			this.factory.setMetricsHandler(NullProcessingMetricsHandler.INSTANCE);
+		}
+	}
+
 	/**
 	 * Valid case : SLO response with POST binding.
 	 * 
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+/**
+ * 
+ */
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.joda.time.DateTime;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.opensaml.util.storage.ReplayCacheEntry;
+
+/**
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@RunWith(value = BlockJUnit4ClassRunner.class)
+public class ReplayStorageServiceTest {
+
+	private static final String PARTITION = "replay";
+
+	@Test
+	public void testPurgeExpiredEntries() throws Exception {
+		final ReplayStorageService storage = new ReplayStorageService();
+		storage.put(ReplayStorageServiceTest.PARTITION, "_expired", this.buildEntry("_expired", -1));
+		storage.put(ReplayStorageServiceTest.PARTITION, "_live", this.buildEntry("_live", 5));
+
+		Assert.assertEquals("Only the expired entry should be purged !", 1, storage.purgeExpiredEntries());
+		Assert.assertFalse("The expired entry is still stored !",
+				storage.contains(ReplayStorageServiceTest.PARTITION, "_expired"));
+		Assert.assertTrue("The live entry was purged !", storage.contains(ReplayStorageServiceTest.PARTITION, "_live"));
+	}
+
+	@Test
+	public void testSizeCounted() throws Exception {
+		final ReplayStorageService storage = new ReplayStorageService();
+		storage.put(ReplayStorageServiceTest.PARTITION, "_expired", this.buildEntry("_expired", -1));
+		storage.put(ReplayStorageServiceTest.PARTITION, "_live", this.buildEntry("_live", 5));
+		storage.put("other", "_live", this.buildEntry("_live", 5));
+		Assert.assertEquals("Bad count of stored entries !", 3, storage.size());
+
+		// Refreshed entry
+		storage.put(ReplayStorageServiceTest.PARTITION, "_live", this.buildEntry("_live", 10));
+		Assert.assertEquals("Refreshed entry counted twice !", 3, storage.size());
+
+		storage.purgeExpiredEntries();
+		Assert.assertEquals("Purged entry still counted !", 2, storage.size());
+
+		storage.remove("other", "_live");
+		storage.remove("other", "_unknown");
+		Assert.assertEquals("Removed entry still counted !", 1, storage.size());
+	}
+
+	@Test
+	public void testRefreshedEntryNotPurged() throws Exception {
+		final ReplayStorageService storage = new ReplayStorageService();
+		final Map<String, ReplayCacheEntry> entries = new ConcurrentHashMap<String, ReplayCacheEntry>();
+
+		final ReplayCacheEntry expired = this.buildEntry("_message", -1);
+		final ReplayCacheEntry refreshed = this.buildEntry("_message", 5);
+		// The replay cache refreshed the entry after the purge found it expired
+		entries.put("_message", refreshed);
+
+		Assert.assertFalse("The refreshed entry should not be removed !",
+				storage.removeIfSame(entries, "_message", expired));
+		Assert.assertSame("The refreshed entry was removed !", refreshed, entries.get("_message"));
+
+		Assert.assertTrue("The same entry should be removed !",
+				storage.removeIfSame(entries, "_message", refreshed));
+		Assert.assertTrue("The entry was not removed !", entries.isEmpty());
+	}
+
+	protected ReplayCacheEntry buildEntry(final String messageId, final int expirationMinutes) {
+		return new ReplayCacheEntry(messageId, new DateTime().plusMinutes(expirationMinutes));
+	}
+
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.joda.time.DateTime;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.opensaml.saml2.core.SessionIndex;
+import org.opensaml.xml.Configuration;
+import org.opensaml.xml.XMLObjectBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.impl.helper.StandInIdpEndpoint;
+
+/**
+ * JMH benchmark of the IdP initiated Single Logout : SloRequestQueryProcessor logs out every SessionIndex of the
+ * LogoutRequest, then synchronously POST the LogoutResponse back to the IdP before the servlet thread is released.
+ *
+ * The IdP is a local stand-in HTTP endpoint answering after a configurable delay. The latency of one call is the time a
+ * servlet thread is occupied by one SLO request. Run with several threads (-t) to see the throughput bound by slow
+ * IdP endpoints.
+ *
+ * Run with : mvn -Pbenchmark test-compile exec:exec -Djmh.args="SloRequestQueryProcessorBenchmark -t 16"
+ *
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djmh.shutdownTimeout=0")
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class SloRequestQueryProcessorBenchmark {
+
+	/** Context with the IdP SLO endpoints rewritten to the stand-in endpoint. */
+	private static final String SLO_BENCHMARK_CONTEXT = "classpath:sloBenchmarkContext.xml";
+
+	/** Unsigned LogoutRequest sent by the test IdP. */
+	private static final String SLO_REQUEST_RESOURCE = "saml/requests/incoming_slo_request.xml";
+
+	/**
+	 * Count of distinct LogoutRequests sent in turn : concurrent threads must not send the same message ID in the same
+	 * millisecond, the replay cache would reject it.
+	 */
+	private static final int SLO_REQUESTS_POOL_SIZE = 64;
+
+	@Param({"1", "10", "1000"})
+	private int sessionIndexes;
+
+	/** Delay of the IdP endpoint before answering the LogoutResponse, in ms. */
+	@Param({"0", "10", "100", "500"})
+	private long endpointLatencyMillis;
+
+	private StandInIdpEndpoint idpEndpoint;
+
+	private ClassPathXmlApplicationContext context;
+
+	private ISaml20SpProcessor spProcessor;
+
+	private final String[] encodedSloRequests = new String[SloRequestQueryProcessorBenchmark.SLO_REQUESTS_POOL_SIZE];
+
+	private final AtomicInteger sloRequestsSequence = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.idpEndpoint = new StandInIdpEndpoint(this.endpointLatencyMillis);
+		this.idpEndpoint.start();
+
+		this.context = SamlBenchmarkHelper.loadContext(SloRequestQueryProcessorBenchmark.SLO_BENCHMARK_CONTEXT);
+		this.spProcessor = this.context.getBean("spProcessor", ISaml20SpProcessor.class);
+
+		for (int k = 0; k < this.encodedSloRequests.length; k++) {
+			this.encodedSloRequests[k] = SamlHelper.httpPostEncode(this.buildSignedSloRequest(k));
+		}
+
+		// Fail fast : the request must be processed and the response received by the IdP.
+		if ((this.processSloRequest() == null) || (this.idpEndpoint.getReceivedMessages() != 1)) {
+			throw new IllegalStateException(String.format(
+					"SLO Request not processed or SLO Response not received by the IdP endpoint [%s] !",
+					this.idpEndpoint.getSloEndpointUrl()));
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println(String.format("SLO Responses received by the stand-in IdP endpoint: [%d]",
+				this.idpEndpoint.getReceivedMessages()));
+		this.context.close();
+		this.idpEndpoint.stop();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public IIncomingSaml throughput() throws Exception {
+		return this.processSloRequest();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public IIncomingSaml latency() throws Exception {
+		return this.processSloRequest();
+	}
+
+	/**
+	 * Process the LogoutRequest as received by the servlet container.
+	 *
+	 * @return the incoming SAML
+	 * @throws Exception
+	 */
+	protected IIncomingSaml processSloRequest() throws Exception {
+		final int next = (this.sloRequestsSequence.getAndIncrement() & Integer.MAX_VALUE)
+				% this.encodedSloRequests.length;
+		final HttpServletRequest request = SamlBenchmarkHelper.buildPostRequest(SamlBenchmarkHelper.SP_SLO_POST_URI,
+				SamlHelper.SAML_REQUEST_PARAM_KEY, this.encodedSloRequests[next], "rs_bench");
+		return this.spProcessor.processSaml20IncomingRequest(request);
+	}
+
+	/**
+	 * Build the LogoutRequest with the SessionIndexes count of the trial, signed with the IdP key.
+	 *
+	 * @param number
+	 *            the number of the request in the pool
+	 * @return the LogoutRequest XML
+	 * @throws Exception
+	 */
+	protected String buildSignedSloRequest(final int number) throws Exception {
+		final LogoutRequest sloRequest = (LogoutRequest) SamlBenchmarkHelper.unmarshall(SamlBenchmarkHelper
+				.readClasspathFile(SloRequestQueryProcessorBenchmark.SLO_REQUEST_RESOURCE));
+		sloRequest.setID(String.format("_bench_slo_request_%d", number));
+		sloRequest.setIssueInstant(new DateTime());
+
+		@SuppressWarnings("unchecked")
+		final XMLObjectBuilder<SessionIndex> sessionIndexBuilder = Configuration.getBuilderFactory().getBuilder(
+				SessionIndex.DEFAULT_ELEMENT_NAME);
+		final List<SessionIndex> indexes = sloRequest.getSessionIndexes();
+		indexes.clear();
+		for (int k = 0; k < this.sessionIndexes; k++) {
+			final SessionIndex sessionIndex = sessionIndexBuilder.buildObject(SessionIndex.DEFAULT_ELEMENT_NAME);
+			sessionIndex.setSessionIndex(String.format("_bench_session_index_%d", k));
+			indexes.add(sessionIndex);
+		}
+
+		SamlBenchmarkHelper.signSamlObject(sloRequest, SamlBenchmarkHelper.buildIdpCredential());
+
+		return SamlBenchmarkHelper.serialize(sloRequest);
+	}
+
+	public static void main(final String[] args) throws Exception {
+		for (final int threads : new int[]{1, 16}) {
+			final Options options = new OptionsBuilder()
+					.include(SloRequestQueryProcessorBenchmark.class.getSimpleName()).threads(threads).build();
+			new Runner(options).run();
+		}
+	}
+
+}
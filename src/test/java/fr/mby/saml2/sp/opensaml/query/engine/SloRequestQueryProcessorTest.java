@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ *
+ */
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.joda.time.DateTime;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.opensaml.saml2.core.LogoutRequest;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import fr.mby.saml2.sp.api.core.ISaml20SpProcessor;
+import fr.mby.saml2.sp.api.exception.SamlProcessingException;
+import fr.mby.saml2.sp.api.exception.SamlSecurityException;
+import fr.mby.saml2.sp.api.exception.SamlSecurityRejectionException;
+import fr.mby.saml2.sp.api.om.IIncomingSaml;
+import fr.mby.saml2.sp.impl.helper.MessageStatistics;
+import fr.mby.saml2.sp.impl.helper.SamlBenchmarkHelper;
+import fr.mby.saml2.sp.impl.helper.SamlHelper;
+import fr.mby.saml2.sp.impl.helper.StandInIdpEndpoint;
+import fr.mby.saml2.sp.opensaml.core.OpenSaml20SpProcessor;
+
+/**
+ * Test of the IdP initiated Single Logout : the LogoutResponse is sent back to a stand-in IdP endpoint.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ * 
+ */
+@RunWith(value = BlockJUnit4ClassRunner.class)
+public class SloRequestQueryProcessorTest {
+
+	/** Context with the IdP SLO endpoints rewritten to the stand-in endpoint. */
+	private static final String SLO_CONTEXT = "classpath:sloBenchmarkContext.xml";
+
+	/** Unsigned LogoutRequest sent by the test IdP. */
+	private static final String SLO_REQUEST_RESOURCE = "saml/requests/incoming_slo_request.xml";
+
+	/** Issuer without IdP connector. */
+	private static final String UNKNOWN_ISSUER = "http://www.unknown.fr/idp";
+
+	private static StandInIdpEndpoint idpEndpoint;
+
+	private static ClassPathXmlApplicationContext context;
+
+	private static ISaml20SpProcessor spProcessor;
+
+	@BeforeClass
+	public static void initSpProcessor() throws Exception {
+		SloRequestQueryProcessorTest.idpEndpoint = new StandInIdpEndpoint(0L);
+		SloRequestQueryProcessorTest.idpEndpoint.start();
+
+		SloRequestQueryProcessorTest.context = SamlBenchmarkHelper
+				.loadContext(SloRequestQueryProcessorTest.SLO_CONTEXT);
+		SloRequestQueryProcessorTest.spProcessor = SloRequestQueryProcessorTest.context.getBean("spProcessor",
+				ISaml20SpProcessor.class);
+	}
+
+	@AfterClass
+	public static void stopIdpEndpoint() {
+		if (SloRequestQueryProcessorTest.context != null) {
+			SloRequestQueryProcessorTest.context.close();
+		}
+		if (SloRequestQueryProcessorTest.idpEndpoint != null) {
+			SloRequestQueryProcessorTest.idpEndpoint.stop();
+		}
+	}
+
+	/**
+	 * The LogoutResponse is POSTed to the SLO endpoint of the IdP.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSloResponseSentToIdp() throws Exception {
+		final long receivedBefore = SloRequestQueryProcessorTest.idpEndpoint.getReceivedMessages();
+
+		final IIncomingSaml incomingSaml = this.processSloRequest(this.buildSignedSloRequest("_slo_request_sent",
+				null));
+
+		Assert.assertNotNull("SLO Request not processed !", incomingSaml);
+		Assert.assertEquals("SLO Response not received by the IdP endpoint !", receivedBefore + 1,
+				SloRequestQueryProcessorTest.idpEndpoint.getReceivedMessages());
+	}
+
+	/**
+	 * A LogoutRequest issued by an IdP without connector is rejected as a security problem, nothing is sent back.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnknownIssuerRejected() throws Exception {
+		final long receivedBefore = SloRequestQueryProcessorTest.idpEndpoint.getReceivedMessages();
+		final MessageStatistics statistics = ((OpenSaml20SpProcessor) SloRequestQueryProcessorTest.spProcessor)
+				.getStatistics();
+		final long rejectedBefore = statistics.getCount(MessageStatistics.REJECTED);
+		final long failedBefore = statistics.getCount(MessageStatistics.FAILURE);
+
+		SamlProcessingException rejection = null;
+		try {
+			this.processSloRequest(this.buildSignedSloRequest("_slo_request_unknown",
+					SloRequestQueryProcessorTest.UNKNOWN_ISSUER));
+		} catch (final SamlProcessingException e) {
+			rejection = e;
+		}
+
+		Assert.assertNotNull("SLO Request of an unknown IdP not rejected !", rejection);
+		Assert.assertTrue("Not rejected as a security problem !",
+				rejection.getCause() instanceof SamlSecurityException);
+		Assert.assertTrue("Security rejection not told apart from a failure !",
+				rejection instanceof SamlSecurityRejectionException);
+		Assert.assertEquals("Security rejection not counted !", rejectedBefore + 1,
+				statistics.getCount(MessageStatistics.REJECTED));
+		Assert.assertEquals("Security rejection counted as a failure !", failedBefore,
+				statistics.getCount(MessageStatistics.FAILURE));
+		Assert.assertEquals("SLO Response sent to an unknown IdP !", receivedBefore,
+				SloRequestQueryProcessorTest.idpEndpoint.getReceivedMessages());
+	}
+
+	/**
+	 * Process the LogoutRequest as received by the servlet container.
+	 * 
+	 * @param sloRequest
+	 *            the LogoutRequest XML
+	 * @return the incoming SAML
+	 * @throws Exception
+	 */
+	protected IIncomingSaml processSloRequest(final String sloRequest) throws Exception {
+		final HttpServletRequest request = SamlBenchmarkHelper.buildPostRequest(SamlBenchmarkHelper.SP_SLO_POST_URI,
+				SamlHelper.SAML_REQUEST_PARAM_KEY, SamlHelper.httpPostEncode(sloRequest), "rs_test");
+		return SloRequestQueryProcessorTest.spProcessor.processSaml20IncomingRequest(request);
+	}
+
+	/**
+	 * Build a LogoutRequest signed with the IdP key.
+	 * 
+	 * @param id
+	 *            the ID of the request
+	 * @param issuer
+	 *            the issuer of the request, null to keep the test IdP
+	 * @return the LogoutRequest XML
+	 * @throws Exception
+	 */
+	protected String buildSignedSloRequest(final String id, final String issuer) throws Exception {
+		final LogoutRequest sloRequest = (LogoutRequest) SamlBenchmarkHelper.unmarshall(SamlBenchmarkHelper
+				.readClasspathFile(SloRequestQueryProcessorTest.SLO_REQUEST_RESOURCE));
+		sloRequest.setID(id);
+		sloRequest.setIssueInstant(new DateTime());
+		if (issuer != null) {
+			sloRequest.getIssuer().setValue(issuer);
+		}
+
+		SamlBenchmarkHelper.signSamlObject(sloRequest, SamlBenchmarkHelper.buildIdpCredential());
+
+		return SamlBenchmarkHelper.serialize(sloRequest);
+	}
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2012 RECIA http://www.recia.fr
+ * @Author (C) 2012 Maxime Bossard <mxbossard@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/**
+ * 
+ */
+package fr.mby.saml2.sp.opensaml.query.engine;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import fr.mby.saml2.sp.api.core.SamlBindingEnum;
+import fr.mby.saml2.sp.opensaml.binding.StreamingHTTPPostDecoder;
+import fr.mby.saml2.sp.opensaml.binding.StreamingHTTPRedirectDeflateDecoder;
+
+/**
+ * Integration Test of Query Processor Factory with the streaming decoders : the same cases as with the OpenSAML
+ * decoders.
+ * 
+ * @author GIP RECIA 2013 - Maxime BOSSARD.
+ *
+ */
+@RunWith(value=SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations="classpath:openSaml2StreamingDecodersContext.xml", inheritLocations=false)
+public class StreamingDecodersQueryProcessorFactoryTest extends OpenSaml2QueryProcessorFactoryTest {
+
+	@Autowired
+	private OpenSaml2QueryProcessorFactory factory;
+
+	@Test
+	public void testStreamingDecodersConfigured() throws Exception {
+		Assert.assertEquals("Streaming POST decoder not configured !", StreamingHTTPPostDecoder.class,
+				this.factory.getSamlMessageDecoders().get(SamlBindingEnum.SAML_20_HTTP_POST).getClass());
+		Assert.assertEquals("Streaming Redirect decoder not configured !", StreamingHTTPRedirectDeflateDecoder.class,
+				this.factory.getSamlMessageDecoders().get(SamlBindingEnum.SAML_20_HTTP_REDIRECT).getClass());
+	}
+
+}